@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Delta output of a unique batch window, set through the 'output.mode=delta' option.
+ * <p>
+ * Rather than expiring the whole last batch, resetting and emitting the whole new one, the window compares the new
+ * batch with the last one by key and only emits the changes: the events of the keys that left as expired events, the
+ * events of the new keys as current events, and for the keys whose event has other attribute values, the last event
+ * as an expired event followed by the new one. No reset event is emitted, so that downstream aggregations and tables
+ * carry on from the last batch. The copies of the events of the last batch are held on the heap.
+ */
+final class BatchDelta {
+
+    static final String BATCH = "batch";
+    static final String DELTA = "delta";
+
+    private Map<Object, StreamEvent> lastBatch = new LinkedHashMap<>();
+
+    /**
+     * Returns whether the options of a window select the delta output.
+     *
+     * @param options the options of the window
+     * @return whether the window emits deltas
+     */
+    static boolean isDelta(UniqueOptions options) {
+        return DELTA.equals(options.get(UniqueOptions.OUTPUT_MODE, BATCH, DELTA));
+    }
+
+    boolean isEmpty() {
+        return lastBatch.isEmpty();
+    }
+
+    /**
+     * Emits the changes from the last batch to the given one, which becomes the last batch.
+     *
+     * @param batch               the events of the new batch by key, emitted as they are when new or changed
+     * @param currentTime         the timestamp of the emitted events
+     * @param onEmit              the action applied to each event of the new batch once timestamped, if any
+     * @param retainedEventCloner the cloner of the window
+     * @param streamEventCloner   the cloner of the query
+     * @param chunk               the chunk to emit into
+     */
+    void emit(Map<Object, StreamEvent> batch, long currentTime, Consumer<StreamEvent> onEmit,
+              RetainedEventCloner retainedEventCloner, StreamEventCloner streamEventCloner,
+              ComplexEventChunk<StreamEvent> chunk) {
+        Map<Object, StreamEvent> newBatch = new LinkedHashMap<>();
+        List<StreamEvent> currentEvents = new ArrayList<>();
+        // the batch may stream its events back from disk, hence it is iterated once
+        for (Map.Entry<Object, StreamEvent> entry : batch.entrySet()) {
+            StreamEvent event = entry.getValue();
+            event.setTimestamp(currentTime);
+            if (onEmit != null) {
+                onEmit.accept(event);
+            }
+            StreamEvent lastEvent = lastBatch.remove(entry.getKey());
+            if (lastEvent != null && hasSameData(lastEvent, event)) {
+                newBatch.put(entry.getKey(), lastEvent);
+                continue;
+            }
+            if (lastEvent != null) {
+                lastEvent.setTimestamp(currentTime);
+                chunk.add(lastEvent);
+            }
+            currentEvents.add(event);
+            StreamEvent toExpireEvent = retainedEventCloner.copy(event, streamEventCloner);
+            toExpireEvent.setType(StreamEvent.Type.EXPIRED);
+            newBatch.put(entry.getKey(), toExpireEvent);
+        }
+        for (StreamEvent lastEvent : lastBatch.values()) {
+            lastEvent.setTimestamp(currentTime);
+            chunk.add(lastEvent);
+        }
+        for (StreamEvent event : currentEvents) {
+            chunk.add(event);
+        }
+        lastBatch = newBatch;
+    }
+
+    Map<Object, StreamEvent> snapshot() {
+        return new LinkedHashMap<>(lastBatch);
+    }
+
+    void restore(Map<Object, StreamEvent> lastBatch) {
+        this.lastBatch = lastBatch != null ? new LinkedHashMap<>(lastBatch) : new LinkedHashMap<>();
+    }
+
+    private static boolean hasSameData(StreamEvent lastEvent, StreamEvent event) {
+        return Arrays.equals(lastEvent.getOutputData(), event.getOutputData())
+                && Arrays.equals(lastEvent.getOnAfterWindowData(), event.getOnAfterWindowData())
+                && Arrays.equals(lastEvent.getBeforeWindowData(), event.getBeforeWindowData());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.ComplexEvent;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.SiddhiConstants;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executor yielding the content key of an event, a 128-bit {@link Murmur3Hasher} hash of all the attributes of the
+ * input stream, so that the unique windows can deduplicate on whole events.
+ * <p>
+ * The attribute values are fed to the hasher straight from the data arrays of the event, without building any
+ * intermediate key. Two different events having the same hash are taken for the same event, which happens with a
+ * probability of about n^2 / 2^129 among n distinct events. With verification enabled the key also holds the values,
+ * and keys having the same hash are told apart by comparing them.
+ */
+final class ContentKeyExecutor implements ExpressionExecutor {
+
+    private final MetaStreamEvent metaStreamEvent;
+    private final List<Attribute> attributes;
+    private final boolean verify;
+    private volatile int[] locations;
+
+    private ContentKeyExecutor(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition, boolean verify) {
+        this.metaStreamEvent = metaStreamEvent;
+        this.attributes = inputDefinition.getAttributeList();
+        this.verify = verify;
+        // the window reads every attribute, hence all of them have to be carried by the events
+        for (Attribute attribute : attributes) {
+            metaStreamEvent.addData(attribute);
+        }
+    }
+
+    /**
+     * Replaces the unique key parameters of a window by the content key, for the windows deduplicating whole events.
+     *
+     * @param extension       the name of the extension, used in error messages
+     * @param executors       all the parameters of the extension, which take no unique key parameter
+     * @param metaStreamEvent the meta event of the window
+     * @param inputDefinition the definition of the input stream
+     * @param minParameters   the minimum number of parameters of the extension, besides the options
+     * @param maxParameters   the maximum number of parameters of the extension, besides the options
+     * @return the parameters prefixed with the content key executor and stripped of the options
+     */
+    static ExpressionExecutor[] withContentKey(String extension, ExpressionExecutor[] executors,
+                                               MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                               int minParameters, int maxParameters) {
+        UniqueOptions options = UniqueOptions.parse(extension, executors, UniqueOptions.KEY_VERIFY);
+        ExpressionExecutor[] parameters = options.getParameters();
+        if (parameters.length < minParameters || parameters.length > maxParameters) {
+            throw new SiddhiAppValidationException("Unique " + extension + " should have "
+                    + (minParameters == maxParameters ? String.valueOf(minParameters)
+                    : minParameters + " to " + maxParameters) + " parameters besides its options, but found "
+                    + parameters.length + " input attributes");
+        }
+        List<ExpressionExecutor> withContentKey = new ArrayList<>(parameters.length + 1);
+        withContentKey.add(new ContentKeyExecutor(metaStreamEvent, inputDefinition,
+                options.getBoolean(UniqueOptions.KEY_VERIFY, false)));
+        withContentKey.addAll(Arrays.asList(parameters));
+        return withContentKey.toArray(new ExpressionExecutor[0]);
+    }
+
+    @Override
+    public Object execute(ComplexEvent event) {
+        int[] locations = locations();
+        StreamEvent streamEvent = (StreamEvent) event;
+        Murmur3Hasher hasher = new Murmur3Hasher();
+        Object[] values = verify ? new Object[locations.length] : null;
+        for (int i = 0; i < locations.length; i++) {
+            Object value = EventAttribute.get(streamEvent, locations[i]);
+            hasher.putObject(value);
+            if (values != null) {
+                values[i] = value;
+            }
+        }
+        long low = hasher.finish();
+        return new ContentKey(low, hasher.high(), values);
+    }
+
+    @Override
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.OBJECT;
+    }
+
+    /**
+     * Returns the positions in the before window data of the event that the executor reads.
+     *
+     * @return the positions
+     */
+    int[] getBeforeWindowDataPositions() {
+        int[] locations = locations();
+        int[] positions = new int[locations.length];
+        int count = 0;
+        for (int location : locations) {
+            if ((location & 3) == SiddhiConstants.BEFORE_WINDOW_DATA_INDEX) {
+                positions[count++] = location >>> 2;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Returns the locations of the attributes in the event, as located by {@link EventAttribute}.
+     */
+    private int[] locations() {
+        int[] locations = this.locations;
+        if (locations == null) {
+            locations = new int[attributes.size()];
+            for (int i = 0; i < locations.length; i++) {
+                locations[i] = locate(attributes.get(i));
+            }
+            this.locations = locations;
+        }
+        return locations;
+    }
+
+    private int locate(Attribute attribute) {
+        int location = EventAttribute.locate(metaStreamEvent, attribute);
+        if (location < 0) {
+            throw new SiddhiAppRuntimeException("Attribute '" + attribute.getName() + "' is not carried by the "
+                    + "events of the unique window");
+        }
+        return location;
+    }
+
+    /**
+     * Content key of an event. Keys are equal when their hashes are, and when both hold the attribute values, when
+     * the values are also equal.
+     */
+    static final class ContentKey implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long low;
+        private final long high;
+        private final Object[] values;
+
+        ContentKey(long low, long high, Object[] values) {
+            this.low = low;
+            this.high = high;
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ContentKey)) {
+                return false;
+            }
+            ContentKey key = (ContentKey) other;
+            return low == key.low && high == key.high
+                    && (values == null || key.values == null || Arrays.equals(values, key.values));
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (low ^ (low >>> 32));
+        }
+    }
+}
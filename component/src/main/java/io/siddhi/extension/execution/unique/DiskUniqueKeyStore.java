@@ -0,0 +1,644 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.ComplexEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.util.config.ConfigReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Key store keeping the keys and their events in memory-mapped segment files, for key spaces larger than the heap.
+ * <p>
+ * Entries are appended to the segments as records, a replaced event being appended again, and an open addressing
+ * index of record references, itself a memory-mapped file, locates the latest record of each key. The index holds the
+ * hash of each key so that only matching hashes read a record back, and a bloom filter of those hashes on the heap
+ * answers most lookups of absent keys without touching the index. Recently used entries are cached on the heap, and
+ * the entries put while processing a chunk are held on the heap until {@link #flush()} appends them in one go.
+ * <p>
+ * As the segments are only appended to, a snapshot is the number of segments and the end of the last one, and restoring
+ * it truncates the segments back to that point, zeroing the end of the last one, and rebuilds the index by scanning
+ * them. Only the keys of the records are read, a batch of segments at a time in parallel, while the events stay in the
+ * segments until they are looked up. The segments must therefore outlive the process on a local disk for the revision
+ * to be restored. A store written to before being restored discards the segments of the former run. Replaced records
+ * are not compacted.
+ * <p>
+ * The index file is mapped in pages, as a single mapping cannot exceed 2 GB. Its slots are numbered by ints, hence a
+ * store holds at most 2^29 keys, the index being kept at most half full.
+ */
+final class DiskUniqueKeyStore implements UniqueKeyStore {
+
+    static final String CACHE_SIZE = "key.store.cache.size";
+
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+    // index slot: reference to the latest record plus one (long), hash of the key (int)
+    private static final int INDEX_SLOT_SIZE = 12;
+    private static final int INDEX_PAGE_SHIFT = 24;
+    private static final int INDEX_PAGE_MASK = (1 << INDEX_PAGE_SHIFT) - 1;
+    private static final int MAX_INDEX_CAPACITY = 1 << 30;
+    // bit positions of the bloom filter are ints
+    private static final int MAX_BLOOM_LENGTH = 1 << 25;
+    private static final int BLOOM_BITS_PER_SLOT = 8;
+    private static final int BLOOM_HASHES = 6;
+    // stands for the keys held without an event on the heap
+    private static final StreamEvent NO_EVENT = new StreamEvent(0, 0, 0);
+
+    private File directory;
+    private LinkedHashMap<Object, StreamEvent> cache;
+    private final LinkedHashMap<Object, StreamEvent> pending = new LinkedHashMap<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private MappedByteBuffer[] index;
+    private File indexFile;
+    private int indexCapacity;
+    private long[] bloom;
+    private int indexedSize;
+    private int size;
+    private boolean opened;
+
+    @Override
+    public void init(File directory, ConfigReader configReader) {
+        this.directory = directory;
+        int cacheSize = Integer.parseInt(configReader.readConfig(CACHE_SIZE, "100000"));
+        this.cache = new LinkedHashMap<Object, StreamEvent>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, StreamEvent> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return lookup(key) != null;
+    }
+
+    @Override
+    public StreamEvent get(Object key) {
+        StreamEvent event = lookup(key);
+        return event == NO_EVENT ? null : event;
+    }
+
+    @Override
+    public StreamEvent put(Object key, StreamEvent event) {
+        StreamEvent previous = lookup(key);
+        if (previous == null) {
+            size++;
+        }
+        cache.remove(key);
+        pending.put(key, event == null ? NO_EVENT : event);
+        return previous == NO_EVENT ? null : previous;
+    }
+
+    @Override
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        open();
+        for (Map.Entry<Object, StreamEvent> entry : pending.entrySet()) {
+            StreamEvent event = entry.getValue();
+            index(entry.getKey(), append(entry.getKey(), event == NO_EVENT ? null : event));
+            cache.put(entry.getKey(), event);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public Collection<StreamEvent> values() {
+        flush();
+        return new AbstractCollection<StreamEvent>() {
+            @Override
+            public Iterator<StreamEvent> iterator() {
+                return new EventIterator();
+            }
+
+            @Override
+            public int size() {
+                return indexedSize;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object snapshot() {
+        flush();
+        open();
+        return new Checkpoint(segments.size(), segments.isEmpty() ? 0 : segments.get(segments.size() - 1).position());
+    }
+
+    @Override
+    public void restore(Object snapshot) {
+        Checkpoint checkpoint = (Checkpoint) snapshot;
+        pending.clear();
+        cache.clear();
+        segments.clear();
+        StateDirectory.create(directory);
+        deleteFiles(INDEX_SUFFIX, 0);
+        for (int i = 0; i < checkpoint.segments; i++) {
+            File file = segmentFile(i);
+            if (!file.isFile()) {
+                throw new SiddhiAppRuntimeException("Unique key store segment '" + file + "' of the restored "
+                        + "revision is missing");
+            }
+            segments.add(map(file, file.length()));
+        }
+        deleteFiles(SEGMENT_SUFFIX, checkpoint.segments);
+        if (!segments.isEmpty()) {
+            // records appended beyond the checkpoint would be scanned as records once the segment is full
+            zero(segments.get(segments.size() - 1), checkpoint.position);
+        }
+        resetIndex();
+        int batch = Runtime.getRuntime().availableProcessors();
+        for (int from = 0; from < segments.size(); from += batch) {
+            List<SegmentKeys> scanned = IntStream.range(from, Math.min(from + batch, segments.size())).parallel()
+                    .mapToObj(i -> scanKeys(i, checkpoint))
+                    .collect(Collectors.toList());
+            // records are indexed in the order they were appended, so that the latest record of a key wins
+            for (SegmentKeys segmentKeys : scanned) {
+                for (int j = 0; j < segmentKeys.count; j++) {
+                    index(segmentKeys.keys[j], segmentKeys.hashes[j], segmentKeys.refs[j]);
+                }
+                segments.get(segmentKeys.segment).position(segmentKeys.end);
+            }
+        }
+        size = indexedSize;
+        opened = true;
+    }
+
+    /**
+     * Reads the keys of the records of a segment, up to the checkpoint for the last segment.
+     */
+    private SegmentKeys scanKeys(int segment, Checkpoint checkpoint) {
+        ByteBuffer buffer = segments.get(segment).duplicate();
+        boolean last = segment == checkpoint.segments - 1;
+        int end = last ? checkpoint.position : buffer.capacity();
+        SegmentKeys segmentKeys = new SegmentKeys(segment);
+        int position = 0;
+        while (position + 4 <= end) {
+            int length = buffer.getInt(position);
+            if (length <= 0) {
+                break;
+            }
+            long ref = ((long) segment << 32) | position;
+            Object key = readKey(ref);
+            segmentKeys.add(key, hash(key), ref);
+            position += 4 + length;
+        }
+        segmentKeys.end = last ? end : position;
+        return segmentKeys;
+    }
+
+    private static void zero(ByteBuffer segment, int from) {
+        ByteBuffer tail = segment.duplicate();
+        tail.position(from);
+        byte[] zeros = new byte[Math.min(tail.remaining(), 64 * 1024)];
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+    }
+
+    /**
+     * Discards the files of the former run on the first write, unless the store was restored.
+     */
+    private void open() {
+        if (opened) {
+            return;
+        }
+        StateDirectory.create(directory);
+        deleteFiles(SEGMENT_SUFFIX, 0);
+        deleteFiles(INDEX_SUFFIX, 0);
+        resetIndex();
+        opened = true;
+    }
+
+    private StreamEvent lookup(Object key) {
+        StreamEvent event = pending.get(key);
+        if (event == null) {
+            event = cache.get(key);
+        }
+        if (event == null && indexedSize > 0) {
+            int hash = hash(key);
+            if (mightContain(hash)) {
+                long refPlusOne = getRef(index, findSlot(key, hash));
+                if (refPlusOne != 0) {
+                    event = readRecord(refPlusOne - 1).event;
+                    if (event == null) {
+                        event = NO_EVENT;
+                    }
+                    cache.put(key, event);
+                }
+            }
+        }
+        return event;
+    }
+
+    private void index(Object key, long ref) {
+        index(key, hash(key), ref);
+    }
+
+    private void index(Object key, int hash, long ref) {
+        int slot = findSlot(key, hash);
+        if (getRef(index, slot) == 0) {
+            putHash(index, slot, hash);
+            addToBloom(hash);
+            indexedSize++;
+        }
+        putRef(index, slot, ref + 1);
+        if (indexedSize * 2 > indexCapacity) {
+            growIndex();
+        }
+    }
+
+    /**
+     * Returns the slot of the key in the index, or the empty slot where it belongs.
+     */
+    private int findSlot(Object key, int hash) {
+        int mask = indexCapacity - 1;
+        int slot = hash & mask;
+        long refPlusOne;
+        while ((refPlusOne = getRef(index, slot)) != 0) {
+            if (getHash(index, slot) == hash
+                    && Objects.equals(readKey(refPlusOne - 1), key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resetIndex() {
+        if (indexFile != null) {
+            indexFile.delete();
+        }
+        indexFile = null;
+        index = null;
+        indexCapacity = 0;
+        indexedSize = 0;
+        createIndex(INITIAL_INDEX_CAPACITY);
+    }
+
+    private void createIndex(int capacity) {
+        File newIndexFile = newIndexFile();
+        MappedByteBuffer[] newIndex = mapIndex(newIndexFile, capacity);
+        long[] newBloom = new long[Math.min(capacity / 64 * BLOOM_BITS_PER_SLOT, MAX_BLOOM_LENGTH)];
+        int mask = capacity - 1;
+        for (int i = 0; i < indexCapacity; i++) {
+            long refPlusOne = getRef(index, i);
+            if (refPlusOne != 0) {
+                int hash = getHash(index, i);
+                int slot = hash & mask;
+                while (getRef(newIndex, slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                putRef(newIndex, slot, refPlusOne);
+                putHash(newIndex, slot, hash);
+            }
+        }
+        if (indexFile != null) {
+            indexFile.delete();
+        }
+        indexFile = newIndexFile;
+        index = newIndex;
+        indexCapacity = capacity;
+        bloom = newBloom;
+    }
+
+    private void growIndex() {
+        if (indexCapacity == MAX_INDEX_CAPACITY) {
+            throw new SiddhiAppRuntimeException("Unique key store '" + directory + "' of the 'disk' key.store "
+                    + "cannot hold more than " + MAX_INDEX_CAPACITY / 2 + " keys");
+        }
+        createIndex(indexCapacity << 1);
+        // the bloom filter is rebuilt at its new size from the hashes of the index
+        for (int i = 0; i < indexCapacity; i++) {
+            if (getRef(index, i) != 0) {
+                addToBloom(getHash(index, i));
+            }
+        }
+    }
+
+    private void addToBloom(int hash) {
+        long mixed = Murmur3Hasher.fmix64(hash);
+        int h1 = (int) mixed;
+        int h2 = (int) (mixed >>> 32);
+        int mask = (int) ((long) bloom.length * 64 - 1);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(int hash) {
+        long mixed = Murmur3Hasher.fmix64(hash);
+        int h1 = (int) mixed;
+        int h2 = (int) (mixed >>> 32);
+        int mask = (int) ((long) bloom.length * 64 - 1);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long append(Object key, StreamEvent event) {
+        byte[] payload = serialize(key, event);
+        int recordSize = 4 + payload.length;
+        MappedByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.remaining() < recordSize) {
+            segment = map(segmentFile(segments.size()), Math.max(SEGMENT_SIZE, recordSize));
+            segments.add(segment);
+        }
+        long ref = ((long) (segments.size() - 1) << 32) | segment.position();
+        segment.putInt(payload.length);
+        segment.put(payload);
+        return ref;
+    }
+
+    private Record readRecord(long ref) {
+        ByteBuffer buffer = segments.get((int) (ref >>> 32)).duplicate();
+        buffer.position((int) ref);
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(payload);
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            Object key = inputStream.readObject();
+            StreamEvent event = null;
+            if (inputStream.readBoolean()) {
+                event = new StreamEvent(0, 0, 0);
+                event.setTimestamp(inputStream.readLong());
+                event.setType(ComplexEvent.Type.values()[inputStream.readByte()]);
+                event.setBeforeWindowData((Object[]) inputStream.readObject());
+                event.setOnAfterWindowData((Object[]) inputStream.readObject());
+                event.setOutputData((Object[]) inputStream.readObject());
+            }
+            return new Record(key, event);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Error while reading unique key store '" + directory + "'", e);
+        }
+    }
+
+    /**
+     * Reads only the key of a record, which is serialized ahead of its event.
+     */
+    private Object readKey(long ref) {
+        ByteBuffer buffer = segments.get((int) (ref >>> 32)).duplicate();
+        buffer.position((int) ref);
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(payload);
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return inputStream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Error while reading unique key store '" + directory + "'", e);
+        }
+    }
+
+    private byte[] serialize(Object key, StreamEvent event) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(byteStream)) {
+            outputStream.writeObject(key);
+            outputStream.writeBoolean(event != null);
+            if (event != null) {
+                outputStream.writeLong(event.getTimestamp());
+                outputStream.writeByte(event.getType().ordinal());
+                outputStream.writeObject(event.getBeforeWindowData());
+                outputStream.writeObject(event.getOnAfterWindowData());
+                outputStream.writeObject(event.getOutputData());
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while storing unique key '" + key + "' in '" + directory
+                    + "'", e);
+        }
+        return byteStream.toByteArray();
+    }
+
+    private static int hash(Object key) {
+        long hash = Murmur3Hasher.hash64(key);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("%010d", number) + SEGMENT_SUFFIX);
+    }
+
+    private File newIndexFile() {
+        try {
+            File file = File.createTempFile("keys-", INDEX_SUFFIX, directory);
+            file.deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while creating unique key store index in '" + directory
+                    + "'", e);
+        }
+    }
+
+    /**
+     * Deletes the files of the store having the suffix, keeping the segments numbered below {@code from}.
+     */
+    private void deleteFiles(String suffix, int from) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (suffix.equals(SEGMENT_SUFFIX)) {
+                String name = file.getName();
+                try {
+                    if (Integer.parseInt(name.substring(0, name.length() - suffix.length())) < from) {
+                        continue;
+                    }
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+            if (!file.equals(indexFile)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static long getRef(MappedByteBuffer[] index, int slot) {
+        return index[slot >>> INDEX_PAGE_SHIFT].getLong((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE);
+    }
+
+    private static void putRef(MappedByteBuffer[] index, int slot, long refPlusOne) {
+        index[slot >>> INDEX_PAGE_SHIFT].putLong((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE, refPlusOne);
+    }
+
+    private static int getHash(MappedByteBuffer[] index, int slot) {
+        return index[slot >>> INDEX_PAGE_SHIFT].getInt((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE + 8);
+    }
+
+    private static void putHash(MappedByteBuffer[] index, int slot, int hash) {
+        index[slot >>> INDEX_PAGE_SHIFT].putInt((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE + 8, hash);
+    }
+
+    /**
+     * Maps an index of the given number of slots, one page of at most {@code 1 << INDEX_PAGE_SHIFT} slots at a time.
+     */
+    private static MappedByteBuffer[] mapIndex(File file, int capacity) {
+        int pageSlots = Math.min(capacity, 1 << INDEX_PAGE_SHIFT);
+        MappedByteBuffer[] pages = new MappedByteBuffer[capacity / pageSlots];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * pageSlots * INDEX_SLOT_SIZE,
+                        (long) pageSlots * INDEX_SLOT_SIZE);
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while mapping unique key store file '" + file + "'", e);
+        }
+        return pages;
+    }
+
+    private static MappedByteBuffer map(File file, long size) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while mapping unique key store file '" + file + "'", e);
+        }
+    }
+
+    /**
+     * Key and event of a record.
+     */
+    private static final class Record {
+
+        private final Object key;
+        private final StreamEvent event;
+
+        private Record(Object key, StreamEvent event) {
+            this.key = key;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Keys of the records of a segment, along with their hashes and references, in the order they were appended.
+     */
+    private static final class SegmentKeys {
+
+        private final int segment;
+        private Object[] keys = new Object[1024];
+        private int[] hashes = new int[1024];
+        private long[] refs = new long[1024];
+        private int count;
+        private int end;
+
+        private SegmentKeys(int segment) {
+            this.segment = segment;
+        }
+
+        private void add(Object key, int hash, long ref) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+                refs = Arrays.copyOf(refs, count * 2);
+            }
+            keys[count] = key;
+            hashes[count] = hash;
+            refs[count++] = ref;
+        }
+    }
+
+    /**
+     * End of the segments at the time of a snapshot.
+     */
+    private static final class Checkpoint implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int segments;
+        private final int position;
+
+        private Checkpoint(int segments, int position) {
+            this.segments = segments;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Iterates the events of the keys held with an event, in the order of the index.
+     */
+    private class EventIterator implements Iterator<StreamEvent> {
+
+        private int slot = -1;
+        private StreamEvent next = advance();
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public StreamEvent next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            StreamEvent event = next;
+            next = advance();
+            return event;
+        }
+
+        private StreamEvent advance() {
+            while (++slot < indexCapacity) {
+                long refPlusOne = getRef(index, slot);
+                if (refPlusOne != 0) {
+                    StreamEvent event = readRecord(refPlusOne - 1).event;
+                    if (event != null) {
+                        return event;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
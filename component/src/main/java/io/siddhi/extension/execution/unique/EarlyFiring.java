@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.ComplexEvent;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Early firing of a unique batch window, set through the 'early.fire.interval', 'early.fire.mode' and
+ * 'early.fire.flag' options.
+ * <p>
+ * Every interval from the start of a batch, the window emits a provisional view of the events pending in the batch,
+ * while the batch itself is emitted as usual when it ends. In 'full' mode each firing emits a reset event followed by
+ * all the pending events. In 'delta' mode only the first firing of a batch does so, and the later ones emit the
+ * events of the keys that changed since the last firing, each preceded by the expired copy of the event fired for its
+ * key before, so that downstream aggregations stay consistent. Provisional events are copies, the pending events are
+ * left untouched, and when a bool attribute is named by 'early.fire.flag' the window sets it to true in the
+ * provisional events and to false in the events of the emitted batches.
+ */
+final class EarlyFiring {
+
+    static final String FULL = "full";
+    static final String DELTA = "delta";
+
+    private final long interval;
+    private final boolean delta;
+    private final EventAttribute flag;
+
+    private EarlyFiring(long interval, boolean delta, EventAttribute flag) {
+        this.interval = interval;
+        this.delta = delta;
+        this.flag = flag;
+    }
+
+    /**
+     * Creates the early firing of a window from its options.
+     *
+     * @param options         the options of the window
+     * @param metaStreamEvent the meta event of the window
+     * @param inputDefinition the definition of the input stream
+     * @return the early firing, or {@code null} when no 'early.fire.interval' is given
+     */
+    static EarlyFiring of(UniqueOptions options, MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition) {
+        if (!options.isSet(UniqueOptions.EARLY_FIRE_INTERVAL)) {
+            for (String option : new String[]{UniqueOptions.EARLY_FIRE_MODE, UniqueOptions.EARLY_FIRE_FLAG}) {
+                if (options.isSet(option)) {
+                    throw new SiddhiAppValidationException("Option '" + option + "' only applies along with '"
+                            + UniqueOptions.EARLY_FIRE_INTERVAL + "'");
+                }
+            }
+            return null;
+        }
+        long interval = options.getPositiveLong(UniqueOptions.EARLY_FIRE_INTERVAL, 0);
+        boolean delta = DELTA.equals(options.get(UniqueOptions.EARLY_FIRE_MODE, FULL, DELTA));
+        Attribute attribute = options.getAttribute(UniqueOptions.EARLY_FIRE_FLAG, inputDefinition,
+                Attribute.Type.BOOL);
+        return new EarlyFiring(interval, delta,
+                attribute == null ? null : new EventAttribute(metaStreamEvent, attribute));
+    }
+
+    /**
+     * Marks an event of an emitted batch as final.
+     *
+     * @param event the event
+     */
+    void markFinal(StreamEvent event) {
+        if (flag != null) {
+            flag.set(event, false);
+        }
+    }
+
+    Tracker newTracker() {
+        return new Tracker();
+    }
+
+    /**
+     * Early firing of the batches of a state of the window. The firing times are not snapshot, the window restarts
+     * them along with its batch timing, and a restored tracker fires all the pending events on its next firing.
+     */
+    final class Tracker {
+
+        private final Map<Object, StreamEvent> firedEvents = new HashMap<>();
+        private final Set<Object> changedKeys = new LinkedHashSet<>();
+        private long nextFireTime = -1;
+
+        /**
+         * Starts the firings of a new batch.
+         *
+         * @param batchStartTime the time the batch starts at
+         */
+        void start(long batchStartTime) {
+            nextFireTime = batchStartTime + interval;
+            reset();
+        }
+
+        /**
+         * Forgets the fired events, once the pending events are emitted as a batch.
+         */
+        void reset() {
+            firedEvents.clear();
+            changedKeys.clear();
+        }
+
+        long getNextFireTime() {
+            return nextFireTime;
+        }
+
+        boolean isDue(long currentTime) {
+            return nextFireTime >= 0 && currentTime >= nextFireTime;
+        }
+
+        /**
+         * Records that the pending event of a key was added, replaced or dropped.
+         *
+         * @param key the key
+         */
+        void changed(Object key) {
+            if (delta && !firedEvents.isEmpty()) {
+                changedKeys.add(key);
+            }
+        }
+
+        /**
+         * Emits the provisional view of the pending events and moves to the next firing time.
+         *
+         * @param pendingEvents       the events pending in the batch, by key
+         * @param currentTime         the timestamp of the provisional events
+         * @param retainedEventCloner the cloner of the window
+         * @param streamEventCloner   the cloner of the query
+         * @param chunk               the chunk to emit into
+         */
+        void fire(Map<Object, StreamEvent> pendingEvents, long currentTime, RetainedEventCloner retainedEventCloner,
+                  StreamEventCloner streamEventCloner, ComplexEventChunk<StreamEvent> chunk) {
+            while (nextFireTime <= currentTime) {
+                nextFireTime += interval;
+            }
+            if (!delta || firedEvents.isEmpty()) {
+                changedKeys.clear();
+                boolean reset = false;
+                for (Map.Entry<Object, StreamEvent> entry : pendingEvents.entrySet()) {
+                    if (!reset) {
+                        chunk.add(copy(entry.getValue(), ComplexEvent.Type.RESET, currentTime, retainedEventCloner,
+                                streamEventCloner));
+                        reset = true;
+                    }
+                    chunk.add(copy(entry.getValue(), ComplexEvent.Type.CURRENT, currentTime, retainedEventCloner,
+                            streamEventCloner));
+                    if (delta) {
+                        firedEvents.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                return;
+            }
+            for (Object key : changedKeys) {
+                StreamEvent pendingEvent = pendingEvents.get(key);
+                StreamEvent firedEvent = firedEvents.get(key);
+                if (firedEvent != null) {
+                    chunk.add(copy(firedEvent, ComplexEvent.Type.EXPIRED, currentTime, retainedEventCloner,
+                            streamEventCloner));
+                }
+                if (pendingEvent != null) {
+                    chunk.add(copy(pendingEvent, ComplexEvent.Type.CURRENT, currentTime, retainedEventCloner,
+                            streamEventCloner));
+                    firedEvents.put(key, pendingEvent);
+                } else {
+                    firedEvents.remove(key);
+                }
+            }
+            changedKeys.clear();
+        }
+
+        private StreamEvent copy(StreamEvent event, ComplexEvent.Type type, long currentTime,
+                                 RetainedEventCloner retainedEventCloner, StreamEventCloner streamEventCloner) {
+            StreamEvent copy = retainedEventCloner.copy(event, streamEventCloner);
+            copy.setType(type);
+            copy.setTimestamp(currentTime);
+            if (flag != null) {
+                flag.set(copy, true);
+            }
+            return copy;
+        }
+    }
+}
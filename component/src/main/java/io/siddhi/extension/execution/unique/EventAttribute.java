@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.util.SiddhiConstants;
+import io.siddhi.query.api.definition.Attribute;
+
+import java.util.List;
+
+/**
+ * Locates the attributes of the input stream in the data arrays of the events of a window.
+ * <p>
+ * Siddhi only settles in which data array an attribute is carried once the whole query is parsed, looking it up in
+ * the output data, then the on after window data and the before window data, hence attributes are located lazily.
+ * A location packs the index of the attribute in its data array with the type of that array.
+ */
+final class EventAttribute {
+
+    private final MetaStreamEvent metaStreamEvent;
+    private final Attribute attribute;
+    private volatile int location = Integer.MIN_VALUE;
+
+    EventAttribute(MetaStreamEvent metaStreamEvent, Attribute attribute) {
+        this.metaStreamEvent = metaStreamEvent;
+        this.attribute = attribute;
+    }
+
+    /**
+     * Sets the value of the attribute in an event the window emits, unless the attribute is only carried in the
+     * before window data, which nothing reads after the window, or not carried at all.
+     *
+     * @param event the event
+     * @param value the value
+     */
+    void set(StreamEvent event, Object value) {
+        int location = this.location;
+        if (location == Integer.MIN_VALUE) {
+            location = locate(metaStreamEvent, attribute);
+            this.location = location;
+        }
+        if (location < 0) {
+            return;
+        }
+        switch (location & 3) {
+            case SiddhiConstants.OUTPUT_DATA_INDEX:
+                event.getOutputData()[location >>> 2] = value;
+                break;
+            case SiddhiConstants.ON_AFTER_WINDOW_DATA_INDEX:
+                event.getOnAfterWindowData()[location >>> 2] = value;
+                break;
+            default:
+                // the before window data of the retained events may be shared between them
+        }
+    }
+
+    /**
+     * Returns the value of the attribute at a location.
+     *
+     * @param event    the event
+     * @param location the location of the attribute
+     * @return the value
+     */
+    static Object get(StreamEvent event, int location) {
+        switch (location & 3) {
+            case SiddhiConstants.BEFORE_WINDOW_DATA_INDEX:
+                return event.getBeforeWindowData()[location >>> 2];
+            case SiddhiConstants.OUTPUT_DATA_INDEX:
+                return event.getOutputData()[location >>> 2];
+            default:
+                return event.getOnAfterWindowData()[location >>> 2];
+        }
+    }
+
+    /**
+     * Returns the location of an attribute in the events.
+     *
+     * @param metaStreamEvent the meta event of the window
+     * @param attribute       the attribute
+     * @return the location, or -1 when the events do not carry the attribute
+     */
+    static int locate(MetaStreamEvent metaStreamEvent, Attribute attribute) {
+        int index = indexOf(metaStreamEvent.getOutputData(), attribute);
+        if (index >= 0) {
+            return (index << 2) | SiddhiConstants.OUTPUT_DATA_INDEX;
+        }
+        index = indexOf(metaStreamEvent.getOnAfterWindowData(), attribute);
+        if (index >= 0) {
+            return (index << 2) | SiddhiConstants.ON_AFTER_WINDOW_DATA_INDEX;
+        }
+        index = indexOf(metaStreamEvent.getBeforeWindowData(), attribute);
+        if (index >= 0) {
+            return (index << 2) | SiddhiConstants.BEFORE_WINDOW_DATA_INDEX;
+        }
+        return -1;
+    }
+
+    private static int indexOf(List<Attribute> data, Attribute attribute) {
+        return data == null ? -1 : data.indexOf(attribute);
+    }
+}
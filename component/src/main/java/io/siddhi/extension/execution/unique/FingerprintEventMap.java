@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Map from unique keys to events that holds a {@link Murmur3Hasher} fingerprint of each key in place of the key.
+ * <p>
+ * Fingerprints are kept in open addressing arrays of longs, so a key costs 8 bytes, or 16 bytes for 128-bit
+ * fingerprints, however long the key is. Two different keys having the same fingerprint are taken for the same key.
+ * Among n distinct keys that happens with a probability of about n^2 / 2^65 for 64-bit fingerprints, i.e. 3e-8 for a
+ * million keys and 3% for a billion keys, and about n^2 / 2^129 for 128-bit fingerprints, which is negligible at any
+ * size. With verification enabled the key of the held event is extracted again and compared whenever fingerprints
+ * match, and colliding keys are kept apart in a regular map, so the map is exact at the cost of extracting a key per
+ * repeated key. When the events are not needed the map can be created without them, holding nothing but the
+ * fingerprints.
+ */
+final class FingerprintEventMap implements Serializable {
+
+    static final String MODE_VALUE = "value";
+    static final String MODE_FINGERPRINT = "fingerprint";
+    static final String MODE_FINGERPRINT_128 = "fingerprint128";
+
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean wide;
+    private final boolean verify;
+    private final boolean retainEvents;
+    private long[] lows;
+    private long[] highs;
+    private StreamEvent[] events;
+    private int size;
+    private Map<Object, StreamEvent> collisions;
+    private transient UniqueKeyExtractor keyExtractor;
+    private transient Murmur3Hasher hasher;
+    private transient long low;
+    private transient long high;
+
+    FingerprintEventMap(boolean wide, boolean verify, boolean retainEvents, UniqueKeyExtractor keyExtractor) {
+        this.wide = wide;
+        this.verify = verify;
+        this.retainEvents = retainEvents || verify;
+        this.lows = new long[INITIAL_CAPACITY];
+        this.highs = wide ? new long[INITIAL_CAPACITY] : null;
+        this.events = this.retainEvents ? new StreamEvent[INITIAL_CAPACITY] : null;
+        setKeyExtractor(keyExtractor);
+    }
+
+    private FingerprintEventMap(FingerprintEventMap map) {
+        this.wide = map.wide;
+        this.verify = map.verify;
+        this.retainEvents = map.retainEvents;
+        this.lows = map.lows.clone();
+        this.highs = map.highs != null ? map.highs.clone() : null;
+        this.events = map.events != null ? map.events.clone() : null;
+        this.size = map.size;
+        this.collisions = map.collisions != null ? new HashMap<>(map.collisions) : null;
+        setKeyExtractor(map.keyExtractor);
+    }
+
+    /**
+     * Returns the factory of the maps requested by the {@code key.mode} and {@code key.verify} options.
+     *
+     * @param options      the options of the extension
+     * @param retainEvents whether the events are to be held, otherwise only the keys are held unless verification
+     *                     needs the events
+     * @param keyExtractor the extractor of the unique keys
+     * @return the map factory, or {@code null} when keys are to be held by value
+     */
+    static Supplier<FingerprintEventMap> factory(UniqueOptions options, boolean retainEvents,
+                                                 UniqueKeyExtractor keyExtractor) {
+        String mode = options.get(UniqueOptions.KEY_MODE, MODE_VALUE, MODE_FINGERPRINT, MODE_FINGERPRINT_128);
+        boolean verify = options.getBoolean(UniqueOptions.KEY_VERIFY, false);
+        if (MODE_VALUE.equals(mode)) {
+            if (options.isSet(UniqueOptions.KEY_VERIFY)) {
+                throw new SiddhiAppValidationException("Option '" + UniqueOptions.KEY_VERIFY + "' only applies "
+                        + "when '" + UniqueOptions.KEY_MODE + "' is '" + MODE_FINGERPRINT + "' or '"
+                        + MODE_FINGERPRINT_128 + "'");
+            }
+            return null;
+        }
+        boolean wide = MODE_FINGERPRINT_128.equals(mode);
+        return () -> new FingerprintEventMap(wide, verify, retainEvents, keyExtractor);
+    }
+
+    /**
+     * Sets the key extractor, which is not part of the persisted state and has to be set again after a restore.
+     *
+     * @param keyExtractor the extractor of the unique keys
+     */
+    void setKeyExtractor(UniqueKeyExtractor keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        this.hasher = new Murmur3Hasher();
+    }
+
+    /**
+     * Maps the key to the event.
+     *
+     * @param key   the unique key of the event
+     * @param event the event
+     * @return the event previously mapped to the key, or {@code null}
+     */
+    synchronized StreamEvent put(Object key, StreamEvent event) {
+        int slot = slotOf(key);
+        if (lows[slot] == 0) {
+            insert(slot, event);
+            return null;
+        }
+        StreamEvent current = events[slot];
+        if (verify && !key.equals(keyExtractor.extract(current))) {
+            return collisions().put(key, event);
+        }
+        events[slot] = event;
+        return current;
+    }
+
+    /**
+     * Maps the key to the event unless the key is already mapped.
+     *
+     * @param key   the unique key of the event
+     * @param event the event
+     * @return the event already mapped to the key, or {@code null} if the event got mapped
+     */
+    synchronized StreamEvent putIfAbsent(Object key, StreamEvent event) {
+        int slot = slotOf(key);
+        if (lows[slot] == 0) {
+            insert(slot, event);
+            return null;
+        }
+        StreamEvent current = events[slot];
+        if (verify && !key.equals(keyExtractor.extract(current))) {
+            return collisions().putIfAbsent(key, event);
+        }
+        return current;
+    }
+
+    boolean retainsEvents() {
+        return retainEvents;
+    }
+
+    /**
+     * Adds the key to a map created without retaining events.
+     *
+     * @param key the unique key
+     * @return {@code true} if the key was not present
+     */
+    synchronized boolean add(Object key) {
+        int slot = slotOf(key);
+        if (lows[slot] == 0) {
+            insert(slot, null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the map, holding the same events.
+     *
+     * @return the copy
+     */
+    synchronized FingerprintEventMap copy() {
+        return new FingerprintEventMap(this);
+    }
+
+    /**
+     * Returns a copy of the mapped events.
+     *
+     * @return the events
+     */
+    synchronized Collection<StreamEvent> values() {
+        List<StreamEvent> values = new ArrayList<>(size + (collisions == null ? 0 : collisions.size()));
+        if (events != null) {
+            for (StreamEvent event : events) {
+                if (event != null) {
+                    values.add(event);
+                }
+            }
+        }
+        if (collisions != null) {
+            values.addAll(collisions.values());
+        }
+        return values;
+    }
+
+    /**
+     * Passes the lower 64 bits of each fingerprint held to the consumer, which are those {@link #fingerprint(Object)}
+     * returns for the keys.
+     *
+     * @param consumer the consumer of the fingerprints
+     */
+    synchronized void forEachFingerprint(LongConsumer consumer) {
+        for (long fingerprint : lows) {
+            if (fingerprint != 0) {
+                consumer.accept(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Returns the lower 64 bits of the fingerprint of a key.
+     *
+     * @param key the unique key
+     * @return the fingerprint, which is never zero
+     */
+    static long fingerprint(Object key) {
+        long fingerprint = new Murmur3Hasher().putObject(key).finish();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized int size() {
+        return size + (collisions == null ? 0 : collisions.size());
+    }
+
+    /**
+     * Hashes the key into {@code low} and {@code high} and returns the slot holding its fingerprint, or the empty
+     * slot where it belongs. A zero lower fingerprint marks an empty slot, hence it is replaced by one.
+     */
+    private int slotOf(Object key) {
+        low = hasher.reset().putObject(key).finish();
+        if (low == 0) {
+            low = 1;
+        }
+        high = hasher.high();
+        int mask = lows.length - 1;
+        int slot = (int) (low ^ (low >>> 32)) & mask;
+        while (lows[slot] != 0 && (lows[slot] != low || (wide && highs[slot] != high))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, StreamEvent event) {
+        lows[slot] = low;
+        if (wide) {
+            highs[slot] = high;
+        }
+        if (events != null) {
+            events[slot] = event;
+        }
+        if (++size * 4 > lows.length * 3) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldLows = lows;
+        long[] oldHighs = highs;
+        StreamEvent[] oldEvents = events;
+        int capacity = oldLows.length * 2;
+        int mask = capacity - 1;
+        lows = new long[capacity];
+        highs = wide ? new long[capacity] : null;
+        events = oldEvents != null ? new StreamEvent[capacity] : null;
+        for (int i = 0; i < oldLows.length; i++) {
+            long fingerprint = oldLows[i];
+            if (fingerprint != 0) {
+                int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+                while (lows[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                lows[slot] = fingerprint;
+                if (wide) {
+                    highs[slot] = oldHighs[i];
+                }
+                if (events != null) {
+                    events[slot] = oldEvents[i];
+                }
+            }
+        }
+    }
+
+    private Map<Object, StreamEvent> collisions() {
+        if (collisions == null) {
+            collisions = new HashMap<>();
+        }
+        return collisions;
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog++ sketch estimating the number of distinct 64-bit hashes offered to it.
+ * <p>
+ * Small cardinalities are kept in a sparse tier holding the rank of each touched register at a precision of 25,
+ * estimated by linear counting, and the sketch switches to {@code 2^precision} dense registers once the sparse tier
+ * would outgrow them. Dense estimates use the improved raw estimator of Ertl, which needs no empirical bias
+ * correction. Sketches of the same precision can be merged, so sketches built by partitioned or parallel queries can
+ * be combined into the sketch of their union, and they serialize to a compact form of delta encoded sparse entries or
+ * 6-bit packed registers.
+ */
+public final class HyperLogLog implements Serializable {
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 18;
+
+    private static final long serialVersionUID = 1L;
+    private static final int SPARSE_PRECISION = 25;
+    private static final int SPARSE_RANK_BITS = 6;
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+    private static final double ALPHA_INF = 0.5 / Math.log(2);
+
+    private final int precision;
+    private transient int[] sparseKeys;
+    private transient byte[] sparseRanks;
+    private transient int sparseSize;
+    private transient byte[] registers;
+    private transient int[] histogram;
+    private transient boolean estimated;
+    private transient long estimate;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision the number of hash bits used to select a dense register, between 4 and 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision should be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + ", but found " + precision);
+        }
+        this.precision = precision;
+        clear();
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds a hash to the sketch.
+     *
+     * @param hash a well mixed 64-bit hash of the key
+     * @return true if the sketch changed
+     */
+    public boolean offer(long hash) {
+        if (registers == null) {
+            boolean changed = putSparse(sparseIndex(hash) + 1, sparseRank(hash));
+            if (sparseSize > sparseLimit()) {
+                toDense();
+            }
+            return changed;
+        }
+        return setRegister((int) (hash >>> (64 - precision)), denseRank(hash));
+    }
+
+    /**
+     * Checks whether offering the given hash would change the sketch, without changing it.
+     *
+     * @param hash a well mixed 64-bit hash of the key
+     * @return true if {@link #offer(long)} would change the sketch
+     */
+    boolean changes(long hash) {
+        if (registers == null) {
+            int key = sparseIndex(hash) + 1;
+            int mask = sparseKeys.length - 1;
+            int slot = MultiplicityMap.mix(key) & mask;
+            while (sparseKeys[slot] != 0) {
+                if (sparseKeys[slot] == key) {
+                    return sparseRanks[slot] < sparseRank(hash);
+                }
+                slot = (slot + 1) & mask;
+            }
+            return true;
+        }
+        return registers[(int) (hash >>> (64 - precision))] < denseRank(hash);
+    }
+
+    /**
+     * Merges the given sketch into this sketch, which then estimates the cardinality of the union of both.
+     *
+     * @param other a sketch of the same precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge a HyperLogLog sketch of precision "
+                    + other.precision + " into a sketch of precision " + precision);
+        }
+        if (other == this) {
+            return;
+        }
+        if (registers == null && other.registers == null) {
+            for (int i = 0; i < other.sparseKeys.length; i++) {
+                if (other.sparseKeys[i] != 0) {
+                    putSparse(other.sparseKeys[i], other.sparseRanks[i]);
+                }
+            }
+            if (sparseSize > sparseLimit()) {
+                toDense();
+            }
+            return;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        if (other.registers != null) {
+            for (int i = 0; i < registers.length; i++) {
+                setRegister(i, other.registers[i]);
+            }
+        } else {
+            for (int i = 0; i < other.sparseKeys.length; i++) {
+                if (other.sparseKeys[i] != 0) {
+                    setSparseRegister(other.sparseKeys[i] - 1, other.sparseRanks[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct hashes offered to this sketch and the sketches merged into it.
+     *
+     * @return the cardinality estimate
+     */
+    public long estimate() {
+        if (!estimated) {
+            estimate = registers == null ? sparseEstimate() : denseEstimate();
+            estimated = true;
+        }
+        return estimate;
+    }
+
+    public boolean isEmpty() {
+        return registers == null ? sparseSize == 0 : histogram[0] == registers.length;
+    }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        if (registers == null) {
+            copy.sparseKeys = sparseKeys.clone();
+            copy.sparseRanks = sparseRanks.clone();
+            copy.sparseSize = sparseSize;
+        } else {
+            copy.sparseKeys = null;
+            copy.sparseRanks = null;
+            copy.registers = registers.clone();
+            copy.histogram = histogram.clone();
+        }
+        copy.estimated = estimated;
+        copy.estimate = estimate;
+        return copy;
+    }
+
+    public void clear() {
+        sparseKeys = new int[16];
+        sparseRanks = new byte[16];
+        sparseSize = 0;
+        registers = null;
+        histogram = null;
+        estimated = false;
+    }
+
+    /**
+     * Encodes the sketch compactly, sorted sparse entries as variable length deltas or dense registers packed into
+     * 6 bits each.
+     *
+     * @return the encoded sketch
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(registers == null ? 8 + sparseSize * 3
+                : 3 + (registers.length * SPARSE_RANK_BITS + 7) / 8);
+        out.write(FORMAT_VERSION);
+        out.write(precision);
+        if (registers == null) {
+            out.write(SPARSE);
+            int[] entries = new int[sparseSize];
+            int count = 0;
+            for (int i = 0; i < sparseKeys.length; i++) {
+                if (sparseKeys[i] != 0) {
+                    entries[count++] = ((sparseKeys[i] - 1) << SPARSE_RANK_BITS) | sparseRanks[i];
+                }
+            }
+            Arrays.sort(entries);
+            writeVarInt(out, count);
+            int previous = 0;
+            for (int entry : entries) {
+                writeVarInt(out, entry - previous);
+                previous = entry;
+            }
+        } else {
+            out.write(DENSE);
+            int buffer = 0;
+            int bits = 0;
+            for (byte register : registers) {
+                buffer = (buffer << SPARSE_RANK_BITS) | register;
+                bits += SPARSE_RANK_BITS;
+                while (bits >= 8) {
+                    bits -= 8;
+                    out.write(buffer >>> bits);
+                }
+            }
+            if (bits > 0) {
+                out.write(buffer << (8 - bits));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a sketch encoded by {@link #toBytes()}.
+     *
+     * @param bytes the encoded sketch
+     * @return the sketch
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length < 3 || bytes[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported HyperLogLog sketch encoding");
+        }
+        HyperLogLog sketch = new HyperLogLog(bytes[1]);
+        sketch.read(bytes);
+        return sketch;
+    }
+
+    private void read(byte[] bytes) {
+        clear();
+        int[] position = {3};
+        if (bytes[2] == SPARSE) {
+            int count = readVarInt(bytes, position);
+            int entry = 0;
+            for (int i = 0; i < count; i++) {
+                entry += readVarInt(bytes, position);
+                putSparse((entry >>> SPARSE_RANK_BITS) + 1, entry & ((1 << SPARSE_RANK_BITS) - 1));
+            }
+        } else {
+            toDense();
+            int buffer = 0;
+            int bits = 0;
+            int offset = 3;
+            for (int i = 0; i < registers.length; i++) {
+                while (bits < SPARSE_RANK_BITS) {
+                    buffer = (buffer << 8) | (bytes[offset++] & 0xff);
+                    bits += 8;
+                }
+                bits -= SPARSE_RANK_BITS;
+                setRegister(i, (buffer >>> bits) & ((1 << SPARSE_RANK_BITS) - 1));
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        byte[] bytes = toBytes();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        read(bytes);
+    }
+
+    private int sparseLimit() {
+        return Math.max(1, (1 << precision) >>> 4);
+    }
+
+    private static int sparseIndex(long hash) {
+        return (int) (hash >>> (64 - SPARSE_PRECISION));
+    }
+
+    private static int sparseRank(long hash) {
+        return Math.min(Long.numberOfLeadingZeros(hash << SPARSE_PRECISION), 64 - SPARSE_PRECISION) + 1;
+    }
+
+    private int denseRank(long hash) {
+        return Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+    }
+
+    private boolean putSparse(int key, int rank) {
+        int mask = sparseKeys.length - 1;
+        int slot = MultiplicityMap.mix(key) & mask;
+        while (sparseKeys[slot] != 0) {
+            if (sparseKeys[slot] == key) {
+                if (sparseRanks[slot] < rank) {
+                    sparseRanks[slot] = (byte) rank;
+                    return true;
+                }
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        sparseKeys[slot] = key;
+        sparseRanks[slot] = (byte) rank;
+        estimated = false;
+        if (++sparseSize * 2 > sparseKeys.length) {
+            growSparse();
+        }
+        return true;
+    }
+
+    private void growSparse() {
+        int[] oldKeys = sparseKeys;
+        byte[] oldRanks = sparseRanks;
+        sparseKeys = new int[oldKeys.length << 1];
+        sparseRanks = new byte[oldKeys.length << 1];
+        int mask = sparseKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = MultiplicityMap.mix(oldKeys[i]) & mask;
+                while (sparseKeys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                sparseKeys[slot] = oldKeys[i];
+                sparseRanks[slot] = oldRanks[i];
+            }
+        }
+    }
+
+    private void toDense() {
+        int[] keys = sparseKeys;
+        byte[] ranks = sparseRanks;
+        registers = new byte[1 << precision];
+        histogram = new int[66 - precision];
+        histogram[0] = registers.length;
+        sparseKeys = null;
+        sparseRanks = null;
+        sparseSize = 0;
+        estimated = false;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                setSparseRegister(keys[i] - 1, ranks[i]);
+            }
+        }
+    }
+
+    /**
+     * Folds a register of the sparse precision into the dense register covering it. The rank grows by the number of
+     * leading zeros in the index bits beyond the dense precision when all of them are zero.
+     */
+    private void setSparseRegister(int sparseIndex, int sparseRank) {
+        int extraBits = SPARSE_PRECISION - precision;
+        int extra = sparseIndex & ((1 << extraBits) - 1);
+        int rank = extra != 0 ? Integer.numberOfLeadingZeros(extra) - (32 - extraBits) + 1 : extraBits + sparseRank;
+        setRegister(sparseIndex >>> extraBits, rank);
+    }
+
+    private boolean setRegister(int index, int rank) {
+        int current = registers[index];
+        if (current >= rank) {
+            return false;
+        }
+        histogram[current]--;
+        histogram[rank]++;
+        registers[index] = (byte) rank;
+        estimated = false;
+        return true;
+    }
+
+    private long sparseEstimate() {
+        double size = 1 << SPARSE_PRECISION;
+        return Math.round(size * Math.log(size / (size - sparseSize)));
+    }
+
+    private long denseEstimate() {
+        int size = registers.length;
+        int q = 64 - precision;
+        double z = size * tau(1.0 - (double) histogram[q + 1] / size);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += size * sigma((double) histogram[0] / size);
+        return Math.round(ALPHA_INF * size * size / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1.0;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0.0 || x == 1.0) {
+            return 0.0;
+        }
+        double y = 1.0;
+        double z = 1.0 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1.0 - x) * (1.0 - x) * y;
+        } while (z != previous);
+        return z / 3.0;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = bytes[position[0]++];
+            value |= (current & 0x7f) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+}
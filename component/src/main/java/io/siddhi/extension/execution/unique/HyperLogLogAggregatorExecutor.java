@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.selector.attribute.aggregator.AttributeAggregatorExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * Base of the attribute aggregators that feed unique keys into a {@link HyperLogLog} sketch.
+ * <p>
+ * Keys are hashed with {@link Murmur3Hasher}, and keys that are themselves sketches of the same precision are merged
+ * instead, so the sketches of partitioned or parallel queries can be combined downstream. A sketch can not forget a
+ * key, hence removals are ignored and the sketch only starts afresh when a batch window resets the aggregation.
+ */
+abstract class HyperLogLogAggregatorExecutor
+        extends AttributeAggregatorExecutor<HyperLogLogAggregatorExecutor.SketchState> {
+
+    static final int DEFAULT_PRECISION = 14;
+
+    private final String name;
+
+    HyperLogLogAggregatorExecutor(String name) {
+        this.name = name;
+    }
+
+    @Override
+    protected StateFactory<SketchState> init(ExpressionExecutor[] attributeExpressionExecutors,
+                                             ProcessingMode processingMode, boolean outputExpectsExpiredEvents,
+                                             ConfigReader configReader, SiddhiQueryContext siddhiQueryContext) {
+        if (attributeExpressionExecutors.length != 1 && attributeExpressionExecutors.length != 2) {
+            throw new SiddhiAppValidationException("Unique " + name + " aggregator should have one or two "
+                    + "parameters (<string|int|bool|long|double|float|object> unique attribute, <int> precision), "
+                    + "but found " + attributeExpressionExecutors.length);
+        }
+        int precision = DEFAULT_PRECISION;
+        if (attributeExpressionExecutors.length == 2) {
+            if (!(attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor)) {
+                throw new SiddhiAppValidationException("Unique " + name + " aggregator's second parameter "
+                        + "precision should be a constant, but found a dynamic attribute "
+                        + attributeExpressionExecutors[1].getClass().getCanonicalName());
+            }
+            if (attributeExpressionExecutors[1].getReturnType() != Attribute.Type.INT) {
+                throw new SiddhiAppValidationException("Unique " + name + " aggregator's second parameter "
+                        + "precision should be int, but found " + attributeExpressionExecutors[1].getReturnType());
+            }
+            precision = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
+            if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                throw new SiddhiAppValidationException("Unique " + name + " aggregator's precision should be "
+                        + "between " + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION
+                        + ", but found " + precision);
+            }
+        }
+        int sketchPrecision = precision;
+        return () -> new SketchState(sketchPrecision);
+    }
+
+    /**
+     * Produces the aggregated value from the current sketch.
+     *
+     * @param state the aggregation state
+     * @return the aggregated value
+     */
+    protected abstract Object result(SketchState state);
+
+    @Override
+    public Object processAdd(Object data, SketchState state) {
+        if (data instanceof HyperLogLog) {
+            state.merge((HyperLogLog) data);
+        } else if (data != null) {
+            state.offer(Murmur3Hasher.hash64(data));
+        }
+        return result(state);
+    }
+
+    @Override
+    public Object processAdd(Object[] data, SketchState state) {
+        return processAdd(data[0], state);
+    }
+
+    @Override
+    public Object processRemove(Object data, SketchState state) {
+        return result(state);
+    }
+
+    @Override
+    public Object processRemove(Object[] data, SketchState state) {
+        return result(state);
+    }
+
+    @Override
+    public Object reset(SketchState state) {
+        state.clear();
+        return result(state);
+    }
+
+    /**
+     * Holds the sketch of an aggregation. A sketch handed out as an attribute value is shared with the consumers of
+     * the output, so it is copied on the first change made after that rather than modified in place.
+     */
+    static class SketchState extends State {
+
+        private HyperLogLog sketch;
+        private boolean shared;
+
+        SketchState(int precision) {
+            this.sketch = new HyperLogLog(precision);
+        }
+
+        long estimate() {
+            return sketch.estimate();
+        }
+
+        HyperLogLog share() {
+            shared = true;
+            return sketch;
+        }
+
+        private void offer(long hash) {
+            if (shared) {
+                if (!sketch.changes(hash)) {
+                    return;
+                }
+                sketch = sketch.copy();
+                shared = false;
+            }
+            sketch.offer(hash);
+        }
+
+        private void merge(HyperLogLog other) {
+            if (other.getPrecision() != sketch.getPrecision()) {
+                throw new SiddhiAppRuntimeException("Unique aggregator of precision " + sketch.getPrecision()
+                        + " cannot merge a sketch of precision " + other.getPrecision());
+            }
+            if (shared) {
+                sketch = sketch.copy();
+                shared = false;
+            }
+            sketch.merge(other);
+        }
+
+        private void clear() {
+            if (shared) {
+                sketch = new HyperLogLog(sketch.getPrecision());
+                shared = false;
+            } else {
+                sketch.clear();
+            }
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return sketch.isEmpty();
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            return singletonMap("sketch", sketch.toBytes());
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            sketch = HyperLogLog.fromBytes((byte[]) state.get("sketch"));
+            shared = false;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget of a unique window, set through the 'memory.limit' and 'memory.policy' options.
+ * <p>
+ * Each state of the window, one per partition key, charges an {@link Account} with the estimated size of the keys and
+ * events it holds, and the window applies its policy once an account would exceed the limit. The sizes are estimated
+ * from the layout of the objects on a 64-bit JVM with compressed references, without walking objects other than the
+ * attribute values, hence values shared between events are counted for each of them. The total of all the accounts
+ * is reported as the 'unique.memory' gauge of the query when the Siddhi app has statistics, along with the number of
+ * events rejected by the 'reject' policy as the 'unique.memory.rejected' gauge.
+ */
+final class MemoryBudget {
+
+    static final String EVICT = "evict";
+    static final String FLUSH = "flush";
+    static final String SPILL = "spill";
+    static final String REJECT = "reject";
+
+    // header, timestamp, type and the references to the data arrays and the next event
+    private static final long EVENT_SIZE = 48;
+    private static final long ARRAY_HEADER_SIZE = 16;
+    private static final long REFERENCE_SIZE = 4;
+    // hash map node and its slot in the table
+    private static final long ENTRY_SIZE = 40;
+
+    private final long limit;
+    private final String policy;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private MemoryBudget(long limit, String policy) {
+        this.limit = limit;
+        this.policy = policy;
+    }
+
+    /**
+     * Creates the budget of a window from its options and registers its gauge.
+     *
+     * @param options            the options of the window
+     * @param siddhiQueryContext the context of the query
+     * @param policies           the policies the window supports, the first being the default one
+     * @return the budget, or {@code null} when no 'memory.limit' is given
+     */
+    static MemoryBudget of(UniqueOptions options, SiddhiQueryContext siddhiQueryContext, String... policies) {
+        if (!options.isSet(UniqueOptions.MEMORY_LIMIT)) {
+            if (options.isSet(UniqueOptions.MEMORY_POLICY)) {
+                throw new SiddhiAppValidationException("Option '" + UniqueOptions.MEMORY_POLICY + "' only applies "
+                        + "along with '" + UniqueOptions.MEMORY_LIMIT + "'");
+            }
+            return null;
+        }
+        MemoryBudget budget = new MemoryBudget(options.getBytes(UniqueOptions.MEMORY_LIMIT),
+                options.get(UniqueOptions.MEMORY_POLICY, policies));
+        UniqueMetrics.registerGauge(siddhiQueryContext, "unique.memory", budget.total::get);
+        if (REJECT.equals(budget.policy)) {
+            UniqueMetrics.registerGauge(siddhiQueryContext, "unique.memory.rejected", budget.rejected::get);
+        }
+        return budget;
+    }
+
+    String getPolicy() {
+        return policy;
+    }
+
+    void reject() {
+        rejected.incrementAndGet();
+    }
+
+    Account newAccount() {
+        return new Account();
+    }
+
+    /**
+     * Estimates the bytes retained by an entry of a map from a key to an event.
+     *
+     * @param key   the key
+     * @param event the event
+     * @return the estimated size
+     */
+    static long sizeOf(Object key, StreamEvent event) {
+        return ENTRY_SIZE + sizeOfValue(key) + EVENT_SIZE + sizeOfArray(event.getBeforeWindowData())
+                + sizeOfArray(event.getOnAfterWindowData()) + sizeOfArray(event.getOutputData());
+    }
+
+    private static long sizeOfArray(Object[] values) {
+        if (values == null) {
+            return 0;
+        }
+        long size = align(ARRAY_HEADER_SIZE + REFERENCE_SIZE * values.length);
+        for (Object value : values) {
+            size += sizeOfValue(value);
+        }
+        return size;
+    }
+
+    private static long sizeOfValue(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 0;
+        } else if (value instanceof String) {
+            // the string and its char array
+            return 24 + align(ARRAY_HEADER_SIZE + 2L * ((String) value).length());
+        } else if (value instanceof Long || value instanceof Double) {
+            return 24;
+        } else if (value instanceof Number) {
+            return 16;
+        } else if (value instanceof Object[]) {
+            return sizeOfArray((Object[]) value);
+        } else if (value instanceof List) {
+            // the list wraps an array of the values
+            return 16 + sizeOfArray(((List<?>) value).toArray());
+        } else {
+            return 32;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Bytes held by a state of the window. Accounts are not thread safe, they are used under the lock of their state.
+     */
+    final class Account {
+
+        private long used;
+
+        /**
+         * Tells whether the account can be charged with the given bytes without exceeding the limit.
+         *
+         * @param size the bytes
+         * @return whether they fit
+         */
+        boolean fits(long size) {
+            return used + size <= limit;
+        }
+
+        boolean isExceeded() {
+            return used > limit;
+        }
+
+        void charge(long size) {
+            used += size;
+            total.addAndGet(size);
+        }
+
+        long getUsed() {
+            return used;
+        }
+
+        /**
+         * Sets the bytes held, e.g. once the state is emptied or restored.
+         *
+         * @param size the bytes
+         */
+        void reset(long size) {
+            total.addAndGet(size - used);
+            used = size;
+        }
+    }
+}
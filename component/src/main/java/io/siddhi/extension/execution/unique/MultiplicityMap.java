@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.query.api.definition.Attribute;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open addressing map from unique key to the number of times the key is currently held, used to count distinct keys
+ * without retaining the events that carried them.
+ * <p>
+ * Numeric and bool keys are stored unboxed in a {@code long[]}, all other keys are stored as objects. Both variants
+ * use linear probing with backward shift deletion so removed keys leave no tombstones behind.
+ */
+abstract class MultiplicityMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    protected int[] counts = new int[INITIAL_CAPACITY];
+    protected int size;
+
+    /**
+     * Creates a map suited for keys of the given type.
+     *
+     * @param type the type of the unique key, or {@code null} for composite keys
+     * @return the multiplicity map
+     */
+    static MultiplicityMap forType(Attribute.Type type) {
+        if (type == null) {
+            return new ObjectMultiplicityMap();
+        }
+        switch (type) {
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case BOOL:
+                return new PrimitiveMultiplicityMap();
+            default:
+                return new ObjectMultiplicityMap();
+        }
+    }
+
+    /**
+     * Increments the multiplicity of the given key.
+     *
+     * @param key the unique key
+     * @return the multiplicity of the key after the increment
+     */
+    abstract int add(Object key);
+
+    /**
+     * Decrements the multiplicity of the given key, removing it once it reaches zero.
+     *
+     * @param key the unique key
+     * @return the multiplicity of the key after the decrement, or -1 when the key was not held
+     */
+    abstract int remove(Object key);
+
+    /**
+     * Hashes a key to 64 bits, for the key to be counted by a {@link HyperLogLog} sketch along with the keys given to
+     * {@link #forEachHash(LongConsumer)}.
+     *
+     * @param key the unique key
+     * @return the hash of the key
+     */
+    abstract long hash(Object key);
+
+    /**
+     * Passes the hash of every key held to the given consumer.
+     *
+     * @param consumer the consumer of the hashes
+     */
+    abstract void forEachHash(LongConsumer consumer);
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    static int mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (key ^ (key >>> 33));
+    }
+
+    /**
+     * Multiplicity map keeping numeric and bool keys as raw {@code long} bits.
+     */
+    static class PrimitiveMultiplicityMap extends MultiplicityMap {
+
+        private static final long serialVersionUID = 1L;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+
+        @Override
+        int add(Object key) {
+            return add(toBits(key));
+        }
+
+        @Override
+        int remove(Object key) {
+            return remove(toBits(key));
+        }
+
+        @Override
+        long hash(Object key) {
+            return hash(toBits(key));
+        }
+
+        @Override
+        void forEachHash(LongConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (counts[i] != 0) {
+                    consumer.accept(hash(keys[i]));
+                }
+            }
+        }
+
+        private static long hash(long key) {
+            return new Murmur3Hasher().putLong(key).finish();
+        }
+
+        int add(long key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot] == key) {
+                    return ++counts[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            counts[slot] = 1;
+            if (++size * 2 > keys.length) {
+                rehash(keys.length << 1);
+            }
+            return 1;
+        }
+
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot] == key) {
+                    int count = --counts[slot];
+                    if (count == 0) {
+                        size--;
+                        shiftBack(slot);
+                    }
+                    return count;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void shiftBack(int slot) {
+            int mask = keys.length - 1;
+            int next = (slot + 1) & mask;
+            while (counts[next] != 0) {
+                int home = mix(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    counts[slot] = counts[next];
+                    counts[next] = 0;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[capacity];
+            counts = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (counts[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        static long toBits(Object key) {
+            if (key instanceof Double) {
+                return Double.doubleToLongBits((Double) key);
+            } else if (key instanceof Float) {
+                return Float.floatToIntBits((Float) key);
+            } else if (key instanceof Boolean) {
+                return (Boolean) key ? 1L : 0L;
+            } else {
+                return ((Number) key).longValue();
+            }
+        }
+    }
+
+    /**
+     * Multiplicity map for string, object and composite keys.
+     */
+    static class ObjectMultiplicityMap extends MultiplicityMap {
+
+        private static final long serialVersionUID = 1L;
+
+        private Object[] keys = new Object[INITIAL_CAPACITY];
+
+        @Override
+        int add(Object key) {
+            int mask = keys.length - 1;
+            int slot = mix(key.hashCode()) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot].equals(key)) {
+                    return ++counts[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            counts[slot] = 1;
+            if (++size * 2 > keys.length) {
+                rehash(keys.length << 1);
+            }
+            return 1;
+        }
+
+        @Override
+        int remove(Object key) {
+            int mask = keys.length - 1;
+            int slot = mix(key.hashCode()) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot].equals(key)) {
+                    int count = --counts[slot];
+                    if (count == 0) {
+                        size--;
+                        shiftBack(slot);
+                    }
+                    return count;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        @Override
+        long hash(Object key) {
+            return Murmur3Hasher.hash64(key);
+        }
+
+        @Override
+        void forEachHash(LongConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (counts[i] != 0) {
+                    consumer.accept(Murmur3Hasher.hash64(keys[i]));
+                }
+            }
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            Arrays.fill(keys, null);
+        }
+
+        private void shiftBack(int slot) {
+            int mask = keys.length - 1;
+            keys[slot] = null;
+            int next = (slot + 1) & mask;
+            while (counts[next] != 0) {
+                int home = mix(keys[next].hashCode()) & mask;
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    counts[slot] = counts[next];
+                    keys[next] = null;
+                    counts[next] = 0;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void rehash(int capacity) {
+            Object[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new Object[capacity];
+            counts = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = mix(oldKeys[i].hashCode()) & mask;
+                    while (counts[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
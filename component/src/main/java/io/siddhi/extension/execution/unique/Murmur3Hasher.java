@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import java.util.List;
+
+/**
+ * Streaming 128-bit hasher applying the MurmurHash3 x64 128 block mixing to a sequence of 64-bit words.
+ * <p>
+ * Values are fed as words, strings as their length followed by their characters packed four per word, so the hash
+ * is stable across JVMs and can be persisted or compared between instances. It is not bit compatible with the
+ * canonical byte oriented MurmurHash3. Instances are not thread safe. A single thread hashing many keys can reuse one
+ * through {@link #reset()}, as {@link FingerprintEventMap} does, while the callers that may run on several threads
+ * allocate one per hash.
+ */
+final class Murmur3Hasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final long NULL_WORD = 0x9e3779b97f4a7c15L;
+
+    private long h1;
+    private long h2;
+    private long pending;
+    private boolean hasPending;
+    private long length;
+
+    Murmur3Hasher() {
+        reset();
+    }
+
+    /**
+     * Hashes a single key to 64 bits.
+     *
+     * @param key the key to hash
+     * @return the lower 64 bits of the 128-bit hash
+     */
+    static long hash64(Object key) {
+        if (key instanceof Long || key instanceof Integer) {
+            return fmix64(((Number) key).longValue() * C1);
+        }
+        return new Murmur3Hasher().putObject(key).finish();
+    }
+
+    Murmur3Hasher reset() {
+        h1 = 0;
+        h2 = 0;
+        pending = 0;
+        hasPending = false;
+        length = 0;
+        return this;
+    }
+
+    Murmur3Hasher putLong(long word) {
+        length++;
+        if (!hasPending) {
+            pending = word;
+            hasPending = true;
+            return this;
+        }
+        hasPending = false;
+        long k1 = pending;
+        long k2 = word;
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+        return this;
+    }
+
+    Murmur3Hasher putString(CharSequence value) {
+        int chars = value.length();
+        putLong(chars);
+        int i = 0;
+        for (; i + 4 <= chars; i += 4) {
+            putLong(((long) value.charAt(i) << 48) | ((long) value.charAt(i + 1) << 32)
+                    | ((long) value.charAt(i + 2) << 16) | value.charAt(i + 3));
+        }
+        if (i < chars) {
+            long word = 0;
+            for (; i < chars; i++) {
+                word = (word << 16) | value.charAt(i);
+            }
+            putLong(word);
+        }
+        return this;
+    }
+
+    /**
+     * Feeds an attribute value, preceded by a tag of its kind so that values of different kinds, such as the string
+     * "1" and the number 1, hash differently. Ints and longs share a tag, as do floats and doubles, floats being
+     * widened to doubles, so a number hashes the same whichever of these types it has. Arrays and lists of values, as
+     * composite unique keys, are fed element by element, and any other object is fed as its {@code toString()}.
+     *
+     * @param value the value, which may be null
+     * @return this hasher
+     */
+    Murmur3Hasher putObject(Object value) {
+        if (value == null) {
+            return putLong(NULL_WORD);
+        } else if (value instanceof String) {
+            return putLong(1).putString((String) value);
+        } else if (value instanceof Long || value instanceof Integer) {
+            return putLong(2).putLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            return putLong(3).putLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Float) {
+            return putLong(3).putLong(Double.doubleToLongBits((Float) value));
+        } else if (value instanceof Boolean) {
+            return putLong(4).putLong((Boolean) value ? 1 : 0);
+        } else if (value instanceof Object[]) {
+            Object[] values = (Object[]) value;
+            putLong(5).putLong(values.length);
+            for (Object element : values) {
+                putObject(element);
+            }
+            return this;
+        } else if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            putLong(5).putLong(values.size());
+            for (Object element : values) {
+                putObject(element);
+            }
+            return this;
+        } else {
+            return putLong(6).putString(value.toString());
+        }
+    }
+
+    /**
+     * Completes the hash.
+     *
+     * @return the lower 64 bits of the 128-bit hash, the upper bits are available through {@link #high()}
+     */
+    long finish() {
+        if (hasPending) {
+            long k1 = pending;
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            hasPending = false;
+        }
+        h1 ^= length << 3;
+        h2 ^= length << 3;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return h1;
+    }
+
+    long low() {
+        return h1;
+    }
+
+    long high() {
+        return h2;
+    }
+
+    static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+
+/**
+ * Copies the events a window retains, leaving out the attributes nothing reads once the event is in the window.
+ * <p>
+ * Siddhi keeps the attributes referenced only up to the window, such as the window parameters and the attributes of
+ * filters ahead of it, in the before window data of the event, and moves every attribute referenced after the window
+ * to the on after window data or the output data. Hence the selector, joins and {@code find()} never read the before
+ * window data of the events a window emits, and a retained copy only needs the before window positions the window
+ * itself reads again, e.g. to extract the unique key of an expiring event. Those are copied into an array of their
+ * own, while copies needing none share a single array of nulls, as Siddhi copies the before window data of any event
+ * it clones. When an extractor may read any attribute the whole event is copied.
+ */
+final class RetainedEventCloner {
+
+    private final MetaStreamEvent metaStreamEvent;
+    private final UniqueKeyExtractor[] extractors;
+    private Layout layout;
+
+    /**
+     * Creates the cloner of a window.
+     *
+     * @param metaStreamEvent the meta event of the window
+     * @param extractors      the extractors the window applies to the retained events
+     */
+    RetainedEventCloner(MetaStreamEvent metaStreamEvent, UniqueKeyExtractor... extractors) {
+        this.metaStreamEvent = metaStreamEvent;
+        this.extractors = extractors;
+    }
+
+    /**
+     * Copies the event to be retained by the window.
+     *
+     * @param event             the event
+     * @param streamEventCloner the cloner of the query, used when the whole event is to be copied
+     * @return the copy
+     */
+    StreamEvent copy(StreamEvent event, StreamEventCloner streamEventCloner) {
+        Layout layout = this.layout;
+        if (layout == null) {
+            // attribute positions are only final once the query is parsed, which is done before any event arrives
+            layout = new Layout(metaStreamEvent, UniqueKeyExtractor.union(extractors));
+            this.layout = layout;
+        }
+        if (layout.positions == null) {
+            return streamEventCloner.copyStreamEvent(event);
+        }
+        StreamEvent copy = new StreamEvent(0, layout.onAfterWindowDataSize, layout.outputDataSize);
+        if (layout.positions.length == 0) {
+            copy.setBeforeWindowData(layout.emptyBeforeWindowData);
+        } else {
+            Object[] beforeWindowData = new Object[layout.beforeWindowDataSize];
+            Object[] source = event.getBeforeWindowData();
+            for (int position : layout.positions) {
+                beforeWindowData[position] = source[position];
+            }
+            copy.setBeforeWindowData(beforeWindowData);
+        }
+        if (layout.onAfterWindowDataSize > 0) {
+            System.arraycopy(event.getOnAfterWindowData(), 0, copy.getOnAfterWindowData(), 0,
+                    layout.onAfterWindowDataSize);
+        }
+        if (layout.outputDataSize > 0) {
+            System.arraycopy(event.getOutputData(), 0, copy.getOutputData(), 0, layout.outputDataSize);
+        }
+        copy.setType(event.getType());
+        copy.setTimestamp(event.getTimestamp());
+        return copy;
+    }
+
+    /**
+     * Sizes of the event data and the before window positions to retain, fixed once resolved so that it can be
+     * shared between threads without synchronization.
+     */
+    private static final class Layout {
+
+        private final int beforeWindowDataSize;
+        private final int onAfterWindowDataSize;
+        private final int outputDataSize;
+        private final int[] positions;
+        private final Object[] emptyBeforeWindowData;
+
+        private Layout(MetaStreamEvent metaStreamEvent, int[] positions) {
+            this.beforeWindowDataSize = metaStreamEvent.getBeforeWindowData().size();
+            this.onAfterWindowDataSize = metaStreamEvent.getOnAfterWindowData() == null ? 0
+                    : metaStreamEvent.getOnAfterWindowData().size();
+            this.outputDataSize = metaStreamEvent.getOutputData() == null ? 0
+                    : metaStreamEvent.getOutputData().size();
+            // retaining every before window attribute is a plain copy
+            this.positions = positions != null && positions.length == beforeWindowDataSize ? null : positions;
+            this.emptyBeforeWindowData = beforeWindowDataSize > 0 ? new Object[beforeWindowDataSize] : null;
+        }
+    }
+}
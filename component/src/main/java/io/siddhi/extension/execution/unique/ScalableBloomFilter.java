@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bloom filter of 64-bit key hashes that grows with the number of keys added, standing in for a set of keys once the
+ * set is too large to be held exactly.
+ * <p>
+ * Keys are added to the last of a series of filters, and a filter reaching the number of keys it is sized for is
+ * followed by one sized for twice as many keys at half the false positive probability, so that the probability of
+ * taking a new key for one already added stays under the target however many keys are added. Each filter sets
+ * {@code k} bits derived from the two halves of the hash, so the keys are hashed only once.
+ */
+final class ScalableBloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final List<Filter> filters = new ArrayList<>();
+    private long size;
+
+    /**
+     * Creates a filter.
+     *
+     * @param initialCapacity          the number of keys the first filter is sized for
+     * @param falsePositiveProbability the target probability of taking a new key for one already added
+     */
+    ScalableBloomFilter(long initialCapacity, double falsePositiveProbability) {
+        filters.add(new Filter(Math.max(initialCapacity, 64), falsePositiveProbability * (1 - TIGHTENING_RATIO)));
+    }
+
+    private ScalableBloomFilter(ScalableBloomFilter filter) {
+        filters.addAll(filter.filters.subList(0, filter.filters.size() - 1));
+        filters.add(new Filter(filter.filters.get(filter.filters.size() - 1)));
+        size = filter.size;
+    }
+
+    /**
+     * Adds the hash of a key.
+     *
+     * @param hash the 64-bit hash of the key
+     * @return {@code true} if the key was not added before, which may be wrong with the false positive probability
+     */
+    boolean add(long hash) {
+        if (mightContain(hash)) {
+            return false;
+        }
+        Filter last = filters.get(filters.size() - 1);
+        if (last.size >= last.capacity) {
+            last = new Filter(last.capacity * 2, last.falsePositiveProbability * TIGHTENING_RATIO);
+            filters.add(last);
+        }
+        last.add(hash);
+        size++;
+        return true;
+    }
+
+    boolean mightContain(long hash) {
+        for (Filter filter : filters) {
+            if (filter.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the filter. Keys are only added to the last of its filters, hence the others are shared.
+     *
+     * @return the copy
+     */
+    ScalableBloomFilter copy() {
+        return new ScalableBloomFilter(this);
+    }
+
+    /**
+     * Returns the number of keys added, not counting the new keys taken for keys already added.
+     *
+     * @return the number of keys
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Filter sized for a number of keys at a false positive probability.
+     */
+    private static final class Filter implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long capacity;
+        private final double falsePositiveProbability;
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashes;
+        private long size;
+
+        private Filter(long capacity, double falsePositiveProbability) {
+            this.capacity = capacity;
+            this.falsePositiveProbability = falsePositiveProbability;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveProbability)
+                    / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.min((optimalBits + 63) >>> 6, Integer.MAX_VALUE - 8)];
+            this.bitCount = (long) bits.length << 6;
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        private Filter(Filter filter) {
+            this.capacity = filter.capacity;
+            this.falsePositiveProbability = filter.falsePositiveProbability;
+            this.bits = filter.bits.clone();
+            this.bitCount = filter.bitCount;
+            this.hashes = filter.hashes;
+            this.size = filter.size;
+        }
+
+        private void add(long hash) {
+            int low = (int) hash;
+            int high = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = ((low + (long) i * high) & Long.MAX_VALUE) % bitCount;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            size++;
+        }
+
+        private boolean mightContain(long hash) {
+            int low = (int) hash;
+            int high = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = ((low + (long) i * high) & Long.MAX_VALUE) % bitCount;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.StreamEvent;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sessions of the unique keys, each holding the latest event of its key until its deadline.
+ * <p>
+ * Sessions are indexed by key and kept in a binary min-heap ordered by deadline, each session knowing its position in
+ * the heap. Extending a session moves it down the heap from where it is, so a session costs O(log n) per event of its
+ * key and expiring the sessions that are due only visits those, however many sessions are open, rather than scanning
+ * them all. Instances are not thread safe.
+ */
+final class SessionTimerQueue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<Object, Session> sessions = new HashMap<>();
+    private Session[] heap = new Session[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Starts the session of the key, or extends it when the key already has one.
+     *
+     * @param key      the unique key
+     * @param event    the event to hold for the key
+     * @param deadline the time at which the session ends unless extended again
+     * @return the event held for the key until then, or {@code null}
+     */
+    StreamEvent put(Object key, StreamEvent event, long deadline) {
+        Session session = sessions.get(key);
+        if (session == null) {
+            session = new Session(key, event, deadline);
+            sessions.put(key, session);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            session.index = size++;
+            heap[session.index] = session;
+            siftUp(session);
+            return null;
+        }
+        StreamEvent heldEvent = session.event;
+        session.event = event;
+        // a late event never shortens its session
+        if (deadline > session.deadline) {
+            session.deadline = deadline;
+            siftDown(session);
+        }
+        return heldEvent;
+    }
+
+    /**
+     * Returns the earliest deadline of the sessions.
+     *
+     * @return the deadline, or {@link Long#MAX_VALUE} when there is no session
+     */
+    long nextDeadline() {
+        return size == 0 ? Long.MAX_VALUE : heap[0].deadline;
+    }
+
+    /**
+     * Ends the session with the earliest deadline.
+     *
+     * @return the event held for its key
+     */
+    StreamEvent poll() {
+        Session session = heap[0];
+        sessions.remove(session.key);
+        Session last = heap[--size];
+        heap[size] = null;
+        if (size > 0) {
+            last.index = 0;
+            heap[0] = last;
+            siftDown(last);
+        }
+        if (heap.length > INITIAL_CAPACITY && size < heap.length / 4) {
+            heap = Arrays.copyOf(heap, heap.length / 2);
+        }
+        return session.event;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns a copy of the queue, holding the same events.
+     *
+     * @return the copy
+     */
+    SessionTimerQueue copy() {
+        SessionTimerQueue copy = new SessionTimerQueue();
+        copy.heap = new Session[heap.length];
+        for (int i = 0; i < size; i++) {
+            Session session = new Session(heap[i].key, heap[i].event, heap[i].deadline);
+            session.index = i;
+            copy.heap[i] = session;
+            copy.sessions.put(session.key, session);
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Returns the events held for the open sessions.
+     *
+     * @return the events
+     */
+    List<StreamEvent> events() {
+        List<StreamEvent> events = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            events.add(heap[i].event);
+        }
+        return events;
+    }
+
+    private void siftUp(Session session) {
+        int index = session.index;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].deadline <= session.deadline) {
+                break;
+            }
+            move(heap[parent], index);
+            index = parent;
+        }
+        move(session, index);
+    }
+
+    private void siftDown(Session session) {
+        int index = session.index;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].deadline < heap[child].deadline) {
+                child++;
+            }
+            if (session.deadline <= heap[child].deadline) {
+                break;
+            }
+            move(heap[child], index);
+            index = child;
+        }
+        move(session, index);
+    }
+
+    private void move(Session session, int index) {
+        heap[index] = session;
+        session.index = index;
+    }
+
+    /**
+     * Session of a unique key.
+     */
+    private static final class Session implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object key;
+        private StreamEvent event;
+        private long deadline;
+        private int index;
+
+        private Session(Object key, StreamEvent event, long deadline) {
+            this.key = key;
+            this.event = event;
+            this.deadline = deadline;
+        }
+    }
+}
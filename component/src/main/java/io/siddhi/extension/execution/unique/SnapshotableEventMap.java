@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.ComplexEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Map from unique keys to events, whose snapshots are serialized a page at a time and restored lazily.
+ * <p>
+ * Entries are spread over a fixed number of pages, each a hash map. A snapshot copies the pages, and writes the fields
+ * of the events rather than the events themselves, leaving out the links that chain the events of a window.
+ * <p>
+ * Each page is serialized as a block of its own, and a restored map adopts the blocks as they are rather than putting
+ * back every entry. The blocks are decoded in parallel on the common fork join pool, while a page the window reads
+ * before its block is decoded is decoded right away by the reading thread, so the window takes events as soon as it
+ * is restored. A page that is not read again before the next snapshot is written back as the block it was restored
+ * from. Instances are not thread safe, besides the decoding of the blocks.
+ */
+final class SnapshotableEventMap {
+
+    private static final int PAGES = 64;
+
+    private final List<HashMap<Object, StreamEvent>> pages = new ArrayList<>(Collections.nCopies(PAGES, null));
+    private final EncodedPage[] encodedPages = new EncodedPage[PAGES];
+    private int size;
+
+    StreamEvent get(Object key) {
+        HashMap<Object, StreamEvent> page = page(indexOf(key));
+        return page == null ? null : page.get(key);
+    }
+
+    /**
+     * Maps the key to the event.
+     *
+     * @param key   the key
+     * @param event the event
+     * @return the event the key was mapped to, or {@code null}
+     */
+    StreamEvent put(Object key, StreamEvent event) {
+        int index = indexOf(key);
+        HashMap<Object, StreamEvent> page = page(index);
+        if (page == null) {
+            page = new HashMap<>();
+            pages.set(index, page);
+        }
+        StreamEvent oldEvent = page.put(key, event);
+        if (oldEvent == null) {
+            size++;
+        }
+        return oldEvent;
+    }
+
+    /**
+     * Removes the key when it is mapped to an event equal to the given event.
+     *
+     * @param key   the key
+     * @param event the event
+     * @return the event removed, or {@code null} when the key was mapped to no such event
+     */
+    StreamEvent remove(Object key, StreamEvent event) {
+        HashMap<Object, StreamEvent> page = page(indexOf(key));
+        if (page == null) {
+            return null;
+        }
+        StreamEvent current = page.get(key);
+        if (current == null || !current.equals(event)) {
+            return null;
+        }
+        page.remove(key);
+        size--;
+        return current;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns a live view of the events, to be read while the map is not written.
+     *
+     * @return the events
+     */
+    Collection<StreamEvent> values() {
+        return new AbstractCollection<StreamEvent>() {
+            @Override
+            public Iterator<StreamEvent> iterator() {
+                decodeAll();
+                Object[] entries = new Object[PAGES];
+                for (int i = 0; i < PAGES; i++) {
+                    entries[i] = pages.get(i) == null ? Collections.emptyMap() : pages.get(i);
+                }
+                return new PageIterator<>(entries, page -> entriesOf(page).values());
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Takes a point-in-time copy of the map, sharing the blocks of the pages not adopted yet.
+     *
+     * @return the copy, serializable as a map from keys to events
+     */
+    Map<Object, StreamEvent> snapshot() {
+        Object[] viewPages = new Object[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            if (encodedPages[i] != null) {
+                viewPages[i] = encodedPages[i];
+            } else {
+                viewPages[i] = pages.get(i) == null ? Collections.emptyMap() : new HashMap<>(pages.get(i));
+            }
+        }
+        return new View(viewPages, size);
+    }
+
+    /**
+     * Replaces the entries of the map with the entries of a snapshot. The pages of a snapshot taken by this class are
+     * adopted as they are and decoded in the background, while the events of any other map, which is a revision taken
+     * before the keys were extracted, are put one by one under their keys extracted again.
+     *
+     * @param entries      the entries
+     * @param keyExtractor the extractor of the unique keys
+     */
+    void restore(Map<Object, StreamEvent> entries, UniqueKeyExtractor keyExtractor) {
+        for (int i = 0; i < PAGES; i++) {
+            pages.set(i, null);
+            encodedPages[i] = null;
+        }
+        size = 0;
+        if (entries instanceof View) {
+            View view = (View) entries;
+            for (int i = 0; i < PAGES; i++) {
+                Object page = view.pages[i];
+                if (page instanceof EncodedPage) {
+                    EncodedPage encodedPage = (EncodedPage) page;
+                    encodedPages[i] = encodedPage;
+                    ForkJoinPool.commonPool().execute(encodedPage::decode);
+                } else if (!entriesOf(page).isEmpty()) {
+                    pages.set(i, new HashMap<>(entriesOf(page)));
+                }
+            }
+            size = view.size;
+            return;
+        }
+        for (StreamEvent event : entries.values()) {
+            put(keyExtractor.extract(event), event);
+        }
+    }
+
+    /**
+     * Returns the page at the index, adopting the entries of its block once decoded.
+     */
+    private HashMap<Object, StreamEvent> page(int index) {
+        EncodedPage encodedPage = encodedPages[index];
+        if (encodedPage != null) {
+            encodedPages[index] = null;
+            pages.set(index, encodedPage.decode());
+        }
+        return pages.get(index);
+    }
+
+    /**
+     * Decodes the blocks of all the pages not adopted yet, in parallel.
+     */
+    private void decodeAll() {
+        Arrays.stream(encodedPages).filter(Objects::nonNull).parallel().forEach(EncodedPage::decode);
+        for (int i = 0; i < PAGES; i++) {
+            page(i);
+        }
+    }
+
+    private static int indexOf(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return (hash ^ (hash >>> 16) ^ (hash >>> 8)) & (PAGES - 1);
+    }
+
+    /**
+     * Returns the entries of a page of a view, decoding a fresh copy of a block.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<Object, StreamEvent> entriesOf(Object page) {
+        return page instanceof EncodedPage ? ((EncodedPage) page).read() : (Map<Object, StreamEvent>) page;
+    }
+
+    /**
+     * Iterates the elements of the pages, in page order.
+     */
+    private static final class PageIterator<T> implements Iterator<T> {
+
+        private final Object[] pages;
+        private final Function<Object, Collection<T>> elements;
+        private int next;
+        private Iterator<T> current = Collections.emptyIterator();
+
+        private PageIterator(Object[] pages, Function<Object, Collection<T>> elements) {
+            this.pages = pages;
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && next < pages.length) {
+                current = elements.apply(pages[next++]).iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    /**
+     * Serialized block of the entries of a page, decoded at most once. The block is kept once decoded, as a snapshot
+     * may still write it back while the decoded entries are written by the map.
+     */
+    private static final class EncodedPage {
+
+        private final int count;
+        private final byte[] block;
+        private HashMap<Object, StreamEvent> entries;
+
+        private EncodedPage(int count, byte[] block) {
+            this.count = count;
+            this.block = block;
+        }
+
+        /**
+         * Returns the entries of the block, decoding them on the first call.
+         */
+        private synchronized HashMap<Object, StreamEvent> decode() {
+            if (entries == null) {
+                entries = read();
+            }
+            return entries;
+        }
+
+        /**
+         * Decodes a fresh copy of the entries of the block.
+         */
+        private HashMap<Object, StreamEvent> read() {
+            HashMap<Object, StreamEvent> entries = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(block))) {
+                for (int i = 0; i < count; i++) {
+                    Object key = in.readObject();
+                    entries.put(key, readEvent(in));
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                throw new SiddhiAppRuntimeException("Error while decoding the restored events of a unique window", e);
+            }
+            return entries;
+        }
+
+        private static EncodedPage encode(Map<Object, StreamEvent> entries) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                for (Map.Entry<Object, StreamEvent> entry : entries.entrySet()) {
+                    out.writeObject(entry.getKey());
+                    writeEvent(out, entry.getValue());
+                }
+            }
+            return new EncodedPage(entries.size(), bytes.toByteArray());
+        }
+    }
+
+    private static void writeEvent(ObjectOutputStream out, StreamEvent event) throws IOException {
+        out.writeLong(event.getTimestamp());
+        out.writeObject(event.getType());
+        out.writeObject(event.getBeforeWindowData());
+        out.writeObject(event.getOnAfterWindowData());
+        out.writeObject(event.getOutputData());
+    }
+
+    private static StreamEvent readEvent(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        StreamEvent event = new StreamEvent(0, 0, 0);
+        event.setTimestamp(in.readLong());
+        event.setType((ComplexEvent.Type) in.readObject());
+        event.setBeforeWindowData((Object[]) in.readObject());
+        event.setOnAfterWindowData((Object[]) in.readObject());
+        event.setOutputData((Object[]) in.readObject());
+        return event;
+    }
+
+    /**
+     * Copy of the map, made of its pages, each either the entries of a page or the block a page was restored from.
+     * It is serialized page by page, and once deserialized its pages are the undecoded blocks.
+     */
+    private static final class View extends AbstractMap<Object, StreamEvent> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient Object[] pages;
+        private transient int size;
+
+        private View(Object[] pages, int size) {
+            this.pages = pages;
+            this.size = size;
+        }
+
+        @Override
+        public Set<Entry<Object, StreamEvent>> entrySet() {
+            return new AbstractSet<Entry<Object, StreamEvent>>() {
+                @Override
+                public Iterator<Entry<Object, StreamEvent>> iterator() {
+                    return new PageIterator<>(pages, page -> entriesOf(page).entrySet());
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(pages.length);
+            out.writeInt(size);
+            for (Object page : pages) {
+                EncodedPage encodedPage = page instanceof EncodedPage ? (EncodedPage) page
+                        : EncodedPage.encode(entriesOf(page));
+                out.writeInt(encodedPage.count);
+                out.writeInt(encodedPage.block.length);
+                out.write(encodedPage.block);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            pages = new Object[in.readInt()];
+            size = in.readInt();
+            for (int i = 0; i < pages.length; i++) {
+                int entries = in.readInt();
+                byte[] block = new byte[in.readInt()];
+                in.readFully(block);
+                pages[i] = new EncodedPage(entries, block);
+            }
+        }
+    }
+}
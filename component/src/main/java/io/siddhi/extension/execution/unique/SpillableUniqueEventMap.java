@@ -0,0 +1,544 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.ComplexEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.util.config.ConfigReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of unique key to pending batch event which keeps at most {@code heapThreshold} entries on the heap and spills
+ * the rest into memory-mapped segment files.
+ * <p>
+ * Spilled events are appended to fixed size segments and located through an open addressing key index which is
+ * itself a memory-mapped file, so only the heap tier grows with the batch. Replacing a spilled event appends the new
+ * version and links it from the original record, hence iteration streams entries back in their first insertion
+ * order, heap entries first. Removal of individual entries is not supported, the map is emptied with
+ * {@link #clear()} once the batch is flushed.
+ * <p>
+ * The index file is mapped in pages, as a single mapping cannot exceed 2 GB. Its slots are numbered by ints, hence at
+ * most 2^29 keys are spilled, the index being kept at most half full.
+ * <p>
+ * Given a {@link MemoryBudget.Account}, the map charges it with the estimated size of its heap entries and spills the
+ * entries that do not fit in its limit, besides those beyond {@code heapThreshold}.
+ */
+class SpillableUniqueEventMap extends AbstractMap<Object, StreamEvent> {
+
+    static final String SPILL_THRESHOLD = "spill.threshold";
+    static final String SPILL_DIRECTORY = "spill.directory";
+
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+    private static final int INDEX_SLOT_SIZE = 16;
+    private static final int INDEX_PAGE_SHIFT = 24;
+    private static final int INDEX_PAGE_MASK = (1 << INDEX_PAGE_SHIFT) - 1;
+    private static final int MAX_INDEX_CAPACITY = 1 << 30;
+    // record header: payload length (int), replacement flag (byte), reference to the latest version (long)
+    private static final int RECORD_HEADER_SIZE = 13;
+    private static final byte ORIGINAL = 0;
+    private static final byte REPLACEMENT = 1;
+
+    private final int heapThreshold;
+    private final File spillDirectory;
+    private final MemoryBudget.Account heapAccount;
+    private final LinkedHashMap<Object, StreamEvent> heapEntries = new LinkedHashMap<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private MappedByteBuffer[] index;
+    private File indexFile;
+    private int indexCapacity;
+    private int spilledSize;
+
+    SpillableUniqueEventMap(int heapThreshold, File spillDirectory) {
+        this(heapThreshold, spillDirectory, null);
+    }
+
+    SpillableUniqueEventMap(int heapThreshold, File spillDirectory, MemoryBudget.Account heapAccount) {
+        this.heapThreshold = heapThreshold;
+        this.spillDirectory = spillDirectory;
+        this.heapAccount = heapAccount;
+    }
+
+    /**
+     * Creates the pending batch map configured for the window through its system parameters.
+     *
+     * @param configReader the config reader of the window extension
+     * @param ordered      whether the heap only map should preserve insertion order
+     * @return a spillable map when {@code spill.threshold} is positive, otherwise a plain heap map
+     */
+    static Map<Object, StreamEvent> newBatchEventMap(ConfigReader configReader, boolean ordered) {
+        return newBatchEventMap(configReader, ordered, null);
+    }
+
+    /**
+     * Creates the pending batch map configured for the window through its system parameters, spilling the entries
+     * that do not fit in the limit of the given account.
+     *
+     * @param configReader the config reader of the window extension
+     * @param ordered      whether the heap only map should preserve insertion order
+     * @param heapAccount  the account charged with the heap entries, or {@code null}
+     * @return a spillable map when {@code spill.threshold} is positive or an account is given, otherwise a plain heap
+     * map
+     */
+    static Map<Object, StreamEvent> newBatchEventMap(ConfigReader configReader, boolean ordered,
+                                                     MemoryBudget.Account heapAccount) {
+        int heapThreshold = Integer.parseInt(configReader.readConfig(SPILL_THRESHOLD, "-1"));
+        if (heapThreshold > 0 || heapAccount != null) {
+            return new SpillableUniqueEventMap(heapThreshold > 0 ? heapThreshold : Integer.MAX_VALUE,
+                    new File(configReader.readConfig(SPILL_DIRECTORY, System.getProperty("java.io.tmpdir"))),
+                    heapAccount);
+        }
+        return ordered ? new LinkedHashMap<>() : new HashMap<>();
+    }
+
+    /**
+     * Takes the snapshot of a pending batch map. A spillable map is written out one record at a time while the
+     * snapshot is serialized, so its spilled entries are not brought back on the heap.
+     *
+     * @param map the pending batch map
+     * @return the snapshot, to be serialized before the map changes again
+     */
+    static Object snapshot(Map<Object, StreamEvent> map) {
+        if (map instanceof SpillableUniqueEventMap) {
+            return new Records((SpillableUniqueEventMap) map);
+        }
+        return new LinkedHashMap<>(map);
+    }
+
+    /**
+     * Replaces the entries of a pending batch map with those of a snapshot taken by {@link #snapshot(Map)}.
+     *
+     * @param map      the pending batch map
+     * @param snapshot the snapshot, or {@code null} to leave the map empty
+     */
+    @SuppressWarnings("unchecked")
+    static void restore(Map<Object, StreamEvent> map, Object snapshot) {
+        map.clear();
+        if (snapshot instanceof Records) {
+            for (byte[] payload : ((Records) snapshot).payloads) {
+                Entry<Object, StreamEvent> entry = deserialize(payload);
+                map.put(entry.getKey(), entry.getValue());
+            }
+        } else if (snapshot != null) {
+            map.putAll((Map<Object, StreamEvent>) snapshot);
+        }
+    }
+
+    @Override
+    public int size() {
+        return heapEntries.size() + spilledSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return heapEntries.containsKey(key) || (spilledSize > 0 && findSlot(key) >= 0);
+    }
+
+    @Override
+    public StreamEvent get(Object key) {
+        StreamEvent event = heapEntries.get(key);
+        if (event == null && spilledSize > 0) {
+            int slot = findSlot(key);
+            if (slot >= 0) {
+                event = readRecord(latestVersion(getRef(index, slot) - 1)).getValue();
+            }
+        }
+        return event;
+    }
+
+    @Override
+    public StreamEvent put(Object key, StreamEvent event) {
+        long size = heapAccount == null ? 0 : MemoryBudget.sizeOf(key, event);
+        if (heapEntries.containsKey(key) || (spilledSize == 0 && hasRoom(size))) {
+            return putOnHeap(key, event, size);
+        }
+        if (index == null) {
+            indexCapacity = INITIAL_INDEX_CAPACITY;
+            indexFile = newFile(".idx");
+            index = mapIndex(indexFile, indexCapacity);
+        }
+        int hash = hash(key);
+        int mask = indexCapacity - 1;
+        int slot = hash & mask;
+        long refPlusOne;
+        while ((refPlusOne = getRef(index, slot)) != 0) {
+            if (getHash(index, slot) == hash && readKey(refPlusOne - 1).equals(key)) {
+                long originalRef = refPlusOne - 1;
+                StreamEvent oldEvent = readRecord(latestVersion(originalRef)).getValue();
+                long newRef = append(key, event, REPLACEMENT);
+                segment(originalRef).putLong(position(originalRef) + 5, newRef);
+                return oldEvent;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (hasRoom(size)) {
+            putOnHeap(key, event, size);
+            return null;
+        }
+        long ref = append(key, event, ORIGINAL);
+        putRef(index, slot, ref + 1);
+        putHash(index, slot, hash);
+        spilledSize++;
+        if (spilledSize * 2 > indexCapacity) {
+            growIndex();
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        heapEntries.clear();
+        if (heapAccount != null) {
+            heapAccount.reset(0);
+        }
+        segments.clear();
+        index = null;
+        indexFile = null;
+        indexCapacity = 0;
+        spilledSize = 0;
+        for (File file : files) {
+            file.delete();
+        }
+        files.clear();
+    }
+
+    @Override
+    public Set<Entry<Object, StreamEvent>> entrySet() {
+        return new AbstractSet<Entry<Object, StreamEvent>>() {
+            @Override
+            public Iterator<Entry<Object, StreamEvent>> iterator() {
+                return new SpilledEntryIterator(heapEntries.entrySet().iterator());
+            }
+
+            @Override
+            public int size() {
+                return SpillableUniqueEventMap.this.size();
+            }
+        };
+    }
+
+    private boolean hasRoom(long size) {
+        return heapEntries.size() < heapThreshold && (heapAccount == null || heapAccount.fits(size));
+    }
+
+    private StreamEvent putOnHeap(Object key, StreamEvent event, long size) {
+        StreamEvent oldEvent = heapEntries.put(key, event);
+        if (heapAccount != null) {
+            heapAccount.charge(oldEvent == null ? size : size - MemoryBudget.sizeOf(key, oldEvent));
+        }
+        return oldEvent;
+    }
+
+    private int findSlot(Object key) {
+        int hash = hash(key);
+        int mask = indexCapacity - 1;
+        int slot = hash & mask;
+        long refPlusOne;
+        while ((refPlusOne = getRef(index, slot)) != 0) {
+            if (getHash(index, slot) == hash && readKey(refPlusOne - 1).equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void growIndex() {
+        if (indexCapacity == MAX_INDEX_CAPACITY) {
+            throw new SiddhiAppRuntimeException("Spilled batch in '" + spillDirectory + "' cannot hold more than "
+                    + MAX_INDEX_CAPACITY / 2 + " keys");
+        }
+        int newCapacity = indexCapacity << 1;
+        File newIndexFile = newFile(".idx");
+        MappedByteBuffer[] newIndex = mapIndex(newIndexFile, newCapacity);
+        int mask = newCapacity - 1;
+        for (int i = 0; i < indexCapacity; i++) {
+            long refPlusOne = getRef(index, i);
+            if (refPlusOne != 0) {
+                int hash = getHash(index, i);
+                int slot = hash & mask;
+                while (getRef(newIndex, slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                putRef(newIndex, slot, refPlusOne);
+                putHash(newIndex, slot, hash);
+            }
+        }
+        files.remove(indexFile);
+        indexFile.delete();
+        indexFile = newIndexFile;
+        index = newIndex;
+        indexCapacity = newCapacity;
+    }
+
+    private long append(Object key, StreamEvent event, byte flag) {
+        byte[] payload = serialize(key, event);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        MappedByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.remaining() < recordSize) {
+            segment = map(newFile(".seg"), Math.max(SEGMENT_SIZE, recordSize));
+            segments.add(segment);
+        }
+        long ref = ((long) (segments.size() - 1) << 32) | segment.position();
+        segment.putInt(payload.length);
+        segment.put(flag);
+        segment.putLong(ref);
+        segment.put(payload);
+        return ref;
+    }
+
+    private long latestVersion(long originalRef) {
+        return segment(originalRef).getLong(position(originalRef) + 5);
+    }
+
+    private Object readKey(long ref) {
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(payload(ref)))) {
+            return inputStream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Error while reading spilled unique key", e);
+        }
+    }
+
+    private Entry<Object, StreamEvent> readRecord(long ref) {
+        return deserialize(payload(ref));
+    }
+
+    private static Entry<Object, StreamEvent> deserialize(byte[] payload) {
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            Object key = inputStream.readObject();
+            StreamEvent event = new StreamEvent(0, 0, 0);
+            event.setTimestamp(inputStream.readLong());
+            event.setType(ComplexEvent.Type.values()[inputStream.readByte()]);
+            event.setBeforeWindowData((Object[]) inputStream.readObject());
+            event.setOnAfterWindowData((Object[]) inputStream.readObject());
+            event.setOutputData((Object[]) inputStream.readObject());
+            return new SimpleImmutableEntry<>(key, event);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Error while reading spilled unique event", e);
+        }
+    }
+
+    private byte[] payload(long ref) {
+        ByteBuffer buffer = segment(ref).duplicate();
+        buffer.position(position(ref));
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.position(buffer.position() + RECORD_HEADER_SIZE - 4);
+        buffer.get(payload);
+        return payload;
+    }
+
+    private static byte[] serialize(Object key, StreamEvent event) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(byteStream)) {
+            outputStream.writeObject(key);
+            outputStream.writeLong(event.getTimestamp());
+            outputStream.writeByte(event.getType().ordinal());
+            outputStream.writeObject(event.getBeforeWindowData());
+            outputStream.writeObject(event.getOnAfterWindowData());
+            outputStream.writeObject(event.getOutputData());
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while spilling unique event with key '" + key + "'", e);
+        }
+        return byteStream.toByteArray();
+    }
+
+    private MappedByteBuffer segment(long ref) {
+        return segments.get((int) (ref >>> 32));
+    }
+
+    private static int position(long ref) {
+        return (int) ref;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private File newFile(String suffix) {
+        try {
+            File file = File.createTempFile("siddhi-unique-", suffix, spillDirectory);
+            file.deleteOnExit();
+            files.add(file);
+            return file;
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while creating spill file in '" + spillDirectory + "'", e);
+        }
+    }
+
+    private static long getRef(MappedByteBuffer[] index, int slot) {
+        return index[slot >>> INDEX_PAGE_SHIFT].getLong((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE);
+    }
+
+    private static void putRef(MappedByteBuffer[] index, int slot, long refPlusOne) {
+        index[slot >>> INDEX_PAGE_SHIFT].putLong((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE, refPlusOne);
+    }
+
+    private static int getHash(MappedByteBuffer[] index, int slot) {
+        return index[slot >>> INDEX_PAGE_SHIFT].getInt((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE + 8);
+    }
+
+    private static void putHash(MappedByteBuffer[] index, int slot, int hash) {
+        index[slot >>> INDEX_PAGE_SHIFT].putInt((slot & INDEX_PAGE_MASK) * INDEX_SLOT_SIZE + 8, hash);
+    }
+
+    /**
+     * Maps an index of the given number of slots, one page of at most {@code 1 << INDEX_PAGE_SHIFT} slots at a time.
+     */
+    private static MappedByteBuffer[] mapIndex(File file, int capacity) {
+        int pageSlots = Math.min(capacity, 1 << INDEX_PAGE_SHIFT);
+        MappedByteBuffer[] pages = new MappedByteBuffer[capacity / pageSlots];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * pageSlots * INDEX_SLOT_SIZE,
+                        (long) pageSlots * INDEX_SLOT_SIZE);
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while mapping spill file '" + file + "'", e);
+        }
+        return pages;
+    }
+
+    private static MappedByteBuffer map(File file, long size) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while mapping spill file '" + file + "'", e);
+        }
+    }
+
+    /**
+     * Iterates the heap entries followed by the spilled entries in the order they were first written.
+     */
+    private class SpilledEntryIterator implements Iterator<Entry<Object, StreamEvent>> {
+
+        private final Iterator<Entry<Object, StreamEvent>> heapIterator;
+        private int segmentIndex = 0;
+        private int position = 0;
+        private int remaining = spilledSize;
+
+        SpilledEntryIterator(Iterator<Entry<Object, StreamEvent>> heapIterator) {
+            this.heapIterator = heapIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return heapIterator.hasNext() || remaining > 0;
+        }
+
+        @Override
+        public Entry<Object, StreamEvent> next() {
+            if (heapIterator.hasNext()) {
+                return heapIterator.next();
+            }
+            return readRecord(nextSpilledRef());
+        }
+
+        /**
+         * Skips the heap entries and locates the latest version of the next spilled entry.
+         */
+        private long nextSpilledRef() {
+            while (remaining > 0) {
+                MappedByteBuffer segment = segments.get(segmentIndex);
+                if (position >= segment.position()) {
+                    segmentIndex++;
+                    position = 0;
+                    continue;
+                }
+                long ref = ((long) segmentIndex << 32) | position;
+                int payloadLength = segment.getInt(position);
+                byte flag = segment.get(position + 4);
+                position += RECORD_HEADER_SIZE + payloadLength;
+                if (flag == ORIGINAL) {
+                    remaining--;
+                    return latestVersion(ref);
+                }
+            }
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Snapshot of a spillable map, which copies the serialized records of its entries straight into the stream it is
+     * written to. The snapshot service serializes the state before it lets the events through again, hence the map
+     * does not change while it is written. Once read back, the entries are kept as records until they are restored.
+     */
+    private static class Records implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient SpillableUniqueEventMap map;
+        private transient List<byte[]> payloads;
+
+        Records(SpillableUniqueEventMap map) {
+            this.map = map;
+        }
+
+        private void writeObject(ObjectOutputStream outputStream) throws IOException {
+            outputStream.writeInt(map.size());
+            for (Entry<Object, StreamEvent> entry : map.heapEntries.entrySet()) {
+                writePayload(outputStream, serialize(entry.getKey(), entry.getValue()));
+            }
+            SpilledEntryIterator iterator = map.new SpilledEntryIterator(Collections.emptyIterator());
+            while (iterator.hasNext()) {
+                writePayload(outputStream, map.payload(iterator.nextSpilledRef()));
+            }
+        }
+
+        private void readObject(ObjectInputStream inputStream) throws IOException {
+            int size = inputStream.readInt();
+            payloads = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte[] payload = new byte[inputStream.readInt()];
+                inputStream.readFully(payload);
+                payloads.add(payload);
+            }
+        }
+
+        private static void writePayload(ObjectOutputStream outputStream, byte[] payload) throws IOException {
+            outputStream.writeInt(payload.length);
+            outputStream.write(payload);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Names the directories in which the windows keep the files of their states, as
+ * {@code <root>/<app>/<query>[/<partition key>]}, so that a state finds its files again once its app is recreated.
+ */
+final class StateDirectory {
+
+    private StateDirectory() {
+    }
+
+    /**
+     * Returns the function naming the directory of the state of each partition key of a query.
+     *
+     * @param root               the root directory configured for the extension
+     * @param siddhiQueryContext the context of the query of the window
+     * @return a function of the partition key, which is {@code null} outside partitions, to the directory of the state
+     */
+    static Function<String, File> of(String root, SiddhiQueryContext siddhiQueryContext) {
+        File queryDirectory = new File(new File(root, encode(siddhiQueryContext.getSiddhiAppContext().getName())),
+                encode(siddhiQueryContext.getName()));
+        return partitionKey -> partitionKey == null ? queryDirectory : new File(queryDirectory, encode(partitionKey));
+    }
+
+    /**
+     * Creates the directory when it does not exist yet.
+     *
+     * @param directory the directory
+     */
+    static void create(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new SiddhiAppRuntimeException("Error while creating unique state directory '" + directory + "'");
+        }
+    }
+
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new SiddhiAppRuntimeException("Error while encoding unique state directory name '" + name + "'", e);
+        }
+    }
+}
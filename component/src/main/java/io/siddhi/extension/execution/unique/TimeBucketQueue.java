@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.StreamEvent;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Calendar queue of the events of a time window, grouping them into buckets of a fixed time span.
+ * <p>
+ * Each bucket maps the keys of its events to the events in the order they were added, and the buckets are ordered
+ * by time. A bucket becomes due once its latest timestamp is, hence expiring events takes out whole buckets, at a
+ * cost depending on the number of buckets rather than on the number of events held, and removing the event replaced
+ * by another of the same key only touches the bucket of its timestamp. Events arrive mostly in timestamp order, so the
+ * bucket last used is looked up without going through the ordered buckets. A span of one millisecond expires each event
+ * exactly when its timestamp is due, while longer spans hold events up to a span longer. Instances are not thread
+ * safe.
+ */
+final class TimeBucketQueue {
+
+    private final long span;
+    private final TreeMap<Long, Map<Object, StreamEvent>> buckets = new TreeMap<>();
+    private long lastBucket;
+    private Map<Object, StreamEvent> last;
+
+    /**
+     * Creates a queue.
+     *
+     * @param span the time span of a bucket in milliseconds, at least one
+     */
+    TimeBucketQueue(long span) {
+        this.span = span;
+    }
+
+    /**
+     * Adds the event to the bucket of its timestamp.
+     *
+     * @param key   the unique key of the event
+     * @param event the event
+     * @return the latest timestamp of the bucket, at which the bucket becomes due
+     */
+    long add(Object key, StreamEvent event) {
+        long bucket = Math.floorDiv(event.getTimestamp(), span);
+        bucketOf(bucket, true).put(key, event);
+        return bucket * span + span - 1;
+    }
+
+    /**
+     * Removes the event from the bucket of its timestamp, when the bucket holds it for the key.
+     *
+     * @param key   the unique key of the event
+     * @param event the event
+     */
+    void remove(Object key, StreamEvent event) {
+        long bucket = Math.floorDiv(event.getTimestamp(), span);
+        Map<Object, StreamEvent> events = bucketOf(bucket, false);
+        if (events != null && events.remove(key, event) && events.isEmpty()) {
+            buckets.remove(bucket);
+            last = null;
+        }
+    }
+
+    /**
+     * Takes out the earliest bucket, when it is due at the given time.
+     *
+     * @param timestamp the latest timestamp that is due
+     * @return the events of the bucket in the order they were added, or {@code null} when no bucket is due
+     */
+    Collection<StreamEvent> pollDue(long timestamp) {
+        Map.Entry<Long, Map<Object, StreamEvent>> first = buckets.firstEntry();
+        if (first == null || first.getKey() * span + span - 1 > timestamp) {
+            return null;
+        }
+        buckets.pollFirstEntry();
+        if (first.getValue() == last) {
+            last = null;
+        }
+        return first.getValue().values();
+    }
+
+    boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
+    void clear() {
+        buckets.clear();
+        last = null;
+    }
+
+    /**
+     * Returns a live view of the events in bucket order, to be read while the queue is not written.
+     *
+     * @return the events
+     */
+    Collection<StreamEvent> values() {
+        return new AbstractCollection<StreamEvent>() {
+            @Override
+            public Iterator<StreamEvent> iterator() {
+                Iterator<Map<Object, StreamEvent>> bucketIterator = buckets.values().iterator();
+                return new Iterator<StreamEvent>() {
+                    private Iterator<StreamEvent> current = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!current.hasNext() && bucketIterator.hasNext()) {
+                            current = bucketIterator.next().values().iterator();
+                        }
+                        return current.hasNext();
+                    }
+
+                    @Override
+                    public StreamEvent next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return current.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (Map<Object, StreamEvent> events : buckets.values()) {
+                    size += events.size();
+                }
+                return size;
+            }
+        };
+    }
+
+    private Map<Object, StreamEvent> bucketOf(long bucket, boolean create) {
+        if (last != null && bucket == lastBucket) {
+            return last;
+        }
+        Map<Object, StreamEvent> events = buckets.get(bucket);
+        if (events == null) {
+            if (!create) {
+                return null;
+            }
+            events = new LinkedHashMap<>();
+            buckets.put(bucket, events);
+        }
+        lastBucket = bucket;
+        last = events;
+        return events;
+    }
+}
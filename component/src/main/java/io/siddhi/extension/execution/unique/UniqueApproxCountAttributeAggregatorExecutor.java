@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.query.api.definition.Attribute;
+
+/**
+ * Class representing unique approximate count attribute aggregator implementation.
+ */
+
+@Extension(
+        name = "approxCount",
+        namespace = "unique",
+        description = "Returns an estimate of the number of distinct unique keys, using a HyperLogLog++ sketch"
+                + " whose memory does not grow with the number of keys. Small cardinalities are counted in a sparse"
+                + " form that is close to exact, and the sketch switches to '2^precision' registers as it grows,"
+                + " giving a relative standard error of about '1.04/sqrt(2^precision)'. If the unique key is a"
+                + " sketch emitted by 'unique:approxSketch()' of the same precision, it is merged instead, so counts"
+                + " of partitioned or parallel queries can be combined. A sketch cannot forget keys, hence expired"
+                + " events are ignored; use it without a window or with a batch window, where the estimate"
+                + " starts afresh on every batch.",
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness, or a sketch to merge.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL,
+                                DataType.DOUBLE, DataType.STRING, DataType.OBJECT}),
+                @Parameter(name = "precision",
+                        description = "The number of hash bits used to select a register, between 4 and 18."
+                                + " Higher precision gives a smaller error at the cost of '2^precision' bytes.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "14")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "The estimated number of distinct unique keys.",
+                type = {DataType.LONG}),
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (timeStamp long, ip string);\n" +
+                                "from LoginEvents#window.timeBatch(1 day)\n" +
+                                "select unique:approxCount(ip) as distinctIps\n" +
+                                "insert into DailyDistinctIps ;",
+
+                        description = "This query outputs an estimate of the number of distinct 'ip' values"
+                                + " for every day, with a relative error of about 0.8%."
+                ),
+                @Example(
+                        syntax = "define stream LoginEvents (region string, ip string);\n" +
+                                "partition with (region of LoginEvents)\n" +
+                                "begin\n" +
+                                "    from LoginEvents\n" +
+                                "    select region, unique:approxSketch(ip, 12) as ips\n" +
+                                "    insert into RegionalIps ;\n" +
+                                "end;\n" +
+                                "from RegionalIps\n" +
+                                "select unique:approxCount(ips, 12) as distinctIps\n" +
+                                "insert into GlobalDistinctIps ;",
+
+                        description = "The partitioned query keeps a sketch of the 'ip' values of each region,"
+                                + " and the last query merges them to estimate the number of distinct 'ip' values"
+                                + " across all regions."
+                )
+        }
+)
+
+public class UniqueApproxCountAttributeAggregatorExecutor extends HyperLogLogAggregatorExecutor {
+
+    public UniqueApproxCountAttributeAggregatorExecutor() {
+        super("approxCount");
+    }
+
+    @Override
+    protected Object result(SketchState state) {
+        return state.estimate();
+    }
+
+    @Override
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.LONG;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.query.api.definition.Attribute;
+
+/**
+ * Class representing unique approximate sketch attribute aggregator implementation.
+ */
+
+@Extension(
+        name = "approxSketch",
+        namespace = "unique",
+        description = "Returns the HyperLogLog++ sketch of the distinct unique keys aggregated so far, the same"
+                + " sketch 'unique:approxCount()' estimates from. Sketches of the same precision are mergeable,"
+                + " hence sketches emitted by partitioned or parallel queries can be passed to"
+                + " 'unique:approxCount()' or 'unique:approxSketch()' to combine them. The emitted sketch is never"
+                + " modified afterwards; it is copied only when a later event changes it.",
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness, or a sketch to merge.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL,
+                                DataType.DOUBLE, DataType.STRING, DataType.OBJECT}),
+                @Parameter(name = "precision",
+                        description = "The number of hash bits used to select a register, between 4 and 18.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "14")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "The sketch of the distinct unique keys.",
+                type = {DataType.OBJECT}),
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (region string, ip string);\n" +
+                                "partition with (region of LoginEvents)\n" +
+                                "begin\n" +
+                                "    from LoginEvents\n" +
+                                "    select region, unique:approxSketch(ip) as ips\n" +
+                                "    insert into RegionalIps ;\n" +
+                                "end;",
+
+                        description = "This query emits the sketch of the distinct 'ip' values of each region,"
+                                + " so that they can be merged downstream."
+                )
+        }
+)
+
+public class UniqueApproxSketchAttributeAggregatorExecutor extends HyperLogLogAggregatorExecutor {
+
+    public UniqueApproxSketchAttributeAggregatorExecutor() {
+        super("approxSketch");
+    }
+
+    @Override
+    protected Object result(SketchState state) {
+        return state.share();
+    }
+
+    @Override
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.OBJECT;
+    }
+}
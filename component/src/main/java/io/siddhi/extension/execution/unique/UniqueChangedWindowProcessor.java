@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.state.StateEvent;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.window.FindableProcessor;
+import io.siddhi.core.query.processor.stream.window.WindowProcessor;
+import io.siddhi.core.table.Table;
+import io.siddhi.core.util.collection.operator.CompiledCondition;
+import io.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import io.siddhi.core.util.collection.operator.Operator;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.parser.OperatorParser;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import io.siddhi.query.api.expression.Expression;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * Unique changed window processor implementation, holding the latest event of each unique key and passing on only
+ * the events that change the compared attributes of their key.
+ */
+
+@Extension(
+        name = "changed",
+        namespace = "unique",
+        description = "This is a window that holds the latest event for each value of a unique key parameter, and "
+                + "only lets through the events that change it. When an event arrives with the same value for the "
+                + "unique key parameter as the held event, the values of the compared attributes of both events are "
+                + "compared. If they differ, the held event expires and is replaced with the new one, and otherwise "
+                + "the new event is dropped, keeping the held event as it was last emitted. The first event of each "
+                + "key is always let through.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL, DataType.DOUBLE,
+                                DataType.STRING}),
+                @Parameter(name = "compare.attribute",
+                        description = "The attribute whose value changes are to be let through. "
+                                + "If multiple attributes need to be compared, we can specify them "
+                                + "as a comma-separated list.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL, DataType.DOUBLE,
+                                DataType.STRING, DataType.OBJECT}),
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream SensorStream (sensorId string, status string, reading double, "
+                                + "timestamp long) ;\n" +
+                                "from SensorStream#window.unique:changed(sensorId, status, reading)\n" +
+                                "select sensorId, status, reading \n" +
+                                "insert all events into SensorChanges ;",
+
+                        description = "The above query holds the latest event of each 'sensorId' arriving from the "
+                                + "'SensorStream' stream. An event is only let through when its 'status' or "
+                                + "'reading' differs from the held event of the same sensor, whatever its "
+                                + "timestamp, in which case the held event is sent to 'SensorChanges' as an expired "
+                                + "event, followed by the new event as a current event."
+                )
+        }
+)
+
+public class UniqueChangedWindowProcessor extends WindowProcessor<UniqueChangedWindowProcessor.ExtensionState>
+        implements FindableProcessor {
+    private UniqueKeyExtractor keyExtractor;
+    private UniqueKeyExtractor compareExtractor;
+    private RetainedEventCloner retainedEventCloner;
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        if (attributeExpressionExecutors.length < 2) {
+            throw new SiddhiAppValidationException("Unique changed window should have at least two parameters "
+                    + "(<int|long|float|bool|double|string> unique.key, <any> compare.attribute, ...), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        keyExtractor = UniqueKeyExtractor.of(attributeExpressionExecutors[0]);
+        compareExtractor = UniqueKeyExtractor.of(Arrays.copyOfRange(attributeExpressionExecutors, 1,
+                attributeExpressionExecutors.length));
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor, compareExtractor);
+        return () -> new ExtensionState();
+    }
+
+    @Override
+    protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                                     StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                                     ExtensionState state) {
+        synchronized (state) {
+            long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                Object key = keyExtractor.extract(streamEvent);
+                Object values = compareExtractor.extract(streamEvent);
+                int hash = values.hashCode();
+                Row row = state.rows.get(key);
+                if (row != null && row.hash == hash && values.equals(compareExtractor.extract(row.event))) {
+                    streamEventChunk.remove();
+                    continue;
+                }
+                StreamEvent clonedEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                clonedEvent.setType(StreamEvent.Type.EXPIRED);
+                if (row == null) {
+                    state.rows.put(key, new Row(clonedEvent, hash));
+                } else {
+                    StreamEvent oldEvent = row.event;
+                    row.event = clonedEvent;
+                    row.hash = hash;
+                    oldEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(oldEvent);
+                }
+            }
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.SLIDE;
+    }
+
+    /**
+     * Held event of a key along with the hash of its compared values, so that most changed events are told apart
+     * without extracting the values of the held event.
+     */
+    private static class Row implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private StreamEvent event;
+        private int hash;
+
+        private Row(StreamEvent event, int hash) {
+            this.event = event;
+            this.hash = hash;
+        }
+    }
+
+    class ExtensionState extends State {
+
+        private Map<Object, Row> rows = new HashMap<>();
+
+        private List<StreamEvent> events() {
+            List<StreamEvent> events = new ArrayList<>(rows.size());
+            for (Row row : rows.values()) {
+                events.add(row.event);
+            }
+            return events;
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return rows.isEmpty();
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            synchronized (this) {
+                // rows are updated in place, hence copied along with the map
+                Map<Object, Row> copy = new HashMap<>(rows.size() * 4 / 3 + 1);
+                for (Map.Entry<Object, Row> entry : rows.entrySet()) {
+                    copy.put(entry.getKey(), new Row(entry.getValue().event, entry.getValue().hash));
+                }
+                return singletonMap("rows", copy);
+            }
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            synchronized (this) {
+                rows = (Map<Object, Row>) state.get("rows");
+            }
+        }
+    }
+
+    @Override
+    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator) {
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.events(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              List<VariableExpressionExecutor> variableExpressionExecutors,
+                                              Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
+                variableExpressionExecutors, tableMap, siddhiQueryContext);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.selector.attribute.aggregator.AttributeAggregatorExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * Class representing unique count attribute aggregator implementation.
+ */
+
+@Extension(
+        name = "count",
+        namespace = "unique",
+        description = "Returns the exact number of distinct unique keys among the events currently aggregated."
+                + " Only the multiplicity of each key is kept, and the count is updated incrementally"
+                + " as events are added and removed. When used with a sliding window a key is dropped once its"
+                + " last event expires, and when used with a batch window the count starts afresh on every batch."
+                + " Over a batch window the count may be bounded with 'key.limit', in which case a batch having more"
+                + " keys than the limit is counted approximately for the rest of the batch.",
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness."
+                                + " If more than one attribute is given, the combination of their values"
+                                + " is considered as the unique key.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL,
+                                DataType.DOUBLE, DataType.STRING, DataType.OBJECT}),
+                @Parameter(name = "key.limit",
+                        description = "The number of distinct keys of a batch above which the keys are no longer"
+                                + " held, given as 'key.limit=<count>'. The keys of the batch are then moved into a"
+                                + " HyperLogLog sketch of precision 14, which counts them within about 1% for the rest"
+                                + " of the batch in 16 KB, and the next batch is counted exactly again. Only applies"
+                                + " when aggregating over a batch window, as a sketch cannot drop the keys of expired"
+                                + " events. The number of aggregations being counted approximately is reported by the"
+                                + " 'unique.count.approximate' gauge of the query when the Siddhi app has statistics.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the keys are held exactly")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "The number of distinct unique keys.",
+                type = {DataType.LONG}),
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (timeStamp long, ip string);\n" +
+                                "from LoginEvents#window.time(1 min)\n" +
+                                "select unique:count(ip) as distinctIps\n" +
+                                "insert into DistinctIpCounts ;",
+
+                        description = "This query outputs the number of distinct 'ip' values that arrived"
+                                + " within the last minute, and updates the count whenever an event arrives"
+                                + " or expires."
+                ),
+                @Example(
+                        syntax = "define stream LoginEvents (timeStamp long, ip string, id string);\n" +
+                                "from LoginEvents#window.timeBatch(1 hour)\n" +
+                                "select unique:count(ip, id) as distinctLogins\n" +
+                                "insert into HourlyDistinctLogins ;",
+
+                        description = "This query outputs the number of distinct combinations of 'ip' and 'id'"
+                                + " for every hour."
+                )
+        }
+)
+
+public class UniqueCountAttributeAggregatorExecutor
+        extends AttributeAggregatorExecutor<UniqueCountAttributeAggregatorExecutor.AggregatorState> {
+
+    private Attribute.Type keyType;
+    private int keyArity;
+    private long keyLimit = Long.MAX_VALUE;
+    private final AtomicLong approximateStates = new AtomicLong();
+
+    @Override
+    protected StateFactory<AggregatorState> init(ExpressionExecutor[] attributeExpressionExecutors,
+                                                 ProcessingMode processingMode, boolean outputExpectsExpiredEvents,
+                                                 ConfigReader configReader, SiddhiQueryContext siddhiQueryContext) {
+        UniqueOptions options = UniqueOptions.parse("count aggregator", attributeExpressionExecutors,
+                UniqueOptions.KEY_LIMIT);
+        ExpressionExecutor[] parameters = options.getParameters();
+        if (parameters.length == 0) {
+            throw new SiddhiAppValidationException("Unique count aggregator should have at least one parameter "
+                    + "(<string|int|bool|long|double|float|object> unique attribute), but found none");
+        }
+        keyArity = parameters.length;
+        if (keyArity == 1) {
+            keyType = parameters[0].getReturnType();
+        }
+        if (options.isSet(UniqueOptions.KEY_LIMIT)) {
+            if (processingMode != ProcessingMode.BATCH) {
+                throw new SiddhiAppValidationException("Option '" + UniqueOptions.KEY_LIMIT + "' of unique count "
+                        + "aggregator only applies when aggregating over a batch window, as the keys of expired "
+                        + "events cannot be dropped from a sketch");
+            }
+            keyLimit = options.getPositiveLong(UniqueOptions.KEY_LIMIT, Long.MAX_VALUE);
+            UniqueMetrics.registerGauge(siddhiQueryContext, "unique.count.approximate", approximateStates::get);
+        }
+        return () -> new AggregatorState(MultiplicityMap.forType(keyType));
+    }
+
+    @Override
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.LONG;
+    }
+
+    @Override
+    public Object processAdd(Object data, AggregatorState state) {
+        if (data != null) {
+            state.add(data);
+        }
+        return state.count();
+    }
+
+    @Override
+    public Object processAdd(Object[] data, AggregatorState state) {
+        Object key = key(data);
+        if (key != null) {
+            state.add(key);
+        }
+        return state.count();
+    }
+
+    @Override
+    public Object processRemove(Object data, AggregatorState state) {
+        if (data != null) {
+            state.remove(data);
+        }
+        return state.count();
+    }
+
+    @Override
+    public Object processRemove(Object[] data, AggregatorState state) {
+        Object key = key(data);
+        if (key != null) {
+            state.remove(key);
+        }
+        return state.count();
+    }
+
+    @Override
+    public Object reset(AggregatorState state) {
+        state.clear();
+        return 0L;
+    }
+
+    /**
+     * Returns the unique key of the values of the parameters, which are followed by the options if any.
+     */
+    private Object key(Object[] data) {
+        if (keyArity == 1) {
+            return data[0];
+        }
+        return Arrays.asList(data.length == keyArity ? data : Arrays.copyOf(data, keyArity));
+    }
+
+    class AggregatorState extends State {
+
+        private MultiplicityMap multiplicities;
+        private HyperLogLog sketch;
+
+        AggregatorState(MultiplicityMap multiplicities) {
+            this.multiplicities = multiplicities;
+        }
+
+        private void add(Object key) {
+            if (sketch != null) {
+                sketch.offer(multiplicities.hash(key));
+            } else if (multiplicities.add(key) == 1 && multiplicities.size() > keyLimit) {
+                sketch = new HyperLogLog(HyperLogLogAggregatorExecutor.DEFAULT_PRECISION);
+                multiplicities.forEachHash(sketch::offer);
+                multiplicities = MultiplicityMap.forType(keyType);
+                approximateStates.incrementAndGet();
+            }
+        }
+
+        private void remove(Object key) {
+            // only batch windows are counted approximately, and those reset the aggregation rather than removing keys
+            if (sketch == null) {
+                multiplicities.remove(key);
+            }
+        }
+
+        private long count() {
+            return sketch != null ? sketch.estimate() : multiplicities.size();
+        }
+
+        private void clear() {
+            if (sketch != null) {
+                sketch = null;
+                approximateStates.decrementAndGet();
+            }
+            multiplicities.clear();
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return sketch == null && multiplicities.size() == 0;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            if (sketch == null) {
+                return singletonMap("multiplicities", multiplicities);
+            }
+            Map<String, Object> state = new HashMap<>();
+            state.put("multiplicities", multiplicities);
+            state.put("sketch", sketch.toBytes());
+            return state;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            multiplicities = (MultiplicityMap) state.get("multiplicities");
+            byte[] restoredSketch = (byte[]) state.get("sketch");
+            if ((restoredSketch != null) != (sketch != null)) {
+                approximateStates.addAndGet(restoredSketch != null ? 1 : -1);
+            }
+            sketch = restoredSketch != null ? HyperLogLog.fromBytes(restoredSketch) : null;
+        }
+    }
+}
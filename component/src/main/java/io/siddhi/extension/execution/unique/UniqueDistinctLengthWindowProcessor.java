@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+
+/**
+ * Unique distinct length window processor implementation, letting through the first occurrence of each distinct event
+ * among the latest distinct events.
+ */
+
+@Extension(
+        name = "distinctLength",
+        namespace = "unique",
+        description = "This is a sliding length window that holds the first occurrence of each of the latest "
+                + "distinct events, up to the window length. Events are compared on all the attributes of the input "
+                + "stream, through a 128-bit hash of their attributes. When a new event arrives with the same values "
+                + "for all the attributes as an event in the window, that event is not processed by the window. "
+                + "When a distinct event arrives while the window is full, the oldest held event expires, after "
+                + "which an event identical to it is let through again.",
+
+        parameters = {
+                @Parameter(name = "window.length",
+                        description = "The number of distinct events that should be held in the sliding window.",
+                        type = {DataType.INT}),
+                @Parameter(name = "key.verify",
+                        description = "Given as 'key.verify=true', compares the attribute values of events having "
+                                + "the same hash, so that distinct events are never taken for duplicates.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "false")
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream OrderEvents (orderId string, item string, quantity int) ;\n" +
+                                "from OrderEvents#window.unique:distinctLength(1000)\n" +
+                                "select orderId, item, quantity \n" +
+                                "insert into DistinctOrders ;",
+
+                        description = "The above query drops the events of the 'OrderEvents' stream that are "
+                                + "identical to one of the latest 1000 distinct events, and sends the others to the "
+                                + "'DistinctOrders' stream."
+                )
+        }
+)
+
+public class UniqueDistinctLengthWindowProcessor extends UniqueFirstLengthWindowProcessor {
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        return super.init(metaStreamEvent, inputDefinition,
+                ContentKeyExecutor.withContentKey("distinctLength window", attributeExpressionExecutors,
+                        metaStreamEvent, inputDefinition, 1, 1),
+                configReader, streamEventClonerHolder, outputExpectsExpiredEvents, findToBeExecuted,
+                siddhiQueryContext);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+
+/**
+ * Class representing unique distinct time batch window processor implementation.
+ */
+
+@Extension(
+        name = "distinctTimeBatch",
+        namespace = "unique",
+        description = "A batch-time or tumbling window that holds the first occurrence of each distinct event"
+                + " that arrived within the time period of that window, and gets updated for each such time window."
+                + " Events are compared on all the attributes of the input stream, through a 128-bit hash of their"
+                + " attributes. When a new event arrives with the same values for all the attributes as an event"
+                + " already in the window, that event is not processed by the window.",
+        parameters = {
+                @Parameter(name = "window.time",
+                        description = "The time period for which the window should hold events.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "start.time",
+                        description = "This specifies an offset in milliseconds in order to start the " +
+                                "window at a time different to the standard time.",
+                        defaultValue = "Timestamp of the first event.",
+                        type = {DataType.INT, DataType.LONG},
+                        optional = true),
+                @Parameter(name = "key.verify",
+                        description = "Given as 'key.verify=true', compares the attribute values of events having "
+                                + "the same hash, so that distinct events are never taken for duplicates.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "false")
+        },
+        systemParameter = {
+                @SystemParameter(name = "spill.threshold",
+                        description = "The maximum number of pending batch events held on the heap. Events of the"
+                                + " batch beyond this number are spilled into memory-mapped segment files and"
+                                + " streamed back when the batch is emitted. A non-positive value disables spilling.",
+                        defaultValue = "-1",
+                        possibleParameters = "Any integer"),
+                @SystemParameter(name = "spill.directory",
+                        description = "The directory in which the spill segment and key index files are created.",
+                        defaultValue = "The value of the 'java.io.tmpdir' system property",
+                        possibleParameters = "Any writable directory path")
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream OrderEvents (orderId string, item string, quantity int)\n" +
+                                "from OrderEvents#window.unique:distinctTimeBatch(1 sec)\n " +
+                                "select orderId, item, quantity\n" +
+                                "insert into DistinctOrders ;",
+
+                        description = "This holds the distinct events that arrive from the 'OrderEvents' stream "
+                                + "during each second as a batch, and sends them to the 'DistinctOrders' stream "
+                                + "once the second is over."
+                )
+        }
+)
+
+public class UniqueDistinctTimeBatchWindowProcessor extends UniqueFirstTimeBatchWindowProcessor {
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        return super.init(metaStreamEvent, inputDefinition,
+                ContentKeyExecutor.withContentKey("distinctTimeBatch window", attributeExpressionExecutors,
+                        metaStreamEvent, inputDefinition, 1, 2),
+                configReader, streamEventClonerHolder, outputExpectsExpiredEvents, findToBeExecuted,
+                siddhiQueryContext);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+
+/**
+ * Unique distinct time window processor implementation, letting through the first occurrence of each distinct event
+ * within a sliding time period.
+ */
+
+@Extension(
+        name = "distinctTime",
+        namespace = "unique",
+        description = "This is a sliding time window that holds the first occurrence of each distinct event that "
+                + "arrived during the previous time window. Events are compared on all the attributes of the input "
+                + "stream, through a 128-bit hash of their attributes. When a new event arrives with the same values "
+                + "for all the attributes as an event in the window, that event is not processed by the window. "
+                + "Held events expire once the window time has passed since their arrival, after which an identical "
+                + "event is let through again.",
+
+        parameters = {
+                @Parameter(name = "window.time",
+                        description = "The sliding time period for which the window should hold events.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "key.verify",
+                        description = "Given as 'key.verify=true', compares the attribute values of events having "
+                                + "the same hash, so that distinct events are never taken for duplicates.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "false")
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream OrderEvents (orderId string, item string, quantity int) ;\n" +
+                                "from OrderEvents#window.unique:distinctTime(10 min)\n" +
+                                "select orderId, item, quantity \n" +
+                                "insert into DistinctOrders ;",
+
+                        description = "The above query drops the events of the 'OrderEvents' stream that are "
+                                + "identical to an event that arrived within the last 10 minutes, such as the "
+                                + "events redelivered by a source delivering events at least once, and sends the "
+                                + "others to the 'DistinctOrders' stream."
+                )
+        }
+)
+
+public class UniqueDistinctTimeWindowProcessor extends UniqueFirstTimeWindowProcessor {
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        return super.init(metaStreamEvent, inputDefinition,
+                ContentKeyExecutor.withContentKey("distinctTime window", attributeExpressionExecutors,
+                        metaStreamEvent, inputDefinition, 1, 1),
+                configReader, streamEventClonerHolder, outputExpectsExpiredEvents, findToBeExecuted,
+                siddhiQueryContext);
+    }
+}
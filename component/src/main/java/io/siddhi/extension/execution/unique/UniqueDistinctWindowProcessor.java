@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+
+/**
+ * Unique distinct window processor implementation, letting through the first occurrence of each distinct event.
+ */
+
+@Extension(
+        name = "distinct",
+        namespace = "unique",
+        description = "This is a window that holds the first occurrence of each distinct event, comparing events on "
+                + "all the attributes of the input stream. When an event arrives with the same values for all the "
+                + "attributes as an event already in the window, that event is not processed by the window. "
+                + "Events are compared through a 128-bit hash of their attributes, computed over the attribute "
+                + "values without building any key.",
+
+        parameters = {
+                @Parameter(name = "key.verify",
+                        description = "Given as 'key.verify=true', compares the attribute values of events having "
+                                + "the same hash, so that distinct events are never taken for duplicates, at the "
+                                + "cost of holding the attribute values of each held event along with its hash. "
+                                + "Otherwise two distinct events are taken for duplicates with a probability of "
+                                + "about n^2/2^129 among n distinct events.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "false"),
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream OrderEvents (orderId string, item string, quantity int) ;\n" +
+                                "from OrderEvents#window.unique:distinct()\n" +
+                                "select orderId, item, quantity \n" +
+                                "insert into DistinctOrders ;",
+
+                        description = "The above query lets through the events of the 'OrderEvents' stream "
+                                + "unless an event with the same 'orderId', 'item' and 'quantity' arrived before, "
+                                + "dropping the duplicates of a source delivering events at least once."
+                )
+        }
+)
+
+public class UniqueDistinctWindowProcessor extends UniqueFirstWindowProcessor {
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        return super.init(metaStreamEvent, inputDefinition,
+                ContentKeyExecutor.withContentKey("distinct window", attributeExpressionExecutors, metaStreamEvent,
+                        inputDefinition, 0, 0),
+                configReader, streamEventClonerHolder, outputExpectsExpiredEvents, findToBeExecuted,
+                siddhiQueryContext);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.StreamEvent;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Bounded buffer of the latest events having unique keys, ordered by arrival.
+ * <p>
+ * Events live in slots of fixed arrays, chained from the oldest to the newest through int links, and an open
+ * addressing table of ints maps keys to their slots. An event evicted for being the oldest hands its slot to the
+ * arriving event, and an event replaced by another of the same key hands its slot to the newer event, so once the
+ * buffer is full no slot is ever allocated or freed. The arrays start small and double until they reach the capacity,
+ * as a window keeps one buffer per partition. Removing a key shifts the following entries of its probe sequence back,
+ * leaving no tombstones behind. Instances are not thread safe.
+ */
+final class UniqueEventRingBuffer extends AbstractCollection<StreamEvent> {
+
+    private static final int INITIAL_SLOTS = 16;
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private StreamEvent[] events;
+    private Object[] keys;
+    private int[] hashes;
+    private int[] newer;
+    private int[] older;
+    private int[] index;
+    private int oldest = NONE;
+    private int newest = NONE;
+    private int size;
+
+    UniqueEventRingBuffer(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        allocate(Math.min(capacity, INITIAL_SLOTS));
+    }
+
+    /**
+     * Adds the event as the newest one, in place of the event having the same key or else of the oldest event when
+     * the buffer is full.
+     *
+     * @param key   the unique key of the event
+     * @param event the event
+     * @return the event replaced or evicted, the given event itself when the capacity is zero, or {@code null}
+     */
+    StreamEvent put(Object key, StreamEvent event) {
+        if (capacity == 0) {
+            return event;
+        }
+        int hash = hash(key);
+        int position = positionOf(key, hash);
+        int slot;
+        StreamEvent displaced;
+        if (index[position] != 0) {
+            slot = index[position] - 1;
+            displaced = events[slot];
+            unlink(slot);
+        } else {
+            if (size == capacity) {
+                slot = oldest;
+                displaced = events[slot];
+                removePosition(positionOf(keys[slot], hashes[slot]));
+                unlink(slot);
+            } else {
+                if (size == events.length) {
+                    allocate(Math.min(capacity, events.length * 2));
+                }
+                slot = size++;
+                displaced = null;
+            }
+            index[positionOf(key, hash)] = slot + 1;
+        }
+        events[slot] = event;
+        keys[slot] = key;
+        hashes[slot] = hash;
+        linkNewest(slot);
+        return displaced;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        allocate(Math.min(capacity, INITIAL_SLOTS));
+    }
+
+    /**
+     * Iterates the events from the oldest to the newest.
+     */
+    @Override
+    public Iterator<StreamEvent> iterator() {
+        return new Iterator<StreamEvent>() {
+            private int slot = oldest;
+
+            @Override
+            public boolean hasNext() {
+                return slot != NONE;
+            }
+
+            @Override
+            public StreamEvent next() {
+                if (slot == NONE) {
+                    throw new NoSuchElementException();
+                }
+                StreamEvent event = events[slot];
+                slot = newer[slot];
+                return event;
+            }
+        };
+    }
+
+    /**
+     * (Re)creates the arrays with the given number of slots, carrying over the events held.
+     */
+    private void allocate(int slots) {
+        StreamEvent[] oldEvents = events;
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldNewer = newer;
+        int first = oldest;
+        events = new StreamEvent[slots];
+        keys = new Object[slots];
+        hashes = new int[slots];
+        newer = new int[slots];
+        older = new int[slots];
+        index = new int[Integer.highestOneBit(Math.max(slots, 1) * 4 - 1)];
+        oldest = NONE;
+        newest = NONE;
+        int count = size;
+        size = 0;
+        if (oldEvents != null && slots > 0) {
+            for (int slot = first; slot != NONE && size < count; slot = oldNewer[slot]) {
+                events[size] = oldEvents[slot];
+                keys[size] = oldKeys[slot];
+                hashes[size] = oldHashes[slot];
+                index[positionOf(keys[size], hashes[size])] = size + 1;
+                linkNewest(size++);
+            }
+        }
+    }
+
+    private void linkNewest(int slot) {
+        older[slot] = newest;
+        newer[slot] = NONE;
+        if (newest == NONE) {
+            oldest = slot;
+        } else {
+            newer[newest] = slot;
+        }
+        newest = slot;
+    }
+
+    private void unlink(int slot) {
+        if (older[slot] == NONE) {
+            oldest = newer[slot];
+        } else {
+            newer[older[slot]] = newer[slot];
+        }
+        if (newer[slot] == NONE) {
+            newest = older[slot];
+        } else {
+            older[newer[slot]] = older[slot];
+        }
+    }
+
+    /**
+     * Returns the position of the key in the index, or the empty position where it belongs.
+     */
+    private int positionOf(Object key, int hash) {
+        int mask = index.length - 1;
+        int position = hash & mask;
+        while (index[position] != 0) {
+            int slot = index[position] - 1;
+            if (hashes[slot] == hash && Objects.equals(keys[slot], key)) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+        return position;
+    }
+
+    private void removePosition(int position) {
+        int mask = index.length - 1;
+        int hole = position;
+        int next = position;
+        while (true) {
+            next = (next + 1) & mask;
+            if (index[next] == 0) {
+                break;
+            }
+            int home = hashes[index[next] - 1] & mask;
+            // move the entry into the hole when the hole lies between its home position and its position
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private static int hash(Object key) {
+        return key == null ? 0 : (int) Murmur3Hasher.fmix64(key.hashCode());
+    }
+}
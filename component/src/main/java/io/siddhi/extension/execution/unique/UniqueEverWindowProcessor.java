@@ -21,7 +21,9 @@ package io.siddhi.extension.execution.unique;
 import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiAppContext;
 import io.siddhi.core.config.SiddhiQueryContext;
 import io.siddhi.core.event.ComplexEventChunk;
 import io.siddhi.core.event.state.StateEvent;
@@ -45,14 +47,18 @@ import io.siddhi.core.util.parser.OperatorParser;
 import io.siddhi.core.util.snapshot.state.State;
 import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import io.siddhi.query.api.expression.Expression;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
-import static java.util.Collections.singletonMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * This is Unique Ever Window Processor implementation.
@@ -73,6 +79,77 @@ import static java.util.Collections.singletonMap;
                                 + "as a comma-separated list.",
                         type = {DataType.INT, DataType.LONG, DataType.FLOAT,
                                 DataType.BOOL, DataType.DOUBLE}),
+                @Parameter(name = "key.mode",
+                        description = "How the unique keys are held, given as 'key.mode=<mode>'. 'value' holds the "
+                                + "keys themselves. 'fingerprint' holds a 64-bit hash of each key instead, so that a "
+                                + "key costs 8 bytes however long it is, with two keys taken for the same key with a "
+                                + "probability of about n^2/2^65 among n distinct keys (3e-8 for a million keys). "
+                                + "'fingerprint128' holds a 128-bit hash, making that probability negligible.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "value"),
+                @Parameter(name = "key.verify",
+                        description = "Given as 'key.verify=true' along with a fingerprint 'key.mode', compares the "
+                                + "keys of events having the same fingerprint, so that colliding keys are told "
+                                + "apart at the cost of extracting the key of the held event for each repeated key.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(name = "memory.limit",
+                        description = "The estimated bytes the keys and events held by the window may take on the "
+                                + "heap, for each partition key, given as 'memory.limit=<bytes>' with an optional "
+                                + "'kb', 'mb' or 'gb' unit. Only applies to the 'value' key.mode along with the "
+                                + "'memory' key.store. The total of all the partitions is reported by the "
+                                + "'unique.memory' gauge of the query when the Siddhi app has statistics.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the window is not bounded"),
+                @Parameter(name = "memory.policy",
+                        description = "What happens once the window holds more than 'memory.limit', given as "
+                                + "'memory.policy=<policy>'. 'evict' expires the events held the longest until the "
+                                + "window fits in the limit again, emitting them as expired events after the event "
+                                + "that made the window exceed it. 'reject' drops the events of new keys that do not "
+                                + "fit in the limit, counting them in the 'unique.memory.rejected' gauge of the query, "
+                                + "while the events of held keys still replace them.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "evict"),
+        },
+        systemParameter = {
+                @SystemParameter(name = "key.log.directory",
+                        description = "The directory in which the keys and events the window admits are logged "
+                                + "ahead of being passed on, into memory-mapped segment files truncated at each "
+                                + "snapshot. Restoring a snapshot replays the keys admitted after it, so that an "
+                                + "event the source replays after a crash replaces the latest event of its key rather "
+                                + "than the one held by the snapshot. The log of a query is discarded when events "
+                                + "arrive before a revision is restored.",
+                        defaultValue = "None, the keys are not logged",
+                        possibleParameters = "Any writable directory path"),
+                @SystemParameter(name = "key.log.sync",
+                        description = "Whether each chunk of logged keys is forced to the disk before the chunk is "
+                                + "passed on, so that the log also outlives a crash of the operating system. "
+                                + "Otherwise it outlives crashes of the process only.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "key.store",
+                        description = "Where the keys and their events are held along with the 'value' key.mode. "
+                                + "'memory' holds them on the heap. 'disk' appends them to memory-mapped segment files "
+                                + "indexed by a memory-mapped hash index, in front of which a bloom filter and a cache "
+                                + "of the recently used keys are kept on the heap, so that the key space can outgrow "
+                                + "the heap. Its snapshots only record the end of the segments, hence the segments "
+                                + "have to outlive the process for a revision to be restored. The name of a class "
+                                + "implementing io.siddhi.extension.execution.unique.UniqueKeyStore plugs in another "
+                                + "store.",
+                        defaultValue = "memory",
+                        possibleParameters = {"memory", "disk", "The name of a UniqueKeyStore class"}),
+                @SystemParameter(name = "key.store.directory",
+                        description = "The directory in which the key stores keep their files.",
+                        defaultValue = "The value of the 'java.io.tmpdir' system property",
+                        possibleParameters = "Any writable directory path"),
+                @SystemParameter(name = "key.store.cache.size",
+                        description = "The number of recently used keys the 'disk' key store caches on the heap.",
+                        defaultValue = "100000",
+                        possibleParameters = "Any non-negative integer")
         },
         examples = {
                 @Example(
@@ -108,9 +185,12 @@ import static java.util.Collections.singletonMap;
 
 public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowProcessor.ExtensionState>
         implements FindableProcessor {
-    private ConcurrentMap<String, StreamEvent> map = new ConcurrentHashMap<>();
-    private ExpressionExecutor[] expressionExecutors;
-
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
+    private Supplier<FingerprintEventMap> fingerprintsFactory;
+    private Function<String, UniqueKeyLog> keyLogFactory;
+    private Function<String, UniqueKeyStore> keyStoreFactory;
+    private MemoryBudget memoryBudget;
 
     @Override
     protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
@@ -119,7 +199,20 @@ public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowP
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        expressionExecutors = attributeExpressionExecutors;
+        UniqueOptions options = UniqueOptions.parse("ever window", attributeExpressionExecutors,
+                UniqueOptions.KEY_MODE, UniqueOptions.KEY_VERIFY, UniqueOptions.MEMORY_LIMIT,
+                UniqueOptions.MEMORY_POLICY);
+        keyExtractor = UniqueKeyExtractor.of(options.getParameters());
+        fingerprintsFactory = FingerprintEventMap.factory(options, true, keyExtractor);
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
+        keyLogFactory = UniqueKeyLog.factory(configReader, siddhiQueryContext);
+        keyStoreFactory = fingerprintsFactory == null ? UniqueKeyStores.factory(configReader, siddhiQueryContext)
+                : null;
+        memoryBudget = MemoryBudget.of(options, siddhiQueryContext, MemoryBudget.EVICT, MemoryBudget.REJECT);
+        if (memoryBudget != null && (fingerprintsFactory != null || keyStoreFactory != null)) {
+            throw new SiddhiAppValidationException("Option '" + UniqueOptions.MEMORY_LIMIT + "' of unique ever "
+                    + "window only applies to keys held by value in memory");
+        }
         return () -> new ExtensionState();
     }
 
@@ -127,16 +220,27 @@ public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowP
     protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
-        synchronized (this) {
+        synchronized (state) {
             long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
 
             StreamEvent streamEvent = streamEventChunk.getFirst();
             streamEventChunk.clear();
             while (streamEvent != null) {
-                StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
+                StreamEvent clonedEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
                 clonedEvent.setType(StreamEvent.Type.EXPIRED);
 
-                StreamEvent oldEvent = map.put(generateKey(clonedEvent), clonedEvent);
+                Object key = keyExtractor.extract(clonedEvent);
+                if (state.account != null && !state.admits(key, clonedEvent)) {
+                    memoryBudget.reject();
+                    StreamEvent next = streamEvent.getNext();
+                    streamEvent.setNext(null);
+                    streamEvent = next;
+                    continue;
+                }
+                StreamEvent oldEvent = state.put(key, clonedEvent);
+                if (state.keyLog != null) {
+                    state.keyLog.add(key, clonedEvent);
+                }
                 if (oldEvent != null) {
                     oldEvent.setTimestamp(currentTime);
                     streamEventChunk.add(oldEvent);
@@ -144,8 +248,17 @@ public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowP
                 StreamEvent next = streamEvent.getNext();
                 streamEvent.setNext(null);
                 streamEventChunk.add(streamEvent);
+                if (state.account != null && state.account.isExceeded()) {
+                    state.evict(clonedEvent, currentTime, streamEventChunk);
+                }
                 streamEvent = next;
             }
+            if (state.keyStore != null) {
+                state.keyStore.flush();
+            }
+            if (state.keyLog != null) {
+                state.keyLog.commit();
+            }
         }
         nextProcessor.process(streamEventChunk);
     }
@@ -163,25 +276,158 @@ public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowP
 
     @Override
     public ProcessingMode getProcessingMode() {
-        return ProcessingMode.BATCH;
+        return ProcessingMode.SLIDE;
     }
 
     class ExtensionState extends State {
 
+        private SnapshotableEventMap map;
+        private FingerprintEventMap fingerprints;
+        private UniqueKeyStore keyStore;
+        private final UniqueKeyLog keyLog;
+        private final MemoryBudget.Account account;
+        // held events in the order they were put, along with replaced events not polled yet, for the evict policy
+        private ArrayDeque<StreamEvent> order;
+
+        private ExtensionState() {
+            if (fingerprintsFactory != null) {
+                fingerprints = fingerprintsFactory.get();
+            } else if (keyStoreFactory != null) {
+                keyStore = keyStoreFactory.apply(SiddhiAppContext.getPartitionFlowId());
+            } else {
+                map = new SnapshotableEventMap();
+            }
+            keyLog = keyLogFactory != null ? keyLogFactory.apply(SiddhiAppContext.getPartitionFlowId()) : null;
+            account = memoryBudget != null ? memoryBudget.newAccount() : null;
+            if (account != null && MemoryBudget.EVICT.equals(memoryBudget.getPolicy())) {
+                order = new ArrayDeque<>();
+            }
+        }
+
+        private StreamEvent put(Object key, StreamEvent event) {
+            if (fingerprints != null) {
+                return fingerprints.put(key, event);
+            } else if (keyStore != null) {
+                return keyStore.put(key, event);
+            }
+            StreamEvent oldEvent = map.put(key, event);
+            if (account != null) {
+                long size = MemoryBudget.sizeOf(key, event);
+                account.charge(oldEvent == null ? size : size - MemoryBudget.sizeOf(key, oldEvent));
+                if (order != null) {
+                    order.add(event);
+                }
+            }
+            return oldEvent;
+        }
+
+        /**
+         * Tells whether the event may be held under the memory policy of the window.
+         */
+        private boolean admits(Object key, StreamEvent event) {
+            return !MemoryBudget.REJECT.equals(memoryBudget.getPolicy()) || map.get(key) != null
+                    || account.fits(MemoryBudget.sizeOf(key, event));
+        }
+
+        /**
+         * Expires the events held the longest until the window fits in its memory limit, keeping at least the given
+         * event.
+         */
+        private void evict(StreamEvent keptEvent, long currentTime, ComplexEventChunk<StreamEvent> streamEventChunk) {
+            if (order == null) {
+                if (!MemoryBudget.EVICT.equals(memoryBudget.getPolicy())) {
+                    return;
+                }
+                // a restored window orders its events by timestamp
+                List<StreamEvent> events = new ArrayList<>(map.values());
+                events.sort(Comparator.comparingLong(StreamEvent::getTimestamp));
+                order = new ArrayDeque<>(events);
+            }
+            while (account.isExceeded() && map.size() > 1) {
+                StreamEvent event = order.poll();
+                if (event == keptEvent) {
+                    order.add(event);
+                    continue;
+                }
+                Object key = keyExtractor.extract(event);
+                if (map.get(key) != event) {
+                    // replaced since it was put
+                    continue;
+                }
+                StreamEvent expiredEvent = map.remove(key, event);
+                account.charge(-MemoryBudget.sizeOf(key, expiredEvent));
+                expiredEvent.setTimestamp(currentTime);
+                streamEventChunk.add(expiredEvent);
+            }
+            if (order.size() > 2 * map.size() + 64) {
+                order.removeIf(event -> map.get(keyExtractor.extract(event)) != event);
+            }
+        }
+
+        private Collection<StreamEvent> values() {
+            if (fingerprints != null) {
+                return fingerprints.values();
+            }
+            return keyStore != null ? keyStore.values() : map.values();
+        }
+
         @Override
         public boolean canDestroy() {
-            return false;
+            if (fingerprints != null) {
+                return fingerprints.isEmpty();
+            }
+            return keyStore != null ? keyStore.size() == 0 : map.isEmpty();
         }
 
         @Override
         public Map<String, Object> snapshot() {
-            return singletonMap("map", UniqueEverWindowProcessor.this.map);
+            synchronized (this) {
+                Map<String, Object> state = new HashMap<>();
+                if (fingerprints != null) {
+                    state.put("fingerprints", fingerprints.copy());
+                } else if (keyStore != null) {
+                    state.put("keyStore", keyStore.snapshot());
+                } else {
+                    state.put("map", map.snapshot());
+                }
+                if (account != null) {
+                    state.put("memory", account.getUsed());
+                }
+                if (keyLog != null) {
+                    state.put("keyLog", keyLog.snapshot());
+                }
+                return state;
+            }
         }
 
         @Override
         public void restore(Map<String, Object> state) {
-            synchronized (UniqueEverWindowProcessor.this) {
-                UniqueEverWindowProcessor.this.map = (ConcurrentMap<String, StreamEvent>) state.get("map");
+            synchronized (this) {
+                if (fingerprints != null) {
+                    fingerprints = (FingerprintEventMap) state.get("fingerprints");
+                    fingerprints.setKeyExtractor(keyExtractor);
+                } else if (keyStore != null) {
+                    UniqueKeyStores.restore(keyStore, state, keyExtractor);
+                } else {
+                    map.restore((Map<Object, StreamEvent>) state.get("map"), keyExtractor);
+                }
+                if (account != null) {
+                    Long memory = (Long) state.get("memory");
+                    if (memory == null) {
+                        memory = 0L;
+                        for (StreamEvent event : map.values()) {
+                            memory += MemoryBudget.sizeOf(keyExtractor.extract(event), event);
+                        }
+                    }
+                    account.reset(memory);
+                    order = null;
+                }
+                if (keyLog != null) {
+                    keyLog.replay((Long) state.get("keyLog"), this::put);
+                }
+                if (keyStore != null) {
+                    keyStore.flush();
+                }
             }
         }
     }
@@ -189,8 +435,15 @@ public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowP
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, map.values(),
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.values(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -200,15 +453,7 @@ public class UniqueEverWindowProcessor extends WindowProcessor<UniqueEverWindowP
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(map.values(), expression, matchingMetaInfoHolder,
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
                 variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
-
-    private String generateKey(StreamEvent event) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (ExpressionExecutor executor : expressionExecutors) {
-            stringBuilder.append(executor.execute(event));
-        }
-        return stringBuilder.toString();
-    }
 }
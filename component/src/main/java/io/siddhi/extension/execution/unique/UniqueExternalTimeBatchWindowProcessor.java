@@ -21,6 +21,7 @@ package io.siddhi.extension.execution.unique;
 import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
 import io.siddhi.core.event.ComplexEvent;
@@ -103,7 +104,43 @@ import java.util.Map;
                         description = "Replaces the 'timestamp' value with the corresponding batch end time stamp." ,
                         type = {DataType.INT, DataType.LONG},
                         optional = true,
-                        defaultValue = "false")
+                        defaultValue = "false"),
+                @Parameter(name = "early.fire.interval",
+                        description = "The interval in milliseconds of external time, given as"
+                                + " 'early.fire.interval=<ms>', at which a provisional view of the events pending in"
+                                + " the batch is emitted before the batch ends. As the external time only moves with"
+                                + " the events, firings happen on the arrival of the first event of each interval."
+                                + " The batches themselves are emitted as without early firing.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, only the batches are emitted"),
+                @Parameter(name = "early.fire.mode",
+                        description = "What each early firing emits, given as 'early.fire.mode=<mode>'. 'full' emits"
+                                + " a reset event followed by all the pending events. 'delta' does so on the first"
+                                + " firing of a batch, and then only emits the events of the keys that changed since"
+                                + " the last firing, each preceded by the expired event fired for its key before.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "full"),
+                @Parameter(name = "early.fire.flag",
+                        description = "A bool attribute of the input stream, given as 'early.fire.flag=<attribute>',"
+                                + " that the window sets to true in the provisional events and to false in the events"
+                                + " of the batches, so that consumers can tell them apart.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the events are left as they arrived")
+        },
+        systemParameter = {
+                @SystemParameter(name = "spill.threshold",
+                        description = "The maximum number of pending batch events held on the heap. Events of the"
+                                + " batch beyond this number are spilled into memory-mapped segment files and"
+                                + " streamed back when the batch is emitted. A non-positive value disables spilling.",
+                        defaultValue = "-1",
+                        possibleParameters = "Any integer"),
+                @SystemParameter(name = "spill.directory",
+                        description = "The directory in which the spill segment and key index files are created.",
+                        defaultValue = "The value of the 'java.io.tmpdir' system property",
+                        possibleParameters = "Any writable directory path")
         },
         examples = {
                 @Example(
@@ -128,7 +165,6 @@ public class UniqueExternalTimeBatchWindowProcessor
         extends WindowProcessor<UniqueExternalTimeBatchWindowProcessor.ExtensionState>
         implements SchedulingProcessor, FindableProcessor {
 
-    private Map<Object, StreamEvent> expiredEvents = null;
     private VariableExpressionExecutor timestampExpressionExecutor;
     private long timeToKeep;
     private long startTime = 0;
@@ -136,16 +172,12 @@ public class UniqueExternalTimeBatchWindowProcessor
     private long schedulerTimeout = 0;
     private Scheduler scheduler;
     private boolean storeExpiredEvents = false;
-    private ExpressionExecutor uniqueExpressionExecutor;
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
     private boolean replaceTimestampWithBatchEndTime = false;
     private boolean outputExpectsExpiredEvents;
-
-    private Map<Object, StreamEvent> currentEvents = new LinkedHashMap<Object, StreamEvent>();
-    private volatile StreamEvent resetEvent = null;
-    private long endTime = -1;
-    private long lastScheduledTime;
-    private long lastCurrentEventTime;
-    private boolean flushed = false;
+    private ConfigReader configReader;
+    private EarlyFiring earlyFiring;
 
     @Override
     protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
@@ -154,89 +186,91 @@ public class UniqueExternalTimeBatchWindowProcessor
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
+        UniqueOptions options = UniqueOptions.parse("external time batch window", attributeExpressionExecutors,
+                UniqueOptions.EARLY_FIRE_INTERVAL, UniqueOptions.EARLY_FIRE_MODE, UniqueOptions.EARLY_FIRE_FLAG);
+        ExpressionExecutor[] parameters = options.getParameters();
         if (outputExpectsExpiredEvents) {
-            this.expiredEvents = new LinkedHashMap<Object, StreamEvent>();
             this.storeExpiredEvents = true;
         }
         this.outputExpectsExpiredEvents = outputExpectsExpiredEvents;
-        if (attributeExpressionExecutors.length >= 3 && attributeExpressionExecutors.length <= 6) {
+        this.configReader = configReader;
+        if (parameters.length >= 3 && parameters.length <= 6) {
 
-            uniqueExpressionExecutor = attributeExpressionExecutors[0];
+            keyExtractor = UniqueKeyExtractor.of(parameters[0]);
 
-            if (!(attributeExpressionExecutors[1] instanceof VariableExpressionExecutor)) {
+            if (!(parameters[1] instanceof VariableExpressionExecutor)) {
                 throw new SiddhiAppValidationException(
                         "ExternalTime window's 2nd parameter timestamp should be a variable, but found "
-                                + attributeExpressionExecutors[1].getClass());
+                                + parameters[1].getClass());
             }
-            if (attributeExpressionExecutors[1].getReturnType() != Attribute.Type.LONG) {
+            if (parameters[1].getReturnType() != Attribute.Type.LONG) {
                 throw new SiddhiAppValidationException(
                         "ExternalTime window's 2nd parameter timestamp should be type long, but found "
-                                + attributeExpressionExecutors[1].getReturnType());
+                                + parameters[1].getReturnType());
             }
-            timestampExpressionExecutor = (VariableExpressionExecutor) attributeExpressionExecutors[1];
+            timestampExpressionExecutor = (VariableExpressionExecutor) parameters[1];
 
-            if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
-                timeToKeep = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue();
-            } else if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.LONG) {
-                timeToKeep = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue();
+            if (parameters[2].getReturnType() == Attribute.Type.INT) {
+                timeToKeep = (Integer) ((ConstantExpressionExecutor) parameters[2]).getValue();
+            } else if (parameters[2].getReturnType() == Attribute.Type.LONG) {
+                timeToKeep = (Long) ((ConstantExpressionExecutor) parameters[2]).getValue();
             } else {
                 throw new SiddhiAppValidationException(
                         "ExternalTimeBatch window's 3rd parameter windowTime should be either int or long, but found "
-                                + attributeExpressionExecutors[2].getReturnType());
+                                + parameters[2].getReturnType());
             }
 
-            if (attributeExpressionExecutors.length >= 4) {
+            if (parameters.length >= 4) {
                 isStartTimeEnabled = true;
-                if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.INT) {
+                if (parameters[3].getReturnType() == Attribute.Type.INT) {
                     startTime = Integer.parseInt(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[3]).getValue()));
-                } else if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.LONG) {
+                            String.valueOf(((ConstantExpressionExecutor) parameters[3]).getValue()));
+                } else if (parameters[3].getReturnType() == Attribute.Type.LONG) {
                     startTime = Long.parseLong(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[3]).getValue()));
+                            String.valueOf(((ConstantExpressionExecutor) parameters[3]).getValue()));
                 } else {
                     throw new SiddhiAppValidationException(
                             "ExternalTimeBatch window's 4th parameter startTime should be "
-                                    + "either int or long, but found " + attributeExpressionExecutors[3]
+                                    + "either int or long, but found " + parameters[3]
                                     .getReturnType());
                 }
             }
 
-            if (attributeExpressionExecutors.length >= 5) {
-                if (attributeExpressionExecutors[4].getReturnType() == Attribute.Type.INT) {
+            if (parameters.length >= 5) {
+                if (parameters[4].getReturnType() == Attribute.Type.INT) {
                     schedulerTimeout = Integer.parseInt(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[4]).getValue()));
-                } else if (attributeExpressionExecutors[4].getReturnType() == Attribute.Type.LONG) {
+                            String.valueOf(((ConstantExpressionExecutor) parameters[4]).getValue()));
+                } else if (parameters[4].getReturnType() == Attribute.Type.LONG) {
                     schedulerTimeout = Long.parseLong(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[4]).getValue()));
+                            String.valueOf(((ConstantExpressionExecutor) parameters[4]).getValue()));
                 } else {
                     throw new SiddhiAppValidationException(
                             "ExternalTimeBatch window's 5th parameter timeout should be either int or long, but found "
-                                    + attributeExpressionExecutors[4].getReturnType());
+                                    + parameters[4].getReturnType());
                 }
             }
 
-            if (attributeExpressionExecutors.length == 6) {
-                if (attributeExpressionExecutors[5].getReturnType() == Attribute.Type.BOOL) {
+            if (parameters.length == 6) {
+                if (parameters[5].getReturnType() == Attribute.Type.BOOL) {
                     replaceTimestampWithBatchEndTime = Boolean.parseBoolean(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[5]).getValue()));
+                            String.valueOf(((ConstantExpressionExecutor) parameters[5]).getValue()));
                 } else {
                     throw new SiddhiAppValidationException("ExternalTimeBatch window's 6th parameter "
                             + "replaceTimestampWithBatchEndTime should be bool, but found "
-                            + attributeExpressionExecutors[5].getReturnType());
+                            + parameters[5].getReturnType());
                 }
             }
         } else {
             throw new SiddhiAppValidationException("ExternalTimeBatch window should only have three to six parameters "
                     + "(<variable> uniqueAttribute, <long> timestamp, "
                     + "<int|long|time> windowTime, <long> startTime, <int|long|time> timeout, "
-                    + "<bool> replaceTimestampWithBatchEndTime), but found " + attributeExpressionExecutors.length
+                    + "<bool> replaceTimestampWithBatchEndTime), but found " + parameters.length
                     + " input attributes");
         }
-        if (schedulerTimeout > 0) {
-            if (expiredEvents == null) {
-                this.expiredEvents = new LinkedHashMap<Object, StreamEvent>();
-            }
-        }
+        earlyFiring = EarlyFiring.of(options, metaStreamEvent, inputDefinition);
+        // the batch end time is written into the timestamp attribute of the retained events
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor,
+                UniqueKeyExtractor.of(timestampExpressionExecutor));
         return () -> new ExtensionState();
     }
 
@@ -250,8 +284,8 @@ public class UniqueExternalTimeBatchWindowProcessor
         }
 
         List<ComplexEventChunk<StreamEvent>> complexEventChunks = new ArrayList<ComplexEventChunk<StreamEvent>>();
-        synchronized (this) {
-            initTiming(streamEventChunk.getFirst());
+        synchronized (state) {
+            initTiming(state, streamEventChunk.getFirst());
 
             StreamEvent nextStreamEvent = streamEventChunk.getFirst();
             while (nextStreamEvent != null) {
@@ -260,24 +294,24 @@ public class UniqueExternalTimeBatchWindowProcessor
                 nextStreamEvent = nextStreamEvent.getNext();
 
                 if (currStreamEvent.getType() == ComplexEvent.Type.TIMER) {
-                    if (lastScheduledTime <= currStreamEvent.getTimestamp()) {
+                    if (state.lastScheduledTime <= currStreamEvent.getTimestamp()) {
                         // implies that there have not been any more events after this schedule has been done.
-                        if (!flushed) {
-                            flushToOutputChunk(streamEventCloner, complexEventChunks,
-                                    lastCurrentEventTime, true);
-                            flushed = true;
+                        if (!state.flushed) {
+                            flushToOutputChunk(state, streamEventCloner, complexEventChunks,
+                                    state.lastCurrentEventTime, true);
+                            state.flushed = true;
                         } else {
-                            if (currentEvents.size() > 0) {
-                                appendToOutputChunk(streamEventCloner, complexEventChunks,
-                                        lastCurrentEventTime, true);
+                            if (state.currentEvents.size() > 0) {
+                                appendToOutputChunk(state, streamEventCloner, complexEventChunks,
+                                        state.lastCurrentEventTime, true);
                             }
                         }
 
                         // rescheduling to emit the current batch after expiring it if no further events arrive.
-                        lastScheduledTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
+                        state.lastScheduledTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
                                 .currentTime() + schedulerTimeout;
                         if (scheduler != null) {
-                            scheduler.notifyAt(lastScheduledTime);
+                            scheduler.notifyAt(state.lastScheduledTime);
                         }
                     }
                     continue;
@@ -286,29 +320,45 @@ public class UniqueExternalTimeBatchWindowProcessor
                 }
 
                 long currentEventTime = (Long) timestampExpressionExecutor.execute(currStreamEvent);
-                if (lastCurrentEventTime < currentEventTime) {
-                    lastCurrentEventTime = currentEventTime;
+                if (state.lastCurrentEventTime < currentEventTime) {
+                    state.lastCurrentEventTime = currentEventTime;
                 }
 
-                if (currentEventTime < endTime) {
-                    cloneAppend(streamEventCloner, currStreamEvent);
+                if (currentEventTime < state.endTime) {
+                    cloneAppend(state, streamEventCloner, currStreamEvent);
+                    if (state.earlyFiring != null && !state.flushed
+                            && state.earlyFiring.isDue(state.lastCurrentEventTime)) {
+                        ComplexEventChunk<StreamEvent> provisionalChunk = new ComplexEventChunk<>(true);
+                        if (outputExpectsExpiredEvents) {
+                            // the provisional reset clears the aggregations, the last batch has to expire ahead of it
+                            expireLastBatch(state, state.lastCurrentEventTime, provisionalChunk);
+                        }
+                        state.earlyFiring.fire(state.currentEvents, state.lastCurrentEventTime, retainedEventCloner,
+                                streamEventCloner, provisionalChunk);
+                        if (provisionalChunk.getFirst() != null) {
+                            complexEventChunks.add(provisionalChunk);
+                        }
+                    }
                 } else {
-                    if (flushed) {
-                        appendToOutputChunk(streamEventCloner, complexEventChunks,
-                                lastCurrentEventTime, false);
-                        flushed = false;
+                    if (state.flushed) {
+                        appendToOutputChunk(state, streamEventCloner, complexEventChunks,
+                                state.lastCurrentEventTime, false);
+                        state.flushed = false;
                     } else {
-                        flushToOutputChunk(streamEventCloner, complexEventChunks,
-                                lastCurrentEventTime, false);
+                        flushToOutputChunk(state, streamEventCloner, complexEventChunks,
+                                state.lastCurrentEventTime, false);
                     }
                     // update timestamp, call next processor
-                    endTime = findEndTime(lastCurrentEventTime, startTime, timeToKeep);
-                    cloneAppend(streamEventCloner, currStreamEvent);
+                    state.endTime = findEndTime(state.lastCurrentEventTime, state.startTime, timeToKeep);
+                    if (state.earlyFiring != null) {
+                        state.earlyFiring.start(state.endTime - timeToKeep);
+                    }
+                    cloneAppend(state, streamEventCloner, currStreamEvent);
                     // triggering the last batch expiration.
                     if (schedulerTimeout > 0) {
-                        lastScheduledTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
+                        state.lastScheduledTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
                                 .currentTime() + schedulerTimeout;
-                        scheduler.notifyAt(lastScheduledTime);
+                        scheduler.notifyAt(state.lastScheduledTime);
                     }
                 }
             }
@@ -318,115 +368,141 @@ public class UniqueExternalTimeBatchWindowProcessor
         }
     }
 
-    private void initTiming(StreamEvent firstStreamEvent) {
+    private void initTiming(ExtensionState state, StreamEvent firstStreamEvent) {
         // for window beginning, if window is empty, set lastSendTime to incomingChunk first.
-        if (endTime < 0) {
+        if (state.endTime < 0) {
             if (isStartTimeEnabled) {
-                endTime = findEndTime((Long) timestampExpressionExecutor.execute(firstStreamEvent), startTime,
-                        timeToKeep);
+                state.endTime = findEndTime((Long) timestampExpressionExecutor.execute(firstStreamEvent),
+                        state.startTime, timeToKeep);
             } else {
-                startTime = (Long) timestampExpressionExecutor.execute(firstStreamEvent);
-                endTime = startTime + timeToKeep;
+                state.startTime = (Long) timestampExpressionExecutor.execute(firstStreamEvent);
+                state.endTime = state.startTime + timeToKeep;
+            }
+            if (state.earlyFiring != null) {
+                state.earlyFiring.start(state.endTime - timeToKeep);
             }
             if (schedulerTimeout > 0) {
-                lastScheduledTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
+                state.lastScheduledTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
                         .currentTime() + schedulerTimeout;
                 if (scheduler != null) {
-                    scheduler.notifyAt(lastScheduledTime);
+                    scheduler.notifyAt(state.lastScheduledTime);
                 }
             }
         }
     }
 
-    private void flushToOutputChunk(StreamEventCloner streamEventCloner,
+    private void flushToOutputChunk(ExtensionState state, StreamEventCloner streamEventCloner,
                                     List<ComplexEventChunk<StreamEvent>> complexEventChunks, long currentTime,
                                     boolean preserveCurrentEvents) {
 
         ComplexEventChunk<StreamEvent> newEventChunk = new ComplexEventChunk<StreamEvent>(true);
-        if (outputExpectsExpiredEvents) {
-            if (expiredEvents.size() > 0) {
-                // mark the timestamp for the expiredType event
-                for (StreamEvent expiredEvent : expiredEvents.values()) {
-                    expiredEvent.setTimestamp(currentTime);
-                    // add expired event to newEventChunk.
-                    newEventChunk.add(expiredEvent);
-                }
-            }
-        }
-        if (expiredEvents != null) {
-            expiredEvents.clear();
-        }
+        expireLastBatch(state, currentTime, newEventChunk);
 
-        if (currentEvents.size() > 0) {
+        if (state.currentEvents.size() > 0) {
 
             // add reset event in front of current events
-            resetEvent.setTimestamp(currentTime);
-            newEventChunk.add(resetEvent);
-            resetEvent = null;
+            state.resetEvent.setTimestamp(currentTime);
+            newEventChunk.add(state.resetEvent);
+            state.resetEvent = null;
 
             // move to expired events
-            for (Map.Entry<Object, StreamEvent> currentEventEntry : currentEvents.entrySet()) {
+            for (Map.Entry<Object, StreamEvent> currentEventEntry : state.currentEvents.entrySet()) {
                 if (preserveCurrentEvents || storeExpiredEvents) {
-                    StreamEvent toExpireEvent = streamEventCloner.copyStreamEvent(currentEventEntry.getValue());
+                    StreamEvent toExpireEvent = retainedEventCloner.copy(currentEventEntry.getValue(),
+                            streamEventCloner);
                     toExpireEvent.setType(StreamEvent.Type.EXPIRED);
-                    expiredEvents.put(currentEventEntry.getKey(), toExpireEvent);
+                    state.expiredEvents.put(currentEventEntry.getKey(), toExpireEvent);
                 }
                 // add current event to next processor
+                if (earlyFiring != null) {
+                    earlyFiring.markFinal(currentEventEntry.getValue());
+                }
                 newEventChunk.add(currentEventEntry.getValue());
             }
 
         }
-        currentEvents.clear();
+        state.currentEvents.clear();
+        if (state.earlyFiring != null) {
+            state.earlyFiring.reset();
+        }
 
         if (newEventChunk.getFirst() != null) {
             complexEventChunks.add(newEventChunk);
         }
     }
 
-    private void appendToOutputChunk(StreamEventCloner streamEventCloner,
+    /**
+     * Emits the expired events of the last batch into the given chunk, if the output expects them, and forgets them.
+     */
+    private void expireLastBatch(ExtensionState state, long currentTime,
+                                 ComplexEventChunk<StreamEvent> newEventChunk) {
+        if (outputExpectsExpiredEvents) {
+            if (state.expiredEvents.size() > 0) {
+                // mark the timestamp for the expiredType event
+                for (StreamEvent expiredEvent : state.expiredEvents.values()) {
+                    expiredEvent.setTimestamp(currentTime);
+                    // add expired event to newEventChunk.
+                    newEventChunk.add(expiredEvent);
+                }
+            }
+        }
+        if (state.expiredEvents != null) {
+            state.expiredEvents.clear();
+        }
+    }
+
+    private void appendToOutputChunk(ExtensionState state, StreamEventCloner streamEventCloner,
                                      List<ComplexEventChunk<StreamEvent>> complexEventChunks, long currentTime,
                                      boolean preserveCurrentEvents) {
         ComplexEventChunk<StreamEvent> newEventChunk = new ComplexEventChunk<StreamEvent>(true);
         Map<Object, StreamEvent> sentEvents = new LinkedHashMap<Object, StreamEvent>();
 
-        if (currentEvents.size() > 0) {
+        if (state.currentEvents.size() > 0) {
 
-            if (expiredEvents.size() > 0) {
+            if (state.expiredEvents.size() > 0) {
                 // mark the timestamp for the expiredType event
-                for (Map.Entry<Object, StreamEvent> expiredEventEntry : expiredEvents.entrySet()) {
+                for (Map.Entry<Object, StreamEvent> expiredEventEntry : state.expiredEvents.entrySet()) {
                     if (outputExpectsExpiredEvents) {
                         // add expired event to newEventChunk.
-                        StreamEvent toExpireEvent = streamEventCloner.copyStreamEvent(expiredEventEntry.getValue());
+                        StreamEvent toExpireEvent = retainedEventCloner.copy(expiredEventEntry.getValue(),
+                                streamEventCloner);
                         toExpireEvent.setTimestamp(currentTime);
                         newEventChunk.add(toExpireEvent);
                     }
 
-                    StreamEvent toSendEvent = streamEventCloner.copyStreamEvent(expiredEventEntry.getValue());
+                    StreamEvent toSendEvent = retainedEventCloner.copy(expiredEventEntry.getValue(), streamEventCloner);
                     toSendEvent.setType(ComplexEvent.Type.CURRENT);
                     sentEvents.put(expiredEventEntry.getKey(), toSendEvent);
                 }
             }
 
             // add reset event in front of current events
-            StreamEvent toResetEvent = streamEventCloner.copyStreamEvent(resetEvent);
+            StreamEvent toResetEvent = retainedEventCloner.copy(state.resetEvent, streamEventCloner);
             toResetEvent.setTimestamp(currentTime);
             newEventChunk.add(toResetEvent);
 
-            for (Map.Entry<Object, StreamEvent> currentEventEntry : currentEvents.entrySet()) {
+            for (Map.Entry<Object, StreamEvent> currentEventEntry : state.currentEvents.entrySet()) {
                 // move to expired events
                 if (preserveCurrentEvents || storeExpiredEvents) {
-                    StreamEvent toExpireEvent = streamEventCloner.copyStreamEvent(currentEventEntry.getValue());
+                    StreamEvent toExpireEvent = retainedEventCloner.copy(currentEventEntry.getValue(),
+                            streamEventCloner);
                     toExpireEvent.setType(StreamEvent.Type.EXPIRED);
-                    expiredEvents.put(currentEventEntry.getKey(), toExpireEvent);
+                    state.expiredEvents.put(currentEventEntry.getKey(), toExpireEvent);
                 }
                 sentEvents.put(currentEventEntry.getKey(), currentEventEntry.getValue());
             }
 
             for (StreamEvent sentEventEntry : sentEvents.values()) {
+                if (earlyFiring != null) {
+                    earlyFiring.markFinal(sentEventEntry);
+                }
                 newEventChunk.add(sentEventEntry);
             }
         }
-        currentEvents.clear();
+        state.currentEvents.clear();
+        if (state.earlyFiring != null) {
+            state.earlyFiring.reset();
+        }
 
         if (newEventChunk.getFirst() != null) {
             complexEventChunks.add(newEventChunk);
@@ -439,15 +515,20 @@ public class UniqueExternalTimeBatchWindowProcessor
         return (currentTime + (timeToKeep - elapsedTimeSinceLastEmit));
     }
 
-    private void cloneAppend(StreamEventCloner streamEventCloner, StreamEvent currStreamEvent) {
-        StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(currStreamEvent);
+    private void cloneAppend(ExtensionState state, StreamEventCloner streamEventCloner,
+                             StreamEvent currStreamEvent) {
+        StreamEvent clonedStreamEvent = retainedEventCloner.copy(currStreamEvent, streamEventCloner);
         if (replaceTimestampWithBatchEndTime) {
-            clonedStreamEvent.setAttribute(endTime, timestampExpressionExecutor.getPosition());
+            clonedStreamEvent.setAttribute(state.endTime, timestampExpressionExecutor.getPosition());
+        }
+        Object key = keyExtractor.extract(clonedStreamEvent);
+        state.currentEvents.put(key, clonedStreamEvent);
+        if (state.earlyFiring != null) {
+            state.earlyFiring.changed(key);
         }
-        currentEvents.put(uniqueExpressionExecutor.execute(clonedStreamEvent), clonedStreamEvent);
-        if (resetEvent == null) {
-            resetEvent = streamEventCloner.copyStreamEvent(currStreamEvent);
-            resetEvent.setType(ComplexEvent.Type.RESET);
+        if (state.resetEvent == null) {
+            state.resetEvent = retainedEventCloner.copy(currStreamEvent, streamEventCloner);
+            state.resetEvent.setType(ComplexEvent.Type.RESET);
         }
     }
 
@@ -466,17 +547,36 @@ public class UniqueExternalTimeBatchWindowProcessor
 
     class ExtensionState extends State {
 
+        private Map<Object, StreamEvent> expiredEvents;
+        private Map<Object, StreamEvent> currentEvents;
+        private StreamEvent resetEvent = null;
+        private long startTime = UniqueExternalTimeBatchWindowProcessor.this.startTime;
+        private long endTime = -1;
+        private long lastScheduledTime;
+        private long lastCurrentEventTime;
+        private boolean flushed = false;
+        private final EarlyFiring.Tracker earlyFiring;
+
+        private ExtensionState() {
+            if (storeExpiredEvents || schedulerTimeout > 0) {
+                expiredEvents = new LinkedHashMap<>();
+            }
+            currentEvents = SpillableUniqueEventMap.newBatchEventMap(configReader, true);
+            earlyFiring = UniqueExternalTimeBatchWindowProcessor.this.earlyFiring != null
+                    ? UniqueExternalTimeBatchWindowProcessor.this.earlyFiring.newTracker() : null;
+        }
+
         @Override
         public boolean canDestroy() {
-            return false;
+            return currentEvents.isEmpty() && (expiredEvents == null || expiredEvents.isEmpty());
         }
 
         @Override
         public  Map<String, Object> snapshot() {
-            synchronized (UniqueExternalTimeBatchWindowProcessor.this) {
+            synchronized (this) {
                 Map<String, Object> map = new HashMap<>();
-                map.put("currentEvents", currentEvents);
-                map.put("expiredEvents", expiredEvents);
+                map.put("currentEvents", SpillableUniqueEventMap.snapshot(currentEvents));
+                map.put("expiredEvents", expiredEvents != null ? new LinkedHashMap<>(expiredEvents) : null);
                 map.put("resetEvent", resetEvent);
                 map.put("endTime", endTime);
                 map.put("startTime", startTime);
@@ -490,17 +590,12 @@ public class UniqueExternalTimeBatchWindowProcessor
 
         @Override
         public void restore(Map<String, Object> map) {
-            synchronized (UniqueExternalTimeBatchWindowProcessor.this) {
-                currentEvents = (Map<Object, StreamEvent>) map.get("currentEvents");
+            synchronized (this) {
+                SpillableUniqueEventMap.restore(currentEvents, map.get("currentEvents"));
                 if (map.get("expiredEvents") != null) {
                     expiredEvents = (Map<Object, StreamEvent>) map.get("expiredEvents");
-                } else {
-                    if (outputExpectsExpiredEvents) {
-                        UniqueExternalTimeBatchWindowProcessor.this.expiredEvents = new LinkedHashMap<>();
-                    }
-                    if (schedulerTimeout > 0) {
-                        UniqueExternalTimeBatchWindowProcessor.this.expiredEvents = new LinkedHashMap<>();
-                    }
+                } else if (storeExpiredEvents || schedulerTimeout > 0) {
+                    expiredEvents = new LinkedHashMap<>();
                 }
                 resetEvent = (StreamEvent) map.get("resetEvent");
                 endTime = (Long) map.get("endTime");
@@ -508,6 +603,9 @@ public class UniqueExternalTimeBatchWindowProcessor
                 lastScheduledTime = (Long) map.get("lastScheduledTime");
                 lastCurrentEventTime = (Long) map.get("lastCurrentEventTime");
                 flushed = (Boolean) map.get("flushed");
+                if (earlyFiring != null && endTime >= 0) {
+                    earlyFiring.start(endTime - timeToKeep);
+                }
             }
         }
     }
@@ -520,10 +618,17 @@ public class UniqueExternalTimeBatchWindowProcessor
         this.scheduler = scheduler;
     }
 
-    @Override public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+    @Override public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, expiredEvents,
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.expiredEvents,
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -535,11 +640,8 @@ public class UniqueExternalTimeBatchWindowProcessor
                                                            List<VariableExpressionExecutor> variableExpressionExecutors,
                                                            Map<String, Table> tableMap,
                                                            SiddhiQueryContext siddhiQueryContext) {
-        if (expiredEvents == null) {
-            expiredEvents = new LinkedHashMap<Object, StreamEvent>();
-            storeExpiredEvents = true;
-        }
-        return OperatorParser.constructOperator(expiredEvents, expression, matchingMetaInfoHolder,
-                variableExpressionExecutors, tableMap, siddhiQueryContext);
+        storeExpiredEvents = true;
+        return OperatorParser.constructOperator(new LinkedHashMap<Object, StreamEvent>(), expression,
+                matchingMetaInfoHolder, variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
 }
@@ -23,7 +23,6 @@ import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.event.stream.StreamEvent;
-import io.siddhi.core.executor.ExpressionExecutor;
 
 import java.util.Map;
 
@@ -67,11 +66,8 @@ import java.util.Map;
 
 public class UniqueFirstLengthBatchWindowProcessor extends UniqueLengthBatchWindowProcessor {
     @Override protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                            ExpressionExecutor uniqueKeyExpressionExecutor,
+                                            UniqueKeyExtractor keyExtractor,
                                             StreamEvent clonedStreamEvent) {
-        String uniqueKey = uniqueKeyExpressionExecutor.execute(clonedStreamEvent).toString();
-        if (!uniqueEventMap.containsKey(uniqueKey)) {
-            uniqueEventMap.put(uniqueKey, clonedStreamEvent);
-        }
+        uniqueEventMap.putIfAbsent(keyExtractor.extract(clonedStreamEvent), clonedStreamEvent);
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.state.StateEvent;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.window.FindableProcessor;
+import io.siddhi.core.query.processor.stream.window.WindowProcessor;
+import io.siddhi.core.table.Table;
+import io.siddhi.core.util.collection.operator.CompiledCondition;
+import io.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import io.siddhi.core.util.collection.operator.Operator;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.parser.OperatorParser;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import io.siddhi.query.api.expression.Expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * Unique first length window processor implementation, letting through the first event of each unique key among the
+ * latest unique keys.
+ */
+
+@Extension(
+        name = "firstLength",
+        namespace = "unique",
+        description = "This is a sliding length window that holds the first event of each of the latest unique keys, "
+                + "up to the window length. When a new event arrives with a key that is already in the window, that "
+                + "event is not processed by the window. When an event with a new key arrives while the window is "
+                + "full, the oldest held event expires, after which the next event of its key is let through again. "
+                + "Hence each key is suppressed until the window length of other keys arrived after its first "
+                + "occurrence, whereas the 'firstLengthBatch' window forgets all the keys at the end of each batch.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness."
+                                + " If there is more than one parameter to check for uniqueness,"
+                                + " it can be specified as an array separated by commas.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL, DataType.DOUBLE,
+                                DataType.STRING}),
+                @Parameter(name = "window.length",
+                        description = "The number of unique keys that should be held in the sliding window.",
+                        type = {DataType.INT})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream PaymentEvents (paymentId string, account string, amount double) ;\n" +
+                                "from PaymentEvents#window.unique:firstLength(paymentId, 10000)\n" +
+                                "select paymentId, account, amount \n" +
+                                "insert into Payments ;",
+
+                        description = "The above query lets through the first event of each 'paymentId' arriving "
+                                + "from the 'PaymentEvents' stream, and drops the events redelivered with a "
+                                + "'paymentId' among the latest 10000 payments."
+                )
+        }
+)
+
+public class UniqueFirstLengthWindowProcessor
+        extends WindowProcessor<UniqueFirstLengthWindowProcessor.ExtensionState> implements FindableProcessor {
+
+    private int length;
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        if (attributeExpressionExecutors.length < 2) {
+            throw new SiddhiAppValidationException("Unique firstLength window should have at least two parameters "
+                    + "(<int|long|float|bool|double|string> unique.key, ..., <int> window.length), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        keyExtractor = UniqueKeyExtractor.of(Arrays.copyOf(attributeExpressionExecutors,
+                attributeExpressionExecutors.length - 1));
+        ExpressionExecutor lengthExecutor = attributeExpressionExecutors[attributeExpressionExecutors.length - 1];
+        if (!(lengthExecutor instanceof ConstantExpressionExecutor)
+                || lengthExecutor.getReturnType() != Attribute.Type.INT) {
+            throw new SiddhiAppValidationException("Unique firstLength window should have a constant int for its "
+                    + "length parameter, but found " + lengthExecutor.getReturnType());
+        }
+        length = (Integer) ((ConstantExpressionExecutor) lengthExecutor).getValue();
+        if (length <= 0) {
+            throw new SiddhiAppValidationException("Unique firstLength window's length should be positive, but "
+                    + "found " + length);
+        }
+        // the keys of the held events are kept along with them, so their attributes are never read again
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent);
+        return () -> new ExtensionState();
+    }
+
+    @Override
+    protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                                     StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                                     ExtensionState state) {
+        synchronized (state) {
+            long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                Object key = keyExtractor.extract(streamEvent);
+                if (state.events.containsKey(key)) {
+                    streamEventChunk.remove();
+                    continue;
+                }
+                StreamEvent heldEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                heldEvent.setType(StreamEvent.Type.EXPIRED);
+                state.events.put(key, heldEvent);
+                if (state.events.size() > length) {
+                    Iterator<StreamEvent> heldEvents = state.events.values().iterator();
+                    StreamEvent eldestEvent = heldEvents.next();
+                    heldEvents.remove();
+                    eldestEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(eldestEvent);
+                }
+            }
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator) {
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.events.values(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              List<VariableExpressionExecutor> variableExpressionExecutors,
+                                              Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
+                variableExpressionExecutors, tableMap, siddhiQueryContext);
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.SLIDE;
+    }
+
+    class ExtensionState extends State {
+
+        private LinkedHashMap<Object, StreamEvent> events = new LinkedHashMap<>();
+
+        @Override
+        public boolean canDestroy() {
+            return events.isEmpty();
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            synchronized (this) {
+                return singletonMap("events", new LinkedHashMap<>(events));
+            }
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            synchronized (this) {
+                events = (LinkedHashMap<Object, StreamEvent>) state.get("events");
+            }
+        }
+    }
+}
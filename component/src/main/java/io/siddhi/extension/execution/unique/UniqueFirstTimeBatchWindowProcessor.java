@@ -21,9 +21,9 @@ package io.siddhi.extension.execution.unique;
 import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.event.stream.StreamEvent;
-import io.siddhi.core.executor.ExpressionExecutor;
 
 import java.util.Map;
 
@@ -52,7 +52,40 @@ import java.util.Map;
                                 "window at a time different to the standard time.",
                         defaultValue = "Timestamp of the first event.",
                         type = {DataType.INT, DataType.LONG},
-                        optional = true)
+                        optional = true),
+                @Parameter(name = "memory.limit",
+                        description = "The estimated bytes the events pending in a batch may take on the heap, for"
+                                + " each partition key, given as 'memory.limit=<bytes>' with an optional 'kb', 'mb' or"
+                                + " 'gb' unit. The estimate counts the keys and the attribute values of the events."
+                                + " The total of all the partitions is reported by the 'unique.memory' gauge of the"
+                                + " query when the Siddhi app has statistics. The events of the last batch, held to"
+                                + " be expired or joined, are not counted.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the batch is not bounded"),
+                @Parameter(name = "memory.policy",
+                        description = "What happens to an event of a new key that does not fit in 'memory.limit',"
+                                + " given as 'memory.policy=<policy>'. 'flush' emits the pending batch right away"
+                                + " and starts a new one with the event, while the batches go on being emitted on"
+                                + " schedule. 'spill' spills the event into memory-mapped segment files as with"
+                                + " 'spill.threshold'. 'evict' drops the oldest pending events of the batch to make"
+                                + " room for it. 'reject' drops the event, counting it in the"
+                                + " 'unique.memory.rejected' gauge of the query.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "flush")
+        },
+        systemParameter = {
+                @SystemParameter(name = "spill.threshold",
+                        description = "The maximum number of pending batch events held on the heap. Events of the"
+                                + " batch beyond this number are spilled into memory-mapped segment files and"
+                                + " streamed back when the batch is emitted. A non-positive value disables spilling.",
+                        defaultValue = "-1",
+                        possibleParameters = "Any integer"),
+                @SystemParameter(name = "spill.directory",
+                        description = "The directory in which the spill segment and key index files are created.",
+                        defaultValue = "The value of the 'java.io.tmpdir' system property",
+                        possibleParameters = "Any writable directory path")
         },
         examples = {
                 @Example(
@@ -70,12 +103,8 @@ import java.util.Map;
 
 public class UniqueFirstTimeBatchWindowProcessor extends UniqueTimeBatchWindowProcessor {
     @Override
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                  ExpressionExecutor uniqueKeyExpressionExecutor,
+    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, UniqueKeyExtractor keyExtractor,
                                   StreamEvent clonedStreamEvent) {
-        String uniqueKey = uniqueKeyExpressionExecutor.execute(clonedStreamEvent).toString();
-        if (!uniqueEventMap.containsKey(uniqueKey)) {
-            uniqueEventMap.put(uniqueKey, clonedStreamEvent);
-        }
+        uniqueEventMap.putIfAbsent(keyExtractor.extract(clonedStreamEvent), clonedStreamEvent);
     }
 }
@@ -21,9 +21,10 @@ package io.siddhi.extension.execution.unique;
 import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiAppContext;
 import io.siddhi.core.config.SiddhiQueryContext;
-import io.siddhi.core.event.ComplexEvent;
 import io.siddhi.core.event.ComplexEventChunk;
 import io.siddhi.core.event.state.StateEvent;
 import io.siddhi.core.event.stream.MetaStreamEvent;
@@ -46,14 +47,21 @@ import io.siddhi.core.util.parser.OperatorParser;
 import io.siddhi.core.util.snapshot.state.State;
 import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import io.siddhi.query.api.expression.Expression;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-
-import static java.util.Collections.singletonMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * class representing unique first window processor implementation.
@@ -74,6 +82,75 @@ import static java.util.Collections.singletonMap;
                                 + " it can be specified as an array separated by commas.",
                         type = {DataType.INT, DataType.LONG, DataType.FLOAT,
                                 DataType.BOOL, DataType.DOUBLE}),
+                @Parameter(name = "key.mode",
+                        description = "How the unique keys are held, given as 'key.mode=<mode>'. 'value' holds the "
+                                + "keys themselves. 'fingerprint' holds a 64-bit hash of each key instead, so that a "
+                                + "key costs 8 bytes however long it is, with two keys taken for the same key with a "
+                                + "probability of about n^2/2^65 among n distinct keys (3e-8 for a million keys). "
+                                + "'fingerprint128' holds a 128-bit hash, making that probability negligible.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "value"),
+                @Parameter(name = "key.verify",
+                        description = "Given as 'key.verify=true' along with a fingerprint 'key.mode', compares the "
+                                + "keys of events having the same fingerprint, so that colliding keys are told "
+                                + "apart at the cost of extracting the key of the held event for each repeated key.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "false"),
+                @Parameter(name = "key.limit",
+                        description = "The number of unique keys above which the window stops holding the keys "
+                                + "exactly, given as 'key.limit=<count>'. The keys are then moved into a bloom filter "
+                                + "that grows with the number of keys, dropping a new event taken for a duplicate "
+                                + "with the probability given by 'key.limit.error'. The switch is persisted in "
+                                + "snapshots, and the number of partitions of the window holding approximate keys is "
+                                + "reported by the 'unique.first.approximate' gauge of the query when the Siddhi app "
+                                + "has statistics. Only applies when the window is not joined, as the filter holds no "
+                                + "events.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the keys are held exactly"),
+                @Parameter(name = "key.limit.error",
+                        description = "The probability of dropping an event having a new key once 'key.limit' is "
+                                + "exceeded, given as 'key.limit.error=<probability>'.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "0.01"),
+        },
+        systemParameter = {
+                @SystemParameter(name = "key.log.directory",
+                        description = "The directory in which the keys the window admits are logged ahead of their "
+                                + "events being passed on, into memory-mapped segment files truncated at each "
+                                + "snapshot. Restoring a snapshot replays the keys admitted after it, so that the "
+                                + "events the source replays after a crash are dropped as duplicates. The log of a "
+                                + "query is discarded when events arrive before a revision is restored.",
+                        defaultValue = "None, the keys are not logged",
+                        possibleParameters = "Any writable directory path"),
+                @SystemParameter(name = "key.log.sync",
+                        description = "Whether each chunk of logged keys is forced to the disk before the chunk is "
+                                + "passed on, so that the log also outlives a crash of the operating system. "
+                                + "Otherwise it outlives crashes of the process only.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "key.store",
+                        description = "Where the keys and their events are held along with the 'value' key.mode. "
+                                + "'memory' holds them on the heap. 'disk' appends them to memory-mapped segment files "
+                                + "indexed by a memory-mapped hash index, in front of which a bloom filter and a cache "
+                                + "of the recently used keys are kept on the heap, so that the key space can outgrow "
+                                + "the heap. Its snapshots only record the end of the segments, hence the segments "
+                                + "have to outlive the process for a revision to be restored. The name of a class "
+                                + "implementing io.siddhi.extension.execution.unique.UniqueKeyStore plugs in another "
+                                + "store.",
+                        defaultValue = "memory",
+                        possibleParameters = {"memory", "disk", "The name of a UniqueKeyStore class"}),
+                @SystemParameter(name = "key.store.directory",
+                        description = "The directory in which the key stores keep their files.",
+                        defaultValue = "The value of the 'java.io.tmpdir' system property",
+                        possibleParameters = "Any writable directory path"),
+                @SystemParameter(name = "key.store.cache.size",
+                        description = "The number of recently used keys the 'disk' key store caches on the heap.",
+                        defaultValue = "100000",
+                        possibleParameters = "Any non-negative integer")
         },
         examples = {
                 @Example(
@@ -92,8 +169,15 @@ import static java.util.Collections.singletonMap;
 
 public class UniqueFirstWindowProcessor extends WindowProcessor<UniqueFirstWindowProcessor.ExtensionState>
         implements FindableProcessor {
-    private ConcurrentMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
-    private ExpressionExecutor[] uniqueExpressionExecutors;
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
+    private Supplier<FingerprintEventMap> fingerprintsFactory;
+    private boolean retainEvents;
+    private Function<String, UniqueKeyLog> keyLogFactory;
+    private Function<String, UniqueKeyStore> keyStoreFactory;
+    private long keyLimit = Long.MAX_VALUE;
+    private double keyLimitError;
+    private final AtomicLong approximateStates = new AtomicLong();
 
     @Override
     protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
@@ -102,7 +186,30 @@ public class UniqueFirstWindowProcessor extends WindowProcessor<UniqueFirstWindo
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        uniqueExpressionExecutors = attributeExpressionExecutors;
+        UniqueOptions options = UniqueOptions.parse("first window", attributeExpressionExecutors,
+                UniqueOptions.KEY_MODE, UniqueOptions.KEY_VERIFY, UniqueOptions.KEY_LIMIT,
+                UniqueOptions.KEY_LIMIT_ERROR);
+        keyExtractor = UniqueKeyExtractor.of(options.getParameters());
+        // no event of this window is ever expired, so its events are only held to be found by joins
+        retainEvents = findToBeExecuted;
+        fingerprintsFactory = FingerprintEventMap.factory(options, retainEvents, keyExtractor);
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
+        keyLogFactory = UniqueKeyLog.factory(configReader, siddhiQueryContext);
+        keyStoreFactory = fingerprintsFactory == null ? UniqueKeyStores.factory(configReader, siddhiQueryContext)
+                : null;
+        if (options.isSet(UniqueOptions.KEY_LIMIT)) {
+            if (retainEvents || options.getBoolean(UniqueOptions.KEY_VERIFY, false) || keyStoreFactory != null) {
+                throw new SiddhiAppValidationException("Option '" + UniqueOptions.KEY_LIMIT + "' of unique first "
+                        + "window only applies when the window holds nothing but its keys, hence it is not joined, "
+                        + "does not verify fingerprints and has no key store");
+            }
+            keyLimit = options.getPositiveLong(UniqueOptions.KEY_LIMIT, Long.MAX_VALUE);
+            keyLimitError = options.getProbability(UniqueOptions.KEY_LIMIT_ERROR, 0.01);
+            UniqueMetrics.registerGauge(siddhiQueryContext, "unique.first.approximate", approximateStates::get);
+        } else if (options.isSet(UniqueOptions.KEY_LIMIT_ERROR)) {
+            throw new SiddhiAppValidationException("Option '" + UniqueOptions.KEY_LIMIT_ERROR + "' of unique first "
+                    + "window only applies along with '" + UniqueOptions.KEY_LIMIT + "'");
+        }
         return () -> new ExtensionState();
     }
 
@@ -110,18 +217,27 @@ public class UniqueFirstWindowProcessor extends WindowProcessor<UniqueFirstWindo
     protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
-        synchronized (this) {
+        synchronized (state) {
             while (streamEventChunk.hasNext()) {
                 StreamEvent streamEvent = streamEventChunk.next();
-
-                StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                clonedEvent.setType(StreamEvent.Type.EXPIRED);
-
-                ComplexEvent oldEvent = map.putIfAbsent(generateKey(clonedEvent), clonedEvent);
-                if (oldEvent != null) {
+                Object key = keyExtractor.extract(streamEvent);
+                StreamEvent clonedEvent = null;
+                if (state.retainsEvents()) {
+                    clonedEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                    clonedEvent.setType(StreamEvent.Type.EXPIRED);
+                }
+                if (!state.add(key, clonedEvent)) {
                     streamEventChunk.remove();
+                } else if (state.keyLog != null) {
+                    state.keyLog.add(key, clonedEvent);
                 }
             }
+            if (state.keyStore != null) {
+                state.keyStore.flush();
+            }
+            if (state.keyLog != null) {
+                state.keyLog.commit();
+            }
         }
         nextProcessor.process(streamEventChunk);
     }
@@ -138,40 +254,189 @@ public class UniqueFirstWindowProcessor extends WindowProcessor<UniqueFirstWindo
 
     @Override
     public ProcessingMode getProcessingMode() {
-        return ProcessingMode.BATCH;
+        return ProcessingMode.SLIDE;
     }
 
     class ExtensionState extends State {
 
+        private ConcurrentMap<Object, StreamEvent> map;
+        private Set<Object> keys;
+        private FingerprintEventMap fingerprints;
+        private UniqueKeyStore keyStore;
+        private ScalableBloomFilter approximateKeys;
+        private final UniqueKeyLog keyLog;
+
+        private ExtensionState() {
+            if (fingerprintsFactory != null) {
+                fingerprints = fingerprintsFactory.get();
+            } else if (keyStoreFactory != null) {
+                keyStore = keyStoreFactory.apply(SiddhiAppContext.getPartitionFlowId());
+            } else if (retainEvents) {
+                map = new ConcurrentHashMap<>();
+            } else {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keyLog = keyLogFactory != null ? keyLogFactory.apply(SiddhiAppContext.getPartitionFlowId()) : null;
+        }
+
+        private boolean retainsEvents() {
+            if (approximateKeys != null) {
+                return false;
+            } else if (fingerprints != null) {
+                return fingerprints.retainsEvents();
+            }
+            return keyStore != null ? retainEvents : keys == null;
+        }
+
+        private boolean add(Object key, StreamEvent event) {
+            if (approximateKeys != null) {
+                return approximateKeys.add(FingerprintEventMap.fingerprint(key));
+            } else if (keys != null) {
+                if (!keys.add(key)) {
+                    return false;
+                }
+                if (keys.size() > keyLimit) {
+                    approximate();
+                }
+                return true;
+            } else if (fingerprints != null) {
+                if (fingerprints.retainsEvents()) {
+                    return fingerprints.putIfAbsent(key, event) == null;
+                }
+                if (!fingerprints.add(key)) {
+                    return false;
+                }
+                if (fingerprints.size() > keyLimit) {
+                    approximate();
+                }
+                return true;
+            } else if (keyStore != null) {
+                if (keyStore.containsKey(key)) {
+                    return false;
+                }
+                keyStore.put(key, event);
+                return true;
+            }
+            return map.putIfAbsent(key, event) == null;
+        }
+
+        /**
+         * Moves the keys held exactly into a bloom filter.
+         */
+        private void approximate() {
+            ScalableBloomFilter filter = new ScalableBloomFilter(keyLimit * 2, keyLimitError);
+            if (keys != null) {
+                for (Object key : keys) {
+                    filter.add(FingerprintEventMap.fingerprint(key));
+                }
+            } else {
+                fingerprints.forEachFingerprint(filter::add);
+            }
+            keys = null;
+            fingerprints = null;
+            approximateKeys = filter;
+            approximateStates.incrementAndGet();
+        }
+
+        private Collection<StreamEvent> values() {
+            if (approximateKeys != null) {
+                return Collections.emptyList();
+            } else if (fingerprints != null) {
+                return fingerprints.values();
+            }
+            return keyStore != null ? keyStore.values() : map.values();
+        }
+
         @Override
         public boolean canDestroy() {
-            return false;
+            if (approximateKeys != null) {
+                return approximateKeys.size() == 0;
+            } else if (fingerprints != null) {
+                return fingerprints.isEmpty();
+            } else if (keyStore != null) {
+                return keyStore.size() == 0;
+            }
+            return keys != null ? keys.isEmpty() : map.isEmpty();
         }
 
         @Override
         public Map<String, Object> snapshot() {
-            return singletonMap("map", UniqueFirstWindowProcessor.this.map);
+            synchronized (this) {
+                Map<String, Object> state = new HashMap<>();
+                if (approximateKeys != null) {
+                    state.put("approximateKeys", approximateKeys.copy());
+                } else if (fingerprints != null) {
+                    state.put("fingerprints", fingerprints.copy());
+                } else if (keyStore != null) {
+                    state.put("keyStore", keyStore.snapshot());
+                } else if (keys != null) {
+                    Set<Object> copy = ConcurrentHashMap.newKeySet(keys.size());
+                    copy.addAll(keys);
+                    state.put("keys", copy);
+                } else {
+                    state.put("map", new ConcurrentHashMap<>(this.map));
+                }
+                if (keyLog != null) {
+                    state.put("keyLog", keyLog.snapshot());
+                }
+                return state;
+            }
         }
 
         @Override
         public void restore(Map<String, Object> map) {
-            UniqueFirstWindowProcessor.this.map = (ConcurrentMap<String, StreamEvent>) map.get("map");
-        }
-    }
-
-    private String generateKey(StreamEvent event) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (ExpressionExecutor executor : uniqueExpressionExecutors) {
-            stringBuilder.append(executor.execute(event));
+            synchronized (this) {
+                ScalableBloomFilter restoredKeys = (ScalableBloomFilter) map.get("approximateKeys");
+                if ((restoredKeys != null) != (approximateKeys != null)) {
+                    approximateStates.addAndGet(restoredKeys != null ? 1 : -1);
+                }
+                approximateKeys = restoredKeys;
+                if (approximateKeys != null) {
+                    keys = null;
+                    fingerprints = null;
+                } else if (fingerprintsFactory != null) {
+                    fingerprints = (FingerprintEventMap) map.get("fingerprints");
+                    fingerprints.setKeyExtractor(keyExtractor);
+                } else if (keyStore != null) {
+                    UniqueKeyStores.restore(keyStore, map, keyExtractor);
+                } else if (!retainEvents) {
+                    keys = (Set<Object>) map.get("keys");
+                    if (keys == null) {
+                        // revisions taken before the keys were held on their own hold the events of the keys
+                        keys = ConcurrentHashMap.newKeySet();
+                        for (StreamEvent event : ((Map<Object, StreamEvent>) map.get("map")).values()) {
+                            keys.add(keyExtractor.extract(event));
+                        }
+                    }
+                } else {
+                    // revisions taken before the keys were extracted hold them as strings
+                    this.map = new ConcurrentHashMap<>();
+                    for (StreamEvent event : ((Map<Object, StreamEvent>) map.get("map")).values()) {
+                        this.map.put(keyExtractor.extract(event), event);
+                    }
+                }
+                if (keyLog != null) {
+                    keyLog.replay((Long) map.get("keyLog"), this::add);
+                }
+                if (keyStore != null) {
+                    keyStore.flush();
+                }
+            }
         }
-        return stringBuilder.toString();
     }
 
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, map.values(),
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.values(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -181,7 +446,7 @@ public class UniqueFirstWindowProcessor extends WindowProcessor<UniqueFirstWindo
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> eventTableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(this.map.values(), expression, matchingMetaInfoHolder,
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
                 variableExpressionExecutors, eventTableMap, siddhiQueryContext);
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.util.SiddhiConstants;
+import io.siddhi.query.api.definition.Attribute;
+
+import java.util.Arrays;
+
+/**
+ * Extracts the unique key of an event from the unique key parameters of an extension.
+ * <p>
+ * A single key parameter yields its value as is, several key parameters yield the list of their values, which
+ * unlike concatenated strings can not collide for different combinations. Null values are replaced by
+ * {@link NullKey#INSTANCE} so that keys can be held by maps that reject nulls. Plain attribute references are read
+ * straight from the data arrays of the event, and only computed expressions are evaluated through their executor.
+ */
+abstract class UniqueKeyExtractor {
+
+    /**
+     * Key standing for a null unique key value. Being an enum constant it stays identical across snapshots.
+     */
+    enum NullKey {
+        INSTANCE
+    }
+
+    /**
+     * Creates the extractor for the given unique key parameters.
+     *
+     * @param keyExecutors the executors of the unique key parameters, at least one
+     * @return the key extractor
+     */
+    static UniqueKeyExtractor of(ExpressionExecutor[] keyExecutors) {
+        if (keyExecutors.length == 1) {
+            return of(keyExecutors[0]);
+        }
+        UniqueKeyExtractor[] parts = new UniqueKeyExtractor[keyExecutors.length];
+        for (int i = 0; i < keyExecutors.length; i++) {
+            parts[i] = of(keyExecutors[i]);
+        }
+        return new CompositeKeyExtractor(parts);
+    }
+
+    static UniqueKeyExtractor of(ExpressionExecutor keyExecutor) {
+        if (keyExecutor instanceof VariableExpressionExecutor) {
+            return new AttributeKeyExtractor((VariableExpressionExecutor) keyExecutor);
+        }
+        return new ExecutorKeyExtractor(keyExecutor);
+    }
+
+    /**
+     * Returns the unique key of the given event.
+     *
+     * @param event the event
+     * @return the unique key, a {@link java.util.List} of values for composite keys, never null
+     */
+    abstract Object extract(StreamEvent event);
+
+    /**
+     * Returns the type of the extracted keys.
+     *
+     * @return the type of the single key parameter, or {@code null} for composite keys
+     */
+    abstract Attribute.Type getKeyType();
+
+    /**
+     * Returns the positions in the before window data of the event that the extractor reads. Only call once the query
+     * is parsed, as attribute positions are not final before.
+     *
+     * @return the positions, or {@code null} when the extractor may read any attribute
+     */
+    abstract int[] getBeforeWindowDataPositions();
+
+    /**
+     * Returns the union of the before window data positions read by the given extractors.
+     *
+     * @param extractors the extractors
+     * @return the sorted positions, or {@code null} when any of the extractors may read any attribute
+     */
+    static int[] union(UniqueKeyExtractor... extractors) {
+        int[] union = new int[0];
+        for (UniqueKeyExtractor extractor : extractors) {
+            int[] positions = extractor.getBeforeWindowDataPositions();
+            if (positions == null) {
+                return null;
+            }
+            for (int position : positions) {
+                if (Arrays.binarySearch(union, position) < 0) {
+                    union = Arrays.copyOf(union, union.length + 1);
+                    union[union.length - 1] = position;
+                    Arrays.sort(union);
+                }
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Extractor reading an attribute by its position in the event. The position is only final once the whole query
+     * is parsed, hence it is resolved on the first extraction rather than at init, and kept packed in a single field
+     * so that concurrent readers never see it half written.
+     */
+    static class AttributeKeyExtractor extends UniqueKeyExtractor {
+
+        private final VariableExpressionExecutor variableExecutor;
+        private int location = -1;
+
+        AttributeKeyExtractor(VariableExpressionExecutor variableExecutor) {
+            this.variableExecutor = variableExecutor;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            int resolved = location;
+            if (resolved < 0) {
+                int[] position = variableExecutor.getPosition();
+                resolved = (position[SiddhiConstants.STREAM_ATTRIBUTE_INDEX_IN_TYPE] << 2)
+                        | position[SiddhiConstants.STREAM_ATTRIBUTE_TYPE_INDEX];
+                location = resolved;
+            }
+            Object value;
+            switch (resolved & 3) {
+                case SiddhiConstants.BEFORE_WINDOW_DATA_INDEX:
+                    value = event.getBeforeWindowData()[resolved >>> 2];
+                    break;
+                case SiddhiConstants.OUTPUT_DATA_INDEX:
+                    value = event.getOutputData()[resolved >>> 2];
+                    break;
+                default:
+                    value = event.getOnAfterWindowData()[resolved >>> 2];
+            }
+            return value == null ? NullKey.INSTANCE : value;
+        }
+
+        @Override
+        Attribute.Type getKeyType() {
+            return variableExecutor.getReturnType();
+        }
+
+        @Override
+        int[] getBeforeWindowDataPositions() {
+            int[] position = variableExecutor.getPosition();
+            if (position[SiddhiConstants.STREAM_ATTRIBUTE_TYPE_INDEX] == SiddhiConstants.BEFORE_WINDOW_DATA_INDEX) {
+                return new int[]{position[SiddhiConstants.STREAM_ATTRIBUTE_INDEX_IN_TYPE]};
+            }
+            return new int[0];
+        }
+    }
+
+    /**
+     * Extractor evaluating a computed key expression.
+     */
+    static class ExecutorKeyExtractor extends UniqueKeyExtractor {
+
+        private final ExpressionExecutor keyExecutor;
+
+        ExecutorKeyExtractor(ExpressionExecutor keyExecutor) {
+            this.keyExecutor = keyExecutor;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            Object value = keyExecutor.execute(event);
+            return value == null ? NullKey.INSTANCE : value;
+        }
+
+        @Override
+        Attribute.Type getKeyType() {
+            return keyExecutor.getReturnType();
+        }
+
+        @Override
+        int[] getBeforeWindowDataPositions() {
+            if (keyExecutor instanceof ContentKeyExecutor) {
+                return ((ContentKeyExecutor) keyExecutor).getBeforeWindowDataPositions();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Extractor of several key parameters.
+     */
+    static class CompositeKeyExtractor extends UniqueKeyExtractor {
+
+        private final UniqueKeyExtractor[] parts;
+
+        CompositeKeyExtractor(UniqueKeyExtractor[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            Object[] values = new Object[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = parts[i].extract(event);
+            }
+            return Arrays.asList(values);
+        }
+
+        @Override
+        Attribute.Type getKeyType() {
+            return null;
+        }
+
+        @Override
+        int[] getBeforeWindowDataPositions() {
+            return union(parts);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.util.config.ConfigReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the keys a unique window admits, so that the keys admitted since the last snapshot outlive a
+ * crash of the process and the duplicates the source replays after the snapshot is restored are still dropped.
+ * <p>
+ * The entries admitted while processing a chunk are appended as a single record, prefixed by its length and a CRC32
+ * checksum, to memory-mapped append-only segment files. Mapped pages are written back by the operating system even
+ * when the process dies, and with {@code key.log.sync} each record is also forced to the disk, committing the keys of
+ * the whole chunk at once. Each snapshot starts a new segment, records its sequence number in the snapshot, and
+ * deletes the segments older than the previous snapshot, which no persisted revision needs once a newer one is taken.
+ * Restoring a snapshot replays the records from its segment on, stopping at the first torn record. A log that is
+ * written to without being restored first discards the segments of the former run. Instances are not thread safe.
+ */
+final class UniqueKeyLog {
+
+    static final String LOG_DIRECTORY = "key.log.directory";
+    static final String LOG_SYNC = "key.log.sync";
+
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    // record header: payload length (int), CRC32 of the payload (int)
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+    private final boolean sync;
+    private final List<Object> pendingKeys = new ArrayList<>();
+    private final List<StreamEvent> pendingEvents = new ArrayList<>();
+    private MappedByteBuffer segment;
+    private long nextSequence = -1;
+    private long retainedSequence;
+
+    private UniqueKeyLog(File directory, boolean sync) {
+        this.directory = directory;
+        this.sync = sync;
+    }
+
+    /**
+     * Creates the factory of the key logs of a window, configured through its system parameters.
+     *
+     * @param configReader       the config reader of the window extension
+     * @param siddhiQueryContext the context of the query of the window
+     * @return a factory creating the log of a partition key, or {@code null} when {@code key.log.directory} is not set
+     */
+    static Function<String, UniqueKeyLog> factory(ConfigReader configReader, SiddhiQueryContext siddhiQueryContext) {
+        String directory = configReader.readConfig(LOG_DIRECTORY, "");
+        if (directory.isEmpty()) {
+            return null;
+        }
+        boolean sync = Boolean.parseBoolean(configReader.readConfig(LOG_SYNC, "false"));
+        Function<String, File> directories = StateDirectory.of(directory, siddhiQueryContext);
+        return partitionKey -> new UniqueKeyLog(directories.apply(partitionKey), sync);
+    }
+
+    /**
+     * Adds an admitted entry to the record of the chunk being processed.
+     *
+     * @param key   the unique key
+     * @param event the event retained for the key, or {@code null} when the window only retains keys
+     */
+    void add(Object key, StreamEvent event) {
+        pendingKeys.add(key);
+        pendingEvents.add(event);
+    }
+
+    /**
+     * Appends the entries added since the last commit as one record, to be called before the chunk is passed on.
+     */
+    void commit() {
+        if (pendingKeys.isEmpty()) {
+            return;
+        }
+        byte[] payload = serialize();
+        pendingKeys.clear();
+        pendingEvents.clear();
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (segment == null || segment.remaining() < recordSize) {
+            open();
+            segment = map(segmentFile(nextSequence++), FileChannel.MapMode.READ_WRITE,
+                    Math.max(SEGMENT_SIZE, recordSize));
+        }
+        int position = segment.position();
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        segment.position(position + RECORD_HEADER_SIZE);
+        segment.put(payload);
+        segment.putInt(position + 4, (int) checksum.getValue());
+        // the length is written last, so that a record is only seen once whole
+        segment.putInt(position, payload.length);
+        if (sync) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Starts a new segment for the entries admitted after the snapshot being taken, and deletes the segments no
+     * longer needed by the previous snapshot.
+     *
+     * @return the sequence number of the first segment to replay when restoring the snapshot
+     */
+    long snapshot() {
+        open();
+        segment = null;
+        long mark = nextSequence;
+        for (long sequence : segments().keySet()) {
+            if (sequence < retainedSequence) {
+                segmentFile(sequence).delete();
+            }
+        }
+        retainedSequence = mark;
+        return mark;
+    }
+
+    /**
+     * Replays the entries admitted after a snapshot, once the snapshot is restored.
+     *
+     * @param mark     the sequence number recorded by the snapshot, or {@code null} for a snapshot taken without the
+     *                 log, in which case every segment is replayed
+     * @param consumer the consumer admitting each entry again
+     */
+    void replay(Long mark, BiConsumer<Object, StreamEvent> consumer) {
+        pendingKeys.clear();
+        pendingEvents.clear();
+        segment = null;
+        StateDirectory.create(directory);
+        long first = mark == null ? 0 : mark;
+        nextSequence = first;
+        TreeMap<Long, File> segments = segments();
+        for (long sequence : segments.keySet()) {
+            if (sequence < first) {
+                segmentFile(sequence).delete();
+            } else {
+                replaySegment(segments.get(sequence), consumer);
+                nextSequence = sequence + 1;
+            }
+        }
+        retainedSequence = first;
+    }
+
+    private void replaySegment(File file, BiConsumer<Object, StreamEvent> consumer) {
+        ByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, file.length());
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksumValue = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                return;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            if ((int) checksum.getValue() != checksumValue) {
+                return;
+            }
+            deserialize(payload, consumer);
+        }
+    }
+
+    /**
+     * Lists the segments on the first use of the log, discarding them unless the log is being restored.
+     */
+    private void open() {
+        if (nextSequence >= 0) {
+            return;
+        }
+        StateDirectory.create(directory);
+        long sequence = 0;
+        for (long existing : segments().keySet()) {
+            segmentFile(existing).delete();
+            sequence = existing + 1;
+        }
+        nextSequence = sequence;
+        retainedSequence = sequence;
+    }
+
+    private TreeMap<Long, File> segments() {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // not a segment of the log
+                }
+            }
+        }
+        return segments;
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(directory, String.format("%020d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private byte[] serialize() {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(64 * pendingKeys.size());
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(byteStream)) {
+            outputStream.writeInt(pendingKeys.size());
+            for (int i = 0; i < pendingKeys.size(); i++) {
+                outputStream.writeObject(pendingKeys.get(i));
+                StreamEvent event = pendingEvents.get(i);
+                outputStream.writeBoolean(event != null);
+                if (event != null) {
+                    outputStream.writeLong(event.getTimestamp());
+                    outputStream.writeByte(event.getType().ordinal());
+                    outputStream.writeObject(event.getBeforeWindowData());
+                    outputStream.writeObject(event.getOnAfterWindowData());
+                    outputStream.writeObject(event.getOutputData());
+                }
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while logging unique keys in '" + directory + "'", e);
+        }
+        return byteStream.toByteArray();
+    }
+
+    private void deserialize(byte[] payload, BiConsumer<Object, StreamEvent> consumer) {
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            int count = inputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                Object key = inputStream.readObject();
+                StreamEvent event = null;
+                if (inputStream.readBoolean()) {
+                    event = new StreamEvent(0, 0, 0);
+                    event.setTimestamp(inputStream.readLong());
+                    event.setType(ComplexEvent.Type.values()[inputStream.readByte()]);
+                    event.setBeforeWindowData((Object[]) inputStream.readObject());
+                    event.setOnAfterWindowData((Object[]) inputStream.readObject());
+                    event.setOutputData((Object[]) inputStream.readObject());
+                }
+                consumer.accept(key, event);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Error while replaying unique key log '" + directory + "'", e);
+        }
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file,
+                mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            return channel.map(mode, 0, size);
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Error while mapping unique key log segment '" + file + "'", e);
+        }
+    }
+}
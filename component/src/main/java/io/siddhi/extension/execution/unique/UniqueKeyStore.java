@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.util.config.ConfigReader;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * Store of the keys held by the unique:first and unique:ever windows, along with the event retained for each key,
+ * plugged in through the {@code key.store} system parameter of the windows to hold key spaces larger than the heap.
+ * <p>
+ * A store is created for each window state, i.e. for each partition key of a partitioned query, and is only called
+ * while the state is locked, hence it needs not be thread safe. The writes of a chunk of events are followed by
+ * {@link #flush()} before the chunk is passed on, so that they can be batched. Implementations need a public no
+ * argument constructor.
+ */
+public interface UniqueKeyStore {
+
+    /**
+     * Initializes the store before any other call.
+     *
+     * @param directory    the directory dedicated to the store, named after the app, the query and the partition key,
+     *                     which may not exist yet
+     * @param configReader the config reader of the window extension, to read the settings of the store
+     */
+    void init(File directory, ConfigReader configReader);
+
+    /**
+     * Returns whether the key is held.
+     *
+     * @param key the unique key
+     * @return whether the key is held
+     */
+    boolean containsKey(Object key);
+
+    /**
+     * Returns the event held for the key.
+     *
+     * @param key the unique key
+     * @return the event, or {@code null} when the key is not held or held without an event
+     */
+    StreamEvent get(Object key);
+
+    /**
+     * Holds the key along with the event, in place of the event it held.
+     *
+     * @param key   the unique key
+     * @param event the event retained for the key, or {@code null} when the window only retains keys
+     * @return the event held for the key before, or {@code null}
+     */
+    StreamEvent put(Object key, StreamEvent event);
+
+    /**
+     * Writes the keys put since the last flush, called once the events of a chunk are processed.
+     */
+    void flush();
+
+    /**
+     * Returns the events held, which are only read while the state is locked.
+     *
+     * @return the events
+     */
+    Collection<StreamEvent> values();
+
+    /**
+     * Returns the number of keys held.
+     *
+     * @return the number of keys
+     */
+    int size();
+
+    /**
+     * Returns the state of the store to be persisted along with the Siddhi snapshot. A store keeping its data in its
+     * directory may only return a checkpoint of it.
+     *
+     * @return a serializable state
+     */
+    Object snapshot();
+
+    /**
+     * Restores the store to the state returned by {@link #snapshot()}.
+     *
+     * @param snapshot the state to restore
+     */
+    void restore(Object snapshot);
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.exception.SiddhiAppRuntimeException;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Creates the {@link UniqueKeyStore} configured for a window through its system parameters.
+ */
+final class UniqueKeyStores {
+
+    static final String KEY_STORE = "key.store";
+    static final String KEY_STORE_DIRECTORY = "key.store.directory";
+
+    private static final String MEMORY = "memory";
+    private static final String DISK = "disk";
+
+    private UniqueKeyStores() {
+    }
+
+    /**
+     * Creates the factory of the key stores of a window.
+     *
+     * @param configReader       the config reader of the window extension
+     * @param siddhiQueryContext the context of the query of the window
+     * @return a factory creating the store of a partition key, or {@code null} when the keys are held in memory by
+     * the window itself
+     */
+    static Function<String, UniqueKeyStore> factory(ConfigReader configReader,
+                                                    SiddhiQueryContext siddhiQueryContext) {
+        String type = configReader.readConfig(KEY_STORE, MEMORY);
+        Supplier<UniqueKeyStore> constructor;
+        if (MEMORY.equalsIgnoreCase(type)) {
+            return null;
+        } else if (DISK.equalsIgnoreCase(type)) {
+            constructor = DiskUniqueKeyStore::new;
+        } else {
+            Class<? extends UniqueKeyStore> storeClass;
+            try {
+                storeClass = Class.forName(type).asSubclass(UniqueKeyStore.class);
+                storeClass.getConstructor();
+            } catch (ClassNotFoundException | ClassCastException | NoSuchMethodException e) {
+                throw new SiddhiAppValidationException("Unique key store should be '" + MEMORY + "', '" + DISK
+                        + "' or the name of a class implementing " + UniqueKeyStore.class.getName()
+                        + " with a public no argument constructor, but found '" + type + "'", e);
+            }
+            constructor = () -> {
+                try {
+                    return storeClass.getConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    throw new SiddhiAppRuntimeException("Error while creating unique key store '" + type + "'", e);
+                }
+            };
+        }
+        Function<String, File> directories = StateDirectory.of(
+                configReader.readConfig(KEY_STORE_DIRECTORY, System.getProperty("java.io.tmpdir")),
+                siddhiQueryContext);
+        return partitionKey -> {
+            UniqueKeyStore store = constructor.get();
+            store.init(directories.apply(partitionKey), configReader);
+            return store;
+        };
+    }
+
+    /**
+     * Restores a store from the state of a window, which holds either the snapshot of the store or, when persisted
+     * while the keys were held in memory, the keys and events themselves. Events are put under the keys extracted
+     * again, as revisions taken before the keys were extracted hold them as strings.
+     *
+     * @param store        the store
+     * @param state        the restored state of the window
+     * @param keyExtractor the extractor of the unique keys
+     */
+    static void restore(UniqueKeyStore store, Map<String, Object> state, UniqueKeyExtractor keyExtractor) {
+        Object snapshot = state.get("keyStore");
+        if (snapshot != null) {
+            store.restore(snapshot);
+            return;
+        }
+        Object events = state.get("map");
+        if (events instanceof Map) {
+            for (StreamEvent event : ((Map<Object, StreamEvent>) events).values()) {
+                store.put(keyExtractor.extract(event), event);
+            }
+        }
+        Object keys = state.get("keys");
+        if (keys instanceof Collection) {
+            for (Object key : (Collection<?>) keys) {
+                store.put(key, null);
+            }
+        }
+        store.flush();
+    }
+}
@@ -79,6 +79,16 @@ import java.util.Map;
                 @Parameter(name = "window.length",
                         description = "The number of events the window should tumble.",
                         type = {DataType.INT}),
+                @Parameter(name = "output.mode",
+                        description = "How each batch is emitted, given as 'output.mode=<mode>'. 'batch' emits the"
+                                + " last batch as expired events, a reset event and the new batch. 'delta' compares"
+                                + " the new batch with the last one by key, and only emits the events of the keys"
+                                + " that left as expired events, of the new keys as current events, and of the keys"
+                                + " whose attribute values changed as the expired last event followed by the new"
+                                + " one, without any reset event.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "batch")
         },
         examples = {
                 @Example(
@@ -102,8 +112,9 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
         implements FindableProcessor {
 
     private int windowLength;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
-    private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
+    private boolean outputExpectsExpiredEvents;
 
 
     @Override
@@ -113,29 +124,35 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        ComplexEventChunk<StreamEvent> eventsToBeExpired = new ComplexEventChunk<StreamEvent>(false);
-        if (attributeExpressionExecutors.length == 2) {
-            this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
-            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                    this.windowLength = (Integer) (((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+        UniqueOptions options = UniqueOptions.parse("length batch window", attributeExpressionExecutors,
+                UniqueOptions.OUTPUT_MODE);
+        ExpressionExecutor[] parameters = options.getParameters();
+        boolean deltaOutput = BatchDelta.isDelta(options);
+        this.outputExpectsExpiredEvents = outputExpectsExpiredEvents && !deltaOutput;
+        if (parameters.length == 2) {
+            this.keyExtractor = UniqueKeyExtractor.of(parameters[0]);
+            if (parameters[1] instanceof ConstantExpressionExecutor) {
+                if (parameters[1].getReturnType() == Attribute.Type.INT) {
+                    this.windowLength = (Integer) (((ConstantExpressionExecutor) parameters[1])
                             .getValue());
                 } else {
                     throw new SiddhiAppValidationException(
                             "Unique Length Batch window's Length parameter should be INT, but found "
-                                    + attributeExpressionExecutors[1].getReturnType());
+                                    + parameters[1].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Length Batch window should have constant "
-                        + "for Length parameter but found a dynamic attribute " + attributeExpressionExecutors[1]
+                        + "for Length parameter but found a dynamic attribute " + parameters[1]
                         .getClass().getCanonicalName());
             }
         } else {
             throw new SiddhiAppValidationException(
                     "Unique Length batch window should only have two parameters, " + "but found "
-                            + attributeExpressionExecutors.length + " input attributes");
+                            + parameters.length + " input attributes");
         }
-        return () -> new ExtensionState(eventsToBeExpired);
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
+        return () -> new ExtensionState(this.outputExpectsExpiredEvents ? new ComplexEventChunk<>(false) : null,
+                deltaOutput ? new BatchDelta() : null);
     }
 
 
@@ -144,7 +161,7 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
         List<ComplexEventChunk<StreamEvent>> streamEventChunks = new ArrayList<ComplexEventChunk<StreamEvent>>();
-        synchronized (this) {
+        synchronized (state) {
             ComplexEventChunk<StreamEvent> outputStreamEventChunk = new ComplexEventChunk<StreamEvent>(true);
             long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
             while (streamEventChunk.hasNext()) {
@@ -152,33 +169,47 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
                 if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
                     continue;
                 }
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                addUniqueEvent(uniqueEventMap, uniqueKeyExpressionExecutor, clonedStreamEvent);
-                if (uniqueEventMap.size() == windowLength) {
-                    for (StreamEvent event : uniqueEventMap.values()) {
+                StreamEvent clonedStreamEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                addUniqueEvent(state.uniqueEventMap, keyExtractor, clonedStreamEvent);
+                if (state.uniqueEventMap.size() == windowLength && state.batchDelta != null) {
+                    ComplexEventChunk<StreamEvent> deltaEventChunk = new ComplexEventChunk<>(true);
+                    state.batchDelta.emit(state.uniqueEventMap, currentTime, null, retainedEventCloner,
+                            streamEventCloner, deltaEventChunk);
+                    state.uniqueEventMap.clear();
+                    if (deltaEventChunk.getFirst() != null) {
+                        streamEventChunks.add(deltaEventChunk);
+                    }
+                } else if (state.uniqueEventMap.size() == windowLength) {
+                    for (StreamEvent event : state.uniqueEventMap.values()) {
                         event.setTimestamp(currentTime);
                         state.currentEventChunk.add(event);
                     }
-                    uniqueEventMap.clear();
-                    if (state.eventsToBeExpired.getFirst() != null) {
-                        while (state.eventsToBeExpired.hasNext()) {
-                            StreamEvent expiredEvent = state.eventsToBeExpired.next();
-                            expiredEvent.setTimestamp(currentTime);
+                    state.uniqueEventMap.clear();
+                    if (outputExpectsExpiredEvents) {
+                        if (state.eventsToBeExpired.getFirst() != null) {
+                            while (state.eventsToBeExpired.hasNext()) {
+                                StreamEvent expiredEvent = state.eventsToBeExpired.next();
+                                expiredEvent.setTimestamp(currentTime);
+                            }
+                            outputStreamEventChunk.add(state.eventsToBeExpired.getFirst());
                         }
-                        outputStreamEventChunk.add(state.eventsToBeExpired.getFirst());
+                        state.eventsToBeExpired.clear();
                     }
-                    state.eventsToBeExpired.clear();
                     if (state.currentEventChunk.getFirst() != null) {
                         // add reset event in front of current events
                         outputStreamEventChunk.add(state.resetEvent);
-                        state.currentEventChunk.reset();
-                        while (state.currentEventChunk.hasNext()) {
-                            StreamEvent toExpireEvent = state.currentEventChunk.next();
-                            StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(toExpireEvent);
-                            eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                            state.eventsToBeExpired.add(eventClonedForMap);
+                        if (outputExpectsExpiredEvents) {
+                            state.currentEventChunk.reset();
+                            while (state.currentEventChunk.hasNext()) {
+                                StreamEvent toExpireEvent = state.currentEventChunk.next();
+                                StreamEvent eventClonedForMap = retainedEventCloner.copy(toExpireEvent,
+                                        streamEventCloner);
+                                eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                                state.eventsToBeExpired.add(eventClonedForMap);
+                            }
                         }
-                        state.resetEvent = streamEventCloner.copyStreamEvent(state.currentEventChunk.getFirst());
+                        state.resetEvent = retainedEventCloner.copy(state.currentEventChunk.getFirst(),
+                                streamEventCloner);
                         state.resetEvent.setType(ComplexEvent.Type.RESET);
                         outputStreamEventChunk.add(state.currentEventChunk.getFirst());
                     }
@@ -194,9 +225,9 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
         }
     }
 
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, ExpressionExecutor uniqueKey,
+    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, UniqueKeyExtractor keyExtractor,
                                   StreamEvent clonedStreamEvent) {
-        uniqueEventMap.put(uniqueKey.execute(clonedStreamEvent), clonedStreamEvent);
+        uniqueEventMap.put(keyExtractor.extract(clonedStreamEvent), clonedStreamEvent);
     }
 
     @Override
@@ -220,48 +251,50 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
         private ComplexEventChunk<StreamEvent> currentEventChunk = new ComplexEventChunk<StreamEvent>(false);
         private StreamEvent resetEvent = null;
         private final ComplexEventChunk<StreamEvent> eventsToBeExpired;
+        private final Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
+        private final BatchDelta batchDelta;
 
-        private ExtensionState(ComplexEventChunk<StreamEvent> eventsToBeExpired) {
+        private ExtensionState(ComplexEventChunk<StreamEvent> eventsToBeExpired, BatchDelta batchDelta) {
             this.eventsToBeExpired = eventsToBeExpired;
+            this.batchDelta = batchDelta;
         }
 
         @Override
         public boolean canDestroy() {
-            return false;
+            return uniqueEventMap.isEmpty() && resetEvent == null
+                    && (eventsToBeExpired == null || eventsToBeExpired.getFirst() == null)
+                    && (batchDelta == null || batchDelta.isEmpty());
         }
 
         @Override
         public Map<String, Object> snapshot() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("currentEventChunk", currentEventChunk.getFirst());
             if (eventsToBeExpired != null) {
-                Map<String, Object> map = new HashMap<>();
-                map.put("currentEventChunk", currentEventChunk.getFirst());
                 map.put("eventsToBeExpired", eventsToBeExpired.getFirst());
-                map.put("count", count);
-                map.put("resetEvent", resetEvent);
-                return map;
-            } else {
-                Map<String, Object> map = new HashMap<>();
-                map.put("currentEventChunk", currentEventChunk.getFirst());
-                map.put("count", count);
-                map.put("resetEvent", resetEvent);
-                return map;
             }
+            map.put("count", count);
+            map.put("resetEvent", resetEvent);
+            map.put("uniqueEventMap", SpillableUniqueEventMap.snapshot(uniqueEventMap));
+            if (batchDelta != null) {
+                map.put("lastBatch", batchDelta.snapshot());
+            }
+            return map;
         }
 
         @Override
         public void restore(Map<String, Object> map) {
-            if (map.size() > 3) {
-                currentEventChunk.clear();
-                currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
+            currentEventChunk.clear();
+            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
+            if (eventsToBeExpired != null) {
                 eventsToBeExpired.clear();
                 eventsToBeExpired.add((StreamEvent) map.get("eventsToBeExpired"));
-                count = (Integer) map.get("count");
-                resetEvent = (StreamEvent) map.get("resetEvent");
-            } else {
-                currentEventChunk.clear();
-                currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-                count = (Integer) map.get("count");
-                resetEvent = (StreamEvent) map.get("resetEvent");
+            }
+            count = (Integer) map.get("count");
+            resetEvent = (StreamEvent) map.get("resetEvent");
+            SpillableUniqueEventMap.restore(uniqueEventMap, map.get("uniqueEventMap"));
+            if (batchDelta != null) {
+                batchDelta.restore((Map<Object, StreamEvent>) map.get("lastBatch"));
             }
         }
     }
@@ -269,8 +302,15 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, uniqueEventMap.values(),
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.uniqueEventMap.values(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -281,7 +321,7 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor<UniqueLeng
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(uniqueEventMap.values(), expression, matchingMetaInfoHolder,
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
                 variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
 }
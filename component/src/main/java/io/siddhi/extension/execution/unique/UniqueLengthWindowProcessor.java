@@ -48,11 +48,10 @@ import io.siddhi.query.api.definition.AbstractDefinition;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import io.siddhi.query.api.expression.Expression;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * class representing unique length window processor implementation.
@@ -94,9 +93,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class UniqueLengthWindowProcessor extends WindowProcessor<UniqueLengthWindowProcessor.ExtensionState>
         implements FindableProcessor {
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
     private int length;
-    private ComplexEventChunk<StreamEvent> expiredEventChunk;
 
     @Override
     protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
@@ -105,15 +104,15 @@ public class UniqueLengthWindowProcessor extends WindowProcessor<UniqueLengthWin
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        expiredEventChunk = new ComplexEventChunk<StreamEvent>(false);
         if (attributeExpressionExecutors.length == 2) {
-            uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
+            keyExtractor = UniqueKeyExtractor.of(attributeExpressionExecutors[0]);
             length = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
         } else {
             throw new SiddhiAppValidationException("Unique Length window should only have two parameters "
                     + "(<string|int|bool|long|double|float> attribute, <int> windowLength), but found "
                     + attributeExpressionExecutors.length + " input attributes");
         }
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
         return () -> new ExtensionState();
     }
 
@@ -121,41 +120,16 @@ public class UniqueLengthWindowProcessor extends WindowProcessor<UniqueLengthWin
     protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
-        synchronized (this) {
+        synchronized (state) {
             long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
             while (streamEventChunk.hasNext()) {
                 StreamEvent streamEvent = streamEventChunk.next();
-                streamEvent.setNext(null);
-                StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
+                StreamEvent clonedEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
                 clonedEvent.setType(StreamEvent.Type.EXPIRED);
-                StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(clonedEvent);
-                StreamEvent oldEvent = state.map.put(generateKey(eventClonedForMap), eventClonedForMap);
-                if (oldEvent == null) {
-                    state.count.getAndIncrement();
-                }
-                if ((state.count.get() <= length) && (oldEvent == null)) {
-                    this.expiredEventChunk.add(clonedEvent);
-                } else {
-                    if (oldEvent != null) {
-                        while (expiredEventChunk.hasNext()) {
-                            StreamEvent firstEventExpired = expiredEventChunk.next();
-                            if (firstEventExpired.equals(oldEvent)) {
-                                this.expiredEventChunk.remove();
-                            }
-                        }
-                        this.expiredEventChunk.add(clonedEvent);
-                        streamEventChunk.insertBeforeCurrent(oldEvent);
-                        oldEvent.setTimestamp(currentTime);
-                    } else {
-                        StreamEvent firstEvent = this.expiredEventChunk.poll();
-                        if (firstEvent != null) {
-                            firstEvent.setTimestamp(currentTime);
-                            streamEventChunk.insertBeforeCurrent(firstEvent);
-                            this.expiredEventChunk.add(clonedEvent);
-                        } else {
-                            streamEventChunk.insertBeforeCurrent(clonedEvent);
-                        }
-                    }
+                StreamEvent expiredEvent = state.window.put(keyExtractor.extract(clonedEvent), clonedEvent);
+                if (expiredEvent != null) {
+                    expiredEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(expiredEvent);
                 }
             }
         }
@@ -174,47 +148,62 @@ public class UniqueLengthWindowProcessor extends WindowProcessor<UniqueLengthWin
 
     @Override
     public ProcessingMode getProcessingMode() {
-        return ProcessingMode.BATCH;
+        return ProcessingMode.SLIDE;
     }
 
     class ExtensionState extends State {
 
-        private ConcurrentHashMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
+        private final UniqueEventRingBuffer window = new UniqueEventRingBuffer(length);
 
         @Override
         public boolean canDestroy() {
-            return false;
+            return window.isEmpty();
         }
 
-
-        private AtomicInteger count = new AtomicInteger(0);
-
         @Override
         public Map<String, Object> snapshot() {
-            synchronized (UniqueLengthWindowProcessor.this) {
+            synchronized (this) {
                 Map<String, Object> map = new HashMap<String, Object>();
-                map.put("expiredEventChunk", expiredEventChunk.getFirst());
-                map.put("count", count);
-                map.put("map", this.map);
+                map.put("window", new ArrayList<StreamEvent>(window));
                 return map;
             }
         }
 
         @Override
         public void restore(Map<String, Object> map) {
-            synchronized (UniqueLengthWindowProcessor.this) {
-                expiredEventChunk.clear();
-                expiredEventChunk.add((StreamEvent) map.get("expiredEventChunk"));
-                count = (AtomicInteger) map.get("count");
-                this.map = (ConcurrentHashMap) map.get("map");
+            synchronized (this) {
+                window.clear();
+                List<StreamEvent> events = (List<StreamEvent>) map.get("window");
+                if (events != null) {
+                    for (StreamEvent event : events) {
+                        window.put(keyExtractor.extract(event), event);
+                    }
+                } else {
+                    // revisions taken before the ring buffer chain the events from the oldest one
+                    StreamEvent event = (StreamEvent) map.get("expiredEventChunk");
+                    while (event != null) {
+                        StreamEvent next = event.getNext();
+                        event.setNext(null);
+                        window.put(keyExtractor.extract(event), event);
+                        event = next;
+                    }
+                }
             }
         }
     }
+
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, expiredEventChunk,
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.window,
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -224,11 +213,7 @@ public class UniqueLengthWindowProcessor extends WindowProcessor<UniqueLengthWin
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(expiredEventChunk, expression, matchingMetaInfoHolder,
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
                 variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
-
-    private String generateKey(StreamEvent event) {
-        return uniqueKeyExpressionExecutor.execute(event).toString();
-    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.config.SiddhiAppContext;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.config.StatisticsConfiguration;
+import io.siddhi.core.util.SiddhiConstants;
+import io.siddhi.core.util.statistics.EventBufferHolder;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Reports values of the unique extensions through the statistics of the Siddhi app.
+ * <p>
+ * Siddhi has no gauge of its own for extensions, hence a value is registered as the buffered events of a buffer
+ * holder, which the statistics report as a gauge under the name given to the holder. The name follows the metric
+ * names of the queries, e.g. {@code io.siddhi.SiddhiApps.<app>.Siddhi.Queries.<query>.unique.first.approximate}.
+ */
+final class UniqueMetrics {
+
+    private UniqueMetrics() {
+    }
+
+    /**
+     * Registers a gauge of the query, unless the Siddhi app has no statistics.
+     *
+     * @param siddhiQueryContext the context of the query
+     * @param name               the name of the gauge, appended to the metric name of the query
+     * @param value              supplies the value of the gauge, called from the reporting thread
+     */
+    static void registerGauge(SiddhiQueryContext siddhiQueryContext, String name, LongSupplier value) {
+        SiddhiAppContext siddhiAppContext = siddhiQueryContext.getSiddhiAppContext();
+        StatisticsConfiguration statisticsConfiguration = siddhiAppContext.getSiddhiContext()
+                .getStatisticsConfiguration();
+        if (siddhiAppContext.getStatisticsManager() == null || statisticsConfiguration == null) {
+            return;
+        }
+        String metricName = statisticsConfiguration.getMetricPrefix()
+                + SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SIDDHI_APPS
+                + SiddhiConstants.METRIC_DELIMITER + siddhiAppContext.getName()
+                + SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SIDDHI
+                + SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_QUERIES
+                + SiddhiConstants.METRIC_DELIMITER + siddhiQueryContext.getName()
+                + SiddhiConstants.METRIC_DELIMITER + name;
+        statisticsConfiguration.getFactory().createBufferSizeTracker(siddhiAppContext.getStatisticsManager())
+                .registerEventBufferHolder(new EventBufferHolder() {
+                    @Override
+                    public long getBufferedEvents() {
+                        return value.getAsLong();
+                    }
+
+                    @Override
+                    public boolean containsBufferedEvents() {
+                        return value.getAsLong() > 0;
+                    }
+                }, metricName);
+    }
+}
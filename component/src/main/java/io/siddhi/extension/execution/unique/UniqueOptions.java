@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Options of a unique extension, given as trailing constant string parameters of the form {@code 'name=value'},
+ * e.g. {@code #window.unique:ever(ip, 'key.mode=fingerprint')}.
+ */
+final class UniqueOptions {
+
+    static final String KEY_MODE = "key.mode";
+    static final String KEY_VERIFY = "key.verify";
+    static final String EXPIRY_GRANULARITY = "expiry.granularity";
+    static final String KEY_LIMIT = "key.limit";
+    static final String KEY_LIMIT_ERROR = "key.limit.error";
+    static final String MEMORY_LIMIT = "memory.limit";
+    static final String MEMORY_POLICY = "memory.policy";
+    static final String EARLY_FIRE_INTERVAL = "early.fire.interval";
+    static final String EARLY_FIRE_MODE = "early.fire.mode";
+    static final String EARLY_FIRE_FLAG = "early.fire.flag";
+    static final String OUTPUT_MODE = "output.mode";
+
+    private final String extension;
+    private final ExpressionExecutor[] parameters;
+    private final Map<String, String> options;
+
+    private UniqueOptions(String extension, ExpressionExecutor[] parameters, Map<String, String> options) {
+        this.extension = extension;
+        this.parameters = parameters;
+        this.options = options;
+    }
+
+    /**
+     * Splits the options off the end of the given parameters.
+     *
+     * @param extension        the name of the extension, used in error messages
+     * @param executors        all the parameters of the extension
+     * @param supportedOptions the names of the options the extension supports
+     * @return the options
+     */
+    static UniqueOptions parse(String extension, ExpressionExecutor[] executors, String... supportedOptions) {
+        List<String> supported = Arrays.asList(supportedOptions);
+        Map<String, String> options = new HashMap<>();
+        int end = executors.length;
+        while (end > 0 && isOption(executors[end - 1])) {
+            String option = (String) ((ConstantExpressionExecutor) executors[end - 1]).getValue();
+            int separator = option.indexOf('=');
+            String name = option.substring(0, separator).trim();
+            if (!supported.contains(name)) {
+                throw new SiddhiAppValidationException("Unique " + extension + " does not support the option '"
+                        + name + "', supported options are " + supported);
+            }
+            if (options.put(name, option.substring(separator + 1).trim()) != null) {
+                throw new SiddhiAppValidationException("Unique " + extension + " option '" + name
+                        + "' is given more than once");
+            }
+            end--;
+        }
+        return new UniqueOptions(extension, Arrays.copyOf(executors, end), options);
+    }
+
+    private static boolean isOption(ExpressionExecutor executor) {
+        return executor instanceof ConstantExpressionExecutor
+                && executor.getReturnType() == Attribute.Type.STRING
+                && ((String) ((ConstantExpressionExecutor) executor).getValue()).indexOf('=') > 0;
+    }
+
+    /**
+     * Returns the parameters given before the options.
+     *
+     * @return the parameters that are not options
+     */
+    ExpressionExecutor[] getParameters() {
+        return parameters;
+    }
+
+    boolean isSet(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * Returns the value of an option that takes one of the given values.
+     *
+     * @param name          the option name
+     * @param allowedValues the allowed values, the first being the default
+     * @return the value of the option, in lower case
+     */
+    String get(String name, String... allowedValues) {
+        String value = options.get(name);
+        if (value == null) {
+            return allowedValues[0];
+        }
+        for (String allowedValue : allowedValues) {
+            if (allowedValue.equalsIgnoreCase(value)) {
+                return allowedValue;
+            }
+        }
+        throw new SiddhiAppValidationException("Unique " + extension + " option '" + name + "' should be one of "
+                + Arrays.toString(allowedValues) + ", but found '" + value + "'");
+    }
+
+    /**
+     * Returns the value of an option that names an attribute of the input stream of the given type.
+     *
+     * @param name            the option name
+     * @param inputDefinition the definition of the input stream
+     * @param type            the type of the attribute
+     * @return the attribute, or {@code null} when the option is not given
+     */
+    Attribute getAttribute(String name, AbstractDefinition inputDefinition, Attribute.Type type) {
+        String value = options.get(name);
+        if (value == null) {
+            return null;
+        }
+        for (Attribute attribute : inputDefinition.getAttributeList()) {
+            if (attribute.getName().equals(value) && attribute.getType() == type) {
+                return attribute;
+            }
+        }
+        throw new SiddhiAppValidationException("Unique " + extension + " option '" + name + "' should name an "
+                + "attribute of type " + type + " of the input stream, but found '" + value + "'");
+    }
+
+    boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(get(name, String.valueOf(defaultValue), String.valueOf(!defaultValue)));
+    }
+
+    /**
+     * Returns the value of an option that takes a positive long.
+     *
+     * @param name         the option name
+     * @param defaultValue the value when the option is not given
+     * @return the value of the option
+     */
+    long getPositiveLong(String name, long defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long longValue = Long.parseLong(value);
+            if (longValue > 0) {
+                return longValue;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new SiddhiAppValidationException("Unique " + extension + " option '" + name + "' should be a "
+                + "positive long, but found '" + value + "'");
+    }
+
+    /**
+     * Returns the value of an option that takes a number of bytes, optionally suffixed by the unit 'kb', 'mb' or
+     * 'gb'.
+     *
+     * @param name the option name
+     * @return the number of bytes
+     */
+    long getBytes(String name) {
+        String value = options.get(name);
+        String number = value.toLowerCase(Locale.ENGLISH);
+        long unit = 1;
+        if (number.endsWith("kb")) {
+            unit = 1L << 10;
+        } else if (number.endsWith("mb")) {
+            unit = 1L << 20;
+        } else if (number.endsWith("gb")) {
+            unit = 1L << 30;
+        }
+        if (unit > 1) {
+            number = number.substring(0, number.length() - 2).trim();
+        }
+        try {
+            long bytes = Long.parseLong(number);
+            if (bytes > 0 && bytes <= Long.MAX_VALUE / unit) {
+                return bytes * unit;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new SiddhiAppValidationException("Unique " + extension + " option '" + name + "' should be a "
+                + "positive number of bytes, optionally suffixed by 'kb', 'mb' or 'gb', but found '" + value + "'");
+    }
+
+    /**
+     * Returns the value of an option that takes a probability strictly between zero and one.
+     *
+     * @param name         the option name
+     * @param defaultValue the value when the option is not given
+     * @return the value of the option
+     */
+    double getProbability(String name, double defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double probability = Double.parseDouble(value);
+            if (probability > 0 && probability < 1) {
+                return probability;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new SiddhiAppValidationException("Unique " + extension + " option '" + name + "' should be a "
+                + "probability between 0 and 1, but found '" + value + "'");
+    }
+}
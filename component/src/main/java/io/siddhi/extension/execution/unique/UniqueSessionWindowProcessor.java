@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.state.StateEvent;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.executor.VariableExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.SchedulingProcessor;
+import io.siddhi.core.query.processor.stream.window.FindableProcessor;
+import io.siddhi.core.query.processor.stream.window.WindowProcessor;
+import io.siddhi.core.table.Table;
+import io.siddhi.core.util.Scheduler;
+import io.siddhi.core.util.collection.operator.CompiledCondition;
+import io.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import io.siddhi.core.util.collection.operator.Operator;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.parser.OperatorParser;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import io.siddhi.query.api.expression.Expression;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unique session window processor implementation, holding the latest event of each unique key until no event of the
+ * key arrived for the session gap.
+ */
+
+@Extension(
+        name = "session",
+        namespace = "unique",
+        description = "This is a window that holds the latest event of each unique key for as long as the key is "
+                + "active. Each event of a key extends the session of the key by the session gap, and once no event "
+                + "of the key arrived for the session gap, the session ends and the held event expires. As in the "
+                + "other unique windows, a held event also expires when it is replaced by a newer event of its key. "
+                + "Sessions follow the system time, or the event time given by the 'timestamp' parameter, in which "
+                + "case the time only moves forward with the events, and sessions end as the first event past their "
+                + "gap arrives.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL, DataType.DOUBLE,
+                                DataType.STRING}),
+                @Parameter(name = "session.gap",
+                        description = "The time period after the last event of a key at which its session ends.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "timestamp",
+                        description = "The time which the window determines as the event time, for the sessions "
+                                + "to follow the event time instead of the system time. Late events are let "
+                                + "through, but never shorten the session of their key.",
+                        type = {DataType.LONG},
+                        optional = true,
+                        defaultValue = "System time")
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream ClickStream (userId string, page string, timestamp long) ;\n" +
+                                "from ClickStream#window.unique:session(userId, 30 min)\n" +
+                                "select userId, page \n" +
+                                "insert expired events into EndedSessions ;",
+
+                        description = "The above query holds the latest click of each user, and sends it to the "
+                                + "'EndedSessions' stream once the user made no click for 30 minutes, as well as "
+                                + "when it is replaced by a newer click of the user."
+                ),
+                @Example(
+                        syntax = "define stream ClickStream (userId string, page string, timestamp long) ;\n" +
+                                "from ClickStream#window.unique:session(userId, 30 min, timestamp)\n" +
+                                "select userId, count() as users \n" +
+                                "insert into ActiveUsers ;",
+
+                        description = "The above query counts the users that clicked within the last 30 minutes, "
+                                + "following the time given by the 'timestamp' attribute of the clicks."
+                )
+        }
+)
+
+public class UniqueSessionWindowProcessor extends WindowProcessor<UniqueSessionWindowProcessor.ExtensionState>
+        implements SchedulingProcessor, FindableProcessor {
+
+    private long gapInMilliSeconds;
+    private Scheduler scheduler;
+    private UniqueKeyExtractor keyExtractor;
+    private VariableExpressionExecutor timestampExpressionExecutor;
+    private RetainedEventCloner retainedEventCloner;
+
+    @Override
+    public synchronized Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public synchronized void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        if (attributeExpressionExecutors.length != 2 && attributeExpressionExecutors.length != 3) {
+            throw new SiddhiAppValidationException("Unique session window should have two or three parameters "
+                    + "(<int|long|float|bool|double|string> unique.key, <int|long> session.gap, <long> timestamp), "
+                    + "but found " + attributeExpressionExecutors.length + " input attributes");
+        }
+        keyExtractor = UniqueKeyExtractor.of(attributeExpressionExecutors[0]);
+        if (!(attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("Unique session window should have constant for session.gap "
+                    + "parameter but found a dynamic attribute "
+                    + attributeExpressionExecutors[1].getClass().getCanonicalName());
+        }
+        if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
+            gapInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
+        } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
+            gapInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
+        } else {
+            throw new SiddhiAppValidationException("Unique session window's parameter session.gap should be either "
+                    + "int or long, but found " + attributeExpressionExecutors[1].getReturnType());
+        }
+        if (attributeExpressionExecutors.length == 3) {
+            if (!(attributeExpressionExecutors[2] instanceof VariableExpressionExecutor)) {
+                throw new SiddhiAppValidationException("Unique session window's 3rd parameter timestamp should be "
+                        + "a variable, but found " + attributeExpressionExecutors[2].getClass());
+            }
+            if (attributeExpressionExecutors[2].getReturnType() != Attribute.Type.LONG) {
+                throw new SiddhiAppValidationException("Unique session window's 3rd parameter timestamp should be "
+                        + "type long, but found " + attributeExpressionExecutors[2].getReturnType());
+            }
+            timestampExpressionExecutor = (VariableExpressionExecutor) attributeExpressionExecutors[2];
+        }
+        // the keys and deadlines of the sessions are kept along with the events, which are never read again
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent);
+        return () -> new ExtensionState();
+    }
+
+    @Override
+    protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                                     StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                                     ExtensionState state) {
+        synchronized (state) {
+            long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                long eventTime = currentTime;
+                if (timestampExpressionExecutor != null) {
+                    if (streamEvent.getType() == StreamEvent.Type.CURRENT) {
+                        eventTime = (Long) timestampExpressionExecutor.execute(streamEvent);
+                        state.eventTime = Math.max(state.eventTime, eventTime);
+                    }
+                    currentTime = state.eventTime;
+                }
+                while (state.sessions.nextDeadline() <= currentTime) {
+                    StreamEvent endedEvent = state.sessions.poll();
+                    endedEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(endedEvent);
+                }
+                if (streamEvent.getType() != StreamEvent.Type.CURRENT) {
+                    streamEventChunk.remove();
+                    continue;
+                }
+                StreamEvent heldEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                heldEvent.setType(StreamEvent.Type.EXPIRED);
+                StreamEvent replacedEvent = state.sessions.put(keyExtractor.extract(streamEvent), heldEvent,
+                        eventTime + gapInMilliSeconds);
+                if (replacedEvent != null) {
+                    replacedEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(replacedEvent);
+                }
+            }
+            if (timestampExpressionExecutor == null && scheduler != null) {
+                // a single timer is kept pending, for the earliest deadline
+                long nextDeadline = state.sessions.nextDeadline();
+                if (nextDeadline != Long.MAX_VALUE
+                        && (state.scheduledTime <= currentTime || nextDeadline < state.scheduledTime)) {
+                    scheduler.notifyAt(nextDeadline);
+                    state.scheduledTime = nextDeadline;
+                }
+            }
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator) {
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.sessions.events(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              List<VariableExpressionExecutor> variableExpressionExecutors,
+                                              Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
+                variableExpressionExecutors, tableMap, siddhiQueryContext);
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.GROUP;
+    }
+
+    class ExtensionState extends State {
+
+        private SessionTimerQueue sessions = new SessionTimerQueue();
+        private long eventTime = Long.MIN_VALUE;
+        private long scheduledTime = Long.MIN_VALUE;
+
+        @Override
+        public boolean canDestroy() {
+            return sessions.isEmpty();
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            synchronized (this) {
+                Map<String, Object> state = new HashMap<>();
+                state.put("sessions", sessions.copy());
+                state.put("eventTime", eventTime);
+                return state;
+            }
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            synchronized (this) {
+                sessions = (SessionTimerQueue) state.get("sessions");
+                eventTime = (Long) state.get("eventTime");
+            }
+        }
+    }
+}
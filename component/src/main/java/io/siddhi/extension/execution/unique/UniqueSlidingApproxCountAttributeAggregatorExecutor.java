@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.selector.attribute.aggregator.AttributeAggregatorExecutor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.core.util.timestamp.TimestampGenerator;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class representing unique sliding approximate count attribute aggregator implementation.
+ */
+
+@Extension(
+        name = "slidingApproxCount",
+        namespace = "unique",
+        description = "Returns an estimate of the number of distinct unique keys that arrived within the last"
+                + " 'window.time', without retaining the keys or the events that carried them. The time is split"
+                + " into slots of 'slot.time', each slot keeps a HyperLogLog++ sketch of its keys, and the estimate"
+                + " is taken from the union of the sketches of the slots overlapping the window, hence keys expire"
+                + " at the granularity of a slot. The time is taken from the Siddhi app clock, which follows the"
+                + " event timestamps in playback mode. The aggregator does not need a window in front of it, and"
+                + " expired events of a window are ignored.",
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL,
+                                DataType.DOUBLE, DataType.STRING, DataType.OBJECT}),
+                @Parameter(name = "window.time",
+                        description = "The sliding time period for which the distinct keys are counted.",
+                        type = {DataType.INT, DataType.LONG, DataType.TIME}),
+                @Parameter(name = "slot.time",
+                        description = "The granularity at which keys expire. A key is counted until its whole slot"
+                                + " has left the window, that is for up to one 'slot.time' longer than"
+                                + " 'window.time'. A finer granularity tracks the window boundary more closely at"
+                                + " the cost of one sketch per slot.",
+                        type = {DataType.INT, DataType.LONG, DataType.TIME},
+                        optional = true,
+                        defaultValue = "One tenth of window.time"),
+                @Parameter(name = "precision",
+                        description = "The number of hash bits used to select a register, between 4 and 18.",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "14")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "The estimated number of distinct unique keys within the sliding window.",
+                type = {DataType.LONG}),
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (timeStamp long, ip string);\n" +
+                                "from LoginEvents\n" +
+                                "select unique:slidingApproxCount(ip, 10 min, 30 sec) as distinctIps\n" +
+                                "insert into DistinctIpCounts ;",
+
+                        description = "This query outputs, for every event, an estimate of the number of distinct"
+                                + " 'ip' values that arrived within the last 10 minutes, expiring them every"
+                                + " 30 seconds."
+                )
+        }
+)
+
+public class UniqueSlidingApproxCountAttributeAggregatorExecutor
+        extends AttributeAggregatorExecutor<UniqueSlidingApproxCountAttributeAggregatorExecutor.SlidingState> {
+
+    private static final int DEFAULT_SLOTS = 10;
+
+    private TimestampGenerator timestampGenerator;
+
+    @Override
+    protected StateFactory<SlidingState> init(ExpressionExecutor[] attributeExpressionExecutors,
+                                              ProcessingMode processingMode, boolean outputExpectsExpiredEvents,
+                                              ConfigReader configReader, SiddhiQueryContext siddhiQueryContext) {
+        if (attributeExpressionExecutors.length < 2 || attributeExpressionExecutors.length > 4) {
+            throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator should have two to four "
+                    + "parameters (<string|int|bool|long|double|float|object> unique attribute, <int|long|time> "
+                    + "window.time, <int|long|time> slot.time, <int> precision), but found "
+                    + attributeExpressionExecutors.length);
+        }
+        long windowTime = getTime(attributeExpressionExecutors[1], "window.time");
+        long slotTime = Math.max(1, windowTime / DEFAULT_SLOTS);
+        if (attributeExpressionExecutors.length > 2) {
+            slotTime = getTime(attributeExpressionExecutors[2], "slot.time");
+            if (slotTime > windowTime) {
+                throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator's slot.time should "
+                        + "not exceed its window.time " + windowTime + ", but found " + slotTime);
+            }
+        }
+        int precision = HyperLogLogAggregatorExecutor.DEFAULT_PRECISION;
+        if (attributeExpressionExecutors.length > 3) {
+            if (!(attributeExpressionExecutors[3] instanceof ConstantExpressionExecutor)
+                    || attributeExpressionExecutors[3].getReturnType() != Attribute.Type.INT) {
+                throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator's precision should "
+                        + "be a constant int");
+            }
+            precision = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[3]).getValue();
+            if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator's precision should "
+                        + "be between " + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION
+                        + ", but found " + precision);
+            }
+        }
+        timestampGenerator = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator();
+        int slots = (int) ((windowTime + slotTime - 1) / slotTime);
+        long slotDuration = slotTime;
+        int sketchPrecision = precision;
+        return () -> new SlidingState(slots, slotDuration, sketchPrecision);
+    }
+
+    private static long getTime(ExpressionExecutor executor, String name) {
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator should have constant "
+                    + "for " + name + " parameter but found a dynamic attribute "
+                    + executor.getClass().getCanonicalName());
+        }
+        long time;
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            time = (Integer) ((ConstantExpressionExecutor) executor).getValue();
+        } else if (executor.getReturnType() == Attribute.Type.LONG) {
+            time = (Long) ((ConstantExpressionExecutor) executor).getValue();
+        } else {
+            throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator's parameter " + name
+                    + " should be either int or long, but found " + executor.getReturnType());
+        }
+        if (time <= 0) {
+            throw new SiddhiAppValidationException("Unique slidingApproxCount aggregator's parameter " + name
+                    + " should be positive, but found " + time);
+        }
+        return time;
+    }
+
+    @Override
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.LONG;
+    }
+
+    @Override
+    public Object processAdd(Object data, SlidingState state) {
+        state.advance(timestampGenerator.currentTime());
+        if (data != null) {
+            state.offer(Murmur3Hasher.hash64(data));
+        }
+        return state.union.estimate();
+    }
+
+    @Override
+    public Object processAdd(Object[] data, SlidingState state) {
+        return processAdd(data[0], state);
+    }
+
+    @Override
+    public Object processRemove(Object data, SlidingState state) {
+        state.advance(timestampGenerator.currentTime());
+        return state.union.estimate();
+    }
+
+    @Override
+    public Object processRemove(Object[] data, SlidingState state) {
+        return processRemove(data[0], state);
+    }
+
+    @Override
+    public Object reset(SlidingState state) {
+        state.clear();
+        return 0L;
+    }
+
+    /**
+     * Ring of per slot sketches, together with the union of the sketches of the slots overlapping the window. Within
+     * the current slot, the window also overlaps the slot that started a whole window before it, hence the ring holds
+     * one more slot than the window. The union takes every new key directly and is rebuilt from the ring only when the
+     * current slot moves on.
+     */
+    static class SlidingState extends State {
+
+        private final long slotTime;
+        private final int windowSlots;
+        private final HyperLogLog[] sketches;
+        private final long[] slotIds;
+        private HyperLogLog union;
+        private long currentSlot = Long.MIN_VALUE;
+
+        SlidingState(int slots, long slotTime, int precision) {
+            this.slotTime = slotTime;
+            this.windowSlots = slots;
+            this.sketches = new HyperLogLog[slots + 1];
+            this.slotIds = new long[slots + 1];
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i] = new HyperLogLog(precision);
+            }
+            this.union = new HyperLogLog(precision);
+            Arrays.fill(slotIds, Long.MIN_VALUE);
+        }
+
+        private void advance(long currentTime) {
+            long slot = Math.floorDiv(currentTime, slotTime);
+            if (slot <= currentSlot) {
+                return;
+            }
+            currentSlot = slot;
+            int position = (int) Math.floorMod(slot, (long) sketches.length);
+            if (slotIds[position] != slot) {
+                sketches[position].clear();
+                slotIds[position] = slot;
+            }
+            union.clear();
+            for (int i = 0; i < sketches.length; i++) {
+                if (slotIds[i] >= slot - windowSlots && slotIds[i] <= slot) {
+                    union.merge(sketches[i]);
+                }
+            }
+        }
+
+        private void offer(long hash) {
+            union.offer(hash);
+            sketches[(int) Math.floorMod(currentSlot, (long) sketches.length)].offer(hash);
+        }
+
+        private void clear() {
+            for (HyperLogLog sketch : sketches) {
+                sketch.clear();
+            }
+            union.clear();
+            Arrays.fill(slotIds, Long.MIN_VALUE);
+            currentSlot = Long.MIN_VALUE;
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return union.isEmpty();
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            Map<String, Object> state = new HashMap<>();
+            byte[][] encodedSketches = new byte[sketches.length][];
+            for (int i = 0; i < sketches.length; i++) {
+                encodedSketches[i] = sketches[i].toBytes();
+            }
+            state.put("sketches", encodedSketches);
+            state.put("slotIds", slotIds.clone());
+            return state;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            byte[][] encodedSketches = (byte[][]) state.get("sketches");
+            long[] restoredSlotIds = (long[]) state.get("slotIds");
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i] = HyperLogLog.fromBytes(encodedSketches[i]);
+                slotIds[i] = restoredSlotIds[i];
+            }
+            currentSlot = Long.MIN_VALUE;
+        }
+    }
+}
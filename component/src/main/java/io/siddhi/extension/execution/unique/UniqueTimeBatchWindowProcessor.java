@@ -20,6 +20,7 @@ package io.siddhi.extension.execution.unique;
 import io.siddhi.annotation.Example;
 import io.siddhi.annotation.Extension;
 import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.SystemParameter;
 import io.siddhi.annotation.util.DataType;
 import io.siddhi.core.config.SiddhiQueryContext;
 import io.siddhi.core.event.ComplexEvent;
@@ -52,7 +53,10 @@ import io.siddhi.query.api.definition.Attribute;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import io.siddhi.query.api.expression.Expression;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -83,7 +87,72 @@ import java.util.Map;
                                 " window at a time different to the standard time.",
                         type = {DataType.INT, DataType.LONG},
                         optional = true,
-                        defaultValue = "Timestamp of first event")
+                        defaultValue = "Timestamp of first event"),
+                @Parameter(name = "memory.limit",
+                        description = "The estimated bytes the events pending in a batch may take on the heap, for"
+                                + " each partition key, given as 'memory.limit=<bytes>' with an optional 'kb', 'mb' or"
+                                + " 'gb' unit. The estimate counts the keys and the attribute values of the events."
+                                + " The total of all the partitions is reported by the 'unique.memory' gauge of the"
+                                + " query when the Siddhi app has statistics. The events of the last batch, held to"
+                                + " be expired or joined, are not counted.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the batch is not bounded"),
+                @Parameter(name = "memory.policy",
+                        description = "What happens to an event of a new key that does not fit in 'memory.limit',"
+                                + " given as 'memory.policy=<policy>'. 'flush' emits the pending batch right away"
+                                + " and starts a new one with the event, while the batches go on being emitted on"
+                                + " schedule. 'spill' spills the event into memory-mapped segment files as with"
+                                + " 'spill.threshold'. 'evict' drops the oldest pending events of the batch to make"
+                                + " room for it. 'reject' drops the event, counting it in the"
+                                + " 'unique.memory.rejected' gauge of the query.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "flush"),
+                @Parameter(name = "early.fire.interval",
+                        description = "The interval in milliseconds, given as 'early.fire.interval=<ms>', at which a"
+                                + " provisional view of the events pending in the batch is emitted before the batch"
+                                + " ends. The batches themselves are emitted as without early firing.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, only the batches are emitted"),
+                @Parameter(name = "early.fire.mode",
+                        description = "What each early firing emits, given as 'early.fire.mode=<mode>'. 'full' emits"
+                                + " a reset event followed by all the pending events. 'delta' does so on the first"
+                                + " firing of a batch, and then only emits the events of the keys that changed since"
+                                + " the last firing, each preceded by the expired event fired for its key before.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "full"),
+                @Parameter(name = "early.fire.flag",
+                        description = "A bool attribute of the input stream, given as 'early.fire.flag=<attribute>',"
+                                + " that the window sets to true in the provisional events and to false in the events"
+                                + " of the batches, so that consumers can tell them apart.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "None, the events are left as they arrived"),
+                @Parameter(name = "output.mode",
+                        description = "How each batch is emitted, given as 'output.mode=<mode>'. 'batch' emits the"
+                                + " last batch as expired events, a reset event and the new batch. 'delta' compares"
+                                + " the new batch with the last one by key, and only emits the events of the keys"
+                                + " that left as expired events, of the new keys as current events, and of the keys"
+                                + " whose attribute values changed as the expired last event followed by the new"
+                                + " one, without any reset event. It cannot be used along with early firing.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "batch")
+        },
+        systemParameter = {
+                @SystemParameter(name = "spill.threshold",
+                        description = "The maximum number of pending batch events held on the heap. Events of the"
+                                + " batch beyond this number are spilled into memory-mapped segment files and"
+                                + " streamed back when the batch is emitted. A non-positive value disables spilling.",
+                        defaultValue = "-1",
+                        possibleParameters = "Any integer"),
+                @SystemParameter(name = "spill.directory",
+                        description = "The directory in which the spill segment and key index files are created.",
+                        defaultValue = "The value of the 'java.io.tmpdir' system property",
+                        possibleParameters = "Any writable directory path")
         },
         examples = {
                 @Example(
@@ -95,6 +164,16 @@ import java.util.Map;
                         description = "This window holds the latest unique events that arrive from the 'CseEventStream'"
                                 + " at a given time, and returns all the events to the 'OutputStream' stream. "
                                 + "It is updated every second based on the latest values for the 'symbol' attribute."
+                ),
+                @Example(
+                        syntax = "define stream CseEventStream (symbol string, price float, provisional bool)\n\n" +
+                                "from CseEventStream#window.unique:timeBatch(symbol, 1 min, "
+                                + "'early.fire.interval=10000', 'early.fire.flag=provisional')\n" +
+                                "select symbol, price, provisional\n" +
+                                "insert into OutputStream ;",
+                        description = "This window emits the latest unique events of each minute, and every ten"
+                                + " seconds emits the latest unique events so far in the minute, with 'provisional'"
+                                + " set to true."
                 )
         }
 )
@@ -103,14 +182,17 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
         implements SchedulingProcessor, FindableProcessor {
 
     private long timeInMilliSeconds;
-    private long nextEmitTime = -1;
-    private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
-    private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
     private Scheduler scheduler;
     private boolean isStartTimeEnabled = false;
     private long startTime = 0;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
-
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
+    private boolean outputExpectsExpiredEvents;
+    private boolean retainExpiredEvents;
+    private ConfigReader configReader;
+    private MemoryBudget memoryBudget;
+    private EarlyFiring earlyFiring;
+    private boolean deltaOutput;
 
     @Override
     protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
@@ -119,70 +201,91 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        this.eventsToBeExpired = new ComplexEventChunk<>(false);
-        if (attributeExpressionExecutors.length == 2) {
-            this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
-            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+        UniqueOptions options = UniqueOptions.parse("time batch window", attributeExpressionExecutors,
+                UniqueOptions.MEMORY_LIMIT, UniqueOptions.MEMORY_POLICY, UniqueOptions.EARLY_FIRE_INTERVAL,
+                UniqueOptions.EARLY_FIRE_MODE, UniqueOptions.EARLY_FIRE_FLAG, UniqueOptions.OUTPUT_MODE);
+        ExpressionExecutor[] parameters = options.getParameters();
+        this.deltaOutput = BatchDelta.isDelta(options);
+        this.outputExpectsExpiredEvents = outputExpectsExpiredEvents;
+        // the delta output holds the last batch itself, the expired events are only retained to be joined
+        this.retainExpiredEvents = (outputExpectsExpiredEvents && !deltaOutput) || findToBeExecuted;
+        this.configReader = configReader;
+        if (parameters.length == 2) {
+            this.keyExtractor = UniqueKeyExtractor.of(parameters[0]);
+            if (parameters[1] instanceof ConstantExpressionExecutor) {
+                if (parameters[1].getReturnType() == Attribute.Type.INT) {
+                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
-                } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
-                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                } else if (parameters[1].getReturnType() == Attribute.Type.LONG) {
+                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "Unique Time Batch window's parameter " + "time should be either"
-                                    + "int or long, but found " + attributeExpressionExecutors[1].getReturnType());
+                                    + "int or long, but found " + parameters[1].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Batch window should have constant "
-                        + "for time parameter but found a dynamic attribute " + attributeExpressionExecutors[1]
+                        + "for time parameter but found a dynamic attribute " + parameters[1]
                         .getClass().getCanonicalName());
             }
-        } else if (attributeExpressionExecutors.length == 3) {
-            this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
-            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+        } else if (parameters.length == 3) {
+            this.keyExtractor = UniqueKeyExtractor.of(parameters[0]);
+            if (parameters[1] instanceof ConstantExpressionExecutor) {
+                if (parameters[1].getReturnType() == Attribute.Type.INT) {
+                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
-                } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
-                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                } else if (parameters[1].getReturnType() == Attribute.Type.LONG) {
+                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "UniqueTimeBatch window's parameter time should be either" + " int or long, but found "
-                                    + attributeExpressionExecutors[1].getReturnType());
+                                    + parameters[1].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Batch window should have constant "
-                        + "for time parameter but found a dynamic attribute " + attributeExpressionExecutors[1]
+                        + "for time parameter but found a dynamic attribute " + parameters[1]
                         .getClass().getCanonicalName());
             }
             // isStartTimeEnabled used to set start time
-            if (attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
+            if (parameters[2] instanceof ConstantExpressionExecutor) {
+                if (parameters[2].getReturnType() == Attribute.Type.INT) {
                     isStartTimeEnabled = true;
                     startTime = Integer.parseInt(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue()));
-                } else if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.LONG) {
+                            String.valueOf(((ConstantExpressionExecutor) parameters[2]).getValue()));
+                } else if (parameters[2].getReturnType() == Attribute.Type.LONG) {
                     isStartTimeEnabled = true;
                     startTime = Long.parseLong(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue()));
+                            String.valueOf(((ConstantExpressionExecutor) parameters[2]).getValue()));
                 } else {
                     throw new SiddhiAppValidationException("Expected either "
                             + "int or long type for UniqueTimeBatch window's start time parameter, but found "
-                            + attributeExpressionExecutors[2].getReturnType());
+                            + parameters[2].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Batch window should have constant "
-                        + "for time parameter but found a dynamic attribute " + attributeExpressionExecutors[2]
+                        + "for time parameter but found a dynamic attribute " + parameters[2]
                         .getReturnType());
             }
         } else {
             throw new SiddhiAppValidationException(
                     "Unique Time Batch window should " + "only have two or three parameters. " + "but found "
-                            + attributeExpressionExecutors.length + " input attributes");
+                            + parameters.length + " input attributes");
+        }
+        memoryBudget = MemoryBudget.of(options, siddhiQueryContext, MemoryBudget.FLUSH, MemoryBudget.SPILL,
+                MemoryBudget.EVICT, MemoryBudget.REJECT);
+        if (memoryBudget != null && MemoryBudget.EVICT.equals(memoryBudget.getPolicy())
+                && Integer.parseInt(configReader.readConfig(SpillableUniqueEventMap.SPILL_THRESHOLD, "-1")) > 0) {
+            throw new SiddhiAppValidationException("Unique time batch window cannot evict the events of a batch "
+                    + "spilling beyond 'spill.threshold', use the 'spill' memory policy instead");
+        }
+        earlyFiring = EarlyFiring.of(options, metaStreamEvent, inputDefinition);
+        if (earlyFiring != null && deltaOutput) {
+            throw new SiddhiAppValidationException("Unique time batch window cannot fire early along with the "
+                    + "delta output mode");
         }
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
         return () -> new ExtensionState();
     }
 
@@ -190,25 +293,29 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
     protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
-        synchronized (this) {
+        List<ComplexEventChunk<StreamEvent>> flushedChunks = memoryBudget == null ? Collections.emptyList()
+                : new ArrayList<>(1);
+        synchronized (state) {
             long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
-            if (nextEmitTime == -1) {
+            if (state.nextEmitTime == -1) {
+                StreamEvent firstEvent = streamEventChunk.getFirst();
+                if (firstEvent == null || firstEvent.getType() == ComplexEvent.Type.TIMER) {
+                    // no batch is pending, the timer has been left by an idle state that got destroyed
+                    streamEventChunk.clear();
+                    return;
+                }
                 if (isStartTimeEnabled) {
-                    nextEmitTime = getNextEmitTime(currentTime);
+                    state.nextEmitTime = getNextEmitTime(currentTime);
                 } else {
-                    nextEmitTime = currentTime + timeInMilliSeconds;
-                }
-                if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
+                    state.nextEmitTime = currentTime + timeInMilliSeconds;
                 }
+                scheduleNextEmit(state);
             }
             boolean sendEvents;
-            if (currentTime >= nextEmitTime) {
-                nextEmitTime += timeInMilliSeconds;
+            if (currentTime >= state.nextEmitTime) {
+                state.nextEmitTime += timeInMilliSeconds;
 
-                if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
-                }
+                scheduleNextEmit(state);
 
                 sendEvents = true;
             } else {
@@ -219,43 +326,34 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
                 if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
                     continue;
                 }
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                addUniqueEvent(uniqueEventMap, uniqueKeyExpressionExecutor, clonedStreamEvent);
+                StreamEvent clonedStreamEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                if (state.account == null || MemoryBudget.SPILL.equals(memoryBudget.getPolicy())) {
+                    addUniqueEvent(state.uniqueEventMap, keyExtractor, clonedStreamEvent);
+                    if (state.earlyFiring != null) {
+                        state.earlyFiring.changed(keyExtractor.extract(clonedStreamEvent));
+                    }
+                } else {
+                    addWithinBudget(state, clonedStreamEvent, currentTime, streamEventCloner, flushedChunks);
+                }
             }
             streamEventChunk.clear();
             if (sendEvents) {
-                for (StreamEvent event : uniqueEventMap.values()) {
-                    event.setTimestamp(currentTime);
-                    state.currentEventChunk.add(event);
-                }
-                uniqueEventMap.clear();
-                if (eventsToBeExpired.getFirst() != null) {
-                    while (eventsToBeExpired.hasNext()) {
-                        StreamEvent expiredEvent = eventsToBeExpired.next();
-                        expiredEvent.setTimestamp(currentTime);
-                    }
-                    streamEventChunk.add(eventsToBeExpired.getFirst());
+                flush(state, currentTime, streamEventChunk, streamEventCloner);
+            } else if (state.earlyFiring != null && state.earlyFiring.isDue(currentTime)) {
+                if (outputExpectsExpiredEvents) {
+                    // the provisional reset clears the aggregations, the last batch has to expire ahead of it
+                    expireLastBatch(state, currentTime, streamEventChunk);
                 }
-                eventsToBeExpired.clear();
-                if (state.currentEventChunk.getFirst() != null) {
-                    // add reset event in front of current events
-                    streamEventChunk.add(state.resetEvent);
-                    state.currentEventChunk.reset();
-                    while (state.currentEventChunk.hasNext()) {
-                        StreamEvent streamEvent = state.currentEventChunk.next();
-                        StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
-                        eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                        this.eventsToBeExpired.add(eventClonedForMap);
-                    }
-                    if (state.currentEventChunk.getFirst() != null) {
-                        state.resetEvent = streamEventCloner.copyStreamEvent(state.currentEventChunk.getFirst());
-                        state.resetEvent.setType(ComplexEvent.Type.RESET);
-                        streamEventChunk.add(state.currentEventChunk.getFirst());
-                    }
+                state.earlyFiring.fire(state.uniqueEventMap, currentTime, retainedEventCloner, streamEventCloner,
+                        streamEventChunk);
+                if (scheduler != null) {
+                    scheduler.notifyAt(Math.min(state.earlyFiring.getNextFireTime(), state.nextEmitTime));
                 }
-                state.currentEventChunk.clear();
             }
         }
+        for (ComplexEventChunk<StreamEvent> flushedChunk : flushedChunks) {
+            nextProcessor.process(flushedChunk);
+        }
         if (streamEventChunk.getFirst() != null) {
             streamEventChunk.setBatch(true);
             nextProcessor.process(streamEventChunk);
@@ -263,6 +361,149 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
         }
     }
 
+    /**
+     * Adds the event to the pending batch, applying the memory policy when the event of a new key does not fit in the
+     * memory limit.
+     */
+    private void addWithinBudget(ExtensionState state, StreamEvent clonedStreamEvent, long currentTime,
+                                 StreamEventCloner streamEventCloner,
+                                 List<ComplexEventChunk<StreamEvent>> flushedChunks) {
+        Object key = keyExtractor.extract(clonedStreamEvent);
+        StreamEvent heldEvent = state.uniqueEventMap.get(key);
+        long size = MemoryBudget.sizeOf(key, clonedStreamEvent);
+        if (heldEvent == null && !state.account.fits(size)) {
+            if (MemoryBudget.REJECT.equals(memoryBudget.getPolicy())) {
+                memoryBudget.reject();
+                return;
+            }
+            if (MemoryBudget.FLUSH.equals(memoryBudget.getPolicy()) && !state.uniqueEventMap.isEmpty()) {
+                ComplexEventChunk<StreamEvent> flushedChunk = new ComplexEventChunk<>(true);
+                flush(state, currentTime, flushedChunk, streamEventCloner);
+                flushedChunks.add(flushedChunk);
+            }
+        }
+        addUniqueEvent(state.uniqueEventMap, keyExtractor, clonedStreamEvent);
+        StreamEvent newHeldEvent = state.uniqueEventMap.get(key);
+        if (newHeldEvent == heldEvent) {
+            return;
+        }
+        if (state.earlyFiring != null) {
+            state.earlyFiring.changed(key);
+        }
+        state.account.charge(heldEvent == null ? size : size - MemoryBudget.sizeOf(key, heldEvent));
+        if (MemoryBudget.EVICT.equals(memoryBudget.getPolicy())) {
+            Iterator<Map.Entry<Object, StreamEvent>> iterator = state.uniqueEventMap.entrySet().iterator();
+            while (state.account.isExceeded() && iterator.hasNext()) {
+                Map.Entry<Object, StreamEvent> entry = iterator.next();
+                if (entry.getValue() != newHeldEvent) {
+                    state.account.charge(-MemoryBudget.sizeOf(entry.getKey(), entry.getValue()));
+                    if (state.earlyFiring != null) {
+                        state.earlyFiring.changed(entry.getKey());
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Emits the expired events of the last batch into the given chunk, if the output expects them, and forgets them.
+     */
+    private void expireLastBatch(ExtensionState state, long currentTime,
+                                 ComplexEventChunk<StreamEvent> streamEventChunk) {
+        if (state.eventsToBeExpired != null) {
+            if (outputExpectsExpiredEvents && state.eventsToBeExpired.getFirst() != null) {
+                while (state.eventsToBeExpired.hasNext()) {
+                    StreamEvent expiredEvent = state.eventsToBeExpired.next();
+                    expiredEvent.setTimestamp(currentTime);
+                }
+                streamEventChunk.add(state.eventsToBeExpired.getFirst());
+            }
+            state.eventsToBeExpired.clear();
+        }
+    }
+
+    /**
+     * Emits the pending batch into the given chunk, preceded by the expired events of the last batch and a reset
+     * event.
+     */
+    private void flush(ExtensionState state, long currentTime, ComplexEventChunk<StreamEvent> streamEventChunk,
+                       StreamEventCloner streamEventCloner) {
+        if (state.batchDelta != null) {
+            if (state.eventsToBeExpired != null) {
+                state.eventsToBeExpired.clear();
+            }
+            state.batchDelta.emit(state.uniqueEventMap, currentTime, event -> {
+                if (earlyFiring != null) {
+                    earlyFiring.markFinal(event);
+                }
+                if (state.eventsToBeExpired != null) {
+                    StreamEvent eventClonedForMap = retainedEventCloner.copy(event, streamEventCloner);
+                    eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                    state.eventsToBeExpired.add(eventClonedForMap);
+                }
+            }, retainedEventCloner, streamEventCloner, streamEventChunk);
+            state.uniqueEventMap.clear();
+            if (state.account != null) {
+                state.account.reset(0);
+            }
+            return;
+        }
+        for (StreamEvent event : state.uniqueEventMap.values()) {
+            event.setTimestamp(currentTime);
+            if (earlyFiring != null) {
+                earlyFiring.markFinal(event);
+            }
+            state.currentEventChunk.add(event);
+        }
+        state.uniqueEventMap.clear();
+        if (state.account != null) {
+            state.account.reset(0);
+        }
+        if (state.earlyFiring != null) {
+            state.earlyFiring.reset();
+        }
+        expireLastBatch(state, currentTime, streamEventChunk);
+        if (state.currentEventChunk.getFirst() != null) {
+            // add reset event in front of current events
+            streamEventChunk.add(state.resetEvent);
+            if (state.eventsToBeExpired != null) {
+                state.currentEventChunk.reset();
+                while (state.currentEventChunk.hasNext()) {
+                    StreamEvent streamEvent = state.currentEventChunk.next();
+                    StreamEvent eventClonedForMap = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                    eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                    state.eventsToBeExpired.add(eventClonedForMap);
+                }
+            }
+            if (state.currentEventChunk.getFirst() != null) {
+                state.resetEvent = retainedEventCloner.copy(state.currentEventChunk.getFirst(),
+                        streamEventCloner);
+                state.resetEvent.setType(ComplexEvent.Type.RESET);
+                streamEventChunk.add(state.currentEventChunk.getFirst());
+            }
+        } else if (state.resetEvent != null) {
+            // reset the aggregations of the last batch, so that an idle state holds no pending reset
+            streamEventChunk.add(state.resetEvent);
+            state.resetEvent = null;
+        }
+        state.currentEventChunk.clear();
+    }
+
+    /**
+     * Schedules the emission of the batch ending at the next emit time, or its first early firing. The scheduler
+     * notifies its times in the order they are given, hence the window only gives the next one.
+     */
+    private void scheduleNextEmit(ExtensionState state) {
+        long nextTime = state.nextEmitTime;
+        if (state.earlyFiring != null) {
+            state.earlyFiring.start(state.nextEmitTime - timeInMilliSeconds);
+            nextTime = Math.min(state.earlyFiring.getNextFireTime(), nextTime);
+        }
+        if (scheduler != null) {
+            scheduler.notifyAt(nextTime);
+        }
+    }
 
     @Override
     public synchronized void setScheduler(Scheduler scheduler) {
@@ -274,10 +515,9 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
         return scheduler;
     }
 
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                  ExpressionExecutor uniqueKeyExpressionExecutor,
+    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, UniqueKeyExtractor keyExtractor,
                                   StreamEvent clonedStreamEvent) {
-        uniqueEventMap.put(uniqueKeyExpressionExecutor.execute(clonedStreamEvent), clonedStreamEvent);
+        uniqueEventMap.put(keyExtractor.extract(clonedStreamEvent), clonedStreamEvent);
     }
 
     /**
@@ -308,42 +548,71 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
 
     class ExtensionState extends State {
 
+        private long nextEmitTime = -1;
         private StreamEvent resetEvent = null;
         private ComplexEventChunk<StreamEvent> currentEventChunk = new ComplexEventChunk<>(false);
+        private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
+        private Map<Object, StreamEvent> uniqueEventMap;
+        private final MemoryBudget.Account account;
+        private final EarlyFiring.Tracker earlyFiring;
+        private final BatchDelta batchDelta = deltaOutput ? new BatchDelta() : null;
+
+        private ExtensionState() {
+            if (retainExpiredEvents) {
+                eventsToBeExpired = new ComplexEventChunk<>(false);
+            }
+            account = memoryBudget != null ? memoryBudget.newAccount() : null;
+            earlyFiring = UniqueTimeBatchWindowProcessor.this.earlyFiring != null
+                    ? UniqueTimeBatchWindowProcessor.this.earlyFiring.newTracker() : null;
+            if (account != null && MemoryBudget.SPILL.equals(memoryBudget.getPolicy())) {
+                uniqueEventMap = SpillableUniqueEventMap.newBatchEventMap(configReader, false, account);
+            } else {
+                // evicting drops the oldest events first
+                uniqueEventMap = SpillableUniqueEventMap.newBatchEventMap(configReader, account != null);
+            }
+        }
 
         @Override
         public boolean canDestroy() {
-            return false;
+            return uniqueEventMap.isEmpty() && resetEvent == null
+                    && (eventsToBeExpired == null || eventsToBeExpired.getFirst() == null)
+                    && (batchDelta == null || batchDelta.isEmpty());
         }
 
         @Override
         public Map<String, Object> snapshot() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("currentEventChunk", currentEventChunk.getFirst());
             if (eventsToBeExpired != null) {
-                Map<String, Object> map = new HashMap<>();
-                map.put("currentEventChunk", currentEventChunk.getFirst());
                 map.put("eventsToBeExpired", eventsToBeExpired.getFirst());
-                map.put("resetEvent", resetEvent);
-                return map;
-            } else {
-                Map<String, Object> map = new HashMap<>();
-                map.put("currentEventChunk", currentEventChunk.getFirst());
-                map.put("resetEvent", resetEvent);
-                return map;
             }
+            map.put("resetEvent", resetEvent);
+            map.put("uniqueEventMap", SpillableUniqueEventMap.snapshot(uniqueEventMap));
+            if (batchDelta != null) {
+                map.put("lastBatch", batchDelta.snapshot());
+            }
+            return map;
         }
 
         @Override
         public void restore(Map<String, Object> map) {
-            if (map.size() > 2) {
-                currentEventChunk.clear();
-                currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
+            currentEventChunk.clear();
+            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
+            if (eventsToBeExpired != null) {
                 eventsToBeExpired.clear();
                 eventsToBeExpired.add((StreamEvent) map.get("eventsToBeExpired"));
-                resetEvent = (StreamEvent) map.get("resetEvent");
-            } else {
-                currentEventChunk.clear();
-                currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-                resetEvent = (StreamEvent) map.get("resetEvent");
+            }
+            resetEvent = (StreamEvent) map.get("resetEvent");
+            SpillableUniqueEventMap.restore(uniqueEventMap, map.get("uniqueEventMap"));
+            if (batchDelta != null) {
+                batchDelta.restore((Map<Object, StreamEvent>) map.get("lastBatch"));
+            }
+            if (account != null && !MemoryBudget.SPILL.equals(memoryBudget.getPolicy())) {
+                long size = 0;
+                for (Map.Entry<Object, StreamEvent> entry : uniqueEventMap.entrySet()) {
+                    size += MemoryBudget.sizeOf(entry.getKey(), entry.getValue());
+                }
+                account.reset(size);
             }
         }
     }
@@ -351,9 +620,15 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, eventsToBeExpired,
-                    streamEventClonerHolder.getStreamEventCloner()
-            );
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.eventsToBeExpired,
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -363,7 +638,7 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor<UniqueTimeBa
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(eventsToBeExpired, expression, matchingMetaInfoHolder,
-                variableExpressionExecutors, tableMap, siddhiQueryContext);
+        return OperatorParser.constructOperator(new ComplexEventChunk<StreamEvent>(false), expression,
+                matchingMetaInfoHolder, variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
 }
@@ -55,6 +55,7 @@ import io.siddhi.query.api.expression.Expression;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * class representing Unique Time Length Batch window processor implementation.
@@ -88,7 +89,18 @@ import java.util.Map;
 
                 @Parameter(name = "window.length",
                         description = "The number of events the window should tumble.",
-                        type = {DataType.INT})
+                        type = {DataType.INT}),
+
+                @Parameter(name = "output.mode",
+                        description = "How each batch is emitted, given as 'output.mode=<mode>'. 'batch' emits the"
+                                + " last batch as expired events, a reset event and the new batch. 'delta' compares"
+                                + " the new batch with the last one by key, and only emits the events of the keys"
+                                + " that left as expired events, of the new keys as current events, and of the keys"
+                                + " whose attribute values changed as the expired last event followed by the new"
+                                + " one, without any reset event.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "batch")
         },
         examples = {
                 @Example(
@@ -110,14 +122,14 @@ public class UniqueTimeLengthBatchWindowProcessor
 
     private long timeInMilliSeconds;
     private long length;
-    private long nextEmitTime = -1;
-    private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
-    private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
+    private boolean outputExpectsExpiredEvents;
+    private boolean retainExpiredEvents;
     private Scheduler scheduler;
     private boolean isStartTimeEnabled = false;
     private long startTime = 0;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
-    private boolean eventSent = false;
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
+    private boolean deltaOutput;
 
     @Override
     protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
@@ -126,105 +138,116 @@ public class UniqueTimeLengthBatchWindowProcessor
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        this.eventsToBeExpired = new ComplexEventChunk<>(false);
-        if (attributeExpressionExecutors.length == 3) {
-            this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
-            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+        UniqueOptions options = UniqueOptions.parse("time length batch window", attributeExpressionExecutors,
+                UniqueOptions.OUTPUT_MODE);
+        ExpressionExecutor[] parameters = options.getParameters();
+        this.deltaOutput = BatchDelta.isDelta(options);
+        this.outputExpectsExpiredEvents = outputExpectsExpiredEvents;
+        // the delta output holds the last batch itself, the expired events are only retained to be joined
+        this.retainExpiredEvents = (outputExpectsExpiredEvents && !deltaOutput) || findToBeExecuted;
+        if (parameters.length == 3) {
+            this.keyExtractor = UniqueKeyExtractor.of(parameters[0]);
+            if (parameters[1] instanceof ConstantExpressionExecutor) {
+                if (parameters[1].getReturnType() == Attribute.Type.INT) {
+                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
-                } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
-                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                } else if (parameters[1].getReturnType() == Attribute.Type.LONG) {
+                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "Unique Time Length Batch window's parameter time should be either int, long or time, " +
-                                    "but found " + attributeExpressionExecutors[1].getReturnType());
+                                    "but found " + parameters[1].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Length Batch window should have constant "
-                        + "for time parameter but found a dynamic attribute " + attributeExpressionExecutors[1]
+                        + "for time parameter but found a dynamic attribute " + parameters[1]
                         .getClass().getCanonicalName());
             }
-            if (attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
-                    length = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[2])
+            if (parameters[2] instanceof ConstantExpressionExecutor) {
+                if (parameters[2].getReturnType() == Attribute.Type.INT) {
+                    length = (Integer) ((ConstantExpressionExecutor) parameters[2])
                             .getValue();
-                } else if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.LONG) {
-                    length = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[2])
+                } else if (parameters[2].getReturnType() == Attribute.Type.LONG) {
+                    length = (Long) ((ConstantExpressionExecutor) parameters[2])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "Unique Time Length Batch window's parameter " + "length should be either"
-                                    + "int or long, but found " + attributeExpressionExecutors[2].getReturnType());
+                                    + "int or long, but found " + parameters[2].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Length Batch window should have constant "
-                        + "for length parameter but found a dynamic attribute " + attributeExpressionExecutors[2]
+                        + "for length parameter but found a dynamic attribute " + parameters[2]
                         .getClass().getCanonicalName());
             }
-        } else if (attributeExpressionExecutors.length == 4) {
-            this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
-            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+        } else if (parameters.length == 4) {
+            this.keyExtractor = UniqueKeyExtractor.of(parameters[0]);
+            if (parameters[1] instanceof ConstantExpressionExecutor) {
+                if (parameters[1].getReturnType() == Attribute.Type.INT) {
+                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
-                } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
-                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                } else if (parameters[1].getReturnType() == Attribute.Type.LONG) {
+                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "UniqueTimeLengthBatch window's parameter time should be either" +
                                     " int or long, but found "
-                                    + attributeExpressionExecutors[1].getReturnType());
+                                    + parameters[1].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Length Batch window should have constant "
-                        + "for time parameter but found a dynamic attribute " + attributeExpressionExecutors[1]
+                        + "for time parameter but found a dynamic attribute " + parameters[1]
                         .getClass().getCanonicalName());
             }
             // isStartTimeEnabled used to set start time
-            if (attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
+            if (parameters[2] instanceof ConstantExpressionExecutor) {
+                if (parameters[2].getReturnType() == Attribute.Type.INT) {
                     isStartTimeEnabled = true;
                     startTime = Integer.parseInt(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue()));
-                } else if (attributeExpressionExecutors[2].getReturnType() == Attribute.Type.LONG) {
+                            String.valueOf(((ConstantExpressionExecutor) parameters[2]).getValue()));
+                } else if (parameters[2].getReturnType() == Attribute.Type.LONG) {
                     isStartTimeEnabled = true;
                     startTime = Long.parseLong(
-                            String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue()));
+                            String.valueOf(((ConstantExpressionExecutor) parameters[2]).getValue()));
                 } else {
                     throw new SiddhiAppValidationException("Expected either int or long type for " +
                             "UniqueTimeLengthBatch window's start time parameter, but found "
-                            + attributeExpressionExecutors[2].getReturnType());
+                            + parameters[2].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Length Batch window should have constant "
-                        + "for time parameter but found a dynamic attribute " + attributeExpressionExecutors[2]
+                        + "for time parameter but found a dynamic attribute " + parameters[2]
                         .getReturnType());
             }
-            if (attributeExpressionExecutors[3] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.INT) {
-                    length = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[3])
+            if (parameters[3] instanceof ConstantExpressionExecutor) {
+                if (parameters[3].getReturnType() == Attribute.Type.INT) {
+                    length = (Integer) ((ConstantExpressionExecutor) parameters[3])
                             .getValue();
-                } else if (attributeExpressionExecutors[3].getReturnType() == Attribute.Type.LONG) {
-                    length = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[3])
+                } else if (parameters[3].getReturnType() == Attribute.Type.LONG) {
+                    length = (Long) ((ConstantExpressionExecutor) parameters[3])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "Unique Time Length Batch window's parameter " + "length should be either"
-                                    + "int or long, but found " + attributeExpressionExecutors[3].getReturnType());
+                                    + "int or long, but found " + parameters[3].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException("Unique Time Length Batch window should have constant "
-                        + "for length parameter but found a dynamic attribute " + attributeExpressionExecutors[3]
+                        + "for length parameter but found a dynamic attribute " + parameters[3]
                         .getClass().getCanonicalName());
             }
         } else {
             throw new SiddhiAppValidationException(
                     "Unique Time Length Batch window should " + "only have three or four parameters. " + "but found "
-                            + attributeExpressionExecutors.length + " input attributes");
+                            + parameters.length + " input attributes");
+        }
+        if (!(parameters[0] instanceof VariableExpressionExecutor)) {
+            throw new SiddhiAppValidationException("Unique Time Length Batch window should have a variable "
+                    + "for unique key parameter but found " + parameters[0].getClass().getCanonicalName());
         }
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
         return () -> new ExtensionState();
     }
 
@@ -232,33 +255,39 @@ public class UniqueTimeLengthBatchWindowProcessor
     protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
-        synchronized (this) {
+        synchronized (state) {
             long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
-            if (nextEmitTime == -1) {
+            if (state.nextEmitTime == -1) {
+                StreamEvent firstEvent = streamEventChunk.getFirst();
+                if (firstEvent == null || firstEvent.getType() == ComplexEvent.Type.TIMER) {
+                    // no batch is pending, the timer has been left by an idle state that got destroyed
+                    streamEventChunk.clear();
+                    return;
+                }
                 if (isStartTimeEnabled) {
-                    nextEmitTime = getNextEmitTime(currentTime);
+                    state.nextEmitTime = getNextEmitTime(currentTime);
                 } else {
-                    nextEmitTime = currentTime + timeInMilliSeconds;
+                    state.nextEmitTime = currentTime + timeInMilliSeconds;
                 }
                 if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
+                    scheduler.notifyAt(state.nextEmitTime);
                 }
             }
             boolean sendEventsByTime = false;
             boolean sendEventsByLength = false;
-            if (currentTime >= nextEmitTime) {
-                nextEmitTime += timeInMilliSeconds;
+            if (currentTime >= state.nextEmitTime) {
+                state.nextEmitTime += timeInMilliSeconds;
                 if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
+                    scheduler.notifyAt(state.nextEmitTime);
                 }
-                if (eventSent) { // reset on next batch
-                    eventSent = false;
+                if (state.eventSent) { // reset on next batch
+                    state.eventSent = false;
                     streamEventChunk.clear();
                     return;
                 }
                 sendEventsByTime = true;
             }
-            if (eventSent) { //skip events till next batch
+            if (state.eventSent) { //skip events till next batch
                 streamEventChunk.clear();
                 return;
             }
@@ -267,9 +296,9 @@ public class UniqueTimeLengthBatchWindowProcessor
                 if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
                     continue;
                 }
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                addUniqueEvent(uniqueEventMap, uniqueKeyExpressionExecutor, clonedStreamEvent);
-                if (uniqueEventMap.size() == length) {
+                StreamEvent clonedStreamEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                addUniqueEvent(state.uniqueEventMap, keyExtractor, clonedStreamEvent);
+                if (state.uniqueEventMap.size() == length) {
                     sendEventsByLength = true; // emitting batch based on length
                     break;
                 }
@@ -279,7 +308,7 @@ public class UniqueTimeLengthBatchWindowProcessor
                 sendEvents(streamEventChunk, streamEventCloner, currentTime, state);
             }
             if (sendEventsByLength) {
-                eventSent = true; // making events to skip till next time batch
+                state.eventSent = true; // making events to skip till next time batch
             }
         }
         if (streamEventChunk.getFirst() != null) {
@@ -291,34 +320,57 @@ public class UniqueTimeLengthBatchWindowProcessor
 
     private void sendEvents(ComplexEventChunk<StreamEvent> streamEventChunk, StreamEventCloner streamEventCloner,
                             long currentTime, ExtensionState state) {
-        for (StreamEvent event : uniqueEventMap.values()) {
+        if (state.batchDelta != null) {
+            Consumer<StreamEvent> retainForJoin = null;
+            if (state.eventsToBeExpired != null) {
+                state.eventsToBeExpired.clear();
+                retainForJoin = event -> {
+                    StreamEvent eventClonedForMap = retainedEventCloner.copy(event, streamEventCloner);
+                    eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                    state.eventsToBeExpired.add(eventClonedForMap);
+                };
+            }
+            state.batchDelta.emit(state.uniqueEventMap, currentTime, retainForJoin, retainedEventCloner,
+                    streamEventCloner, streamEventChunk);
+            state.uniqueEventMap.clear();
+            return;
+        }
+        for (StreamEvent event : state.uniqueEventMap.values()) {
             event.setTimestamp(currentTime);
             state.currentEventChunk.add(event);
         }
-        uniqueEventMap.clear();
-        if (eventsToBeExpired.getFirst() != null) {
-            while (eventsToBeExpired.hasNext()) {
-                StreamEvent expiredEvent = eventsToBeExpired.next();
-                expiredEvent.setTimestamp(currentTime);
+        state.uniqueEventMap.clear();
+        if (state.eventsToBeExpired != null) {
+            if (outputExpectsExpiredEvents && state.eventsToBeExpired.getFirst() != null) {
+                while (state.eventsToBeExpired.hasNext()) {
+                    StreamEvent expiredEvent = state.eventsToBeExpired.next();
+                    expiredEvent.setTimestamp(currentTime);
+                }
+                streamEventChunk.add(state.eventsToBeExpired.getFirst());
             }
-            streamEventChunk.add(eventsToBeExpired.getFirst());
+            state.eventsToBeExpired.clear();
         }
-        eventsToBeExpired.clear();
         if (state.currentEventChunk.getFirst() != null) {
             // add reset event in front of current events
             streamEventChunk.add(state.resetEvent);
-            state.currentEventChunk.reset();
-            while (state.currentEventChunk.hasNext()) {
-                StreamEvent streamEvent = state.currentEventChunk.next();
-                StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
-                eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                this.eventsToBeExpired.add(eventClonedForMap);
+            if (state.eventsToBeExpired != null) {
+                state.currentEventChunk.reset();
+                while (state.currentEventChunk.hasNext()) {
+                    StreamEvent streamEvent = state.currentEventChunk.next();
+                    StreamEvent eventClonedForMap = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                    eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                    state.eventsToBeExpired.add(eventClonedForMap);
+                }
             }
             if (state.currentEventChunk.getFirst() != null) {
-                state.resetEvent = streamEventCloner.copyStreamEvent(state.currentEventChunk.getFirst());
+                state.resetEvent = retainedEventCloner.copy(state.currentEventChunk.getFirst(), streamEventCloner);
                 state.resetEvent.setType(ComplexEvent.Type.RESET);
                 streamEventChunk.add(state.currentEventChunk.getFirst());
             }
+        } else if (state.resetEvent != null) {
+            // reset the aggregations of the last batch, so that an idle state holds no pending reset
+            streamEventChunk.add(state.resetEvent);
+            state.resetEvent = null;
         }
         state.currentEventChunk.clear();
     }
@@ -334,10 +386,9 @@ public class UniqueTimeLengthBatchWindowProcessor
         return scheduler;
     }
 
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                  ExpressionExecutor uniqueKeyExpressionExecutor,
+    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, UniqueKeyExtractor keyExtractor,
                                   StreamEvent clonedStreamEvent) {
-        uniqueEventMap.put(uniqueKeyExpressionExecutor.execute(clonedStreamEvent), clonedStreamEvent);
+        uniqueEventMap.put(keyExtractor.extract(clonedStreamEvent), clonedStreamEvent);
     }
 
     /**
@@ -368,42 +419,54 @@ public class UniqueTimeLengthBatchWindowProcessor
 
     class ExtensionState extends State {
 
+        private long nextEmitTime = -1;
+        private boolean eventSent = false;
         private ComplexEventChunk<StreamEvent> currentEventChunk = new ComplexEventChunk<>(false);
         private StreamEvent resetEvent = null;
+        private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
+        private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
+        private final BatchDelta batchDelta = deltaOutput ? new BatchDelta() : null;
+
+        private ExtensionState() {
+            if (retainExpiredEvents) {
+                eventsToBeExpired = new ComplexEventChunk<>(false);
+            }
+        }
 
         @Override
         public boolean canDestroy() {
-            return false;
+            return !eventSent && uniqueEventMap.isEmpty() && resetEvent == null
+                    && (eventsToBeExpired == null || eventsToBeExpired.getFirst() == null)
+                    && (batchDelta == null || batchDelta.isEmpty());
         }
 
         @Override
         public Map<String, Object> snapshot() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("currentEventChunk", currentEventChunk.getFirst());
             if (eventsToBeExpired != null) {
-                Map<String, Object> map = new HashMap<>();
-                map.put("currentEventChunk", currentEventChunk.getFirst());
                 map.put("eventsToBeExpired", eventsToBeExpired.getFirst());
-                map.put("resetEvent", resetEvent);
-                return map;
-            } else {
-                Map<String, Object> map = new HashMap<>();
-                map.put("currentEventChunk", currentEventChunk.getFirst());
-                map.put("resetEvent", resetEvent);
-                return map;
             }
+            map.put("resetEvent", resetEvent);
+            map.put("uniqueEventMap", SpillableUniqueEventMap.snapshot(uniqueEventMap));
+            if (batchDelta != null) {
+                map.put("lastBatch", batchDelta.snapshot());
+            }
+            return map;
         }
 
         @Override
         public void restore(Map<String, Object> map) {
-            if (map.size() > 2) {
-                currentEventChunk.clear();
-                currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
+            currentEventChunk.clear();
+            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
+            if (eventsToBeExpired != null) {
                 eventsToBeExpired.clear();
                 eventsToBeExpired.add((StreamEvent) map.get("eventsToBeExpired"));
-                resetEvent = (StreamEvent) map.get("resetEvent");
-            } else {
-                currentEventChunk.clear();
-                currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-                resetEvent = (StreamEvent) map.get("resetEvent");
+            }
+            resetEvent = (StreamEvent) map.get("resetEvent");
+            SpillableUniqueEventMap.restore(uniqueEventMap, map.get("uniqueEventMap"));
+            if (batchDelta != null) {
+                batchDelta.restore((Map<Object, StreamEvent>) map.get("lastBatch"));
             }
         }
     }
@@ -411,8 +474,15 @@ public class UniqueTimeLengthBatchWindowProcessor
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, eventsToBeExpired,
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.eventsToBeExpired,
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -422,7 +492,7 @@ public class UniqueTimeLengthBatchWindowProcessor
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(eventsToBeExpired, expression, matchingMetaInfoHolder,
-                variableExpressionExecutors, tableMap, siddhiQueryContext);
+        return OperatorParser.constructOperator(new ComplexEventChunk<StreamEvent>(false), expression,
+                matchingMetaInfoHolder, variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
 }
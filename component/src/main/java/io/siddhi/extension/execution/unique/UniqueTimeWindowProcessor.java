@@ -51,11 +51,13 @@ import io.siddhi.query.api.definition.Attribute;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import io.siddhi.query.api.expression.Expression;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Collections.singletonMap;
 
 /**
  * The class representing unique time window processor implementation.
@@ -70,7 +72,12 @@ import java.util.concurrent.ConcurrentMap;
                 + " The window is updated with the arrival and expiry of each event."
                 + " When a new event that arrives within a window time period"
                 + " has the same value for the unique key parameter as an existing event in the window,"
-                + " the previous event is replaced by the new event.",
+                + " the previous event is replaced by the new event."
+                + " Events are processed a chunk at a time, reading the current time once per chunk: the events"
+                + " that are due by then expire first, bucket by bucket and in the order they arrived within a"
+                + " bucket, followed by the events of the chunk in their order, each preceded by the event it"
+                + " replaces, if any. Events becoming due while a chunk is processed expire with the next chunk or"
+                + " timer.",
 
         parameters = {
                 @Parameter(name = "unique.key",
@@ -79,7 +86,16 @@ import java.util.concurrent.ConcurrentMap;
                                 DataType.BOOL, DataType.DOUBLE}),
                 @Parameter(name = "window.time",
                         description = "The sliding time period for which the window should hold events.",
-                        type = {DataType.INT, DataType.LONG})
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "expiry.granularity",
+                        description = "The time span in milliseconds of the buckets the held events are grouped "
+                                + "into by timestamp, given as 'expiry.granularity=<milliseconds>'. A bucket "
+                                + "expires as a whole once the window time has passed since its latest timestamp, "
+                                + "hence events are held up to one span longer than the window time, while expiring "
+                                + "events costs per bucket rather than per event.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "1"),
         },
         examples = {
                 @Example(
@@ -103,10 +119,10 @@ public class UniqueTimeWindowProcessor extends WindowProcessor<UniqueTimeWindowP
         implements SchedulingProcessor, FindableProcessor {
 
     private long timeInMilliSeconds;
-    private ComplexEventChunk<StreamEvent> expiredEventChunk;
+    private long granularity;
     private Scheduler scheduler;
-    private volatile long lastTimestamp = Long.MIN_VALUE;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
+    private UniqueKeyExtractor keyExtractor;
+    private RetainedEventCloner retainedEventCloner;
 
 
     @Override
@@ -126,32 +142,36 @@ public class UniqueTimeWindowProcessor extends WindowProcessor<UniqueTimeWindowP
                                                 StreamEventClonerHolder streamEventClonerHolder,
                                                 boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
                                                 SiddhiQueryContext siddhiQueryContext) {
-        this.expiredEventChunk = new ComplexEventChunk<StreamEvent>(false);
-        if (attributeExpressionExecutors.length == 2) {
-            uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
-            if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
-                if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
-                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+        UniqueOptions options = UniqueOptions.parse("time window", attributeExpressionExecutors,
+                UniqueOptions.EXPIRY_GRANULARITY);
+        ExpressionExecutor[] parameters = options.getParameters();
+        granularity = options.getPositiveLong(UniqueOptions.EXPIRY_GRANULARITY, 1);
+        if (parameters.length == 2) {
+            keyExtractor = UniqueKeyExtractor.of(parameters[0]);
+            if (parameters[1] instanceof ConstantExpressionExecutor) {
+                if (parameters[1].getReturnType() == Attribute.Type.INT) {
+                    timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
 
-                } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
-                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                } else if (parameters[1].getReturnType() == Attribute.Type.LONG) {
+                    timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) parameters[1])
                             .getValue();
                 } else {
                     throw new SiddhiAppValidationException(
                             "UniqueTime window's parameter time should be either" + " int or long, but found "
-                                    + attributeExpressionExecutors[0].getReturnType());
+                                    + parameters[0].getReturnType());
                 }
             } else {
                 throw new SiddhiAppValidationException(
                         "UniqueTime window should have constant for time parameter but " + "found a dynamic attribute "
-                                + attributeExpressionExecutors[0].getClass().getCanonicalName());
+                                + parameters[0].getClass().getCanonicalName());
             }
         } else {
             throw new SiddhiAppValidationException("UniqueTime window should only have two parameters "
                     + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> windowTime), but found "
-                    + attributeExpressionExecutors.length + " input attributes");
+                    + parameters.length + " input attributes besides its options");
         }
+        retainedEventCloner = new RetainedEventCloner(metaStreamEvent, keyExtractor);
         return () -> new ExtensionState();
     }
 
@@ -159,62 +179,66 @@ public class UniqueTimeWindowProcessor extends WindowProcessor<UniqueTimeWindowP
     protected void processEventChunk(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                                      StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
                                      ExtensionState state) {
-        synchronized (this) {
+        synchronized (state) {
+            // the clock is read once per chunk, so the events due by then expire in a single sweep
+            long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
+            boolean swept = false;
             while (streamEventChunk.hasNext()) {
                 StreamEvent streamEvent = streamEventChunk.next();
-                long currentTime = siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator().currentTime();
-                StreamEvent oldEvent = null;
-                if (streamEvent.getType() == StreamEvent.Type.CURRENT) {
-                    StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                    clonedEvent.setType(StreamEvent.Type.EXPIRED);
-                    StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
-                    eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                    oldEvent = state.map.put(generateKey(eventClonedForMap), eventClonedForMap);
-                    this.expiredEventChunk.add(clonedEvent);
-                    if (lastTimestamp < clonedEvent.getTimestamp()) {
-                        if (scheduler != null) {
-                            scheduler.notifyAt(clonedEvent.getTimestamp() + timeInMilliSeconds);
-                            lastTimestamp = clonedEvent.getTimestamp();
-                        }
-                    }
-                }
-                expiredEventChunk.reset();
-                while (expiredEventChunk.hasNext()) {
-                    StreamEvent expiredEvent = expiredEventChunk.next();
-                    long timeDiff = expiredEvent.getTimestamp() - currentTime + timeInMilliSeconds;
-                    if (timeDiff <= 0 || oldEvent != null) {
-                        if (oldEvent != null) {
-                            if (expiredEvent.equals(oldEvent)) {
-                                this.expiredEventChunk.remove();
-                                streamEventChunk.insertBeforeCurrent(oldEvent);
-                                oldEvent.setTimestamp(currentTime);
-                                oldEvent = null;
-                            }
-                        } else {
-                            expiredEventChunk.remove();
-                            expiredEvent.setTimestamp(currentTime);
-                            streamEventChunk.insertBeforeCurrent(expiredEvent);
-                            expiredEvent.setTimestamp(currentTime);
-                            expiredEventChunk.reset();
-                        }
-                    } else {
-                        break;
-                    }
+                if (!swept) {
+                    expire(state, currentTime, streamEventChunk);
+                    swept = true;
                 }
-                expiredEventChunk.reset();
                 if (streamEvent.getType() != StreamEvent.Type.CURRENT) {
                     streamEventChunk.remove();
+                    continue;
+                }
+                StreamEvent clonedEvent = retainedEventCloner.copy(streamEvent, streamEventCloner);
+                clonedEvent.setType(StreamEvent.Type.EXPIRED);
+                // the map holds the events of the chunk, as snapshots leave out the links of the chunk
+                StreamEvent oldEvent = state.map.put(keyExtractor.extract(clonedEvent), clonedEvent);
+                if (oldEvent != null) {
+                    state.buckets.remove(keyExtractor.extract(oldEvent), oldEvent);
+                    oldEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(oldEvent);
+                }
+                long dueTimestamp = state.buckets.add(keyExtractor.extract(clonedEvent), clonedEvent);
+                if (state.lastTimestamp < dueTimestamp && scheduler != null) {
+                    scheduler.notifyAt(dueTimestamp + timeInMilliSeconds);
+                    state.lastTimestamp = dueTimestamp;
                 }
             }
         }
         nextProcessor.process(streamEventChunk);
     }
 
+    /**
+     * Expires the buckets of held events due at the given time, inserting their events ahead of the current event of
+     * the chunk, a bucket after the other.
+     */
+    private void expire(ExtensionState state, long currentTime, ComplexEventChunk<StreamEvent> streamEventChunk) {
+        Collection<StreamEvent> dueEvents;
+        while ((dueEvents = state.buckets.pollDue(currentTime - timeInMilliSeconds)) != null) {
+            for (StreamEvent expiredEvent : dueEvents) {
+                state.map.remove(keyExtractor.extract(expiredEvent), expiredEvent);
+                expiredEvent.setTimestamp(currentTime);
+                streamEventChunk.insertBeforeCurrent(expiredEvent);
+            }
+        }
+    }
+
     @Override
-    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, expiredEventChunk,
-                    streamEventClonerHolder.getStreamEventCloner());
+            ExtensionState state = stateHolder.getState();
+            try {
+                synchronized (state) {
+                    return ((Operator) compiledCondition).find(matchingEvent, state.buckets.values(),
+                            streamEventClonerHolder.getStreamEventCloner());
+                }
+            } finally {
+                stateHolder.returnState(state);
+            }
         } else {
             return null;
         }
@@ -224,7 +248,7 @@ public class UniqueTimeWindowProcessor extends WindowProcessor<UniqueTimeWindowP
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, SiddhiQueryContext siddhiQueryContext) {
-        return OperatorParser.constructOperator(expiredEventChunk, expression, matchingMetaInfoHolder,
+        return OperatorParser.constructOperator(new ArrayList<StreamEvent>(), expression, matchingMetaInfoHolder,
                 variableExpressionExecutors, tableMap, siddhiQueryContext);
     }
 
@@ -240,42 +264,50 @@ public class UniqueTimeWindowProcessor extends WindowProcessor<UniqueTimeWindowP
 
     @Override
     public ProcessingMode getProcessingMode() {
-        return ProcessingMode.BATCH;
+        return ProcessingMode.SLIDE;
     }
 
     class ExtensionState extends State {
 
-        private ConcurrentMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
+        private SnapshotableEventMap map = new SnapshotableEventMap();
+        private TimeBucketQueue buckets = new TimeBucketQueue(granularity);
+        private long lastTimestamp = Long.MIN_VALUE;
 
         @Override
         public boolean canDestroy() {
-            return false;
+            return buckets.isEmpty();
         }
 
         @Override
         public Map<String, Object> snapshot() {
-            Map<String, Object> map = new HashMap<>();
-            map.put("expiredEventchunck", expiredEventChunk.getFirst());
-            map.put("map", this.map);
-            return map;
+            synchronized (this) {
+                return singletonMap("map", map.snapshot());
+            }
         }
 
         @Override
         public void restore(Map<String, Object> state) {
-            expiredEventChunk.clear();
-            expiredEventChunk.add((StreamEvent) map.get("expiredEventchunck"));
-            this.map = (ConcurrentMap<String, StreamEvent>) state.get("map");
+            synchronized (this) {
+                map.restore((Map<Object, StreamEvent>) state.get("map"), keyExtractor);
+                buckets.clear();
+                List<StreamEvent> events = new ArrayList<>(map.values());
+                if (state.containsKey("expiredEventchunck")) {
+                    // the chunk of a former revision, which the map was restored from
+                    events.clear();
+                    StreamEvent event = (StreamEvent) state.get("expiredEventchunck");
+                    while (event != null) {
+                        events.add(event);
+                        StreamEvent next = event.getNext();
+                        event.setNext(null);
+                        event = next;
+                    }
+                }
+                // events are added to their buckets in the order of their arrival
+                events.sort(Comparator.comparingLong(StreamEvent::getTimestamp));
+                for (StreamEvent event : events) {
+                    buckets.add(keyExtractor.extract(event), event);
+                }
+            }
         }
     }
-
-    /**
-     * Used to generate key in map to get the old event for current event. It will map key which we give as unique
-     * attribute with the event
-     *
-     * @param event the stream event that need to be processed
-     */
-    private String generateKey(StreamEvent event) {
-        return uniqueKeyExpressionExecutor.execute(event).toString();
-    }
-
 }
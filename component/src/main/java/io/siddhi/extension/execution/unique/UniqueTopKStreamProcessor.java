@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.annotation.Example;
+import io.siddhi.annotation.Extension;
+import io.siddhi.annotation.Parameter;
+import io.siddhi.annotation.ReturnAttribute;
+import io.siddhi.annotation.SystemParameter;
+import io.siddhi.annotation.util.DataType;
+import io.siddhi.core.config.SiddhiQueryContext;
+import io.siddhi.core.event.ComplexEventChunk;
+import io.siddhi.core.event.stream.MetaStreamEvent;
+import io.siddhi.core.event.stream.StreamEvent;
+import io.siddhi.core.event.stream.StreamEventCloner;
+import io.siddhi.core.event.stream.holder.StreamEventClonerHolder;
+import io.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import io.siddhi.core.executor.ConstantExpressionExecutor;
+import io.siddhi.core.executor.ExpressionExecutor;
+import io.siddhi.core.query.processor.ProcessingMode;
+import io.siddhi.core.query.processor.Processor;
+import io.siddhi.core.query.processor.stream.StreamProcessor;
+import io.siddhi.core.util.config.ConfigReader;
+import io.siddhi.core.util.snapshot.state.State;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.query.api.definition.AbstractDefinition;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is Unique TopK Stream Processor implementation.
+ */
+
+@Extension(
+        name = "topK",
+        namespace = "unique",
+        description = "This processor tracks the 'k' most frequent unique keys of the stream with bounded memory,"
+                + " using the Space-Saving algorithm over 'k' times 'capacity.factor' counters. Any key occurring"
+                + " more often than the number of events divided by the number of counters is guaranteed to be"
+                + " tracked, and the frequency of a tracked key is over-estimated by at most its 'frequencyError'."
+                + " Only the changes of the top-K are emitted: when a key enters the top-K, the event that made it"
+                + " enter is emitted as a current event, and when a key leaves the top-K, the event that made it"
+                + " enter is emitted as an expired event. Only current events are counted.",
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be counted."
+                                + " If more than one attribute is given, the combination of their values"
+                                + " is considered as the unique key.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT, DataType.BOOL,
+                                DataType.DOUBLE, DataType.STRING, DataType.OBJECT}),
+                @Parameter(name = "k",
+                        description = "The number of most frequent keys to track.",
+                        type = {DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "capacity.factor",
+                        description = "The number of counters kept for every tracked key. More counters make the"
+                                + " top-K more accurate for skewed streams at the cost of memory.",
+                        defaultValue = "4",
+                        possibleParameters = "Any positive integer")
+        },
+        returnAttributes = {
+                @ReturnAttribute(name = "rank",
+                        description = "The rank of the key within the top-K when it entered, or its rank after"
+                                + " leaving the top-K, starting from 1. A key whose counter was taken over by"
+                                + " another key leaves with rank 0.",
+                        type = {DataType.INT}),
+                @ReturnAttribute(name = "frequency",
+                        description = "The estimated number of events carrying the key at the time of the change.",
+                        type = {DataType.LONG}),
+                @ReturnAttribute(name = "frequencyError",
+                        description = "The maximum over-estimation of 'frequency'.",
+                        type = {DataType.LONG})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (timeStamp long, ip string);\n" +
+                                "from LoginEvents#unique:topK(ip, 10)\n" +
+                                "select ip, rank, frequency\n" +
+                                "insert all events into TopIps ;",
+
+                        description = "This query tracks the 10 'ip' values that appear most often. Whenever an"
+                                + " 'ip' enters the top 10 it is emitted as a current event, and whenever an 'ip'"
+                                + " is pushed out of the top 10 it is emitted as an expired event."
+                )
+        }
+)
+
+public class UniqueTopKStreamProcessor extends StreamProcessor<UniqueTopKStreamProcessor.ExtensionState> {
+
+    private static final String CAPACITY_FACTOR = "capacity.factor";
+
+    private UniqueKeyExtractor keyExtractor;
+    private int k;
+    private int capacity;
+
+    @Override
+    protected StateFactory<ExtensionState> init(MetaStreamEvent metaStreamEvent, AbstractDefinition inputDefinition,
+                                                ExpressionExecutor[] attributeExpressionExecutors,
+                                                ConfigReader configReader,
+                                                StreamEventClonerHolder streamEventClonerHolder,
+                                                boolean outputExpectsExpiredEvents, boolean findToBeExecuted,
+                                                SiddhiQueryContext siddhiQueryContext) {
+        if (attributeExpressionExecutors.length < 2) {
+            throw new SiddhiAppValidationException("Unique topK processor should have at least two parameters "
+                    + "(<string|int|bool|long|double|float|object> unique attribute, <int> k), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        ExpressionExecutor kExecutor = attributeExpressionExecutors[attributeExpressionExecutors.length - 1];
+        if (!(kExecutor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("Unique topK processor should have constant for k parameter "
+                    + "but found a dynamic attribute " + kExecutor.getClass().getCanonicalName());
+        }
+        if (kExecutor.getReturnType() != Attribute.Type.INT) {
+            throw new SiddhiAppValidationException("Unique topK processor's parameter k should be int, but found "
+                    + kExecutor.getReturnType());
+        }
+        k = (Integer) ((ConstantExpressionExecutor) kExecutor).getValue();
+        if (k <= 0) {
+            throw new SiddhiAppValidationException("Unique topK processor's parameter k should be positive, "
+                    + "but found " + k);
+        }
+        int capacityFactor = Integer.parseInt(configReader.readConfig(CAPACITY_FACTOR, "4"));
+        if (capacityFactor <= 0) {
+            throw new SiddhiAppValidationException("Unique topK processor's " + CAPACITY_FACTOR
+                    + " should be positive, but found " + capacityFactor);
+        }
+        capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) k * capacityFactor);
+        keyExtractor = UniqueKeyExtractor.of(
+                Arrays.copyOf(attributeExpressionExecutors, attributeExpressionExecutors.length - 1));
+        return () -> new ExtensionState();
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater,
+                           ExtensionState state) {
+        ComplexEventChunk<StreamEvent> changeChunk = new ComplexEventChunk<>(true);
+        synchronized (state) {
+            StreamEvent streamEvent = streamEventChunk.getFirst();
+            while (streamEvent != null) {
+                StreamEvent next = streamEvent.getNext();
+                streamEvent.setNext(null);
+                if (streamEvent.getType() == StreamEvent.Type.CURRENT) {
+                    state.count(keyExtractor.extract(streamEvent), streamEvent, changeChunk, streamEventCloner,
+                            complexEventPopulater);
+                }
+                streamEvent = next;
+            }
+        }
+        if (changeChunk.getFirst() != null) {
+            nextProcessor.process(changeChunk);
+        }
+    }
+
+    @Override
+    public List<Attribute> getReturnAttributes() {
+        return Arrays.asList(new Attribute("rank", Attribute.Type.INT),
+                new Attribute("frequency", Attribute.Type.LONG),
+                new Attribute("frequencyError", Attribute.Type.LONG));
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public ProcessingMode getProcessingMode() {
+        return ProcessingMode.BATCH;
+    }
+
+    /**
+     * Space-Saving summary keeping its counters sorted by descending frequency, so the first k counters are the
+     * top-K and the last counter is the one replaced by an unseen key. An increment swaps the counter with the first
+     * counter of equal frequency, which keeps the order without shifting, and only then can a key cross into the
+     * top-K. The event that brought a key into the top-K is retained until it leaves.
+     */
+    class ExtensionState extends State {
+
+        private Object[] keys = new Object[Math.min(capacity, 16)];
+        private long[] frequencies = new long[keys.length];
+        private long[] errors = new long[keys.length];
+        private StreamEvent[] events = new StreamEvent[keys.length];
+        private Map<Object, Integer> positions = new HashMap<>();
+        private int size;
+
+        private void count(Object key, StreamEvent streamEvent, ComplexEventChunk<StreamEvent> changeChunk,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+            Integer position = positions.get(key);
+            int current;
+            boolean inTopK;
+            if (position != null) {
+                current = position;
+                inTopK = current < k;
+            } else if (size < capacity) {
+                if (size == keys.length) {
+                    grow();
+                }
+                current = size++;
+                keys[current] = key;
+                frequencies[current] = 0;
+                errors[current] = 0;
+                positions.put(key, current);
+                inTopK = false;
+            } else {
+                current = size - 1;
+                if (events[current] != null) {
+                    emit(events[current], StreamEvent.Type.EXPIRED, 0, current, changeChunk, streamEventCloner,
+                            complexEventPopulater);
+                    events[current] = null;
+                }
+                positions.remove(keys[current]);
+                keys[current] = key;
+                errors[current] = frequencies[current];
+                positions.put(key, current);
+                inTopK = false;
+            }
+            int target = firstWithFrequency(frequencies[current], current);
+            if (target != current) {
+                swap(target, current);
+                if (target < k && current >= k && events[current] != null) {
+                    emit(events[current], StreamEvent.Type.EXPIRED, current + 1, current, changeChunk,
+                            streamEventCloner, complexEventPopulater);
+                    events[current] = null;
+                }
+            }
+            frequencies[target]++;
+            if (!inTopK && target < k) {
+                events[target] = streamEventCloner.copyStreamEvent(streamEvent);
+                emit(streamEvent, StreamEvent.Type.CURRENT, target + 1, target, changeChunk, streamEventCloner,
+                        complexEventPopulater);
+            }
+        }
+
+        private void emit(StreamEvent streamEvent, StreamEvent.Type type, int rank, int position,
+                          ComplexEventChunk<StreamEvent> changeChunk, StreamEventCloner streamEventCloner,
+                          ComplexEventPopulater complexEventPopulater) {
+            StreamEvent changeEvent = streamEventCloner.copyStreamEvent(streamEvent);
+            changeEvent.setType(type);
+            if (type == StreamEvent.Type.EXPIRED) {
+                changeEvent.setTimestamp(siddhiQueryContext.getSiddhiAppContext().getTimestampGenerator()
+                        .currentTime());
+            }
+            complexEventPopulater.populateComplexEvent(changeEvent,
+                    new Object[]{rank, frequencies[position], errors[position]});
+            changeChunk.add(changeEvent);
+        }
+
+        private int firstWithFrequency(long frequency, int last) {
+            int low = 0;
+            int high = last;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (frequencies[middle] > frequency) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void swap(int i, int j) {
+            Object key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            long frequency = frequencies[i];
+            frequencies[i] = frequencies[j];
+            frequencies[j] = frequency;
+            long error = errors[i];
+            errors[i] = errors[j];
+            errors[j] = error;
+            StreamEvent event = events[i];
+            events[i] = events[j];
+            events[j] = event;
+            positions.put(keys[i], i);
+            positions.put(keys[j], j);
+        }
+
+        private void grow() {
+            int length = (int) Math.min(capacity, (long) keys.length << 1);
+            keys = Arrays.copyOf(keys, length);
+            frequencies = Arrays.copyOf(frequencies, length);
+            errors = Arrays.copyOf(errors, length);
+            events = Arrays.copyOf(events, length);
+        }
+
+        @Override
+        public boolean canDestroy() {
+            return size == 0;
+        }
+
+        @Override
+        public Map<String, Object> snapshot() {
+            Map<String, Object> state = new HashMap<>();
+            state.put("keys", Arrays.copyOf(keys, size));
+            state.put("frequencies", Arrays.copyOf(frequencies, size));
+            state.put("errors", Arrays.copyOf(errors, size));
+            state.put("events", Arrays.copyOf(events, Math.min(size, k)));
+            return state;
+        }
+
+        @Override
+        public void restore(Map<String, Object> state) {
+            Object[] restoredKeys = (Object[]) state.get("keys");
+            StreamEvent[] restoredEvents = (StreamEvent[]) state.get("events");
+            size = Math.min(restoredKeys.length, capacity);
+            int length = Math.max(size, Math.min(capacity, 16));
+            keys = Arrays.copyOf(restoredKeys, length);
+            frequencies = Arrays.copyOf((long[]) state.get("frequencies"), length);
+            errors = Arrays.copyOf((long[]) state.get("errors"), length);
+            events = Arrays.copyOf(restoredEvents, length);
+            positions = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                positions.put(keys[i], i);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.PersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique approximate count attribute aggregator test case.
+ */
+public class UniqueApproxCountAttributeAggregatorTestCase {
+    private static final Logger log = Logger.getLogger(UniqueApproxCountAttributeAggregatorTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> counts;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        counts = new ArrayList<>();
+    }
+
+    @Test public void uniqueApproxCountAggregatorTest1() throws InterruptedException {
+        log.info("uniqueApproxCountAggregator test1: small cardinalities are close to exact");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:approxCount(ip) as ipCount " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.4" });
+        for (int i = 0; i < 1000; i++) {
+            inputHandler.send(new Object[] { System.currentTimeMillis(), "10.0." + (i % 500) });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 1003, eventCount, timeout);
+        Assert.assertEquals(counts.subList(0, 3).toArray(), new Object[] { 1L, 1L, 2L });
+        Assert.assertEquals((long) counts.get(1002), 502L, 2L);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueApproxCountAggregatorTest2() throws InterruptedException {
+        log.info("uniqueApproxCountAggregator test2: dense sketch within the expected error per batch");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price double, volume long);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.lengthBatch(40000) "
+                + "select unique:approxCount(volume, 10) as volumes " + "insert into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        for (long i = 0; i < 40000; i++) {
+            inputHandler.send(new Object[] { "IBM", 700.0, i % 20000 });
+        }
+        for (long i = 0; i < 40000; i++) {
+            inputHandler.send(new Object[] { "WSO2", 60.5, i % 100 });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(eventCount.get(), 2);
+        Assert.assertEquals((long) counts.get(0), 20000L, 20000 * 0.1);
+        Assert.assertEquals((long) counts.get(1), 100L, 2L);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueApproxCountAggregatorTest3() throws InterruptedException {
+        log.info("uniqueApproxCountAggregator test3: merging sketches of partitions");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (region string, ip string);";
+        String query = "" + "partition with (region of LoginEvents) begin "
+                + "from LoginEvents select region, unique:approxSketch(ip) as ips insert into RegionalIps; "
+                + "end; "
+                + "@info(name = 'query1') " + "from RegionalIps "
+                + "select unique:approxCount(ips) as distinctIps " + "insert into GlobalDistinctIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 3000; i++) {
+            inputHandler.send(new Object[] { "R" + (i % 3), "10.0." + (i % 2000) });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3000, eventCount, timeout);
+        Assert.assertEquals((long) counts.get(2999), 2000L, 2000 * 0.05);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueApproxCountAggregatorTest4() throws InterruptedException, ExecutionException {
+        log.info("uniqueApproxCountAggregator test4: restore sketch");
+
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "@app:name('UniqueApproxCountRestore') "
+                + "define stream LoginEvents (id string, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:approxCount(ip, 8) as logins " + "insert into uniqueLogins ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 600; i++) {
+            inputHandler.send(new Object[] { "A1", "10.0." + i });
+        }
+        SiddhiTestHelper.waitForEvents(waitTime, 600, eventCount, timeout);
+        Object persisted = counts.get(599);
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "A1", "10.0.1" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 601, eventCount, timeout);
+        Assert.assertEquals(counts.get(600), persisted);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueApproxCountAggregatorTest5() {
+        log.info("uniqueApproxCountAggregator test5: precision out of range");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:approxCount(ip, 20) as ipCount " + "insert into uniqueIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+}
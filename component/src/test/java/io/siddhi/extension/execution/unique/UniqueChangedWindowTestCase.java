@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.PersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique changed window processor test case.
+ */
+public class UniqueChangedWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueChangedWindowTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> currentEvents;
+    private List<Object> expiredEvents;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        currentEvents = new ArrayList<>();
+        expiredEvents = new ArrayList<>();
+    }
+
+    @Test public void uniqueChangedWindowTest1() throws InterruptedException {
+        log.info("uniqueChangedWindow test1: only events changing the compared attribute are let through");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String sensorStream = "" + "define stream SensorStream (sensorId string, status string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from SensorStream#window.unique:changed(sensorId, status) "
+                + "select sensorId, status, seq " + "insert all events into SensorChanges ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(sensorStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("SensorStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "s1", "OK", 1 });
+        inputHandler.send(new Object[] { "s2", "OK", 2 });
+        inputHandler.send(new Object[] { "s1", "OK", 3 });
+        inputHandler.send(new Object[] { "s1", "FAIL", 4 });
+        inputHandler.send(new Object[] { "s2", "OK", 5 });
+        inputHandler.send(new Object[] { "s1", "FAIL", 6 });
+        inputHandler.send(new Object[] { "s1", "OK", 7 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 2, 4, 7 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1, 4 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueChangedWindowTest2() throws InterruptedException {
+        log.info("uniqueChangedWindow test2: several compared attributes, including nulls, in a batch of events");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String sensorStream = "" + "define stream SensorStream (sensorId string, reading double, seq int, "
+                + "status string);";
+        String query = "" + "@info(name = 'query1') "
+                + "from SensorStream#window.unique:changed(sensorId, status, reading) "
+                + "select sensorId, reading, seq " + "insert all events into SensorChanges ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(sensorStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("SensorStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Event[] {
+                new Event(1, new Object[] { "s1", 10.0, 1, "OK" }),
+                new Event(2, new Object[] { "s1", 10.0, 2, "OK" }),
+                new Event(3, new Object[] { "s1", 11.0, 3, "OK" }),
+                new Event(4, new Object[] { "s1", 11.0, 4, null }),
+                new Event(5, new Object[] { "s1", 11.0, 5, null }),
+                new Event(6, new Object[] { "s1", null, 6, null }),
+                new Event(7, new Object[] { "s1", null, 7, null })
+        });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 7, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 3, 4, 6 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1, 3, 4 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueChangedWindowTest3() throws InterruptedException, ExecutionException {
+        log.info("uniqueChangedWindow test3: held events are restored");
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String sensorStream = "" + "define stream SensorStream (sensorId string, status string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from SensorStream#window.unique:changed(sensorId, status) "
+                + "select sensorId, status, seq " + "insert all events into SensorChanges ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(sensorStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("SensorStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "s1", "OK", 1 });
+        siddhiAppRuntime.persist().getFuture().get();
+        //restarting siddhi app
+        siddhiAppRuntime.shutdown();
+        inputHandler = siddhiAppRuntime.getInputHandler("SensorStream");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "s1", "OK", 2 });
+        inputHandler.send(new Object[] { "s1", "FAIL", 3 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 3 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueChangedWindowTest4() {
+        log.info("uniqueChangedWindow test4: compared attributes are required");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String sensorStream = "" + "define stream SensorStream (sensorId string, status string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from SensorStream#window.unique:changed(sensorId) "
+                + "select sensorId, status, seq " + "insert all events into SensorChanges ;";
+        siddhiManager.createSiddhiAppRuntime(sensorStream + query);
+    }
+}
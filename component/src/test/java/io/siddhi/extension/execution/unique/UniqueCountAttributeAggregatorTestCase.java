@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.PersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique count attribute aggregator test case.
+ */
+public class UniqueCountAttributeAggregatorTestCase {
+    private static final Logger log = Logger.getLogger(UniqueCountAttributeAggregatorTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> counts;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        counts = new ArrayList<>();
+    }
+
+    @Test public void uniqueCountAggregatorTest1() throws InterruptedException {
+        log.info("uniqueCountAggregator test1: sliding length window");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.length(3) "
+                + "select unique:count(ip) as ipCount " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.4" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.5" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.6" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.6" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 1L, 1L, 2L, 3L, 3L, 2L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueCountAggregatorTest2() throws InterruptedException {
+        log.info("uniqueCountAggregator test2: batch window with numeric keys");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price double, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.lengthBatch(4) "
+                + "select unique:count(volume) as volumes " + "insert into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700.0, 1 });
+        inputHandler.send(new Object[] { "WSO2", 60.5, 2 });
+        inputHandler.send(new Object[] { "IBM", 700.0, 1 });
+        inputHandler.send(new Object[] { "ORCL", 40.5, 3 });
+        inputHandler.send(new Object[] { "IBM", 700.0, 1 });
+        inputHandler.send(new Object[] { "IBM", 700.0, 1 });
+        inputHandler.send(new Object[] { "WSO2", 60.5, 1 });
+        inputHandler.send(new Object[] { "IBM", 700.0, 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 3L, 1L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueCountAggregatorTest3() throws InterruptedException, ExecutionException {
+        log.info("uniqueCountAggregator test3: composite keys and restore");
+
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "@app:name('UniqueCountRestore') "
+                + "define stream LoginEvents (id string, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.length(10) "
+                + "select unique:count(id, ip) as logins " + "insert into uniqueLogins ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        };
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "A1", "192.10.1.3" });
+        inputHandler.send(new Object[] { "A1", "192.10.1.4" });
+        inputHandler.send(new Object[] { "A1", "192.10.1.3" });
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "A2", "192.10.1.3" });
+        inputHandler.send(new Object[] { "A1", "192.10.1.4" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 1L, 2L, 2L, 3L, 3L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueCountAggregatorTest4() {
+        log.info("uniqueCountAggregator test4: missing unique key");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.length(3) "
+                + "select unique:count() as ipCount " + "insert into uniqueIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test public void uniqueCountAggregatorTest5() throws InterruptedException {
+        log.info("uniqueCountAggregator test5: batches exceeding the key limit are counted approximately");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.lengthBatch(2000) "
+                + "select unique:count(ip, 'key.limit=100') as ipCount " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 2000; i++) {
+            inputHandler.send(new Object[] { (long) i, "10.0." + (i % 1000) });
+        }
+        for (int i = 0; i < 2000; i++) {
+            inputHandler.send(new Object[] { (long) i, "10.1." + (i % 50) });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(counts.size(), 2);
+        Assert.assertEquals((long) counts.get(0), 1000L, 30L);
+        Assert.assertEquals(counts.get(1), 50L);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueCountAggregatorTest6() {
+        log.info("uniqueCountAggregator test6: key limit over a sliding window");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.length(3) "
+                + "select unique:count(ip, 'key.limit=100') as ipCount " + "insert into uniqueIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueCountAggregatorTest7() {
+        log.info("uniqueCountAggregator test7: key limit over a unique sliding window");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:length(ip, 3) "
+                + "select unique:count(ip, 'key.limit=100') as ipCount " + "insert into uniqueIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique distinct window processors test case.
+ */
+public class UniqueDistinctWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueDistinctWindowTestCase.class);
+    private static final String ORDER_STREAM = "define stream OrderStream (orderId string, item string, quantity int);";
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> currentEvents;
+    private List<Object> expiredEvents;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        currentEvents = new ArrayList<>();
+        expiredEvents = new ArrayList<>();
+    }
+
+    private SiddhiAppRuntime start(String window) {
+        String query = "" + "@info(name = 'query1') " + "from OrderStream#window.unique:" + window + " "
+                + "select orderId " + "insert all events into DistinctOrders ;";
+        SiddhiAppRuntime siddhiAppRuntime = new SiddhiManager().createSiddhiAppRuntime(ORDER_STREAM + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        siddhiAppRuntime.start();
+        return siddhiAppRuntime;
+    }
+
+    @Test public void uniqueDistinctWindowTest1() throws InterruptedException {
+        log.info("uniqueDistinctWindow test1: events identical on all attributes are dropped");
+        SiddhiAppRuntime siddhiAppRuntime = start("distinct()");
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("OrderStream");
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 2 });
+        inputHandler.send(new Object[] { "o1", null, 2 });
+        inputHandler.send(new Object[] { "o1", null, 2 });
+        inputHandler.send(new Object[] { "o2", "pen", 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { "o1", "o1", "o1", "o2" });
+        Assert.assertEquals(expiredEvents.size(), 0);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueDistinctWindowTest2() throws InterruptedException {
+        log.info("uniqueDistinctWindow test2: attribute values are compared on hash match when verifying keys");
+        SiddhiAppRuntime siddhiAppRuntime = start("distinct('key.verify=true')");
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("OrderStream");
+        inputHandler.send(new Event[] {
+                new Event(1, new Object[] { "o1", "pen", 1 }),
+                new Event(2, new Object[] { "o2", "pen", 1 }),
+                new Event(3, new Object[] { "o1", "pen", 1 }),
+                new Event(4, new Object[] { "o2", "ink", 1 }),
+                new Event(5, new Object[] { "o2", "pen", 1 })
+        });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { "o1", "o2", "o2" });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueDistinctWindowTest3() throws InterruptedException {
+        log.info("uniqueDistinctWindow test3: an event is let through again once its first occurrence expires");
+        SiddhiAppRuntime siddhiAppRuntime = start("distinctTime(1 sec)");
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("OrderStream");
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o2", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        Thread.sleep(1500);
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { "o1", "o2", "o1" });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { "o1", "o2" });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueDistinctWindowTest4() throws InterruptedException {
+        log.info("uniqueDistinctWindow test4: the oldest distinct event is evicted once the length is exceeded");
+        SiddhiAppRuntime siddhiAppRuntime = start("distinctLength(2)");
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("OrderStream");
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o2", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o3", "pen", 1 });
+        inputHandler.send(new Object[] { "o2", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { "o1", "o2", "o3", "o1" });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { "o1", "o2" });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueDistinctWindowTest5() throws InterruptedException {
+        log.info("uniqueDistinctWindow test5: batches of distinct events");
+        SiddhiAppRuntime siddhiAppRuntime = start("distinctLengthBatch(2)");
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("OrderStream");
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o2", "pen", 1 });
+        inputHandler.send(new Object[] { "o3", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        // events of a batch are emitted in no particular order
+        currentEvents.sort(null);
+        expiredEvents.sort(null);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { "o1", "o1", "o2", "o3" });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { "o1", "o2" });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueDistinctWindowTest6() throws InterruptedException {
+        log.info("uniqueDistinctWindow test6: time batches of distinct events");
+        SiddhiAppRuntime siddhiAppRuntime = start("distinctTimeBatch(1 sec)");
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("OrderStream");
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o1", "pen", 1 });
+        inputHandler.send(new Object[] { "o2", "pen", 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { "o1", "o2" });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueDistinctWindowTest7() {
+        log.info("uniqueDistinctWindow test7: distinct windows take no unique key parameter");
+        start("distinctLength(orderId, 2)");
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueDistinctWindowTest8() {
+        log.info("uniqueDistinctWindow test8: only the key.verify option is supported");
+        start("distinct('key.mode=exact')");
+    }
+}
@@ -20,21 +20,45 @@ package io.siddhi.extension.execution.unique;
 
 import io.siddhi.core.SiddhiAppRuntime;
 import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.config.StatisticsConfiguration;
 import io.siddhi.core.event.Event;
 import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.stream.output.StreamCallback;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import io.siddhi.core.util.persistence.PersistenceStore;
+import io.siddhi.core.util.statistics.BufferedEventsTracker;
+import io.siddhi.core.util.statistics.EventBufferHolder;
+import io.siddhi.core.util.statistics.StatisticsManager;
+import io.siddhi.core.util.statistics.metrics.SiddhiMetricsFactory;
 import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * class representing unique ever window processor test case.
@@ -261,4 +285,556 @@ public class UniqueEverWindowTestCase {
             executionPlanRuntime.shutdown();
         }
     }
+
+    @Test public void uniqueEverWindowTest5() throws InterruptedException {
+        log.info("uniqueEverWindow test5: composite keys and null keys");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string, id string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:ever(ip, id) "
+                + "select count() as ipCount, ip " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                    value = (Long) inEvents[inEvents.length - 1].getData(0);
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3", "A1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3A", "1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), null, "A1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), null, "A1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3", "A1" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertEquals(value, 3, "Event max value");
+
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueEverWindowTest6() throws InterruptedException {
+        log.info("uniqueEverWindow test6: fingerprinted composite keys");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string, id string);";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:ever(ip, id, 'key.mode=fingerprint', 'key.verify=true') "
+                + "select count() as ipCount, ip " + "insert all events into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        AtomicInteger removeEventCount = new AtomicInteger(0);
+
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                    value = (Long) inEvents[inEvents.length - 1].getData(0);
+                }
+                if (removeEvents != null) {
+                    removeEventCount.addAndGet(removeEvents.length);
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+
+        for (int i = 0; i < 100; i++) {
+            inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1." + i, "A1" });
+        }
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3", "A1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3A", "1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), null, "A1" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), null, "A1" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 104, eventCount, timeout);
+        Assert.assertEquals(value, 102, "Event max value");
+        Assert.assertEquals(removeEventCount.get(), 2, "Number of expired events");
+
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueEverWindowTest7() {
+        log.info("uniqueEverWindow test7: unknown key mode");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String query = "define stream LoginEvents (timeStamp long, ip string);"
+                + "from LoginEvents#window.unique:ever(ip, 'key.mode=digest') "
+                + "select ip " + "insert into uniqueIps ;";
+        siddhiManager.createSiddhiAppRuntime(query);
+    }
+
+    @Test public void uniqueEverWindowTest8() throws InterruptedException {
+        log.info("uniqueEverWindow test8: unique keys are kept per partition");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (user string, ip string);";
+        String query = "" + "partition with (user of LoginEvents) begin "
+                + "from LoginEvents#window.unique:ever(ip) "
+                + "select user, count(ip) as ipCount " + "insert into uniqueIps ; " + "end ;";
+
+        List<Object> counts = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("uniqueIps", new StreamCallback() {
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    counts.add(event.getData(1));
+                    eventCount.incrementAndGet();
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "u1", "192.10.1.3" });
+        inputHandler.send(new Object[] { "u2", "192.10.1.3" });
+        inputHandler.send(new Object[] { "u1", "192.10.1.3" });
+        inputHandler.send(new Object[] { "u2", "192.10.1.4" });
+        inputHandler.send(new Object[] { "u1", "192.10.1.4" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 1L, 1L, 1L, 2L, 2L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueEverWindowTest9() throws InterruptedException, ExecutionException {
+        log.info("uniqueEverWindow test9: events replaced after persisting are restored as they were persisted");
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:ever(ip) "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+
+        List<Object> expired = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "192.10.1.3", 1 });
+        inputHandler.send(new Object[] { "192.10.1.4", 2 });
+        siddhiAppRuntime.persist().getFuture().get();
+        inputHandler.send(new Object[] { "192.10.1.3", 3 });
+        //restarting siddhi app
+        siddhiAppRuntime.shutdown();
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "192.10.1.3", 4 });
+        inputHandler.send(new Object[] { "192.10.1.4", 5 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(expired.toArray(), new Object[] { 1, 1, 2 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueEverWindowTest10() throws InterruptedException, ExecutionException, IOException {
+        log.info("uniqueEverWindow test10: events replaced after the last snapshot are replayed from the key log");
+        Path logDirectory = Files.createTempDirectory("siddhi-unique-key-log");
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.ever.key.log.directory", logDirectory.toString());
+        extensionConfigs.put("unique.ever.key.log.sync", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        String cseEventStream = "" + "@app:name('KeyLogTest') define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:ever(ip) "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+
+        List<Object> expired = new ArrayList<>();
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        };
+        try {
+            SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+            siddhiAppRuntime.addCallback("query1", queryCallback);
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            inputHandler.send(new Object[] { "192.10.1.3", 1 });
+            siddhiAppRuntime.persist().getFuture().get();
+            inputHandler.send(new Object[] { "192.10.1.3", 2 });
+            inputHandler.send(new Object[] { "192.10.1.4", 3 });
+            siddhiAppRuntime.shutdown();
+
+            //recreating the siddhi app as after a crash
+            siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+            siddhiAppRuntime.addCallback("query1", queryCallback);
+            inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            try {
+                siddhiAppRuntime.restoreLastRevision();
+            } catch (CannotRestoreSiddhiAppStateException e) {
+                Assert.fail("Error in restoring last revision");
+            }
+            inputHandler.send(new Object[] { "192.10.1.3", 4 });
+            inputHandler.send(new Object[] { "192.10.1.4", 5 });
+
+            SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+            Assert.assertEquals(expired.toArray(), new Object[] { 1, 2, 3 });
+            siddhiAppRuntime.shutdown();
+        } finally {
+            try (Stream<Path> paths = Files.walk(logDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test public void uniqueEverWindowTest11() throws InterruptedException, ExecutionException, IOException {
+        log.info("uniqueEverWindow test11: events are held in the disk key store and restored from its segments");
+        Path storeDirectory = Files.createTempDirectory("siddhi-unique-key-store");
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.ever.key.store", "disk");
+        extensionConfigs.put("unique.ever.key.store.directory", storeDirectory.toString());
+        extensionConfigs.put("unique.ever.key.store.cache.size", "1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        String cseEventStream = "" + "@app:name('KeyStoreTest') define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:ever(ip) "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+
+        List<Object> expired = new ArrayList<>();
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        };
+        try {
+            SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+            siddhiAppRuntime.addCallback("query1", queryCallback);
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            inputHandler.send(new Object[] { "192.10.1.3", 1 });
+            inputHandler.send(new Object[] { "192.10.1.4", 2 });
+            inputHandler.send(new Object[] { "192.10.1.5", 3 });
+            inputHandler.send(new Object[] { "192.10.1.3", 4 });
+            siddhiAppRuntime.persist().getFuture().get();
+            inputHandler.send(new Object[] { "192.10.1.4", 5 });
+            siddhiAppRuntime.shutdown();
+
+            //recreating the siddhi app, which finds the segments of the store in its directory
+            siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+            siddhiAppRuntime.addCallback("query1", queryCallback);
+            inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            try {
+                siddhiAppRuntime.restoreLastRevision();
+            } catch (CannotRestoreSiddhiAppStateException e) {
+                Assert.fail("Error in restoring last revision");
+            }
+            inputHandler.send(new Object[] { "192.10.1.4", 6 });
+            inputHandler.send(new Object[] { "192.10.1.3", 7 });
+            inputHandler.send(new Object[] { "192.10.1.5", 8 });
+
+            SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+            Assert.assertEquals(expired.toArray(), new Object[] { 1, 2, 2, 4, 3 });
+            siddhiAppRuntime.shutdown();
+        } finally {
+            try (Stream<Path> paths = Files.walk(storeDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test public void uniqueEverWindowTest12() throws InterruptedException, ExecutionException {
+        log.info("uniqueEverWindow test12: restored events are found after persisting again without reading them");
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:ever(ip) "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+
+        List<Object> expired = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 1000; i++) {
+            inputHandler.send(new Object[] { "192.10." + (i / 256) + "." + (i % 256), i });
+        }
+        siddhiAppRuntime.persist().getFuture().get();
+        //restarting siddhi app twice, persisting in between before any event is read
+        for (int i = 0; i < 2; i++) {
+            siddhiAppRuntime.shutdown();
+            inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            try {
+                siddhiAppRuntime.restoreLastRevision();
+            } catch (CannotRestoreSiddhiAppStateException e) {
+                Assert.fail("Error in restoring last revision");
+            }
+            if (i == 0) {
+                siddhiAppRuntime.persist().getFuture().get();
+            }
+        }
+        inputHandler.send(new Object[] { "192.10.0.7", 1000 });
+        inputHandler.send(new Object[] { "192.10.3.231", 1001 });
+        inputHandler.send(new Object[] { "192.10.4.0", 1002 });
+        inputHandler.send(new Object[] { "192.10.0.7", 1003 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(expired.toArray(), new Object[] { 7, 999, 1000 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueEverWindowTest13() throws InterruptedException, ExecutionException {
+        log.info("uniqueEverWindow test13: events held the longest are expired once over the memory limit");
+        Map<String, EventBufferHolder> gauges = new HashMap<>();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setStatisticsConfiguration(new StatisticsConfiguration(new SiddhiMetricsFactory() {
+            @Override
+            public BufferedEventsTracker createBufferSizeTracker(StatisticsManager statisticsManager) {
+                BufferedEventsTracker tracker = super.createBufferSizeTracker(statisticsManager);
+                return new BufferedEventsTracker() {
+                    @Override
+                    public void registerEventBufferHolder(EventBufferHolder eventBufferHolder, String name) {
+                        gauges.put(name, eventBufferHolder);
+                        tracker.registerEventBufferHolder(eventBufferHolder, name);
+                    }
+
+                    @Override
+                    public String getName(EventBufferHolder eventBufferHolder) {
+                        return tracker.getName(eventBufferHolder);
+                    }
+
+                    @Override
+                    public void enableEventBufferHolderMetrics() {
+                        tracker.enableEventBufferHolderMetrics();
+                    }
+
+                    @Override
+                    public void disableEventBufferHolderMetrics() {
+                        tracker.disableEventBufferHolderMetrics();
+                    }
+                };
+            }
+        }));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        String cseEventStream = "" + "@app:name('MemoryLimitTest') @app:statistics('true') @app:playback "
+                + "define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:ever(ip, 'memory.limit=2kb') "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+        String gauge = "io.siddhi.SiddhiApps.MemoryLimitTest.Siddhi.Queries.query1.unique.memory";
+
+        List<Object> expired = new ArrayList<>();
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                    }
+                }
+            }
+        };
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 50; i++) {
+            inputHandler.send(1000 + i, new Object[] { "192.10.1." + i, i });
+        }
+        int evicted = expired.size();
+        Assert.assertTrue(evicted > 30 && evicted < 50, evicted + " events expired");
+        long memory = gauges.get(gauge).getBufferedEvents();
+        Assert.assertTrue(memory > 0 && memory <= 2048, memory + " bytes held");
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        AssertJUnit.assertEquals(memory, gauges.get(gauge).getBufferedEvents());
+        for (int i = 50; i < 60; i++) {
+            inputHandler.send(1000 + i, new Object[] { "192.10.1." + i, i });
+        }
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < evicted + 10; i++) {
+            expected.add(i);
+        }
+        Assert.assertEquals(expired, expected);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueEverWindowTest14() throws InterruptedException {
+        log.info("uniqueEverWindow test14: events of new keys are dropped once over the memory limit");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:ever(ip, 'memory.limit=2kb', 'memory.policy=reject') "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+
+        List<Object> current = new ArrayList<>();
+        List<Object> expired = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        current.add(event.getData(1));
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 50; i++) {
+            inputHandler.send(new Object[] { "192.10.1." + i, i });
+        }
+        int held = current.size();
+        Assert.assertTrue(held > 1 && held < 20, held + " events held");
+        inputHandler.send(new Object[] { "192.10.1.0", 50 });
+
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < held; i++) {
+            expected.add(i);
+        }
+        expected.add(50);
+        Assert.assertEquals(current, expected);
+        Assert.assertEquals(expired.toArray(), new Object[] { 0 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueEverWindowTest15() {
+        log.info("uniqueEverWindow test15: memory limit of a window holding fingerprints");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:ever(ip, 'key.mode=fingerprint', 'memory.limit=2kb') "
+                + "select ip, seq " + "insert all events into uniqueIps ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test public void uniqueEverWindowTest16() throws InterruptedException, IOException, ClassNotFoundException {
+        log.info("uniqueEverWindow test16: events of a revision keyed by strings are keyed by value on restore");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (id int, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:ever(id) "
+                + "select id, seq " + "insert all events into uniqueIds ;";
+
+        List<Object> expired = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { 1, 1 });
+        inputHandler.send(new Object[] { 2, 2 });
+        // revisions taken before the keys were extracted held the events under their keys as strings
+        Object snapshot;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(siddhiAppRuntime.snapshot()))) {
+            snapshot = in.readObject();
+        }
+        keyByStrings(snapshot);
+        ByteArrayOutputStream revision = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(revision)) {
+            out.writeObject(snapshot);
+        }
+        //restarting siddhi app
+        siddhiAppRuntime.shutdown();
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restore(revision.toByteArray());
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring the revision");
+        }
+        inputHandler.send(new Object[] { 1, 3 });
+        inputHandler.send(new Object[] { 2, 4 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(expired.toArray(), new Object[] { 1, 2 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void keyByStrings(Object state) {
+        if (state instanceof Map) {
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) state).entrySet()) {
+                if ("map".equals(entry.getKey()) && entry.getValue() instanceof Map) {
+                    Map<String, Object> events = new ConcurrentHashMap<>();
+                    ((Map<Object, Object>) entry.getValue()).forEach((key, event) -> events.put(key.toString(), event));
+                    entry.setValue(events);
+                } else {
+                    keyByStrings(entry.getValue());
+                }
+            }
+        }
+    }
 }
@@ -25,6 +25,7 @@ import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import io.siddhi.core.util.persistence.PersistenceStore;
 import org.apache.log4j.Logger;
@@ -33,6 +34,11 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -1144,4 +1150,96 @@ public class UniqueExternalTimeBatchWindowTestCase {
         AssertJUnit.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test
+    public void uniqueExternalTimeBatchWindowTest25() throws InterruptedException {
+        log.info("uniqueExternalTimeBatchWindow test for spilling pending batch events beyond the heap threshold");
+
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.externalTimeBatch.spill.threshold", "1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+
+        String cseEventStream = "" + "define stream LoginEvents (timestamp long, ip string) ;";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:externalTimeBatch(ip, timestamp, 1 sec) "
+                + "select timestamp, ip " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    AssertJUnit.assertEquals(3, inEvents.length);
+                    AssertJUnit.assertEquals("192.10.1.3", inEvents[0].getData(1));
+                    AssertJUnit.assertEquals(1366335804345L, inEvents[1].getData(0));
+                    AssertJUnit.assertEquals("192.10.1.4", inEvents[1].getData(1));
+                    AssertJUnit.assertEquals("192.10.1.5", inEvents[2].getData(1));
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { 1366335804341L, "192.10.1.3" });
+        inputHandler.send(new Object[] { 1366335804342L, "192.10.1.4" });
+        inputHandler.send(new Object[] { 1366335804343L, "192.10.1.5" });
+        inputHandler.send(new Object[] { 1366335804344L, "192.10.1.3" });
+        inputHandler.send(new Object[] { 1366335804345L, "192.10.1.4" });
+        inputHandler.send(new Object[] { 1366335805341L, "192.10.1.6" });
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(3, inEventCount);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueExternalTimeBatchWindowTest26() throws InterruptedException {
+        log.info("uniqueExternalTimeBatchWindow test for early firing the pending events changed since the last "
+                + "firing");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timestamp long, ip string, provisional bool) ;";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:externalTimeBatch(ip, timestamp, 1 sec, "
+                + "'early.fire.interval=400', 'early.fire.mode=delta', 'early.fire.flag=provisional') "
+                + "select timestamp, ip, provisional " + "insert all events into uniqueIps ;";
+
+        List<List<String>> outputs = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                List<String> output = new ArrayList<>();
+                for (Event event : removeEvents == null ? new Event[0] : removeEvents) {
+                    output.add("-" + event.getData(1) + "/" + event.getData(0) + "/" + event.getData(2));
+                }
+                for (Event event : inEvents == null ? new Event[0] : inEvents) {
+                    output.add("+" + event.getData(1) + "/" + event.getData(0) + "/" + event.getData(2));
+                }
+                outputs.add(output);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        // fires on the events at 1450 and 1850, and emits the batch on the event at 2000
+        inputHandler.send(new Object[] { 1000L, "ip1", false });
+        inputHandler.send(new Object[] { 1100L, "ip2", false });
+        inputHandler.send(new Object[] { 1450L, "ip1", false });
+        inputHandler.send(new Object[] { 1500L, "ip3", false });
+        inputHandler.send(new Object[] { 1850L, "ip2", false });
+        inputHandler.send(new Object[] { 2000L, "ip4", false });
+        AssertJUnit.assertEquals(Arrays.asList(
+                Arrays.asList("+ip1/1450/true", "+ip2/1100/true"),
+                Arrays.asList("-ip2/1100/true", "+ip3/1500/true", "+ip2/1850/true"),
+                Arrays.asList("+ip1/1450/false", "+ip2/1850/false", "+ip3/1500/false")), outputs);
+        siddhiAppRuntime.shutdown();
+    }
 }
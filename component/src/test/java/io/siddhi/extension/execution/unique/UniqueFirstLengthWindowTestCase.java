@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique first length window processor test case.
+ */
+public class UniqueFirstLengthWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueFirstLengthWindowTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> currentEvents;
+    private List<Object> expiredEvents;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        currentEvents = new ArrayList<>();
+        expiredEvents = new ArrayList<>();
+    }
+
+    @Test public void uniqueFirstLengthWindowTest1() throws InterruptedException {
+        log.info("uniqueFirstLengthWindow test1: a key is suppressed until the window length of other keys arrived");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from PaymentStream#window.unique:firstLength(paymentId, 2) "
+                + "select paymentId, account, seq " + "insert all events into Payments ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "p1", "a1", 1 });
+        inputHandler.send(new Object[] { "p2", "a1", 2 });
+        inputHandler.send(new Object[] { "p1", "a2", 3 });
+        inputHandler.send(new Object[] { "p3", "a1", 4 });
+        inputHandler.send(new Object[] { "p2", "a1", 5 });
+        inputHandler.send(new Object[] { "p1", "a1", 6 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 2, 4, 6 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1, 2 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueFirstLengthWindowTest2() throws InterruptedException {
+        log.info("uniqueFirstLengthWindow test2: held events are found by joins");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String streams = "" + "define stream PaymentStream (paymentId string, account string, seq int);"
+                + "define stream CheckStream (paymentId string);";
+        String query = "" + "@info(name = 'query1') " + "from CheckStream join "
+                + "PaymentStream#window.unique:firstLength(paymentId, 2) as w "
+                + "on CheckStream.paymentId == w.paymentId "
+                + "select w.paymentId, w.account, w.seq " + "insert into Payments ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler paymentHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        InputHandler checkHandler = siddhiAppRuntime.getInputHandler("CheckStream");
+        siddhiAppRuntime.start();
+        paymentHandler.send(new Object[] { "p1", "a1", 1 });
+        paymentHandler.send(new Object[] { "p1", "a2", 2 });
+        paymentHandler.send(new Object[] { "p2", "a1", 3 });
+        paymentHandler.send(new Object[] { "p3", "a1", 4 });
+        checkHandler.send(new Object[] { "p1" });
+        checkHandler.send(new Object[] { "p2" });
+        checkHandler.send(new Object[] { "p3" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(currentEvents, Arrays.asList(3, 4));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueFirstLengthWindowTest3() throws InterruptedException {
+        log.info("uniqueFirstLengthWindow test3: aggregations consume expired events of current event outputs");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from PaymentStream#window.unique:firstLength(paymentId, 2) "
+                + "select paymentId, account, count() as payments " + "insert into Payments ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "p1", "a1", 1 });
+        inputHandler.send(new Object[] { "p2", "a1", 2 });
+        inputHandler.send(new Object[] { "p3", "a1", 3 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1L, 2L, 2L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueFirstLengthWindowTest4() {
+        log.info("uniqueFirstLengthWindow test4: the window length should be positive");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from PaymentStream#window.unique:firstLength(paymentId, 0) "
+                + "select paymentId, account, seq " + "insert into Payments ;";
+        siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+    }
+}
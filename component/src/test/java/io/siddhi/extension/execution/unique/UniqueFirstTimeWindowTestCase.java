@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.PersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique first time window processor test case.
+ */
+public class UniqueFirstTimeWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueFirstTimeWindowTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> currentEvents;
+    private List<Object> expiredEvents;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        currentEvents = new ArrayList<>();
+        expiredEvents = new ArrayList<>();
+    }
+
+    @Test public void uniqueFirstTimeWindowTest1() throws InterruptedException {
+        log.info("uniqueFirstTimeWindow test1: a key is suppressed for the window time after its first event");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from PaymentStream#window.unique:firstTime(paymentId, 1 sec) "
+                + "select paymentId, account, seq " + "insert all events into Payments ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "p1", "a1", 1 });
+        inputHandler.send(new Object[] { "p2", "a1", 2 });
+        inputHandler.send(new Object[] { "p1", "a2", 3 });
+        Thread.sleep(600);
+        inputHandler.send(new Object[] { "p3", "a1", 4 });
+        inputHandler.send(new Object[] { "p1", "a1", 5 });
+        Thread.sleep(600);
+        // p1 and p2 expired, while p3 is still held
+        inputHandler.send(new Object[] { "p1", "a1", 6 });
+        inputHandler.send(new Object[] { "p3", "a1", 7 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 8, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 2, 4, 6 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1, 2, 4, 6 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueFirstTimeWindowTest2() throws InterruptedException {
+        log.info("uniqueFirstTimeWindow test2: composite keys");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from PaymentStream#window.unique:firstTime(paymentId, account, 500 milliseconds) "
+                + "select paymentId, account, seq " + "insert into Payments ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        siddhiAppRuntime.start();
+        long timestamp = System.currentTimeMillis();
+        inputHandler.send(new Event[] {
+                new Event(timestamp, new Object[] { "p1", "a1", 1 }),
+                new Event(timestamp, new Object[] { "p1", "a2", 2 }),
+                new Event(timestamp, new Object[] { "p1", "a1", 3 })
+        });
+        Thread.sleep(700);
+        inputHandler.send(new Object[] { "p1", "a1", 4 });
+        inputHandler.send(new Object[] { "p1", "a2", 5 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 2, 4, 5 });
+        Assert.assertEquals(expiredEvents.size(), 0);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueFirstTimeWindowTest3() throws InterruptedException, ExecutionException {
+        log.info("uniqueFirstTimeWindow test3: held keys are restored");
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from PaymentStream#window.unique:firstTime(paymentId, 1 min) "
+                + "select paymentId, account, seq " + "insert into Payments ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "p1", "a1", 1 });
+        siddhiAppRuntime.persist().getFuture().get();
+        //restarting siddhi app
+        siddhiAppRuntime.shutdown();
+        inputHandler = siddhiAppRuntime.getInputHandler("PaymentStream");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "p1", "a1", 2 });
+        inputHandler.send(new Object[] { "p2", "a1", 3 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 3 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueFirstTimeWindowTest4() {
+        log.info("uniqueFirstTimeWindow test4: the window time is required");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String paymentStream = "" + "define stream PaymentStream (paymentId string, account string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from PaymentStream#window.unique:firstTime(paymentId) "
+                + "select paymentId, account, seq " + "insert into Payments ;";
+        siddhiManager.createSiddhiAppRuntime(paymentStream + query);
+    }
+}
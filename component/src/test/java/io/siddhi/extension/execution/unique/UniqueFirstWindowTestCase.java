@@ -20,21 +20,46 @@ package io.siddhi.extension.execution.unique;
 
 import io.siddhi.core.SiddhiAppRuntime;
 import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.config.StatisticsConfiguration;
 import io.siddhi.core.event.Event;
+import io.siddhi.core.event.stream.StreamEvent;
 import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import io.siddhi.core.util.persistence.PersistenceStore;
+import io.siddhi.core.util.statistics.BufferedEventsTracker;
+import io.siddhi.core.util.statistics.EventBufferHolder;
+import io.siddhi.core.util.statistics.StatisticsManager;
+import io.siddhi.core.util.statistics.metrics.SiddhiMetricsFactory;
 import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * class representing unique first window test case.
@@ -257,4 +282,346 @@ public class UniqueFirstWindowTestCase {
         }
     }
 
+    @Test
+    public void firstUniqueWindowTest5() throws InterruptedException, ExecutionException {
+        log.info("firstUniqueWindowTest5 - fingerprinted keys across a restore");
+
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+
+        String executionPlan = "" +
+                "@app:name('Test') " +
+                "define stream StockStream ( symbol string, price float, volume int );" +
+                "@info(name = 'query1')" +
+                "from StockStream#window.unique:first(symbol, volume, 'key.mode=fingerprint128', " +
+                "'key.verify=true') " +
+                "select * " +
+                "insert into OutStream ";
+
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+            }
+        };
+
+        SiddhiAppRuntime executionPlanRuntime = siddhiManager.createSiddhiAppRuntime(executionPlan);
+        executionPlanRuntime.addCallback("query1", queryCallback);
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("StockStream");
+        executionPlanRuntime.start();
+
+        inputHandler.send(new Object[]{"IBM", 75.6f, 100});
+        inputHandler.send(new Object[]{"WSO2", 75.6f, 100});
+        inputHandler.send(new Object[]{"IBM", 76.6f, 100});
+        inputHandler.send(new Object[]{null, 76.6f, 100});
+        AssertJUnit.assertEquals(3, eventCount.get());
+
+        executionPlanRuntime.persist().getFuture().get();
+        executionPlanRuntime.shutdown();
+
+        executionPlanRuntime = siddhiManager.createSiddhiAppRuntime(executionPlan);
+        executionPlanRuntime.addCallback("query1", queryCallback);
+        inputHandler = executionPlanRuntime.getInputHandler("StockStream");
+        executionPlanRuntime.start();
+        try {
+            executionPlanRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+
+        inputHandler.send(new Object[]{"WSO2", 77.6f, 100});
+        inputHandler.send(new Object[]{null, 77.6f, 100});
+        inputHandler.send(new Object[]{"WSO2", 77.6f, 110});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        AssertJUnit.assertEquals(4, eventCount.get());
+        executionPlanRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void firstUniqueWindowTest6() {
+        log.info("firstUniqueWindowTest6 - key verification without fingerprints");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String query = "define stream StockStream (symbol string, price float, volume int);" +
+                "from StockStream#window.unique:first(symbol, 'key.verify=true') " +
+                "select * " +
+                "insert into OutStream ;";
+        siddhiManager.createSiddhiAppRuntime(query);
+    }
+
+    @Test public void firstUniqueWindowTest7() throws InterruptedException, ExecutionException, IOException {
+        log.info("UniqueFirstWindow test7: keys admitted after the last snapshot are replayed from the key log");
+        Path logDirectory = Files.createTempDirectory("siddhi-unique-key-log");
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.first.key.log.directory", logDirectory.toString());
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        String cseEventStream = "" + "@app:name('KeyLogTest') define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:first(ip) " + "select ip "
+                + "insert into uniqueIps ;";
+
+        List<Object> ips = new ArrayList<>();
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                for (Event event : inEvents) {
+                    ips.add(event.getData(0));
+                    eventCount.incrementAndGet();
+                }
+            }
+        };
+        try {
+            SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+            siddhiAppRuntime.addCallback("query1", queryCallback);
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.3" });
+            siddhiAppRuntime.persist().getFuture().get();
+            inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.4" });
+            siddhiAppRuntime.shutdown();
+
+            //recreating the siddhi app as after a crash, and replaying the events sent since the snapshot
+            siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+            siddhiAppRuntime.addCallback("query1", queryCallback);
+            inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            try {
+                siddhiAppRuntime.restoreLastRevision();
+            } catch (CannotRestoreSiddhiAppStateException e) {
+                Assert.fail("Error in restoring last revision");
+            }
+            inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.4" });
+            inputHandler.send(new Object[] { System.currentTimeMillis(), "192.10.1.5" });
+
+            SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+            Assert.assertEquals(ips.toArray(), new Object[] { "192.10.1.3", "192.10.1.4", "192.10.1.5" });
+            siddhiAppRuntime.shutdown();
+        } finally {
+            try (Stream<Path> paths = Files.walk(logDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test public void firstUniqueWindowTest8() throws InterruptedException, IOException {
+        log.info("UniqueFirstWindow test8: keys are held in the disk key store");
+        Path storeDirectory = Files.createTempDirectory("siddhi-unique-key-store");
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.first.key.store", "disk");
+        extensionConfigs.put("unique.first.key.store.directory", storeDirectory.toString());
+        extensionConfigs.put("unique.first.key.store.cache.size", "0");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:first(ip) " + "select ip "
+                + "insert into uniqueIps ;";
+
+        List<Object> ips = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                for (Event event : inEvents) {
+                    ips.add(event.getData(0));
+                    eventCount.incrementAndGet();
+                }
+            }
+        });
+        try {
+            InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+            siddhiAppRuntime.start();
+            inputHandler.send(new Event[] {
+                    new Event(1, new Object[] { 1L, "192.10.1.3" }),
+                    new Event(2, new Object[] { 2L, "192.10.1.3" }),
+                    new Event(3, new Object[] { 3L, "192.10.1.4" })
+            });
+            for (int i = 0; i < 1000; i++) {
+                inputHandler.send(new Object[] { (long) i, "10.0." + (i % 300) });
+            }
+            inputHandler.send(new Object[] { 4L, "192.10.1.4" });
+            inputHandler.send(new Object[] { 5L, "192.10.1.5" });
+
+            SiddhiTestHelper.waitForEvents(waitTime, 303, eventCount, timeout);
+            AssertJUnit.assertEquals(303, ips.size());
+            AssertJUnit.assertEquals("192.10.1.5", ips.get(302));
+            siddhiAppRuntime.shutdown();
+        } finally {
+            try (Stream<Path> paths = Files.walk(storeDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test public void firstUniqueWindowTest9() throws InterruptedException, ExecutionException {
+        log.info("UniqueFirstWindow test9: keys beyond the key limit are held approximately, also once restored");
+        Map<String, EventBufferHolder> gauges = new HashMap<>();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setStatisticsConfiguration(new StatisticsConfiguration(new SiddhiMetricsFactory() {
+            @Override
+            public BufferedEventsTracker createBufferSizeTracker(StatisticsManager statisticsManager) {
+                BufferedEventsTracker tracker = super.createBufferSizeTracker(statisticsManager);
+                return new BufferedEventsTracker() {
+                    @Override
+                    public void registerEventBufferHolder(EventBufferHolder eventBufferHolder, String name) {
+                        gauges.put(name, eventBufferHolder);
+                        tracker.registerEventBufferHolder(eventBufferHolder, name);
+                    }
+
+                    @Override
+                    public String getName(EventBufferHolder eventBufferHolder) {
+                        return tracker.getName(eventBufferHolder);
+                    }
+
+                    @Override
+                    public void enableEventBufferHolderMetrics() {
+                        tracker.enableEventBufferHolderMetrics();
+                    }
+
+                    @Override
+                    public void disableEventBufferHolderMetrics() {
+                        tracker.disableEventBufferHolderMetrics();
+                    }
+                };
+            }
+        }));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        String cseEventStream = "" + "@app:name('KeyLimitTest') @app:statistics('true') "
+                + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:first(ip, 'key.limit=100') "
+                + "select ip " + "insert into uniqueIps ;";
+        String gauge = "io.siddhi.SiddhiApps.KeyLimitTest.Siddhi.Queries.query1.unique.first.approximate";
+
+        List<Object> ips = new ArrayList<>();
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    ips.add(event.getData(0));
+                }
+            }
+        };
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 100; i++) {
+            inputHandler.send(new Object[] { (long) i, "10.0." + i });
+        }
+        AssertJUnit.assertEquals(0, gauges.get(gauge).getBufferedEvents());
+        for (int i = 0; i < 600; i++) {
+            inputHandler.send(new Object[] { (long) i, "10.0." + (i % 300) });
+        }
+        AssertJUnit.assertEquals(1, gauges.get(gauge).getBufferedEvents());
+        int admitted = ips.size();
+        Assert.assertTrue(admitted > 295 && admitted <= 300, admitted + " keys admitted");
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        gauges.clear();
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        AssertJUnit.assertEquals(1, gauges.get(gauge).getBufferedEvents());
+        for (int i = 0; i < 300; i++) {
+            inputHandler.send(new Object[] { (long) i, "10.0." + i });
+        }
+        AssertJUnit.assertEquals(admitted, ips.size());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void firstUniqueWindowTest10() {
+        log.info("firstUniqueWindowTest10 - key limit of a joined window");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String query = "define stream StockStream (symbol string, price float, volume int);" +
+                "define stream CheckStream (symbol string);" +
+                "from CheckStream join StockStream#window.unique:first(symbol, 'key.limit=100') " +
+                "on CheckStream.symbol == StockStream.symbol " +
+                "select StockStream.symbol, price " +
+                "insert into OutStream ;";
+        siddhiManager.createSiddhiAppRuntime(query);
+    }
+
+    @Test public void firstUniqueWindowTest11() throws InterruptedException, IOException, ClassNotFoundException {
+        log.info("firstUniqueWindow test11: keys are restored from the events of a revision holding them");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (ip string, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:first(ip) "
+                + "select ip, seq " + "insert into uniqueIps ;";
+
+        List<Object> current = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        current.add(event.getData(1));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "192.10.1.3", 1 });
+        inputHandler.send(new Object[] { "192.10.1.4", 2 });
+        // revisions taken before the keys were held on their own held the events of the keys
+        Object snapshot;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(siddhiAppRuntime.snapshot()))) {
+            snapshot = in.readObject();
+        }
+        holdEvents(snapshot);
+        ByteArrayOutputStream revision = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(revision)) {
+            out.writeObject(snapshot);
+        }
+        //restarting siddhi app
+        siddhiAppRuntime.shutdown();
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restore(revision.toByteArray());
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring the revision");
+        }
+        inputHandler.send(new Object[] { "192.10.1.3", 3 });
+        inputHandler.send(new Object[] { "192.10.1.5", 4 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(current.toArray(), new Object[] { 1, 2, 4 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void holdEvents(Object state) {
+        if (state instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) state;
+            Object keys = map.remove("keys");
+            if (keys instanceof Set) {
+                Map<String, StreamEvent> events = new ConcurrentHashMap<>();
+                for (Object key : (Set<Object>) keys) {
+                    StreamEvent event = new StreamEvent(0, 0, 2);
+                    event.setOutputData(new Object[] { key, 0 });
+                    events.put(key.toString(), event);
+                }
+                map.put("map", events);
+            } else {
+                for (Object value : map.values()) {
+                    holdEvents(value);
+                }
+            }
+        }
+    }
 }
@@ -35,6 +35,9 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -511,4 +514,86 @@ public class UniqueLengthBatchWindowTestCase {
         AssertJUnit.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueLengthBatchWindowTest14() throws InterruptedException {
+        log.info("UniqueLengthBatchWindow Test14: aggregating batches without expired events");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "@info(name = 'query1') " + "from cseEventStream#window.unique:lengthBatch(symbol,2) "
+                + "select sum(price) as sumPrice " + "insert into outputStream ;";
+        List<Object> sums = new ArrayList<>();
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        sums.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    removeEventCount += removeEvents.length;
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 10f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 20f, 2 });
+        inputHandler.send(new Object[] { "IBM", 30f, 3 });
+        inputHandler.send(new Object[] { "IBM", 35f, 4 });
+        inputHandler.send(new Object[] { "WSO2", 40f, 5 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        AssertJUnit.assertEquals(Arrays.<Object>asList(30.0, 75.0), sums);
+        AssertJUnit.assertEquals(0, removeEventCount);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueLengthBatchWindowTest15() throws InterruptedException {
+        log.info("UniqueLengthBatchWindow Test15: emitting the changes between batches");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:lengthBatch(symbol, 2, 'output.mode=delta') "
+                + "select symbol, price " + "insert all events into outputStream ;";
+
+        List<List<String>> outputs = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                List<String> output = new ArrayList<>();
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        output.add("-" + event.getData(0) + "/" + event.getData(1));
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        output.add("+" + event.getData(0) + "/" + event.getData(1));
+                    }
+                }
+                outputs.add(output);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "A", 10f, 1 });
+        inputHandler.send(new Object[] { "B", 20f, 1 });
+        inputHandler.send(new Object[] { "A", 10f, 1 });
+        inputHandler.send(new Object[] { "C", 30f, 1 });
+        inputHandler.send(new Object[] { "A", 15f, 1 });
+        inputHandler.send(new Object[] { "C", 30f, 1 });
+        siddhiAppRuntime.shutdown();
+        Assert.assertEquals(outputs, Arrays.asList(
+                Arrays.asList("+A/10.0", "+B/20.0"),
+                Arrays.asList("-B/20.0", "+C/30.0"),
+                Arrays.asList("-A/10.0", "+A/15.0")));
+    }
 }
@@ -35,6 +35,9 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -251,4 +254,81 @@ public class UniqueLengthWindowTestCase {
         siddhiAppRuntime.shutdown();
     }
 
+
+    @Test public void uniqueLengthWindowTest7() throws InterruptedException {
+        log.info("Testing uniqueLength window with evicted keys arriving again in a batch of events");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, a string, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:length(ip,2) "
+                + "select a, ip " + "insert expired events into uniqueIps ;";
+        List<Object> expired = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        long timestamp = System.currentTimeMillis();
+        inputHandler.send(new Event[] {
+                new Event(timestamp, new Object[] { timestamp, "A1", "192.10.1.3" }),
+                new Event(timestamp, new Object[] { timestamp, "A2", "192.10.1.4" }),
+                new Event(timestamp, new Object[] { timestamp, "A3", "192.10.1.5" }),
+                new Event(timestamp, new Object[] { timestamp, "A4", "192.10.1.3" }),
+                new Event(timestamp, new Object[] { timestamp, "A5", "192.10.1.4" }),
+                new Event(timestamp, new Object[] { timestamp, "A6", "192.10.1.4" })
+        });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        Assert.assertEquals(expired.toArray(), new Object[] { "A1", "A2", "A3", "A5" });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueLengthWindowTest8() throws InterruptedException {
+        log.info("Testing uniqueLength window with snapshot output, keyed by an attribute not selected");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, a string, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#window.unique:length(ip,2) "
+                + "select a " + "output snapshot every 100 milliseconds " + "insert into uniqueIps ;";
+        List<List<Object>> snapshots = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    List<Object> snapshot = new ArrayList<>();
+                    for (Event event : inEvents) {
+                        snapshot.add(event.getData(0));
+                    }
+                    synchronized (snapshots) {
+                        snapshots.add(snapshot);
+                    }
+                }
+            }
+
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "A1", "192.10.1.3" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "A2", "192.10.1.4" });
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "A3", "192.10.1.3" });
+        Thread.sleep(500);
+        synchronized (snapshots) {
+            Assert.assertEquals(snapshots.get(snapshots.size() - 1), Arrays.asList("A2", "A3"));
+        }
+        inputHandler.send(new Object[] { System.currentTimeMillis(), "A4", "192.10.1.5" });
+        Thread.sleep(500);
+        synchronized (snapshots) {
+            Assert.assertEquals(snapshots.get(snapshots.size() - 1), Arrays.asList("A3", "A4"));
+        }
+        siddhiAppRuntime.shutdown();
+    }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique session window processor test case.
+ */
+public class UniqueSessionWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueSessionWindowTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> currentEvents;
+    private List<Object> expiredEvents;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        currentEvents = new ArrayList<>();
+        expiredEvents = new ArrayList<>();
+    }
+
+    @Test public void uniqueSessionWindowTest1() throws InterruptedException {
+        log.info("uniqueSessionWindow test1: sessions following the system time");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String clickStream = "" + "define stream ClickStream (userId string, page string, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from ClickStream#window.unique:session(userId, 500 milliseconds) "
+                + "select userId, page, seq " + "insert all events into Sessions ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(clickStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("ClickStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "u1", "home", 1 });
+        inputHandler.send(new Object[] { "u2", "home", 2 });
+        Thread.sleep(300);
+        // extends the session of u1 until 800 milliseconds
+        inputHandler.send(new Object[] { "u1", "cart", 3 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 2, 3 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1, 2, 3 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueSessionWindowTest2() throws InterruptedException {
+        log.info("uniqueSessionWindow test2: sessions following the event time");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String clickStream = "" + "define stream ClickStream (userId string, timestamp long, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from ClickStream#window.unique:session(userId, 100, timestamp) "
+                + "select userId, timestamp, seq " + "insert all events into Sessions ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(clickStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("ClickStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "u1", 1000L, 1 });
+        inputHandler.send(new Object[] { "u2", 1050L, 2 });
+        inputHandler.send(new Object[] { "u1", 1090L, 3 });
+        // ends the session of u2
+        inputHandler.send(new Object[] { "u3", 1160L, 4 });
+        // a late event extends nothing
+        inputHandler.send(new Object[] { "u3", 1100L, 5 });
+        // ends the sessions of u1 and u3
+        inputHandler.send(new Object[] { "u4", 1300L, 6 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 11, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1, 2, 3, 4, 5, 6 });
+        Assert.assertEquals(expiredEvents.toArray(), new Object[] { 1, 2, 4, 3, 5 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueSessionWindowTest3() throws InterruptedException {
+        log.info("uniqueSessionWindow test3: counting the active keys");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String clickStream = "" + "define stream ClickStream (userId string, timestamp long, seq int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from ClickStream#window.unique:session(userId, 100, timestamp) "
+                + "select userId, timestamp, count() as users " + "insert into ActiveUsers ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(clickStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        currentEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredEvents.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("ClickStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "u1", 1000L, 1 });
+        inputHandler.send(new Object[] { "u2", 1010L, 2 });
+        inputHandler.send(new Object[] { "u1", 1020L, 3 });
+        inputHandler.send(new Object[] { "u3", 1115L, 4 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        Assert.assertEquals(currentEvents.toArray(), new Object[] { 1L, 2L, 2L, 2L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueSessionWindowTest4() {
+        log.info("uniqueSessionWindow test4: the timestamp should be a long attribute");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String clickStream = "" + "define stream ClickStream (userId string, timestamp long, seq int);";
+        String query = "" + "@info(name = 'query1') " + "from ClickStream#window.unique:session(userId, 100, seq) "
+                + "select userId, timestamp, seq " + "insert into Sessions ;";
+        siddhiManager.createSiddhiAppRuntime(clickStream + query);
+    }
+}
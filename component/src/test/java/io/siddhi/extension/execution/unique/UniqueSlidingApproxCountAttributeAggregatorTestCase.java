@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.PersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique sliding approximate count attribute aggregator test case.
+ */
+public class UniqueSlidingApproxCountAttributeAggregatorTestCase {
+    private static final Logger log = Logger.getLogger(UniqueSlidingApproxCountAttributeAggregatorTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> counts;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        counts = new ArrayList<>();
+    }
+
+    @Test public void uniqueSlidingApproxCountAggregatorTest1() throws InterruptedException {
+        log.info("uniqueSlidingApproxCountAggregator test1: keys expire at slot granularity");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback " + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:slidingApproxCount(ip, 10 sec, 1 sec) as ipCount " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(1000, new Object[] { 1000L, "192.10.1.3" });
+        inputHandler.send(1500, new Object[] { 1500L, "192.10.1.3" });
+        inputHandler.send(2000, new Object[] { 2000L, "192.10.1.4" });
+        inputHandler.send(5000, new Object[] { 5000L, "192.10.1.5" });
+        inputHandler.send(10999, new Object[] { 10999L, "192.10.1.5" });
+        inputHandler.send(11000, new Object[] { 11000L, "192.10.1.6" });
+        inputHandler.send(12000, new Object[] { 12000L, "192.10.1.6" });
+        inputHandler.send(25000, new Object[] { 25000L, "192.10.1.3" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 8, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 1L, 1L, 2L, 3L, 3L, 4L, 3L, 1L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueSlidingApproxCountAggregatorTest2() throws InterruptedException {
+        log.info("uniqueSlidingApproxCountAggregator test2: large cardinalities within the expected error");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback " + "define stream LoginEvents (timeStamp long, id long);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:slidingApproxCount(id, 60 sec) as idCount " + "insert into uniqueIds ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (long i = 0; i < 120000; i++) {
+            inputHandler.send(i, new Object[] { i, i });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 120000, eventCount, timeout);
+        Assert.assertEquals((long) counts.get(59999), 60000L, 60000 * 0.05);
+        // the oldest overlapping slot, 54 to 60 sec, is still counted
+        Assert.assertEquals((long) counts.get(119999), 66000L, 66000 * 0.05);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueSlidingApproxCountAggregatorTest3() throws InterruptedException, ExecutionException {
+        log.info("uniqueSlidingApproxCountAggregator test3: restore slots");
+
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "@app:name('UniqueSlidingApproxCountRestore') @app:playback "
+                + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:slidingApproxCount(ip, 10 sec, 1 sec) as ipCount " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(1000, new Object[] { 1000L, "192.10.1.3" });
+        inputHandler.send(5000, new Object[] { 5000L, "192.10.1.4" });
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(6000, new Object[] { 6000L, "192.10.1.5" });
+        inputHandler.send(12000, new Object[] { 12000L, "192.10.1.5" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 1L, 2L, 3L, 2L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueSlidingApproxCountAggregatorTest5() throws InterruptedException {
+        log.info("uniqueSlidingApproxCountAggregator test5: a key late in the oldest slot stays within the window");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback " + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:slidingApproxCount(ip, 1 sec, 100) as ipCount " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        counts.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(99, new Object[] { 99L, "192.10.1.3" });
+        inputHandler.send(1098, new Object[] { 1098L, "192.10.1.4" });
+        inputHandler.send(1100, new Object[] { 1100L, "192.10.1.5" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(counts.toArray(), new Object[] { 1L, 2L, 2L });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueSlidingApproxCountAggregatorTest4() {
+        log.info("uniqueSlidingApproxCountAggregator test4: slot longer than the window");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents "
+                + "select unique:slidingApproxCount(ip, 1 sec, 1 min) as ipCount " + "insert into uniqueIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+}
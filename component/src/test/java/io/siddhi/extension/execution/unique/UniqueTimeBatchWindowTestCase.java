@@ -24,8 +24,10 @@ import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
 import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.stream.output.StreamCallback;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.config.InMemoryConfigManager;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import io.siddhi.core.util.persistence.PersistenceStore;
 import org.apache.log4j.Logger;
@@ -34,6 +36,12 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -456,4 +464,409 @@ public class UniqueTimeBatchWindowTestCase {
         Assert.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueTimeWindowBatchTest15() throws InterruptedException {
+        log.info("TimeBatchWindow Test for spilling pending batch events beyond the heap threshold");
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.timeBatch.spill.threshold", "2");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.unique:timeBatch(symbol,1 sec) "
+                + "select symbol, price, volume " + "insert all events into outputStream ;";
+
+        List<Object> symbols = new ArrayList<>();
+        List<Object> volumes = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        symbols.add(event.getData(0));
+                        volumes.add(event.getData(2));
+                    }
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 61.5f, 2 });
+        inputHandler.send(new Object[] { "ORCL", 40.5f, 3 });
+        inputHandler.send(new Object[] { "GOOG", 90.5f, 4 });
+        inputHandler.send(new Object[] { "IBM", 701f, 5 });
+        inputHandler.send(new Object[] { "ORCL", 41.5f, 6 });
+        inputHandler.send(new Object[] { "AAPL", 20.5f, 7 });
+        inputHandler.send(new Object[] { "ORCL", 42.5f, 8 });
+        SiddhiTestHelper.waitForEvents(100, 5, eventCount, timeout);
+        Thread.sleep(1100);
+        inputHandler.send(new Object[] { "IBM", 700f, 9 });
+
+        SiddhiTestHelper.waitForEvents(100, 5, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(inEventCount, 5);
+        Assert.assertEquals(symbols.toArray(), new Object[] { "IBM", "WSO2", "ORCL", "GOOG", "AAPL" });
+        Assert.assertEquals(volumes.toArray(), new Object[] { 5, 2, 8, 4, 7 });
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowBatchTest16() throws InterruptedException {
+        log.info("TimeBatchWindow Test for batches of partitions that go idle and receive events again");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "partition with (symbol of cseEventStream) begin "
+                + "from cseEventStream#window.unique:timeBatch(price, 1 sec) "
+                + "select symbol, sum(volume) as totalVolume " + "insert into outputStream ; " + "end ;";
+
+        List<Object> totals = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    totals.add(event.getData(0) + ":" + event.getData(1));
+                }
+                eventCount.addAndGet(events.length);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 2 });
+        inputHandler.send(new Object[] { "IBM", 701f, 3 });
+        SiddhiTestHelper.waitForEvents(100, 2, eventCount, timeout);
+        Thread.sleep(2500);
+        inputHandler.send(new Object[] { "IBM", 700f, 5 });
+
+        SiddhiTestHelper.waitForEvents(100, 3, eventCount, timeout);
+        Thread.sleep(1100);
+        Assert.assertEquals(totals.size(), 3);
+        Assert.assertTrue(totals.contains("IBM:4"));
+        Assert.assertTrue(totals.contains("WSO2:2"));
+        Assert.assertEquals(totals.get(2), "IBM:5");
+        siddhiAppRuntime.shutdown();
+    }
+
+    private List<Object> sendOverMemoryLimit(String policy, List<Integer> batchSizes) throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback define stream cseEventStream (symbol string, price float, "
+                + "volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'memory.limit=1kb', "
+                + "'memory.policy=" + policy + "') "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+
+        List<Object> symbols = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        symbols.add(event.getData(0));
+                    }
+                    batchSizes.add(inEvents.length);
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        for (int i = 0; i < 20; i++) {
+            inputHandler.send(1000 + i, new Object[] { "S" + i, 10f, i });
+        }
+        // emits the batch, while the event itself starts the next batch
+        inputHandler.send(2100, new Object[] { "S0", 11f, 20 });
+        siddhiAppRuntime.shutdown();
+        return symbols;
+    }
+
+    private static List<Object> symbols(int from, int to) {
+        List<Object> symbols = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            symbols.add("S" + i);
+        }
+        return symbols;
+    }
+
+    @Test public void uniqueTimeWindowBatchTest17() throws InterruptedException {
+        log.info("TimeBatchWindow Test for flushing batches early once they exceed the memory limit");
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Object> symbols = sendOverMemoryLimit("flush", batchSizes);
+        Assert.assertEquals(symbols, symbols(0, 20));
+        Assert.assertTrue(batchSizes.size() > 2, "batches " + batchSizes);
+    }
+
+    @Test public void uniqueTimeWindowBatchTest18() throws InterruptedException {
+        log.info("TimeBatchWindow Test for evicting the oldest events of batches exceeding the memory limit");
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Object> symbols = sendOverMemoryLimit("evict", batchSizes);
+        Assert.assertEquals(batchSizes.size(), 1);
+        int held = symbols.size();
+        Assert.assertTrue(held > 1 && held < 20, "held " + symbols);
+        Assert.assertEquals(symbols, symbols(20 - held, 20));
+    }
+
+    @Test public void uniqueTimeWindowBatchTest19() throws InterruptedException {
+        log.info("TimeBatchWindow Test for rejecting the events of new keys exceeding the memory limit");
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Object> symbols = sendOverMemoryLimit("reject", batchSizes);
+        Assert.assertEquals(batchSizes.size(), 1);
+        int held = symbols.size();
+        Assert.assertTrue(held > 1 && held < 20, "held " + symbols);
+        Assert.assertEquals(symbols, symbols(0, held));
+    }
+
+    @Test public void uniqueTimeWindowBatchTest20() throws InterruptedException {
+        log.info("TimeBatchWindow Test for spilling the events of batches exceeding the memory limit");
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Object> symbols = sendOverMemoryLimit("spill", batchSizes);
+        Assert.assertEquals(batchSizes.size(), 1);
+        Assert.assertEquals(symbols, symbols(0, 20));
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTimeWindowBatchTest21() {
+        log.info("TimeBatchWindow Test for an unknown memory policy");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'memory.limit=1mb', "
+                + "'memory.policy=drop') "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    private List<List<String>> sendWithEarlyFiring(String mode) throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback define stream cseEventStream (symbol string, price float, "
+                + "provisional bool);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'early.fire.interval=300', "
+                + "'early.fire.mode=" + mode + "', 'early.fire.flag=provisional') "
+                + "select symbol, price, provisional " + "insert all events into outputStream ;";
+
+        List<List<String>> outputs = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                List<String> output = new ArrayList<>();
+                for (Event event : removeEvents == null ? new Event[0] : removeEvents) {
+                    output.add("-" + event.getData(0) + "/" + event.getData(1) + "/" + event.getData(2));
+                }
+                for (Event event : inEvents == null ? new Event[0] : inEvents) {
+                    output.add("+" + event.getData(0) + "/" + event.getData(1) + "/" + event.getData(2));
+                }
+                outputs.add(output);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        // fires at 1300, 1600 and 1900 and emits the batch at 2000, each time before the next event is processed
+        inputHandler.send(1000, new Object[] { "A", 10f, false });
+        inputHandler.send(1100, new Object[] { "B", 20f, false });
+        inputHandler.send(1400, new Object[] { "A", 12f, false });
+        inputHandler.send(1700, new Object[] { "C", 30f, false });
+        inputHandler.send(1950, new Object[] { "B", 22f, false });
+        inputHandler.send(2100, new Object[] { "D", 40f, false });
+        siddhiAppRuntime.shutdown();
+        return outputs;
+    }
+
+    @Test public void uniqueTimeWindowBatchTest22() throws InterruptedException {
+        log.info("TimeBatchWindow Test for early firing all the pending events");
+        List<List<String>> outputs = sendWithEarlyFiring("full");
+        Assert.assertEquals(outputs, Arrays.asList(
+                Arrays.asList("+A/10.0/true", "+B/20.0/true"),
+                Arrays.asList("+A/12.0/true", "+B/20.0/true"),
+                Arrays.asList("+A/12.0/true", "+B/20.0/true", "+C/30.0/true"),
+                Arrays.asList("+A/12.0/false", "+B/22.0/false", "+C/30.0/false")));
+    }
+
+    @Test public void uniqueTimeWindowBatchTest23() throws InterruptedException {
+        log.info("TimeBatchWindow Test for early firing the pending events changed since the last firing");
+        List<List<String>> outputs = sendWithEarlyFiring("delta");
+        Assert.assertEquals(outputs, Arrays.asList(
+                Arrays.asList("+A/10.0/true", "+B/20.0/true"),
+                Arrays.asList("-A/10.0/true", "+A/12.0/true"),
+                Arrays.asList("+C/30.0/true"),
+                Arrays.asList("+A/12.0/false", "+B/22.0/false", "+C/30.0/false")));
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTimeWindowBatchTest24() {
+        log.info("TimeBatchWindow Test for an early firing flag that is not a bool attribute");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'early.fire.interval=100', "
+                + "'early.fire.flag=volume') "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test public void uniqueTimeWindowBatchTest25() throws InterruptedException {
+        log.info("TimeBatchWindow Test for emitting the changes between batches");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback define stream cseEventStream (symbol string, price float, "
+                + "volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'output.mode=delta') "
+                + "select symbol, price " + "insert all events into outputStream ;";
+
+        List<List<String>> outputs = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                List<String> output = new ArrayList<>();
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        output.add("-" + event.getData(0) + "/" + event.getData(1));
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        output.add("+" + event.getData(0) + "/" + event.getData(1));
+                    }
+                }
+                outputs.add(output);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        // each batch is emitted before the first event of the next one is processed
+        inputHandler.send(1000, new Object[] { "A", 10f, 1 });
+        inputHandler.send(1100, new Object[] { "B", 20f, 1 });
+        inputHandler.send(2100, new Object[] { "A", 10f, 1 });
+        inputHandler.send(2200, new Object[] { "C", 30f, 1 });
+        inputHandler.send(3100, new Object[] { "A", 15f, 1 });
+        inputHandler.send(3200, new Object[] { "C", 30f, 1 });
+        inputHandler.send(4100, new Object[] { "D", 40f, 1 });
+        siddhiAppRuntime.shutdown();
+        Assert.assertEquals(outputs, Arrays.asList(
+                Arrays.asList("+A/10.0", "+B/20.0"),
+                Arrays.asList("-B/20.0", "+C/30.0"),
+                Arrays.asList("-A/10.0", "+A/15.0")));
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTimeWindowBatchTest26() {
+        log.info("TimeBatchWindow Test for early firing along with the delta output mode");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'early.fire.interval=100', "
+                + "'output.mode=delta') "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test public void uniqueTimeWindowBatchTest27() throws InterruptedException, ExecutionException {
+        log.info("TimeBatchWindow Test for restoring pending batch events spilled beyond the heap threshold");
+        Map<String, String> extensionConfigs = new HashMap<>();
+        extensionConfigs.put("unique.timeBatch.spill.threshold", "2");
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(extensionConfigs, null));
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "@app:name('UniqueTimeBatchSpillRestore') @app:playback "
+                + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.unique:timeBatch(symbol,1 sec) "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+
+        List<Object> volumes = new ArrayList<>();
+        QueryCallback queryCallback = new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        volumes.add(event.getData(2));
+                    }
+                }
+            }
+        };
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(1000, new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(1100, new Object[] { "WSO2", 61.5f, 2 });
+        inputHandler.send(1200, new Object[] { "ORCL", 40.5f, 3 });
+        inputHandler.send(1300, new Object[] { "GOOG", 90.5f, 4 });
+        inputHandler.send(1400, new Object[] { "IBM", 701f, 5 });
+        inputHandler.send(1500, new Object[] { "ORCL", 41.5f, 6 });
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", queryCallback);
+        inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        // the restored batch is emitted along with the next one
+        inputHandler.send(2100, new Object[] { "AAPL", 20.5f, 7 });
+        inputHandler.send(3200, new Object[] { "IBM", 702f, 8 });
+        siddhiAppRuntime.shutdown();
+        Assert.assertEquals(volumes.toArray(), new Object[] { 5, 2, 6, 4, 7 });
+    }
+
+    @Test public void uniqueTimeWindowBatchTest28() throws InterruptedException {
+        log.info("TimeBatchWindow Test for expiring the last batch along with early firing");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback define stream cseEventStream (symbol string, price float, "
+                + "volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeBatch(symbol, 1 sec, 'early.fire.interval=300') "
+                + "select symbol, count() as total " + "group by symbol "
+                + "insert all events into outputStream ;";
+
+        List<List<String>> outputs = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                List<String> output = new ArrayList<>();
+                for (Event event : removeEvents == null ? new Event[0] : removeEvents) {
+                    output.add("-" + event.getData(0) + "/" + event.getData(1));
+                }
+                for (Event event : inEvents == null ? new Event[0] : inEvents) {
+                    output.add("+" + event.getData(0) + "/" + event.getData(1));
+                }
+                outputs.add(output);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(1000, new Object[] { "A", 10f, 1 });
+        inputHandler.send(1100, new Object[] { "B", 20f, 1 });
+        inputHandler.send(1200, new Object[] { "C", 30f, 1 });
+        inputHandler.send(2100, new Object[] { "D", 40f, 1 });
+        inputHandler.send(2400, new Object[] { "E", 50f, 1 });
+        inputHandler.send(3100, new Object[] { "F", 60f, 1 });
+        siddhiAppRuntime.shutdown();
+        // the first batch expires along with the first provisional firing of the second one
+        Assert.assertEquals(outputs, Arrays.asList(
+                Arrays.asList("+A/1", "+B/1", "+C/1"),
+                Arrays.asList("-A/0", "-B/0", "-C/0", "+D/1"),
+                Arrays.asList("+D/1", "+E/1")));
+    }
 }
@@ -34,6 +34,9 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -565,4 +568,49 @@ public class UniqueTimeLengthBatchWindowTestCase {
         Assert.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueTimeLengthWindowBatchTest17() throws InterruptedException {
+        log.info("timeLengthBatchWindow Test for emitting the changes between batches");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "@app:playback define stream cseEventStream (symbol string, price float, "
+                + "volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#window.unique:timeLengthBatch(symbol, 1 sec, 2, 'output.mode=delta') "
+                + "select symbol, price " + "insert all events into outputStream ;";
+
+        List<List<String>> outputs = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                List<String> output = new ArrayList<>();
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        output.add("-" + event.getData(0) + "/" + event.getData(1));
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        output.add("+" + event.getData(0) + "/" + event.getData(1));
+                    }
+                }
+                outputs.add(output);
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        // each batch is emitted once it holds two keys, and the next one starts on the next second
+        inputHandler.send(1000, new Object[] { "A", 10f, 1 });
+        inputHandler.send(1100, new Object[] { "B", 20f, 1 });
+        inputHandler.send(2100, new Object[] { "A", 10f, 1 });
+        inputHandler.send(2200, new Object[] { "C", 30f, 1 });
+        inputHandler.send(3100, new Object[] { "A", 15f, 1 });
+        inputHandler.send(3200, new Object[] { "C", 30f, 1 });
+        siddhiAppRuntime.shutdown();
+        Assert.assertEquals(outputs, Arrays.asList(
+                Arrays.asList("+A/10.0", "+B/20.0"),
+                Arrays.asList("-B/20.0", "+C/30.0"),
+                Arrays.asList("-A/10.0", "+A/15.0")));
+    }
 }
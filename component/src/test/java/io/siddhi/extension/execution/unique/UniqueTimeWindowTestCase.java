@@ -25,6 +25,7 @@ import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
 import io.siddhi.core.exception.SiddhiAppCreationException;
 import io.siddhi.core.query.output.callback.QueryCallback;
 import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.stream.output.StreamCallback;
 import io.siddhi.core.util.EventPrinter;
 import io.siddhi.core.util.SiddhiTestHelper;
 import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
@@ -35,6 +36,10 @@ import org.testng.AssertJUnit;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -314,4 +319,204 @@ public class UniqueTimeWindowTestCase {
         AssertJUnit.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueTimeWindowTest10() throws InterruptedException {
+        log.info("UniqueTimeWindow Test for a unique key and a filter attribute not selected");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream cseEventStream (symbol string, exchange string, price float, "
+                + "volume int);";
+        String query = "@info(name = 'query1') from cseEventStream[exchange == 'NYSE']#window.unique:time(symbol, "
+                + "1 sec) select price, volume insert all events into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        List<Integer> expiredVolumes = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount += inEvents.length;
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredVolumes.add((Integer) event.getData(1));
+                    }
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"IBM", "NYSE", 700f, 1});
+        inputHandler.send(new Object[]{"IBM", "NYSE", 710f, 2});
+        inputHandler.send(new Object[]{"WSO2", "LSE", 60f, 3});
+        inputHandler.send(new Object[]{"WSO2", "NYSE", 61f, 4});
+        Thread.sleep(1500);
+        inputHandler.send(new Object[]{"IBM", "NYSE", 720f, 5});
+        Thread.sleep(100);
+        AssertJUnit.assertEquals(4, inEventCount);
+        AssertJUnit.assertEquals(Arrays.asList(1, 2, 4), expiredVolumes);
+        AssertJUnit.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest11() throws InterruptedException {
+        log.info("UniqueTimeWindow Test for joining with a window keyed by an attribute not joined on");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String streams = "define stream cseEventStream (symbol string, exchange string, price float, volume int);"
+                + "define stream checkStream (volume int);";
+        String query = "@info(name = 'query1') from checkStream join cseEventStream[exchange == 'NYSE']"
+                + "#window.unique:time(symbol, 10 sec) as w on checkStream.volume == w.volume "
+                + "select w.price insert into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        List<Float> prices = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        prices.add((Float) event.getData(0));
+                    }
+                }
+            }
+
+        });
+        InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler checkStreamHandler = siddhiAppRuntime.getInputHandler("checkStream");
+        siddhiAppRuntime.start();
+        cseEventStreamHandler.send(new Object[]{"IBM", "NYSE", 700f, 1});
+        cseEventStreamHandler.send(new Object[]{"WSO2", "NYSE", 60f, 2});
+        cseEventStreamHandler.send(new Object[]{"IBM", "NYSE", 710f, 2});
+        checkStreamHandler.send(new Object[]{1});
+        checkStreamHandler.send(new Object[]{2});
+        Thread.sleep(100);
+        AssertJUnit.assertEquals(2, prices.size());
+        AssertJUnit.assertTrue(prices.containsAll(Arrays.asList(60f, 710f)));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest12() throws InterruptedException, ExecutionException {
+        log.info("UniqueTimeWindow Test for events replaced after persisting being restored as they were persisted");
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query =
+                "@info(name = 'query1') from cseEventStream#window.unique:time(symbol, 2 sec) select symbol,price,"
+                        + "volume insert all events into outputStream ;";
+        AtomicInteger expiredCount = new AtomicInteger(0);
+        List<Object> volumes = new ArrayList<>();
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        volumes.add(event.getData(2));
+                        expiredCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 2 });
+        siddhiAppRuntime.persist().getFuture().get();
+        inputHandler.send(new Object[] { "IBM", 710f, 3 });
+        //restarting execution plan
+        siddhiAppRuntime.shutdown();
+        inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "IBM", 720f, 4 });
+        SiddhiTestHelper.waitForEvents(waitTime, 3, expiredCount, timeout);
+        AssertJUnit.assertEquals(Arrays.asList(1, 1, 2), volumes);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest13() throws InterruptedException {
+        log.info("UniqueTimeWindow Test for the order of the events of a chunk and the events they replace");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream LoginEvents (ip string, seq int);";
+        String query = "@info(name = 'query1') from LoginEvents#window.unique:time(ip, 1 min) "
+                + "select ip, seq insert all events into uniqueIps ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        List<Object> events = new ArrayList<>();
+        siddhiAppRuntime.addCallback("uniqueIps", new StreamCallback() {
+            @Override public void receive(Event[] streamEvents) {
+                EventPrinter.print(streamEvents);
+                for (Event event : streamEvents) {
+                    events.add(event.getData(1));
+                    eventCount.incrementAndGet();
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        long timestamp = System.currentTimeMillis();
+        inputHandler.send(new Event[]{
+                new Event(timestamp, new Object[]{"192.10.1.3", 1}),
+                new Event(timestamp, new Object[]{"192.10.1.4", 2}),
+                new Event(timestamp, new Object[]{"192.10.1.3", 3}),
+                new Event(timestamp, new Object[]{"192.10.1.5", 4}),
+                new Event(timestamp, new Object[]{"192.10.1.4", 5})
+        });
+        SiddhiTestHelper.waitForEvents(waitTime, 7, eventCount, timeout);
+        Assert.assertEquals(events.toArray(), new Object[]{1, 2, 1, 3, 4, 2, 5});
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest14() throws InterruptedException {
+        log.info("UniqueTimeWindow Test for events expiring a bucket of timestamps at a time");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "@app:playback define stream LoginEvents (ip string, seq int);";
+        String query = "@info(name = 'query1') from LoginEvents"
+                + "#window.unique:time(ip, 1 sec, 'expiry.granularity=500') "
+                + "select ip, seq insert all events into uniqueIps ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        List<Object> expired = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expired.add(event.getData(1));
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(0, new Object[]{"192.10.1.3", 1});
+        inputHandler.send(100, new Object[]{"192.10.1.4", 2});
+        inputHandler.send(200, new Object[]{"192.10.1.3", 3});
+        inputHandler.send(600, new Object[]{"192.10.1.5", 4});
+        inputHandler.send(1600, new Object[]{"192.10.1.6", 5});
+        // the bucket of the event at 600 is only due at 1999
+        Assert.assertEquals(expired.toArray(), new Object[]{1, 2, 3});
+        inputHandler.send(2100, new Object[]{"192.10.1.7", 6});
+        Assert.assertEquals(expired.toArray(), new Object[]{1, 2, 3, 4});
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTimeWindowTest15() {
+        log.info("UniqueTimeWindow Test for a bucket time span that is not positive");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream LoginEvents (ip string, seq int);";
+        String query = "@info(name = 'query1') from LoginEvents"
+                + "#window.unique:time(ip, 1 sec, 'expiry.granularity=0') "
+                + "select ip, seq insert all events into uniqueIps ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
 }
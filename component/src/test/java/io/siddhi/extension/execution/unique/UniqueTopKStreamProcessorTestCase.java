@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.siddhi.extension.execution.unique;
+
+import io.siddhi.core.SiddhiAppRuntime;
+import io.siddhi.core.SiddhiManager;
+import io.siddhi.core.event.Event;
+import io.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import io.siddhi.core.exception.SiddhiAppCreationException;
+import io.siddhi.core.query.output.callback.QueryCallback;
+import io.siddhi.core.stream.input.InputHandler;
+import io.siddhi.core.util.EventPrinter;
+import io.siddhi.core.util.SiddhiTestHelper;
+import io.siddhi.core.util.persistence.InMemoryPersistenceStore;
+import io.siddhi.core.util.persistence.PersistenceStore;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique topK stream processor test case.
+ */
+public class UniqueTopKStreamProcessorTestCase {
+    private static final Logger log = Logger.getLogger(UniqueTopKStreamProcessorTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<String> changes;
+    private Set<Object> topK;
+
+    @BeforeMethod public void init() {
+        eventCount = new AtomicInteger(0);
+        changes = new ArrayList<>();
+        topK = new HashSet<>();
+    }
+
+    @Test public void uniqueTopKStreamProcessorTest1() throws InterruptedException {
+        log.info("uniqueTopKStreamProcessor test1: entering and leaving the top-K");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (ip string, id int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#unique:topK(ip, 2) "
+                + "select ip, rank, frequency " + "insert all events into TopIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        changes.add("-" + Arrays.toString(event.getData()));
+                        topK.remove(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        changes.add("+" + Arrays.toString(event.getData()));
+                        topK.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (String ip : new String[] { "a", "a", "b", "c", "c", "c", "b", "b", "b" }) {
+            inputHandler.send(new Object[] { ip, 1 });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertEquals(changes, Arrays.asList("+[a, 1, 1]", "+[b, 2, 1]", "-[b, 3, 1]", "+[c, 2, 2]",
+                "-[a, 3, 2]", "+[b, 2, 3]"));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTopKStreamProcessorTest2() throws InterruptedException {
+        log.info("uniqueTopKStreamProcessor test2: heavy hitters among many keys");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (ip string, id int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#unique:topK(ip, id, 3) "
+                + "select ip, id " + "insert all events into TopIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        changes.add("-" + Arrays.toString(event.getData()));
+                        topK.remove(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        changes.add("+" + Arrays.toString(event.getData()));
+                        topK.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            if (random.nextInt(10) < 6) {
+                inputHandler.send(new Object[] { "hot" + random.nextInt(3), 1 });
+            } else {
+                inputHandler.send(new Object[] { "cold" + random.nextInt(4000), 1 });
+            }
+        }
+
+        Thread.sleep(100);
+        Assert.assertEquals(topK, new HashSet<>(Arrays.asList("hot0", "hot1", "hot2")));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTopKStreamProcessorTest3() throws InterruptedException, ExecutionException {
+        log.info("uniqueTopKStreamProcessor test3: restore summary");
+
+        PersistenceStore persistenceStore = new InMemoryPersistenceStore();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(persistenceStore);
+        String cseEventStream = "" + "@app:name('UniqueTopKRestore') "
+                + "define stream LoginEvents (ip string, id int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#unique:topK(ip, 1) "
+                + "select ip, rank, frequency " + "insert all events into TopIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        changes.add("-" + Arrays.toString(event.getData()));
+                        topK.remove(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        changes.add("+" + Arrays.toString(event.getData()));
+                        topK.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "a", 1 });
+        inputHandler.send(new Object[] { "a", 1 });
+        inputHandler.send(new Object[] { "b", 1 });
+        SiddhiTestHelper.waitForEvents(waitTime, 1, eventCount, timeout);
+        siddhiAppRuntime.persist().getFuture().get();
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        changes.add("-" + Arrays.toString(event.getData()));
+                        topK.remove(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        changes.add("+" + Arrays.toString(event.getData()));
+                        topK.add(event.getData(0));
+                        eventCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+        inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[] { "b", 1 });
+        inputHandler.send(new Object[] { "b", 1 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(changes, Arrays.asList("+[a, 1, 1]", "-[a, 2, 2]", "+[b, 1, 3]"));
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTopKStreamProcessorTest4() {
+        log.info("uniqueTopKStreamProcessor test4: non positive k");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream LoginEvents (ip string, id int);";
+        String query = "" + "@info(name = 'query1') " + "from LoginEvents#unique:topK(ip, 0) "
+                + "select ip " + "insert all events into TopIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+}